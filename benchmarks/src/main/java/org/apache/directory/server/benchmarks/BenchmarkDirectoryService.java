@@ -0,0 +1,201 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks;
+
+
+import java.io.File;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.DefaultDirectoryService;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.factory.DefaultDirectoryServiceFactory;
+import org.apache.directory.server.core.factory.PartitionFactory;
+
+
+/**
+ * A DirectoryService used by the benchmarks. It contains a <em>dc=example,dc=com</em> partition
+ * created by the given PartitionFactory, with indexes on ou, cn and uid, loaded with a number
+ * of inetOrgPerson entries under <em>ou=people,dc=example,dc=com</em>. The users are spread
+ * over {@link #NB_DEPARTMENTS} departments, stored in their ou attribute.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class BenchmarkDirectoryService
+{
+    /** The benchmark partition suffix */
+    public static final String SUFFIX = "dc=example,dc=com";
+
+    /** The users container */
+    public static final String PEOPLE = "ou=people," + SUFFIX;
+
+    /** The number of departments the users are spread over */
+    public static final int NB_DEPARTMENTS = 100;
+
+    /** The DirectoryService */
+    private final DirectoryService directoryService;
+
+    /** The benchmark partition */
+    private final Partition partition;
+
+    /** The admin session */
+    private final CoreSession session;
+
+
+    /**
+     * Creates and starts a DirectoryService, and load the benchmark partition.
+     *
+     * @param name The instance name, used for its working directory
+     * @param partitionFactory The factory used to create the benchmark partition
+     * @param nbEntries The number of users to inject
+     * @throws Exception If the service can't be started
+     */
+    public BenchmarkDirectoryService( String name, PartitionFactory partitionFactory, int nbEntries ) throws Exception
+    {
+        DefaultDirectoryService service = new DefaultDirectoryService();
+        service.setShutdownHookEnabled( false );
+
+        DefaultDirectoryServiceFactory factory = new DefaultDirectoryServiceFactory( service, partitionFactory );
+        factory.init( name );
+        directoryService = factory.getDirectoryService();
+
+        SchemaManager schemaManager = directoryService.getSchemaManager();
+
+        partition = partitionFactory.createPartition( schemaManager, directoryService.getDnFactory(), "example",
+            SUFFIX, 10000, new File( directoryService.getInstanceLayout().getPartitionsDirectory(), "example" ) );
+        partitionFactory.addIndex( partition, SchemaConstants.OBJECT_CLASS_AT, 1000 );
+        partitionFactory.addIndex( partition, SchemaConstants.OU_AT, 1000 );
+        partitionFactory.addIndex( partition, SchemaConstants.CN_AT, 1000 );
+        partitionFactory.addIndex( partition, SchemaConstants.UID_AT, 1000 );
+        directoryService.addPartition( partition );
+
+        session = directoryService.getAdminSession();
+
+        session.add( new DefaultEntry( schemaManager, SUFFIX,
+            "objectClass: top",
+            "objectClass: domain",
+            "dc: example" ) );
+
+        session.add( new DefaultEntry( schemaManager, PEOPLE,
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: people" ) );
+
+        for ( int i = 0; i < nbEntries; i++ )
+        {
+            session.add( createUser( "user" + i, i ) );
+        }
+    }
+
+
+    /**
+     * Creates a user entry, which is not added
+     *
+     * @param uid The user uid
+     * @param number The user number, used to compute its department
+     * @return The created entry
+     * @throws Exception If the entry can't be created
+     */
+    public Entry createUser( String uid, long number ) throws Exception
+    {
+        return new DefaultEntry( directoryService.getSchemaManager(), getUserDn( uid ),
+            "objectClass: top",
+            "objectClass: person",
+            "objectClass: organizationalPerson",
+            "objectClass: inetOrgPerson",
+            "uid", uid,
+            "cn", "Benchmark User " + uid,
+            "sn", "User " + uid,
+            "givenName: Benchmark",
+            "ou", getDepartment( number ),
+            "mail", uid + "@example.com",
+            "telephoneNumber: +1 408 555 0101",
+            "description: An entry used by the benchmarks",
+            "userPassword: secret" );
+    }
+
+
+    /**
+     * Get the Dn of a user
+     *
+     * @param uid The user uid
+     * @return The user Dn
+     * @throws Exception If the Dn is invalid
+     */
+    public Dn getUserDn( String uid ) throws Exception
+    {
+        return new Dn( directoryService.getSchemaManager(), "uid=" + uid + "," + PEOPLE );
+    }
+
+
+    /**
+     * Get the department of a user
+     *
+     * @param number The user number
+     * @return The department name
+     */
+    public static String getDepartment( long number )
+    {
+        return "dept" + ( number % NB_DEPARTMENTS );
+    }
+
+
+    /**
+     * @return The DirectoryService
+     */
+    public DirectoryService getDirectoryService()
+    {
+        return directoryService;
+    }
+
+
+    /**
+     * @return The benchmark partition
+     */
+    public Partition getPartition()
+    {
+        return partition;
+    }
+
+
+    /**
+     * @return The admin session
+     */
+    public CoreSession getAdminSession()
+    {
+        return session;
+    }
+
+
+    /**
+     * Shutdown the DirectoryService
+     *
+     * @throws Exception If the shutdown failed
+     */
+    public void shutdown() throws Exception
+    {
+        directoryService.shutdown();
+    }
+}
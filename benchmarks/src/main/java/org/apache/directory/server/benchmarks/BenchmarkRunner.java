@@ -0,0 +1,73 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks;
+
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runs the benchmarks, and writes the results in a JSON file, so that they can be compared
+ * from one version to another.
+ * <br>
+ * Usage : BenchmarkRunner [result file [benchmark regexp]]. The results are written in
+ * <em>jmh-result.json</em> by default, and all the benchmarks are run.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class BenchmarkRunner
+{
+    /** The default result file */
+    private static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+
+    private BenchmarkRunner()
+    {
+    }
+
+
+    public static void main( String[] args ) throws RunnerException
+    {
+        String resultFile = DEFAULT_RESULT_FILE;
+        String include = BenchmarkRunner.class.getPackage().getName() + "\\..*Benchmark.*";
+
+        if ( args.length > 0 )
+        {
+            resultFile = args[0];
+        }
+
+        if ( args.length > 1 )
+        {
+            include = args[1];
+        }
+
+        Options options = new OptionsBuilder()
+            .include( include )
+            .resultFormat( ResultFormatType.JSON )
+            .result( resultFile )
+            .build();
+
+        new Runner( options ).run();
+    }
+}
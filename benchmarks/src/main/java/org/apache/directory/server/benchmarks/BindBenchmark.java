@@ -6,674 +6,286 @@
  *  to you under the Apache License, Version 2.0 (the
  *  "License"); you may not use this file except in compliance
  *  with the License.  You may obtain a copy of the License at
- *  
+ *
  *    http://www.apache.org/licenses/LICENSE-2.0
- *  
+ *
  *  Unless required by applicable law or agreed to in writing,
  *  software distributed under the License is distributed on an
  *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
  *  KIND, either express or implied.  See the License for the
  *  specific language governing permissions and limitations
- *  under the License. 
- *  
+ *  under the License.
+ *
  */
 package org.apache.directory.server.benchmarks;
 
 
-import java.util.ArrayList;
-import java.util.Date;
-
-import netscape.ldap.LDAPConnection;
-import netscape.ldap.LDAPConstraints;
-import netscape.ldap.LDAPException;
-
-import com.sun.slamd.job.JobClass;
-import com.sun.slamd.job.UnableToRunException;
-import com.sun.slamd.parameter.BooleanParameter;
-import com.sun.slamd.parameter.IntegerParameter;
-import com.sun.slamd.parameter.InvalidValueException;
-import com.sun.slamd.parameter.Parameter;
-import com.sun.slamd.parameter.ParameterList;
-import com.sun.slamd.parameter.PasswordParameter;
-import com.sun.slamd.parameter.PlaceholderParameter;
-import com.sun.slamd.parameter.StringParameter;
-import com.sun.slamd.stat.IncrementalTracker;
-import com.sun.slamd.stat.RealTimeStatReporter;
-import com.sun.slamd.stat.StatTracker;
-import com.sun.slamd.stat.TimeTracker;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.InterceptorEnum;
+import org.apache.directory.server.core.api.OperationEnum;
+import org.apache.directory.server.core.api.authn.ppolicy.PasswordPolicyConfiguration;
+import org.apache.directory.server.core.api.interceptor.context.BindOperationContext;
+import org.apache.directory.server.core.authn.AuthenticationInterceptor;
+import org.apache.directory.server.core.authn.ppolicy.PpolicyConfigContainer;
+import org.apache.directory.server.core.factory.AvlPartitionFactory;
+import org.apache.directory.server.ldap.LdapServer;
+import org.apache.directory.server.protocol.shared.transport.TcpTransport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
 
 
 /**
- * A simple bind benchmark.  Here the same bindDn and password is 
- * used to bind to the directory.  The connection to the directory is
- * by default shared across iterations of a thread but this can be 
- * changed.  This is not a real world experiment but a way for us to
- * stress test the server, profile it, optimize it and regression test
- * our results under stress for more reliable feedback.
- * 
+ * Benchmarks the simple bind operation, the way the BindRequestHandler processes it. The
+ * <em>bindWithPrincipalLookup</em> benchmark reads the principal entry through the whole
+ * lookup interceptor chain before binding, as the server used to do, while the <em>bind</em>
+ * benchmark lets the authenticator read it from its partition, or from its credential cache.
+ * <br>
+ * The <em>bindUnbindOverLdap</em> benchmark binds a single user through an LdapServer, from
+ * several threads, then unbinds, the way the former SLAMD bind job did. The connection of each
+ * thread is either shared by its iterations, or established for each of them.
+ *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
-public class BindBenchmark extends JobClass
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BindBenchmark
 {
-    /**
-     * The name of the stat tracker that will be used to count the number of
-     * authentication attempts.
-     */
-    public static final String STAT_TRACKER_AUTHENTICATION_ATTEMPTS = "Authentication Attempts";
-
-    /**
-     * The name of the stat tracker that will be used to keep track of the time 
-     * required to perform each authentication.
-     */
-    public static final String STAT_TRACKER_AUTHENTICATION_TIME = "Authentication Time";
-
-    /**
-     * The name of the stat tracker that will be used to count the number of
-     * failed authentications.
-     */
-    public static final String STAT_TRACKER_FAILED_AUTHENTICATIONS = "Failed Authentications";
-
-    /**
-     * The name of the stat tracker that will be used to count the number of
-     * successful authentications.
-     */
-    public static final String STAT_TRACKER_SUCCESSFUL_AUTHENTICATIONS = "Successful Authentications";
-
-    // -----------------------------------------------------------------------
-    // Extracted paramter values for the whole Job
-    // -----------------------------------------------------------------------
-
-    // The connection is estabilished anew every time for each bind request
-    // if this option is not selected instead of reusing the existing connection
-    // for each iteration.  The default is to share the connection.
-    static boolean shareConnections;
-    
-    // Indicates whether bind failures because of invalid credentials will be
-    // ignored (so we can optimize for authn failures as well).
-    static boolean ignoreInvalidCredentials;
-
-    // The maximum number of iterations per thread.
-    static int iterations;
-
-    // The maximum length of time that any single LDAP operation will be allowed
-    // to take before it is cancelled.
-    static int timeLimit;
-
-    // The time to start working before beginning statistics collection.
-    static int warmUpTime;
-
-    // The delay in milliseconds between authentication attempts.
-    static long delay;
-
-    // The port number of the directory server.
-    static int directoryPort;
-
-    // The address of the directory server.
-    static String directoryHost;
-
-    // The DN to use to bind to the directory 
-    static String bindDN;
-
-    // The password for the bind DN.
-    static String bindPW;
-
-    // -----------------------------------------------------------------------
-    // Paramters definitions
-    // -----------------------------------------------------------------------
-
-    // The parameter controlling where or not connections are reused
-    BooleanParameter shareConnectionsParameter = new BooleanParameter( "shareConnectionsParameter",
-        "Share Connections", 
-        "Specifies whether or not the connection to the LDAP server is shared or " +
-        "re-estabilished every time for each iteration.  If true the iteration creates" +
-        "and destroys a new connection before issueing a bind request.", true );
-    
-    // The parameter that indicates the delay that should be used between each
-    // authentication attempt.
-    IntegerParameter delayParameter = new IntegerParameter( "delay", "Time Between Authentications (ms)",
-        "Specifies the length of time in milliseconds " + "each thread should wait between authentication "
-            + "attempts.  Note that this delay will be " + "between the starts of consecutive attempts and "
-            + "not between the end of one attempt and the " + "beginning of the next.  If an authentication "
-            + "takes longer than this length of time, then " + "there will be no delay.", true, 0, true, 0, false, 0 );
-
-    // The parameter that indicates the number of iterations to perform.
-    IntegerParameter iterationsParameter = new IntegerParameter( "num_iterations", "Number of Iterations",
-        "The number of authentications that should be " + "performed by each thread", false, -1 );
-
-    // The parameter used to indicate the maximum length of time that any single
-    // LDAP operation will be allowed to take.
-    IntegerParameter timeLimitParameter = new IntegerParameter( "time_limit", "Operation Time Limit",
-        "The maximum length of time in seconds that any " + "single LDAP operation will be allowed to take "
-            + "before it is cancelled.", true, 0, true, 0, false, 0 );
-
-    // The parmeter that specifies the cool-down time in seconds.
-    IntegerParameter warmUpParameter = new IntegerParameter( "warm_up", "Warm Up Time",
-        "The time in seconds that the job should " + "search before beginning statistics collection.", true, 0, true,
-        0, false, 0 );
-
-    // The placeholder parameter used as a spacer in the admin interface.
-    PlaceholderParameter placeholder = new PlaceholderParameter();
-
-    // The parameter used to indicate the port number for the directory server.
-    IntegerParameter portParameter = new IntegerParameter( "ldap_port", "Directory Server Port",
-        "The port number for the directory server.", true, 389, true, 1, true, 65535 );
-
-    // The parameter used to indicate the address of the directory server.
-    StringParameter hostParameter = new StringParameter( "ldap_host", "Directory Server Address",
-        "The address for the directory server.", true, "" );
-
-    // The parameter used to indicate the bind DN.
-    StringParameter bindDNParameter = new StringParameter( "binddn", "Directory Bind DN",
-        "The DN to use when binding to the directory server.", false, "" );
-
-    // The parameter used to indicate the bind DN.
-    PasswordParameter bindPWParameter = new PasswordParameter( "bindpw", "Bind Password",
-        "The password to use when binding.", false, "" );
-
-    // -----------------------------------------------------------------------
-    // Stat trakers for each thread.
-    // -----------------------------------------------------------------------
-
-    // The stat tracker that will count the # of authentication attempts.
-    IncrementalTracker attemptCounter;
-
-    // The stat tracker that will count the # of failed authentications.
-    IncrementalTracker failureCounter;
-
-    // The stat tracker that will count the # of successful authentications.
-    IncrementalTracker successCounter;
-
-    // The stat tracker that will time each authentication.
-    TimeTracker authTimer;
-
-    // -----------------------------------------------------------------------
-    // Connection and other parameters for each thread
-    // -----------------------------------------------------------------------
-
-    // The LDAP connection that will be used for bind operations by this thread.
-    LDAPConnection bindConnection;
-
-    // The set of constraints that will be used for bind operations.
-    LDAPConstraints bindConstraints;
-
-
-    public String getJobDescription()
+    @Benchmark
+    public CoreSession bind( DirectoryServiceState state ) throws Exception
     {
-        return "Does a bind using a single user name then immediately unbinds.";
+        BindOperationContext bindContext = state.createBindContext();
+        state.service.getDirectoryService().getOperationManager().bind( bindContext );
+
+        return bindContext.getSession();
     }
 
 
-    public String getJobName()
+    @Benchmark
+    public CoreSession bindWithPrincipalLookup( DirectoryServiceState state ) throws Exception
     {
-        return "Bind/Unbind Optimization Test";
-    }
+        BindOperationContext bindContext = state.createBindContext();
+        Dn bindDn = bindContext.getDn();
 
+        bindContext.setPrincipal( state.session.lookup( bindDn, SchemaConstants.ALL_USER_ATTRIBUTES,
+            SchemaConstants.ALL_OPERATIONAL_ATTRIBUTES ) );
+        state.service.getDirectoryService().getOperationManager().bind( bindContext );
 
-    public String getJobCategoryName()
-    {
-        return "ApacheDS Optimization Tests";
+        return bindContext.getSession();
     }
 
 
-    /**
-     * Returns the set of parameters whose value may be specified by the end user.
-     *
-     * @return  The set of configurable parameters for this job class.
-     */
-    public ParameterList getParameterStubs()
+    @Benchmark
+    @Threads(4)
+    public boolean bindUnbindOverLdap( LdapServerState server, LdapConnectionState connectionState ) throws Exception
     {
-        Parameter[] parameterArray = new Parameter[]
-            { placeholder, hostParameter, portParameter, bindDNParameter, bindPWParameter, placeholder,
-                warmUpParameter, timeLimitParameter, delayParameter, placeholder,
-                iterationsParameter, shareConnectionsParameter };
+        LdapNetworkConnection connection = connectionState.connection;
 
-        return new ParameterList( parameterArray );
-    }
+        if ( !server.shareConnection )
+        {
+            connection = new LdapNetworkConnection( "localhost", server.port );
+        }
 
+        try
+        {
+            connection.bind( server.bindDn, "secret" );
+            boolean authenticated = connection.isAuthenticated();
 
-    public StatTracker[] getStatTrackerStubs( String clientID, String threadID, int collectionInterval )
-    {
-        return new StatTracker[]
+            if ( !server.shareConnection )
             {
-                new IncrementalTracker( clientID, threadID, STAT_TRACKER_AUTHENTICATION_ATTEMPTS, collectionInterval ),
-                new IncrementalTracker( clientID, threadID, STAT_TRACKER_SUCCESSFUL_AUTHENTICATIONS, collectionInterval ),
-                new IncrementalTracker( clientID, threadID, STAT_TRACKER_FAILED_AUTHENTICATIONS, collectionInterval ),
-                new TimeTracker( clientID, threadID, STAT_TRACKER_AUTHENTICATION_TIME, collectionInterval ) };
-    }
-
+                connection.unBind();
+            }
 
-    public StatTracker[] getStatTrackers()
-    {
-        return new StatTracker[]
-            { attemptCounter, successCounter, failureCounter, authTimer };
+            return authenticated;
+        }
+        finally
+        {
+            if ( !server.shareConnection )
+            {
+                connection.close();
+            }
+        }
     }
 
 
-    public void validateJobInfo( int numClients, int threadsPerClient, int threadStartupDelay, Date startTime,
-        Date stopTime, int duration, int collectionInterval, ParameterList parameters ) throws InvalidValueException
+    /**
+     * A DirectoryService loaded with users, optionally protected by a password policy.
+     */
+    @State(Scope.Benchmark)
+    public static class DirectoryServiceState
     {
-        // might want to add something here later
-    }
+        /** The number of users loaded in the partition */
+        @Param({ "10000" })
+        private int nbEntries;
 
+        /** Tells if the password policy is enabled */
+        @Param({ "false", "true" })
+        private boolean pwdPolicyEnabled;
 
-    public boolean providesParameterTest()
-    {
-        return true;
-    }
+        /** The DirectoryService */
+        private BenchmarkDirectoryService service;
 
+        /** The admin session */
+        private CoreSession session;
 
-    /**
-     * Provides a means of testing the provided job parameters to determine
-     * whether they are valid (e.g., to see if the server is reachable) before
-     * scheduling the job for execution.  This method will be executed by the
-     * SLAMD server system itself and not by any of the clients.
-     *
-     * @param  parameters      The job parameters to be tested.
-     * @param  outputMessages  The lines of output that were generated as part of
-     *                         the testing process.  Each line of output should
-     *                         be added to this list as a separate string, and
-     *                         empty strings (but not <CODE>null</CODE> values)
-     *                         are allowed to provide separation between
-     *                         different messages.  No formatting should be
-     *                         provided for these messages, however, since they
-     *                         may be displayed in either an HTML or plain text
-     *                         interface.
-     *
-     * @return  <CODE>true</CODE> if the test completed successfully, or
-     *          <CODE>false</CODE> if not. 
-     */
-    public boolean testJobParameters( ParameterList parameters, ArrayList outputMessages )
-    {
-        // Get all the parameters that we might need to perform the test.
-        StringParameter hostParam = parameters.getStringParameter( hostParameter.getName() );
-        if ( ( hostParam == null ) || ( !hostParam.hasValue() ) )
-        {
-            outputMessages.add( "ERROR:  No directory server address was provided." );
-            return false;
-        }
-        String host = hostParam.getStringValue();
+        /** The users password */
+        private byte[] credentials;
 
-        IntegerParameter portParam = parameters.getIntegerParameter( portParameter.getName() );
-        if ( ( portParam == null ) || ( !hostParam.hasValue() ) )
-        {
-            outputMessages.add( "ERROR:  No directory server port was provided." );
-            return false;
-        }
-        int port = portParam.getIntValue();
+        /** A counter used to select the bound user */
+        private long counter;
 
-        String bindDN = "";
-        StringParameter bindDNParam = parameters.getStringParameter( bindDNParameter.getName() );
-        if ( ( bindDNParam != null ) && bindDNParam.hasValue() )
-        {
-            bindDN = bindDNParam.getStringValue();
-        }
 
-        String bindPassword = "";
-        PasswordParameter bindPWParam = parameters.getPasswordParameter( bindPWParameter.getName() );
-        if ( ( bindPWParam != null ) && bindPWParam.hasValue() )
+        @Setup(Level.Trial)
+        public void setup() throws Exception
         {
-            bindPassword = bindPWParam.getStringValue();
+            service = new BenchmarkDirectoryService( "bind", new AvlPartitionFactory(), nbEntries );
+            session = service.getAdminSession();
+            credentials = Strings.getBytesUtf8( "secret" );
+
+            if ( pwdPolicyEnabled )
+            {
+                DirectoryService directoryService = service.getDirectoryService();
+                PasswordPolicyConfiguration policyConfig = new PasswordPolicyConfiguration();
+                policyConfig.setPwdLockout( true );
+                policyConfig.setPwdMaxFailure( 3 );
+
+                PpolicyConfigContainer policyContainer = new PpolicyConfigContainer();
+                Dn defaultPolicyDn = new Dn( directoryService.getSchemaManager(), "cn=default" );
+                policyContainer.addPolicy( defaultPolicyDn, policyConfig );
+                policyContainer.setDefaultPolicyDn( defaultPolicyDn );
+
+                AuthenticationInterceptor authenticationInterceptor = ( AuthenticationInterceptor ) directoryService
+                    .getInterceptor( InterceptorEnum.AUTHENTICATION_INTERCEPTOR.getName() );
+                authenticationInterceptor.setPwdPolicies( policyContainer );
+            }
         }
 
-        // Create the LDAPConnection object that we will use to communicate with the directory server.
-        LDAPConnection conn = new LDAPConnection();
 
-        // Attempt to establish a connection to the directory server.
-        try
-        {
-            outputMessages.add( "Attempting to establish a connection to " + host + ":" + port + "...." );
-            conn.connect( host, port );
-            outputMessages.add( "Connected successfully." );
-            outputMessages.add( "" );
-        }
-        catch ( Exception e )
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception
         {
-            outputMessages.add( "ERROR:  Unable to connect to the directory " + "server:  " + stackTraceToString( e ) );
-            return false;
+            service.shutdown();
         }
 
-        // Attempt to bind to the directory server using the bind DN and password.
-        try
-        {
-            outputMessages.add( "Attempting to perform an LDAPv3 bind to the " + "directory server with a DN of '"
-                + bindDN + "'...." );
-            conn.bind( 3, bindDN, bindPassword );
-            outputMessages.add( "Bound successfully." );
-            outputMessages.add( "" );
-        }
-        catch ( Exception e )
+
+        /**
+         * Creates the bind context of the next user
+         */
+        private BindOperationContext createBindContext() throws Exception
         {
-            try
-            {
-                conn.disconnect();
-            }
-            catch ( Exception e2 )
-            {
-            }
+            DirectoryService directoryService = service.getDirectoryService();
 
-            outputMessages.add( "ERROR:  Unable to bind to the directory server:  " + stackTraceToString( e ) );
-            return false;
-        }
+            counter++;
+            BindOperationContext bindContext = new BindOperationContext( null );
+            bindContext.setDn( service.getUserDn( "user" + ( counter % nbEntries ) ) );
+            bindContext.setCredentials( credentials );
+            bindContext.setInterceptors( directoryService.getInterceptors( OperationEnum.BIND ) );
 
-        // At this point, all tests have passed.  Close the connection and return true.
-        try
-        {
-            conn.disconnect();
+            return bindContext;
         }
-        catch ( Exception e )
-        {
-        }
-
-        outputMessages.add( "All tests completed successfully." );
-        return true;
     }
 
 
     /**
-     * Performs initialization for this job on each client immediately before each
-     * thread is created to actually run the job.
-     *
-     * @param  clientID    The ID assigned to the client running this job.
-     * @param  parameters  The set of parameters provided to this job that can be
-     *                     used to customize its behavior.
-     *
-     * @throws  UnableToRunException  If the client initialization could not be
-     *                                completed successfully and the job is unable
-     *                                to run.
+     * An LdapServer, serving the users of a BenchmarkDirectoryService.
      */
-    public void initializeClient( String clientID, ParameterList parameters ) throws UnableToRunException
+    @State(Scope.Benchmark)
+    public static class LdapServerState
     {
-        // Get the shareConnections boolean parameter
-        shareConnectionsParameter = parameters.getBooleanParameter( shareConnectionsParameter.getName() );
-        if ( hostParameter == null )
-        {
-            shareConnections = true; // the default
-        }
-        else
-        {
-            shareConnections = shareConnectionsParameter.getBooleanValue();
-        }
-        
-        
-        // Get the directory server address
-        hostParameter = parameters.getStringParameter( hostParameter.getName() );
-        if ( hostParameter == null )
-        {
-            throw new UnableToRunException( "No directory server host provided." );
-        }
-        else
-        {
-            directoryHost = hostParameter.getStringValue();
-        }
+        /** Tells if the iterations of a thread share its connection */
+        @Param({ "true", "false" })
+        private boolean shareConnection;
 
-        // Get the directory server port
-        portParameter = parameters.getIntegerParameter( portParameter.getName() );
-        if ( portParameter != null )
-        {
-            directoryPort = portParameter.getIntValue();
-        }
+        /** The DirectoryService */
+        private BenchmarkDirectoryService service;
 
-        // Get the DN to use to bind to the directory server.
-        bindDNParameter = parameters.getStringParameter( bindDNParameter.getName() );
-        if ( bindDNParameter == null )
-        {
-            bindDN = "";
-        }
-        else
-        {
-            bindDN = bindDNParameter.getStringValue();
-        }
+        /** The LdapServer */
+        private LdapServer ldapServer;
 
-        // Get the password to use to bind to the directory server.
-        bindPWParameter = parameters.getPasswordParameter( bindPWParameter.getName() );
-        if ( bindPWParameter == null )
-        {
-            bindPW = "";
-        }
-        else
-        {
-            bindPW = bindPWParameter.getStringValue();
-        }
-
-        // Get the warm up time.
-        warmUpTime = 0;
-        warmUpParameter = parameters.getIntegerParameter( warmUpParameter.getName() );
-        if ( warmUpParameter != null )
-        {
-            warmUpTime = warmUpParameter.getIntValue();
-        }
+        /** The server port */
+        private int port;
 
-        // Get the max operation time limit.
-        timeLimitParameter = parameters.getIntegerParameter( timeLimitParameter.getName() );
-        if ( timeLimitParameter != null )
-        {
-            timeLimit = timeLimitParameter.getIntValue();
-        }
+        /** The bound user */
+        private String bindDn;
 
-        // Get the delay between authentication attempts.
-        delay = 0;
-        delayParameter = parameters.getIntegerParameter( delayParameter.getName() );
-        if ( delayParameter != null )
-        {
-            delay = delayParameter.getIntValue();
-        }
 
-        // Get the number of iterations to perform.
-        iterations = -1;
-        iterationsParameter = parameters.getIntegerParameter( iterationsParameter.getName() );
-        if ( ( iterationsParameter != null ) && ( iterationsParameter.hasValue() ) )
+        @Setup(Level.Trial)
+        public void setup() throws Exception
         {
-            iterations = iterationsParameter.getIntValue();
-        }
-    }
-
+            service = new BenchmarkDirectoryService( "bindldap", new AvlPartitionFactory(), 100 );
+            bindDn = service.getUserDn( "user0" ).getName();
 
-    public void initializeThread( String clientID, String threadID, int collectionInterval, ParameterList parameters )
-        throws UnableToRunException
-    {
-        if ( shareConnections )
-        {
-            bindConnection = new LDAPConnection();
-    
-            try
+            try ( ServerSocket socket = new ServerSocket( 0 ) )
             {
-                bindConnection.connect( 3, directoryHost, directoryPort, "", "" );
+                port = socket.getLocalPort();
             }
-            catch ( Exception e )
-            {
-                throw new UnableToRunException( "Unable to establish the connections " + "to the directory server:  " + e,
-                    e );
-            }
-    
-            // Initialize the constraints.
-            bindConstraints = bindConnection.getConstraints();
-            bindConstraints.setTimeLimit( 1000 * timeLimit );
+
+            ldapServer = new LdapServer();
+            ldapServer.setDirectoryService( service.getDirectoryService() );
+            ldapServer.setTransports( new TcpTransport( port ) );
+            ldapServer.start();
         }
-    
-        // Create the stat trackers.
-        attemptCounter = new IncrementalTracker( clientID, threadID, STAT_TRACKER_AUTHENTICATION_ATTEMPTS,
-            collectionInterval );
-        successCounter = new IncrementalTracker( clientID, threadID, STAT_TRACKER_SUCCESSFUL_AUTHENTICATIONS,
-            collectionInterval );
-
-        failureCounter = new IncrementalTracker( clientID, threadID, STAT_TRACKER_FAILED_AUTHENTICATIONS,
-            collectionInterval );
-        authTimer = new TimeTracker( clientID, threadID, STAT_TRACKER_AUTHENTICATION_TIME, collectionInterval );
-
-        // Enable real-time reporting of the data for these stat trackers.
-        RealTimeStatReporter statReporter = getStatReporter();
-        if ( statReporter != null )
+
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception
         {
-            String jobID = getJobID();
-            attemptCounter.enableRealTimeStats( statReporter, jobID );
-            successCounter.enableRealTimeStats( statReporter, jobID );
-            failureCounter.enableRealTimeStats( statReporter, jobID );
-            authTimer.enableRealTimeStats( statReporter, jobID );
+            ldapServer.stop();
+            service.shutdown();
         }
     }
 
 
     /**
-     * Performs the work of actually running the job.  When this method completes,
-     * the job will be done.
+     * The connection of a thread, when it is shared by its iterations.
      */
-    public void runJob()
+    @State(Scope.Thread)
+    public static class LdapConnectionState
     {
-        // Determine the range of time for which we should collect statistics.
-        long currentTime = System.currentTimeMillis();
-        boolean collectingStats = false;
-        long startCollectingTime = currentTime + ( 1000 * warmUpTime );
-        long stopCollectingTime = Long.MAX_VALUE;
+        /** The shared connection, or null */
+        private LdapNetworkConnection connection;
 
-        // See if this thread should operate "infinitely" (i.e., not a fixed number of iterations)
-        boolean infinite = ( iterations <= 0 );
 
-        // Loop until it is time to stop.
-        for ( int ii = 0; !shouldStop() && ( infinite || ii < iterations ); ii++ )
+        @Setup(Level.Trial)
+        public void setup( LdapServerState server ) throws Exception
         {
-            currentTime = System.currentTimeMillis();
-
-            if ( ( !collectingStats ) && ( currentTime >= startCollectingTime ) && ( currentTime < stopCollectingTime ) )
-            {
-                // Start all the stat trackers.
-                attemptCounter.startTracker();
-                successCounter.startTracker();
-                failureCounter.startTracker();
-                authTimer.startTracker();
-                collectingStats = true;
-            }
-            else if ( ( collectingStats ) && ( currentTime >= stopCollectingTime ) )
-            {
-                // Stop all the stat trackers.
-                attemptCounter.stopTracker();
-                successCounter.stopTracker();
-                failureCounter.stopTracker();
-                authTimer.stopTracker();
-                collectingStats = false;
-            }
-
-            // See if we need to sleep before the next attempt
-            if ( delay > 0 )
-            {
-                long now = System.currentTimeMillis();
-                long sleepTime = delay - now;
-
-                if ( sleepTime > 0 )
-                {
-                    try
-                    {
-                        Thread.sleep( sleepTime );
-                    }
-                    catch ( InterruptedException ie )
-                    {
-                    }
-
-                    if ( shouldStop() )
-                    {
-                        break;
-                    }
-                }
-            }
-
-            if ( ! shareConnections )
-            {
-                bindConnection = new LDAPConnection();
-                
-                try
-                {
-                    bindConnection.connect( 3, directoryHost, directoryPort, "", "" );
-                }
-                catch ( Exception e )
-                {
-                    throw new IllegalStateException( "Unable to establish the connections " 
-                        + "to the directory server:  " + e, e );
-                }
-        
-                // Initialize the constraints.
-                bindConstraints = bindConnection.getConstraints();
-                bindConstraints.setTimeLimit( 1000 * timeLimit );
-            }
-
-            if ( collectingStats )
-            {
-                attemptCounter.increment();
-                authTimer.startTimer();
-            }
-
-            // Increment the number of authentication attempts and start the timer
-            try
+            if ( server.shareConnection )
             {
-                // Perform a bind as the user to verify that the provided password is
-                // valid.
-                bindConnection.authenticate( 3, bindDN, bindPW );
-                if ( collectingStats )
-                {
-                    successCounter.increment();
-                    authTimer.stopTimer();
-                }
-            }
-            catch ( LDAPException le )
-            {
-                if ( !( ignoreInvalidCredentials && ( le.getLDAPResultCode() == LDAPException.INVALID_CREDENTIALS ) ) )
-                {
-                    if ( collectingStats )
-                    {
-                        failureCounter.increment();
-                        authTimer.stopTimer();
-                    }
-                }
-                
-                StringBuffer buf = new StringBuffer();
-                buf.append( "LDAPException: " ).append( le.getMessage() )
-                    .append( " - " ).append( le.getLDAPErrorMessage() );
-                writeVerbose( buf.toString() );
-            }
-            finally
-            {
-                if ( ! shareConnections )
-                {
-                    if ( bindConnection != null )
-                    {
-                        try
-                        {
-                            bindConnection.disconnect();
-                        }
-                        catch ( Exception e )
-                        {
-                        }
-            
-                        bindConnection = null;
-                    }
-                }
+                connection = new LdapNetworkConnection( "localhost", server.port );
+                connection.connect();
             }
         }
 
-        attemptCounter.stopTracker();
-        successCounter.stopTracker();
-        failureCounter.stopTracker();
-        authTimer.stopTracker();
-    }
 
-
-    /**
-     * Attempts to force this thread to exit by closing the connections to the
-     * directory server and setting them to <CODE>null</CODE>.
-     */
-    public void destroy()
-    {
-        if ( shareConnections )
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception
         {
-            if ( bindConnection != null )
+            if ( connection != null )
             {
-                try
-                {
-                    bindConnection.disconnect();
-                }
-                catch ( Exception e )
-                {
-                }
-    
-                bindConnection = null;
+                connection.unBind();
+                connection.close();
             }
         }
     }
@@ -0,0 +1,121 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.server.core.partition.impl.btree.jdbm.EntrySerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks the serialization of the entries stored in the master table.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EntrySerializerBenchmark
+{
+    /** The serializer */
+    private EntrySerializer serializer;
+
+    /** The serialized entry */
+    private Entry entry;
+
+    /** The serialized form of the entry */
+    private byte[] serialized;
+
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        SchemaManager schemaManager = new DefaultSchemaManager();
+        serializer = new EntrySerializer( schemaManager );
+
+        entry = new DefaultEntry( schemaManager, "uid=user1,ou=people,dc=example,dc=com",
+            "objectClass: top",
+            "objectClass: person",
+            "objectClass: organizationalPerson",
+            "objectClass: inetOrgPerson",
+            "uid: user1",
+            "cn: Benchmark User user1",
+            "sn: User user1",
+            "givenName: Benchmark",
+            "ou: dept1",
+            "mail: user1@example.com",
+            "telephoneNumber: +1 408 555 0101",
+            "description: An entry used by the benchmarks",
+            "userPassword: secret",
+            "entryUUID: f81d4fae-7dec-11d0-a765-00a0c91e6bf6",
+            "entryCSN: 20201018120000.000000Z#000000#000#000000",
+            "creatorsName: uid=admin,ou=system",
+            "createTimestamp: 20201018120000.000Z" );
+
+        serialized = serializer.serialize( entry );
+    }
+
+
+    @Benchmark
+    public byte[] serialize() throws Exception
+    {
+        return serializer.serialize( entry );
+    }
+
+
+    @Benchmark
+    public Entry deserialize() throws Exception
+    {
+        return ( Entry ) serializer.deserialize( serialized );
+    }
+
+
+    @Benchmark
+    public Object deserializeAndReadOneAttribute() throws Exception
+    {
+        return ( ( Entry ) serializer.deserialize( serialized ) ).get( "cn" );
+    }
+
+
+    @Benchmark
+    public Entry roundTrip() throws Exception
+    {
+        return ( Entry ) serializer.deserialize( serializer.serialize( entry ) );
+    }
+}
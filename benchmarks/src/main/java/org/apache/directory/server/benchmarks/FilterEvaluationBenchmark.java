@@ -0,0 +1,135 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.FilterParser;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.factory.AvlPartitionFactory;
+import org.apache.directory.server.xdbm.Store;
+import org.apache.directory.server.xdbm.search.Evaluator;
+import org.apache.directory.server.xdbm.search.impl.EvaluatorBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks the construction of the filter evaluators, and the evaluation of an entry.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FilterEvaluationBenchmark
+{
+    /** The evaluated filter */
+    @Param(
+        {
+            "(ou=dept1)",
+            "(&(objectClass=person)(ou=dept1)(!(cn=nobody)))",
+            "(|(uid=user2)(mail=user1@example.com)(cn=Benchmark*))"
+        })
+    private String filter;
+
+    /** The DirectoryService */
+    private BenchmarkDirectoryService service;
+
+    /** The partition */
+    private Partition partition;
+
+    /** The evaluator builder */
+    private EvaluatorBuilder evaluatorBuilder;
+
+    /** The parsed filter */
+    private ExprNode filterNode;
+
+    /** The prebuilt evaluator */
+    private Evaluator<? extends ExprNode> evaluator;
+
+    /** The evaluated entry */
+    private Entry entry;
+
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        service = new BenchmarkDirectoryService( "filter-evaluation", new AvlPartitionFactory(), 100 );
+        partition = service.getPartition();
+
+        SchemaManager schemaManager = service.getDirectoryService().getSchemaManager();
+        evaluatorBuilder = new EvaluatorBuilder( ( Store ) partition, schemaManager );
+        filterNode = FilterParser.parse( schemaManager, filter );
+
+        Dn dn = service.getUserDn( "user1" );
+        Store store = ( Store ) partition;
+
+        try ( PartitionTxn txn = partition.beginReadTransaction() )
+        {
+            evaluator = evaluatorBuilder.build( txn, filterNode );
+            entry = store.fetch( txn, store.getEntryId( txn, dn ), dn );
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        service.shutdown();
+    }
+
+
+    @Benchmark
+    public Evaluator<? extends ExprNode> build() throws Exception
+    {
+        try ( PartitionTxn txn = partition.beginReadTransaction() )
+        {
+            return evaluatorBuilder.build( txn, filterNode );
+        }
+    }
+
+
+    @Benchmark
+    public boolean evaluate() throws Exception
+    {
+        return evaluator.evaluate( entry );
+    }
+}
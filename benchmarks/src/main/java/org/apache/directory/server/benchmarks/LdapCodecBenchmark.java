@@ -0,0 +1,123 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks;
+
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
+import org.apache.directory.api.ldap.codec.api.LdapDecoder;
+import org.apache.directory.api.ldap.codec.api.LdapEncoder;
+import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.message.Message;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks the LDAP codec used by the LdapServer : the decoding of a SearchRequest, and the
+ * encoding of a SearchResultEntry.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LdapCodecBenchmark
+{
+    /** The codec service */
+    private LdapApiService codec;
+
+    /** The encoded search request */
+    private byte[] searchRequestPdu;
+
+    /** The encoded entry */
+    private SearchResultEntry searchResultEntry;
+
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        codec = LdapApiServiceFactory.getSingleton();
+
+        SearchRequest searchRequest = new SearchRequestImpl();
+        searchRequest.setMessageId( 2 );
+        searchRequest.setBase( new Dn( "ou=people,dc=example,dc=com" ) );
+        searchRequest.setScope( SearchScope.SUBTREE );
+        searchRequest.setFilter( "(&(objectClass=person)(ou=dept1)(!(cn=nobody)))" );
+        searchRequest.addAttributes( "cn", "mail", "telephoneNumber" );
+
+        ByteBuffer buffer = LdapEncoder.encodeMessage( new Asn1Buffer(), codec, searchRequest );
+        searchRequestPdu = new byte[buffer.remaining()];
+        buffer.get( searchRequestPdu );
+
+        searchResultEntry = new SearchResultEntryImpl( 2 );
+        searchResultEntry.setEntry( new DefaultEntry( "uid=user1,ou=people,dc=example,dc=com",
+            "objectClass: top",
+            "objectClass: person",
+            "objectClass: organizationalPerson",
+            "objectClass: inetOrgPerson",
+            "uid: user1",
+            "cn: Benchmark User user1",
+            "sn: User user1",
+            "mail: user1@example.com",
+            "telephoneNumber: +1 408 555 0101",
+            "description: An entry used by the benchmarks" ) );
+    }
+
+
+    @Benchmark
+    public Message decodeSearchRequest() throws Exception
+    {
+        LdapMessageContainer<Message> container = new LdapMessageContainer<>( codec );
+
+        return new LdapDecoder().decode( new ByteArrayInputStream( searchRequestPdu ), container );
+    }
+
+
+    @Benchmark
+    public ByteBuffer encodeSearchResultEntry() throws Exception
+    {
+        return LdapEncoder.encodeMessage( new Asn1Buffer(), codec, searchResultEntry );
+    }
+}
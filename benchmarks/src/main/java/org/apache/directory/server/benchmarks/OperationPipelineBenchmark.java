@@ -0,0 +1,143 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.filter.FilterParser;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.factory.AvlPartitionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks the add, lookup, search and modify operations, going through the whole
+ * interceptor chain of a DirectoryService, on an in-memory AvlPartition.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class OperationPipelineBenchmark
+{
+    /** The number of users loaded in the partition */
+    @Param({ "10000" })
+    private int nbEntries;
+
+    /** The DirectoryService */
+    private BenchmarkDirectoryService service;
+
+    /** The admin session */
+    private CoreSession session;
+
+    /** The search base */
+    private Dn peopleDn;
+
+    /** A counter used to create the added entries and the modified values */
+    private long counter;
+
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        service = new BenchmarkDirectoryService( "operation-pipeline", new AvlPartitionFactory(), nbEntries );
+        session = service.getAdminSession();
+        peopleDn = new Dn( service.getDirectoryService().getSchemaManager(), BenchmarkDirectoryService.PEOPLE );
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        service.shutdown();
+    }
+
+
+    @Benchmark
+    public void add() throws Exception
+    {
+        counter++;
+        session.add( service.createUser( "added" + counter, counter ) );
+    }
+
+
+    @Benchmark
+    public Entry lookup() throws Exception
+    {
+        counter++;
+
+        return session.lookup( service.getUserDn( "user" + ( counter % nbEntries ) ) );
+    }
+
+
+    @Benchmark
+    public int search() throws Exception
+    {
+        counter++;
+        String filter = "(&(objectClass=person)(ou=" + BenchmarkDirectoryService.getDepartment( counter ) + "))";
+        int nbResults = 0;
+
+        try ( Cursor<Entry> cursor = session.search( peopleDn, SearchScope.SUBTREE, FilterParser.parse( filter ),
+            AliasDerefMode.NEVER_DEREF_ALIASES ) )
+        {
+            while ( cursor.next() )
+            {
+                cursor.get();
+                nbResults++;
+            }
+        }
+
+        return nbResults;
+    }
+
+
+    @Benchmark
+    public void modify() throws Exception
+    {
+        counter++;
+
+        session.modify( service.getUserDn( "user" + ( counter % nbEntries ) ),
+            new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, "description", "modified " + counter ) );
+    }
+}
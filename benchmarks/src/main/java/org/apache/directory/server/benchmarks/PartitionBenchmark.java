@@ -0,0 +1,149 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.factory.JdbmPartitionFactory;
+import org.apache.directory.server.core.factory.MavibotPartitionFactory;
+import org.apache.directory.server.core.factory.PartitionFactory;
+import org.apache.directory.server.xdbm.Index;
+import org.apache.directory.server.xdbm.IndexEntry;
+import org.apache.directory.server.xdbm.Store;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks the JDBM and Mavibot partitions, bypassing the interceptor chain : entry
+ * lookups (Dn resolution and master table fetch) and index cursor iterations.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PartitionBenchmark
+{
+    /** The partition implementation */
+    @Param({ "jdbm", "mavibot" })
+    private String partitionType;
+
+    /** The number of users loaded in the partition */
+    @Param({ "10000" })
+    private int nbEntries;
+
+    /** The DirectoryService */
+    private BenchmarkDirectoryService service;
+
+    /** The benchmarked partition */
+    private Partition partition;
+
+    /** The ou index */
+    private Index<String, String> ouIndex;
+
+    /** A counter used to select the looked up entries */
+    private long counter;
+
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception
+    {
+        PartitionFactory partitionFactory;
+
+        if ( "mavibot".equals( partitionType ) )
+        {
+            partitionFactory = new MavibotPartitionFactory();
+        }
+        else
+        {
+            partitionFactory = new JdbmPartitionFactory();
+        }
+
+        service = new BenchmarkDirectoryService( "partition-" + partitionType, partitionFactory, nbEntries );
+        partition = service.getPartition();
+        ouIndex = ( Index<String, String> ) ( ( Store ) partition ).getUserIndex(
+            service.getDirectoryService().getSchemaManager().lookupAttributeTypeRegistry( SchemaConstants.OU_AT ) );
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        service.shutdown();
+    }
+
+
+    @Benchmark
+    public Entry lookup() throws Exception
+    {
+        counter++;
+        Dn dn = service.getUserDn( "user" + ( counter % nbEntries ) );
+        Store store = ( Store ) partition;
+
+        try ( PartitionTxn txn = partition.beginReadTransaction() )
+        {
+            return store.fetch( txn, store.getEntryId( txn, dn ), dn );
+        }
+    }
+
+
+    @Benchmark
+    public int indexCursor() throws Exception
+    {
+        counter++;
+        int nbResults = 0;
+
+        try ( PartitionTxn txn = partition.beginReadTransaction();
+            Cursor<IndexEntry<String, String>> cursor = ouIndex.forwardCursor( txn,
+                BenchmarkDirectoryService.getDepartment( counter ) ) )
+        {
+            while ( cursor.next() )
+            {
+                cursor.get();
+                nbResults++;
+            }
+        }
+
+        return nbResults;
+    }
+}
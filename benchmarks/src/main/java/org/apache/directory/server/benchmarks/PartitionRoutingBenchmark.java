@@ -0,0 +1,117 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.benchmarks;
+
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.ldap.util.tree.DnNode;
+import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmPartition;
+import org.apache.directory.server.core.shared.DefaultDnFactory;
+import org.apache.directory.server.core.shared.partition.PartitionRoutingTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks the routing of a Dn to its partition by concurrent threads, with the
+ * immutable routing table the nexus uses, and with the synchronized DnNode tree it
+ * used to use. The partitions are not initialized, as only their suffix is needed.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+public class PartitionRoutingBenchmark
+{
+    /** The number of partitions */
+    @Param({ "1", "10", "1000" })
+    private int nbPartitions;
+
+    /** The routing table */
+    private PartitionRoutingTable routingTable = PartitionRoutingTable.EMPTY;
+
+    /** The DnNode tree, as the nexus used to hold the partitions */
+    private DnNode<Partition> partitionLookupTree = new DnNode<>();
+
+    /** The routed Dns, one per partition */
+    private Dn[] dns;
+
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        SchemaManager schemaManager = new DefaultSchemaManager();
+        DnFactory dnFactory = new DefaultDnFactory( schemaManager, 100 );
+        dns = new Dn[nbPartitions];
+
+        for ( int i = 0; i < nbPartitions; i++ )
+        {
+            Dn suffixDn = new Dn( schemaManager, "dc=domain" + i + ",dc=com" );
+            Partition partition = new JdbmPartition( schemaManager, dnFactory );
+            partition.setSuffixDn( suffixDn );
+
+            routingTable = routingTable.add( partition );
+            partitionLookupTree.add( suffixDn, partition );
+            dns[i] = new Dn( schemaManager, "uid=user" + i + ",ou=people,dc=domain" + i + ",dc=com" );
+        }
+    }
+
+
+    @Benchmark
+    public Partition routingTable()
+    {
+        return routingTable.getPartition( dns[ThreadLocalRandom.current().nextInt( nbPartitions )] );
+    }
+
+
+    @Benchmark
+    public Partition dnNode()
+    {
+        Dn dn = dns[ThreadLocalRandom.current().nextInt( nbPartitions )];
+
+        synchronized ( partitionLookupTree )
+        {
+            return partitionLookupTree.getElement( dn );
+        }
+    }
+}
@@ -42,6 +42,7 @@ import org.apache.directory.server.core.api.entry.ServerEntryFactory;
 import org.apache.directory.server.core.api.event.EventService;
 import org.apache.directory.server.core.api.interceptor.Interceptor;
 import org.apache.directory.server.core.api.journal.Journal;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
 import org.apache.directory.server.core.api.schema.SchemaPartition;
@@ -322,6 +323,39 @@ public interface DirectoryService extends ServerEntryFactory
     void setPasswordHidden( boolean passwordHidden );
 
 
+    /**
+     * Tells if the time spent in each interceptor is traced. When enabled, an
+     * {@link org.apache.directory.server.core.api.interceptor.InterceptorTrace} is attached
+     * to each operation, and the interceptors self times are recorded in the metrics.
+     *
+     * @return true if the interceptors are traced
+     */
+    boolean isInterceptorTracingEnabled();
+
+
+    /**
+     * Enable or disable the tracing of the time spent in each interceptor. It's disabled by default.
+     *
+     * @param interceptorTracingEnabled true to trace the interceptors
+     */
+    void setInterceptorTracingEnabled( boolean interceptorTracingEnabled );
+
+
+    /**
+     * @return The maximum number of entries sorted in memory when processing a server side sort
+     * control. Above this number, the entries are sorted in temporary files.
+     */
+    int getMaxSortedEntriesInMemory();
+
+
+    /**
+     * Sets the maximum number of entries sorted in memory when processing a server side sort control.
+     *
+     * @param maxSortedEntriesInMemory The maximum number of entries sorted in memory
+     */
+    void setMaxSortedEntriesInMemory( int maxSortedEntriesInMemory );
+
+
     /**
      * Sets whether to allow anonymous access to entries other than the RootDSE.  If the
      * access control subsystem is enabled then access to some entries may not be allowed
@@ -349,6 +383,13 @@ public interface DirectoryService extends ServerEntryFactory
     List<String> getInterceptors( OperationEnum operation );
 
 
+    /**
+     * Recompiles the chain of interceptors of each operation. It's called by the
+     * interceptors when their applicability to an operation has changed.
+     */
+    void updateInterceptorChains();
+
+
     /**
      * Sets the interceptors in the server.
      *
@@ -617,6 +658,15 @@ public interface DirectoryService extends ServerEntryFactory
     DnFactory getDnFactory();
 
 
+    /**
+     * Gets the registry of this instance metrics : the operations latencies, the interceptors
+     * self times and the caches statistics.
+     *
+     * @return the metrics registry
+     */
+    MetricsRegistry getMetricsRegistry();
+
+
     /**
      * Sets the Dn factory.
      * 
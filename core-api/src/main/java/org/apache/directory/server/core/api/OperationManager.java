@@ -24,6 +24,7 @@ import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.BindOperationContext;
@@ -171,31 +172,34 @@ public interface OperationManager
 
 
     /**
-     * Acquires a WriteLock
+     * Acquires a WriteLock on all the partitions
      */
     void lockWrite();
 
 
     /**
-     * Releases a WriteLock
+     * Releases a WriteLock on all the partitions
      */
     void unlockWrite();
 
 
     /**
-     * Acquires a ReadLock
+     * Acquires a ReadLock on all the partitions
      */
     void lockRead();
 
 
     /**
-     * Releases a ReadLock
+     * Releases a ReadLock on all the partitions
      */
     void unlockRead();
 
 
     /**
-     * @return the OperationManager R/W lock
+     * Get the R/W lock protecting a given partition
+     * 
+     * @param partitionDn The partition suffix
+     * @return the OperationManager R/W lock for this partition
      */
-    ReadWriteLock getRWLock();
+    ReadWriteLock getRWLock( Dn partitionDn );
 }
@@ -0,0 +1,865 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.api.entry;
+
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+
+
+/**
+ * An Entry whose attributes are decoded from their serialized form only when they are
+ * accessed. The backend gives the raw bytes of each attribute, and they are decoded
+ * the first time the attribute is read, either directly (get, contains...) or when
+ * the whole entry is needed (iterator, getAttributes, equals...).
+ * <br>
+ * Removing or replacing an attribute does not decode it, so an entry filtered down
+ * to a few attributes before being sent back to the client never decodes the others.
+ <br>
+ * The same instance may be shared by concurrent readers, for instance through the entry
+ * cache : decoding an attribute modifies the inner entry, so all the accesses to it are
+ * done while holding the instance lock.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LazyEntry implements Entry
+{
+    /** The serialVersionUID */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The decoder used to read an attribute from its serialized form
+     */
+    public interface AttributeDecoder
+    {
+        /**
+         * Decode an attribute
+         *
+         * @param attributeType The attribute's AttributeType
+         * @param buffer The buffer containing the serialized attribute
+         * @param pos The position of the attribute in the buffer
+         * @param len The serialized attribute length
+         * @return The decoded attribute
+         * @throws IOException If the attribute cannot be decoded
+         */
+        Attribute decode( AttributeType attributeType, byte[] buffer, int pos, int len ) throws IOException;
+    }
+
+    /**
+     * An attribute not yet decoded
+     */
+    private static final class PendingAttribute
+    {
+        private final AttributeType attributeType;
+        private final byte[] buffer;
+        private final int pos;
+        private final int len;
+
+
+        PendingAttribute( AttributeType attributeType, byte[] buffer, int pos, int len )
+        {
+            this.attributeType = attributeType;
+            this.buffer = buffer;
+            this.pos = pos;
+            this.len = len;
+        }
+    }
+
+    /** The entry containing the decoded attributes */
+    private final Entry entry;
+
+    /** The attributes not yet decoded, by OID */
+    private final Map<String, PendingAttribute> pending;
+
+    /** The SchemaManager */
+    private final transient SchemaManager schemaManager;
+
+    /** The attribute decoder */
+    private final transient AttributeDecoder decoder;
+
+
+    /**
+     * Creates a new instance of LazyEntry.
+     *
+     * @param schemaManager The SchemaManager
+     * @param dn The entry Dn
+     * @param decoder The decoder used to read the attributes
+     */
+    public LazyEntry( SchemaManager schemaManager, Dn dn, AttributeDecoder decoder )
+    {
+        this( schemaManager, new DefaultEntry( schemaManager, dn ), new HashMap<>(), decoder );
+    }
+
+
+    private LazyEntry( SchemaManager schemaManager, Entry entry, Map<String, PendingAttribute> pending,
+        AttributeDecoder decoder )
+    {
+        this.schemaManager = schemaManager;
+        this.entry = entry;
+        this.pending = pending;
+        this.decoder = decoder;
+    }
+
+
+    /**
+     * Adds an attribute in its serialized form. It will be decoded when accessed.
+     *
+     * @param attributeType The attribute's AttributeType
+     * @param buffer The buffer containing the serialized attribute
+     * @param pos The position of the attribute in the buffer
+     * @param len The serialized attribute length
+     */
+    public synchronized void addSerialized( AttributeType attributeType, byte[] buffer, int pos, int len )
+    {
+        pending.put( attributeType.getOid(), new PendingAttribute( attributeType, buffer, pos, len ) );
+    }
+
+
+    /**
+     * @return The AttributeTypes of all the entry's attributes, decoded or not. This does not
+     * decode any attribute.
+     */
+    public synchronized List<AttributeType> getAttributeTypes()
+    {
+        List<AttributeType> attributeTypes = new ArrayList<>( entry.size() + pending.size() );
+
+        for ( Attribute attribute : entry )
+        {
+            attributeTypes.add( attribute.getAttributeType() );
+        }
+
+        for ( PendingAttribute pendingAttribute : pending.values() )
+        {
+            attributeTypes.add( pendingAttribute.attributeType );
+        }
+
+        return attributeTypes;
+    }
+
+
+    /**
+     * @return The number of attributes not yet decoded
+     */
+    public synchronized int getPendingSize()
+    {
+        return pending.size();
+    }
+
+
+    /**
+     * Decode one attribute, if it has not been decoded yet
+     */
+    private synchronized void materialize( AttributeType attributeType )
+    {
+        if ( ( attributeType == null ) || pending.isEmpty() )
+        {
+            return;
+        }
+
+        PendingAttribute pendingAttribute = pending.remove( attributeType.getOid() );
+
+        if ( pendingAttribute != null )
+        {
+            decode( pendingAttribute );
+        }
+    }
+
+
+    /**
+     * Decode the attribute with the given name, if it has not been decoded yet
+     */
+    private void materialize( String upId )
+    {
+        if ( upId != null )
+        {
+            materialize( schemaManager.getAttributeType( upId ) );
+        }
+    }
+
+
+    /**
+     * Decode all the attributes
+     */
+    private synchronized void materializeAll()
+    {
+        if ( pending.isEmpty() )
+        {
+            return;
+        }
+
+        for ( PendingAttribute pendingAttribute : pending.values() )
+        {
+            decode( pendingAttribute );
+        }
+
+        pending.clear();
+    }
+
+
+    private void decode( PendingAttribute pendingAttribute )
+    {
+        try
+        {
+            Attribute attribute = decoder.decode( pendingAttribute.attributeType, pendingAttribute.buffer,
+                pendingAttribute.pos, pendingAttribute.len );
+
+            entry.add( attribute );
+        }
+        catch ( IOException | LdapException e )
+        {
+            throw new IllegalStateException( e.getMessage(), e );
+        }
+    }
+
+
+    /**
+     * Drop an attribute which has not been decoded yet
+     */
+    private synchronized void drop( AttributeType attributeType )
+    {
+        if ( attributeType != null )
+        {
+            pending.remove( attributeType.getOid() );
+        }
+    }
+
+
+    private void drop( String upId )
+    {
+        if ( ( upId != null ) && !pending.isEmpty() )
+        {
+            drop( schemaManager.getAttributeType( upId ) );
+        }
+    }
+
+
+    @Override
+    public synchronized Entry add( AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        materialize( attributeType );
+        entry.add( attributeType, values );
+
+        return this;
+    }
+
+
+    @Override
+    public synchronized Entry add( AttributeType attributeType, String... values ) throws LdapException
+    {
+        materialize( attributeType );
+        entry.add( attributeType, values );
+
+        return this;
+    }
+
+
+    @Override
+    public synchronized Entry add( AttributeType attributeType, Value... values ) throws LdapException
+    {
+        materialize( attributeType );
+        entry.add( attributeType, values );
+
+        return this;
+    }
+
+
+    @Override
+    public synchronized Entry add( String upId, AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        materialize( attributeType );
+        entry.add( upId, attributeType, values );
+
+        return this;
+    }
+
+
+    @Override
+    public synchronized Entry add( String upId, AttributeType attributeType, String... values ) throws LdapException
+    {
+        materialize( attributeType );
+        entry.add( upId, attributeType, values );
+
+        return this;
+    }
+
+
+    @Override
+    public synchronized Entry add( String upId, AttributeType attributeType, Value... values ) throws LdapException
+    {
+        materialize( attributeType );
+        entry.add( upId, attributeType, values );
+
+        return this;
+    }
+
+
+    @Override
+    public synchronized Entry add( Attribute... attributes ) throws LdapException
+    {
+        for ( Attribute attribute : attributes )
+        {
+            materialize( attribute.getAttributeType() );
+        }
+
+        entry.add( attributes );
+
+        return this;
+    }
+
+
+    @Override
+    public synchronized Entry add( String upId, String... values ) throws LdapException
+    {
+        materialize( upId );
+        entry.add( upId, values );
+
+        return this;
+    }
+
+
+    @Override
+    public synchronized Entry add( String upId, byte[]... values ) throws LdapException
+    {
+        materialize( upId );
+        entry.add( upId, values );
+
+        return this;
+    }
+
+
+    @Override
+    public synchronized Entry add( String upId, Value... values ) throws LdapException
+    {
+        materialize( upId );
+        entry.add( upId, values );
+
+        return this;
+    }
+
+
+    @Override
+    public synchronized boolean contains( AttributeType attributeType, byte[]... values )
+    {
+        materialize( attributeType );
+
+        return entry.contains( attributeType, values );
+    }
+
+
+    @Override
+    public synchronized boolean contains( AttributeType attributeType, String... values )
+    {
+        materialize( attributeType );
+
+        return entry.contains( attributeType, values );
+    }
+
+
+    @Override
+    public synchronized boolean contains( AttributeType attributeType, Value... values )
+    {
+        materialize( attributeType );
+
+        return entry.contains( attributeType, values );
+    }
+
+
+    @Override
+    public synchronized boolean contains( Attribute... attributes )
+    {
+        for ( Attribute attribute : attributes )
+        {
+            materialize( attribute.getAttributeType() );
+        }
+
+        return entry.contains( attributes );
+    }
+
+
+    @Override
+    public synchronized boolean contains( String upId, byte[]... values )
+    {
+        materialize( upId );
+
+        return entry.contains( upId, values );
+    }
+
+
+    @Override
+    public synchronized boolean contains( String upId, String... values )
+    {
+        materialize( upId );
+
+        return entry.contains( upId, values );
+    }
+
+
+    @Override
+    public synchronized boolean contains( String upId, Value... values )
+    {
+        materialize( upId );
+
+        return entry.contains( upId, values );
+    }
+
+
+    @Override
+    public synchronized boolean containsAttribute( AttributeType attributeType )
+    {
+        if ( ( attributeType != null ) && pending.containsKey( attributeType.getOid() ) )
+        {
+            return true;
+        }
+
+        return entry.containsAttribute( attributeType );
+    }
+
+
+    @Override
+    public synchronized boolean containsAttribute( String... attributes )
+    {
+        for ( String attribute : attributes )
+        {
+            materialize( attribute );
+        }
+
+        return entry.containsAttribute( attributes );
+    }
+
+
+    @Override
+    public synchronized Attribute get( AttributeType attributeType )
+    {
+        materialize( attributeType );
+
+        return entry.get( attributeType );
+    }
+
+
+    @Override
+    public synchronized Attribute get( String alias )
+    {
+        materialize( alias );
+
+        return entry.get( alias );
+    }
+
+
+    @Override
+    public synchronized Collection<Attribute> getAttributes()
+    {
+        materializeAll();
+
+        return entry.getAttributes();
+    }
+
+
+    @Override
+    public synchronized boolean hasObjectClass( Attribute... objectClasses )
+    {
+        materialize( schemaManager.getAttributeType( SchemaConstants.OBJECT_CLASS_AT_OID ) );
+
+        return entry.hasObjectClass( objectClasses );
+    }
+
+
+    @Override
+    public synchronized boolean hasObjectClass( String... objectClasses )
+    {
+        materialize( schemaManager.getAttributeType( SchemaConstants.OBJECT_CLASS_AT_OID ) );
+
+        return entry.hasObjectClass( objectClasses );
+    }
+
+
+    @Override
+    public synchronized Attribute put( AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        drop( attributeType );
+
+        return entry.put( attributeType, values );
+    }
+
+
+    @Override
+    public synchronized Attribute put( AttributeType attributeType, String... values ) throws LdapException
+    {
+        drop( attributeType );
+
+        return entry.put( attributeType, values );
+    }
+
+
+    @Override
+    public synchronized Attribute put( AttributeType attributeType, Value... values ) throws LdapException
+    {
+        drop( attributeType );
+
+        return entry.put( attributeType, values );
+    }
+
+
+    @Override
+    public synchronized Attribute put( String upId, AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        drop( attributeType );
+
+        return entry.put( upId, attributeType, values );
+    }
+
+
+    @Override
+    public synchronized Attribute put( String upId, AttributeType attributeType, String... values ) throws LdapException
+    {
+        drop( attributeType );
+
+        return entry.put( upId, attributeType, values );
+    }
+
+
+    @Override
+    public synchronized Attribute put( String upId, AttributeType attributeType, Value... values ) throws LdapException
+    {
+        drop( attributeType );
+
+        return entry.put( upId, attributeType, values );
+    }
+
+
+    @Override
+    public synchronized List<Attribute> put( Attribute... attributes ) throws LdapException
+    {
+        // The replaced attributes are returned, so they have to be decoded
+        for ( Attribute attribute : attributes )
+        {
+            materialize( attribute.getAttributeType() );
+        }
+
+        return entry.put( attributes );
+    }
+
+
+    @Override
+    public synchronized Attribute put( String upId, byte[]... values )
+    {
+        drop( upId );
+
+        return entry.put( upId, values );
+    }
+
+
+    @Override
+    public synchronized Attribute put( String upId, String... values )
+    {
+        drop( upId );
+
+        return entry.put( upId, values );
+    }
+
+
+    @Override
+    public synchronized Attribute put( String upId, Value... values )
+    {
+        drop( upId );
+
+        return entry.put( upId, values );
+    }
+
+
+    @Override
+    public synchronized boolean remove( AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        materialize( attributeType );
+
+        return entry.remove( attributeType, values );
+    }
+
+
+    @Override
+    public synchronized boolean remove( AttributeType attributeType, String... values ) throws LdapException
+    {
+        materialize( attributeType );
+
+        return entry.remove( attributeType, values );
+    }
+
+
+    @Override
+    public synchronized boolean remove( AttributeType attributeType, Value... values ) throws LdapException
+    {
+        materialize( attributeType );
+
+        return entry.remove( attributeType, values );
+    }
+
+
+    @Override
+    public synchronized List<Attribute> remove( Attribute... attributes ) throws LdapException
+    {
+        for ( Attribute attribute : attributes )
+        {
+            materialize( attribute.getAttributeType() );
+        }
+
+        return entry.remove( attributes );
+    }
+
+
+    @Override
+    public synchronized boolean remove( String upId, byte[]... values ) throws LdapException
+    {
+        materialize( upId );
+
+        return entry.remove( upId, values );
+    }
+
+
+    @Override
+    public synchronized boolean remove( String upId, String... values ) throws LdapException
+    {
+        materialize( upId );
+
+        return entry.remove( upId, values );
+    }
+
+
+    @Override
+    public synchronized boolean remove( String upId, Value... values ) throws LdapException
+    {
+        materialize( upId );
+
+        return entry.remove( upId, values );
+    }
+
+
+    @Override
+    public synchronized void removeAttributes( AttributeType... attributes )
+    {
+        for ( AttributeType attributeType : attributes )
+        {
+            drop( attributeType );
+        }
+
+        entry.removeAttributes( attributes );
+    }
+
+
+    @Override
+    public synchronized void removeAttributes( String... attributes )
+    {
+        for ( String attribute : attributes )
+        {
+            drop( attribute );
+        }
+
+        entry.removeAttributes( attributes );
+    }
+
+
+    @Override
+    public synchronized void clear()
+    {
+        pending.clear();
+        entry.clear();
+    }
+
+
+    @Override
+    public synchronized Dn getDn()
+    {
+        return entry.getDn();
+    }
+
+
+    @Override
+    public synchronized void setDn( Dn dn )
+    {
+        entry.setDn( dn );
+    }
+
+
+    @Override
+    public synchronized void setDn( String dn ) throws LdapInvalidDnException
+    {
+        entry.setDn( dn );
+    }
+
+
+    @Override
+    public synchronized boolean isSchemaAware()
+    {
+        return entry.isSchemaAware();
+    }
+
+
+    @Override
+    public synchronized Iterator<Attribute> iterator()
+    {
+        materializeAll();
+
+        return entry.iterator();
+    }
+
+
+    @Override
+    public synchronized int size()
+    {
+        return entry.size() + pending.size();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void readExternal( ObjectInput in ) throws IOException, ClassNotFoundException
+    {
+        entry.readExternal( in );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void writeExternal( ObjectOutput out ) throws IOException
+    {
+        materializeAll();
+        entry.writeExternal( out );
+    }
+
+
+    /**
+     * Clone the entry. The attributes which have not been decoded are shared, as they are
+     * immutable, and will be decoded separately in the clone.
+     */
+    @Override
+    public synchronized Entry clone()
+    {
+        return new LazyEntry( schemaManager, entry.clone(), new HashMap<>( pending ), decoder );
+    }
+
+
+    @Override
+    public synchronized Entry shallowClone()
+    {
+        materializeAll();
+
+        return entry.shallowClone();
+    }
+
+
+    /**
+     * @return The entry with all its attributes decoded
+     * @throws LdapException If the attributes cannot be decoded
+     */
+    public synchronized Entry getEntry() throws LdapException
+    {
+        try
+        {
+            materializeAll();
+        }
+        catch ( IllegalStateException ise )
+        {
+            throw new LdapOtherException( ise.getMessage(), ise );
+        }
+
+        return entry;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int hashCode()
+    {
+        materializeAll();
+
+        return entry.hashCode();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals( Object obj )
+    {
+        if ( this == obj )
+        {
+            return true;
+        }
+
+        // Don't hold both locks at once, two threads comparing the same entries the other way around
+        // would deadlock. Once fully decoded, the entries are not modified by their readers anymore.
+        materializeAll();
+
+        if ( obj instanceof LazyEntry )
+        {
+            ( ( LazyEntry ) obj ).materializeAll();
+
+            return entry.equals( ( ( LazyEntry ) obj ).entry );
+        }
+
+        return entry.equals( obj );
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return toString( "" );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String toString( String tabs )
+    {
+        materializeAll();
+
+        return entry.toString( tabs );
+    }
+}
@@ -749,6 +749,33 @@ public final class ServerEntryUtils
     }
 
 
+    /**
+     * Get the AttributeTypes of an entry. When the entry has been lazily read from the
+     * backend, the attributes are not decoded.
+     */
+    private static List<AttributeType> getAttributeTypes( Entry entry )
+    {
+        if ( entry instanceof LazyEntry )
+        {
+            return ( ( LazyEntry ) entry ).getAttributeTypes();
+        }
+
+        if ( entry instanceof ClonedServerEntry )
+        {
+            return getAttributeTypes( ( ( ClonedServerEntry ) entry ).getClonedEntry() );
+        }
+
+        List<AttributeType> attributeTypes = new ArrayList<>( entry.size() );
+
+        for ( Attribute attribute : entry )
+        {
+            attributeTypes.add( attribute.getAttributeType() );
+        }
+
+        return attributeTypes;
+    }
+
+
     /**
      * Filters an entry accordingly to the requested Attribute list.
      * 
@@ -779,9 +806,8 @@ public final class ServerEntryUtils
         // First, remove all the attributes if we have the NoAttribute flag set to true
         if ( operationContext.isNoAttributes() )
         {
-            for ( Attribute attribute : originalEntry )
+            for ( AttributeType attributeType : getAttributeTypes( originalEntry ) )
             {
-                AttributeType attributeType = attribute.getAttributeType();
 
                 // Bypass the ref attribute, unless the ManageDSAIT control is present
                 if ( operationContext.isReferralThrown() && attributeType.equals( refType ) )
@@ -789,7 +815,7 @@ public final class ServerEntryUtils
                     continue;
                 }
 
-                entry.remove( entry.get( attributeType ) );
+                entry.removeAttributes( attributeType );
             }
 
             entry.removeAttributes( entryDnType );
@@ -801,9 +827,8 @@ public final class ServerEntryUtils
         // the USER attributes, plus the Operational attributes in the returning list 
         if ( operationContext.isAllUserAttributes() )
         {
-            for ( Attribute attribute : originalEntry )
+            for ( AttributeType attributeType : getAttributeTypes( originalEntry ) )
             {
-                AttributeType attributeType = attribute.getAttributeType();
 
                 // Bypass the ref attribute, unless the ManageDSAIT control is present
                 if ( operationContext.isReferralThrown() && attributeType.equals( refType ) )
@@ -841,9 +866,8 @@ public final class ServerEntryUtils
         // the OPERATIONAL attributes, plus the User attributes in the returning list 
         if ( operationContext.isAllOperationalAttributes() )
         {
-            for ( Attribute attribute : originalEntry )
+            for ( AttributeType attributeType : getAttributeTypes( originalEntry ) )
             {
-                AttributeType attributeType = attribute.getAttributeType();
 
                 if ( attributeType.isUser() )
                 {
@@ -877,9 +901,8 @@ public final class ServerEntryUtils
         // Last, not least, check if the attributes are in the returning list
         if ( operationContext.getReturningAttributes() != null )
         {
-            for ( Attribute attribute : originalEntry )
+            for ( AttributeType attributeType : getAttributeTypes( originalEntry ) )
             {
-                AttributeType attributeType = attribute.getAttributeType();
 
                 // Bypass the ref attribute, unless the ManageDSAIT control is present
                 if ( operationContext.isReferralThrown() && attributeType.equals( refType ) )
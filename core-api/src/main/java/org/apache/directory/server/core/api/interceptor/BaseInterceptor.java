@@ -31,6 +31,7 @@ import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.DnFactory;
 import org.apache.directory.server.core.api.InterceptorEnum;
 import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.OperationEnum;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.BindOperationContext;
@@ -93,6 +94,12 @@ public abstract class BaseInterceptor implements Interceptor
         }
 
 
+        public boolean isApplicable( OperationEnum operation )
+        {
+            return true;
+        }
+
+
         public void destroy()
         {
             // unused
@@ -228,6 +235,17 @@ public abstract class BaseInterceptor implements Interceptor
     }
 
 
+    /**
+     * By default, an interceptor is always applicable.
+     * 
+     * {@inheritDoc}
+     */
+    public boolean isApplicable( OperationEnum operation )
+    {
+        return true;
+    }
+
+
     /**
      * Returns {@link LdapPrincipal} of current context.
      * 
@@ -305,14 +323,82 @@ public abstract class BaseInterceptor implements Interceptor
      */
     protected Interceptor getNextInterceptor( OperationContext operationContext )
     {
-        String currentInterceptor = operationContext.getNextInterceptor();
+        Interceptor interceptor = operationContext.getNextInterceptor( directoryService );
 
-        if ( currentInterceptor.equals( "FINAL" ) )
+        if ( interceptor == null )
         {
             return finalInterceptor;
         }
 
-        return directoryService.getInterceptor( currentInterceptor );
+        return interceptor;
+    }
+
+
+    /**
+     * A call to an interceptor method returning a value
+     */
+    @FunctionalInterface
+    private interface InterceptorCall<C extends OperationContext, R>
+    {
+        R call( Interceptor interceptor, C opContext ) throws LdapException;
+    }
+
+
+    /**
+     * A call to an interceptor method returning nothing
+     */
+    @FunctionalInterface
+    private interface InterceptorRun<C extends OperationContext> extends InterceptorCall<C, Void>
+    {
+        void run( Interceptor interceptor, C opContext ) throws LdapException;
+
+
+        @Override
+        default Void call( Interceptor interceptor, C opContext ) throws LdapException
+        {
+            run( interceptor, opContext );
+
+            return null;
+        }
+    }
+
+
+    /**
+     * Calls the next interceptor, recording its time in the operation trace if there is one.
+     * The time of a search only covers the creation of the cursor, not the entries reads.
+     */
+    private <C extends OperationContext, R> R callNext( C opContext, InterceptorCall<C, R> call )
+        throws LdapException
+    {
+        Interceptor interceptor = getNextInterceptor( opContext );
+        InterceptorTrace trace = opContext.getInterceptorTrace();
+
+        if ( trace == null )
+        {
+            return call.call( interceptor, opContext );
+        }
+
+        trace.enter( interceptor.getName() );
+
+        try
+        {
+            return call.call( interceptor, opContext );
+        }
+        finally
+        {
+            trace.exit();
+        }
+    }
+
+
+    /**
+     * Calls the next interceptor for an operation returning nothing.
+     *
+     * @see #callNext(OperationContext, InterceptorCall)
+     */
+    private <C extends OperationContext> void runNext( C opContext, InterceptorRun<C> run ) throws LdapException
+    {
+        callNext( opContext, run );
     }
 
 
@@ -336,9 +422,7 @@ public abstract class BaseInterceptor implements Interceptor
      */
     protected final void next( AddOperationContext addContext ) throws LdapException
     {
-        Interceptor interceptor = getNextInterceptor( addContext );
-
-        interceptor.add( addContext );
+        runNext( addContext, Interceptor::add );
     }
 
 
@@ -359,9 +443,7 @@ public abstract class BaseInterceptor implements Interceptor
      */
     protected final void next( BindOperationContext bindContext ) throws LdapException
     {
-        Interceptor interceptor = getNextInterceptor( bindContext );
-
-        interceptor.bind( bindContext );
+        runNext( bindContext, Interceptor::bind );
     }
 
 
@@ -381,9 +463,7 @@ public abstract class BaseInterceptor implements Interceptor
      */
     protected final boolean next( CompareOperationContext compareContext ) throws LdapException
     {
-        Interceptor interceptor = getNextInterceptor( compareContext );
-
-        return interceptor.compare( compareContext );
+        return callNext( compareContext, Interceptor::compare );
     }
 
 
@@ -404,9 +484,7 @@ public abstract class BaseInterceptor implements Interceptor
      */
     protected final void next( DeleteOperationContext deleteContext ) throws LdapException
     {
-        Interceptor interceptor = getNextInterceptor( deleteContext );
-
-        interceptor.delete( deleteContext );
+        runNext( deleteContext, Interceptor::delete );
     }
 
 
@@ -429,9 +507,7 @@ public abstract class BaseInterceptor implements Interceptor
      */
     protected final Entry next( GetRootDseOperationContext getRootDseContext ) throws LdapException
     {
-        Interceptor interceptor = getNextInterceptor( getRootDseContext );
-
-        return interceptor.getRootDse( getRootDseContext );
+        return callNext( getRootDseContext, Interceptor::getRootDse );
     }
 
 
@@ -454,9 +530,7 @@ public abstract class BaseInterceptor implements Interceptor
      */
     protected final boolean next( HasEntryOperationContext hasEntryContext ) throws LdapException
     {
-        Interceptor interceptor = getNextInterceptor( hasEntryContext );
-
-        return interceptor.hasEntry( hasEntryContext );
+        return callNext( hasEntryContext, Interceptor::hasEntry );
     }
 
 
@@ -478,9 +552,7 @@ public abstract class BaseInterceptor implements Interceptor
      */
     protected final Entry next( LookupOperationContext lookupContext ) throws LdapException
     {
-        Interceptor interceptor = getNextInterceptor( lookupContext );
-
-        return interceptor.lookup( lookupContext );
+        return callNext( lookupContext, Interceptor::lookup );
     }
 
 
@@ -501,9 +573,7 @@ public abstract class BaseInterceptor implements Interceptor
      */
     protected final void next( ModifyOperationContext modifyContext ) throws LdapException
     {
-        Interceptor interceptor = getNextInterceptor( modifyContext );
-
-        interceptor.modify( modifyContext );
+        runNext( modifyContext, Interceptor::modify );
     }
 
 
@@ -524,9 +594,7 @@ public abstract class BaseInterceptor implements Interceptor
      */
     protected final void next( MoveOperationContext moveContext ) throws LdapException
     {
-        Interceptor interceptor = getNextInterceptor( moveContext );
-
-        interceptor.move( moveContext );
+        runNext( moveContext, Interceptor::move );
     }
 
 
@@ -544,9 +612,7 @@ public abstract class BaseInterceptor implements Interceptor
      */
     protected final void next( MoveAndRenameOperationContext moveAndRenameContext ) throws LdapException
     {
-        Interceptor interceptor = getNextInterceptor( moveAndRenameContext );
-
-        interceptor.moveAndRename( moveAndRenameContext );
+        runNext( moveAndRenameContext, Interceptor::moveAndRename );
     }
 
 
@@ -567,9 +633,7 @@ public abstract class BaseInterceptor implements Interceptor
      */
     protected final void next( RenameOperationContext renameContext ) throws LdapException
     {
-        Interceptor interceptor = getNextInterceptor( renameContext );
-
-        interceptor.rename( renameContext );
+        runNext( renameContext, Interceptor::rename );
     }
 
 
@@ -585,15 +649,16 @@ public abstract class BaseInterceptor implements Interceptor
     /**
      * Calls the next interceptor for the search operation.
      * 
+     * When the operation is traced, the traced time stops when the cursor is created : the
+     * entries are read from the cursor after the interceptors have returned.
+     * 
      * @param searchContext The context in which we are executing this operation
      * @return the cursor containing the found entries
      * @throws LdapException If something went wrong
      */
     protected final EntryFilteringCursor next( SearchOperationContext searchContext ) throws LdapException
     {
-        Interceptor interceptor = getNextInterceptor( searchContext );
-
-        return interceptor.search( searchContext );
+        return callNext( searchContext, Interceptor::search );
     }
 
 
@@ -614,8 +679,6 @@ public abstract class BaseInterceptor implements Interceptor
      */
     protected final void next( UnbindOperationContext unbindContext ) throws LdapException
     {
-        Interceptor interceptor = getNextInterceptor( unbindContext );
-
-        interceptor.unbind( unbindContext );
+        runNext( unbindContext, Interceptor::unbind );
     }
 }
@@ -23,6 +23,7 @@ package org.apache.directory.server.core.api.interceptor;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.OperationEnum;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.BindOperationContext;
@@ -110,6 +111,23 @@ public interface Interceptor
     String getName();
 
 
+    /**
+     * Tells if this interceptor has something to do for an operation, in the current state
+     * of the server. The interceptors which aren't applicable are excluded from the chain
+     * of this operation. When their state changes, they must call
+     * {@link DirectoryService#updateInterceptorChains()} to be included again.
+     * <br>
+     * The operation contexts get their chain before the operation takes the write lock, so
+     * a write operation may run with a chain compiled before the last update. An interceptor
+     * whose applicability changes while the server is running must thus only leave the read
+     * operations chains.
+     *
+     * @param operation The operation
+     * @return true if the interceptor must be called for this operation
+     */
+    boolean isApplicable( OperationEnum operation );
+
+
     /**
      * Intializes this interceptor.
      *  
@@ -0,0 +1,109 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.interceptor;
+
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+
+/**
+ * The immutable, compiled list of interceptors to call for an operation. It is computed
+ * once by the DirectoryService each time the interceptors are changed, and shared by all
+ * the operations, which just carry their position in the chain. The next interceptor is
+ * then directly read from an array, instead of being looked up by its name.
+ * <br>
+ * The chain is also exposed as the unmodifiable list of its interceptors names, as this
+ * is what the OperationContexts used to be given.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class InterceptorChain extends AbstractList<String> implements RandomAccess
+{
+    /** An empty chain */
+    public static final InterceptorChain EMPTY = new InterceptorChain( new Interceptor[0] );
+
+    /** The interceptors, in call order */
+    private final Interceptor[] interceptors;
+
+    /** Their names */
+    private final String[] names;
+
+
+    /**
+     * Creates a new chain
+     *
+     * @param interceptors The interceptors to call, in order
+     */
+    public InterceptorChain( List<Interceptor> interceptors )
+    {
+        this( interceptors.toArray( new Interceptor[interceptors.size()] ) );
+    }
+
+
+    private InterceptorChain( Interceptor[] interceptors )
+    {
+        this.interceptors = interceptors;
+        names = new String[interceptors.length];
+
+        for ( int i = 0; i < interceptors.length; i++ )
+        {
+            names[i] = interceptors[i].getName();
+        }
+    }
+
+
+    /**
+     * Gets the interceptor at a given position in the chain
+     *
+     * @param position The interceptor position
+     * @return The interceptor, or null if the position is past the end of the chain
+     */
+    public Interceptor getInterceptor( int position )
+    {
+        if ( position < interceptors.length )
+        {
+            return interceptors[position];
+        }
+
+        return null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String get( int index )
+    {
+        return names[index];
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        return names.length;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.interceptor;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
+
+
+/**
+ * The trace of the interceptors an operation went through. Each time an interceptor is
+ * called, its name and the time spent in it are recorded. The self time of an interceptor
+ * is the time spent in this interceptor, excluding the time spent in the interceptors it
+ * has called. The self times are also recorded in the {@link MetricsRegistry}.
+ * <br>
+ * A trace is attached to an OperationContext only when the interceptor tracing is enabled,
+ * or when the caller has attached one to trace a specific request. It must not be shared
+ * between threads.
+ * <br>
+ * A search is traced until its cursor is created : the entries are read and filtered once
+ * the interceptors have returned, and this time is not part of the trace.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class InterceptorTrace
+{
+    /** The traced operation */
+    private final String operation;
+
+    /** The registry the self times are recorded into, may be null */
+    private final MetricsRegistry metrics;
+
+    /** The recorded steps, in call order */
+    private final List<Step> steps = new ArrayList<>();
+
+    /** The currently opened steps */
+    private Step[] stack = new Step[16];
+
+    /** The current depth in the interceptor chain */
+    private int depth;
+
+
+    /**
+     * A call to an interceptor
+     */
+    public static final class Step
+    {
+        /** The interceptor name */
+        private final String interceptor;
+
+        /** The depth of the call, 0 being the first interceptor */
+        private final int depth;
+
+        /** The call start */
+        private final long start;
+
+        /** The time spent in the called interceptors */
+        private long childrenTime;
+
+        /** The time spent in the interceptor, including the called interceptors */
+        private long totalTime = -1L;
+
+
+        private Step( String interceptor, int depth, long start )
+        {
+            this.interceptor = interceptor;
+            this.depth = depth;
+            this.start = start;
+        }
+
+
+        /**
+         * @return The interceptor name
+         */
+        public String getInterceptor()
+        {
+            return interceptor;
+        }
+
+
+        /**
+         * @return The depth of the call, 0 being the first interceptor
+         */
+        public int getDepth()
+        {
+            return depth;
+        }
+
+
+        /**
+         * @return The time spent in the interceptor and in the interceptors it called, in nanoseconds
+         */
+        public long getTotalTime()
+        {
+            return totalTime;
+        }
+
+
+        /**
+         * @return The time spent in the interceptor only, in nanoseconds
+         */
+        public long getSelfTime()
+        {
+            return totalTime - childrenTime;
+        }
+
+
+        /**
+         * @see Object#toString()
+         */
+        @Override
+        public String toString()
+        {
+            char[] indent = new char[depth * 2];
+            Arrays.fill( indent, ' ' );
+
+            return new String( indent ) + interceptor + " : self = " + getSelfTime() + " ns, total = " + totalTime
+                + " ns";
+        }
+    }
+
+
+    /**
+     * Creates a new instance of InterceptorTrace.
+     *
+     * @param operation The traced operation
+     * @param metrics The registry the self times are recorded into, or null
+     */
+    public InterceptorTrace( String operation, MetricsRegistry metrics )
+    {
+        this.operation = operation;
+        this.metrics = metrics;
+    }
+
+
+    /**
+     * Records the entry in an interceptor
+     *
+     * @param interceptor The interceptor name
+     */
+    public void enter( String interceptor )
+    {
+        if ( depth == stack.length )
+        {
+            stack = Arrays.copyOf( stack, depth * 2 );
+        }
+
+        Step step = new Step( interceptor, depth, System.nanoTime() );
+        steps.add( step );
+        stack[depth++] = step;
+    }
+
+
+    /**
+     * Records the exit from the last entered interceptor
+     */
+    public void exit()
+    {
+        if ( depth == 0 )
+        {
+            return;
+        }
+
+        Step step = stack[--depth];
+        stack[depth] = null;
+        step.totalTime = System.nanoTime() - step.start;
+
+        if ( depth > 0 )
+        {
+            stack[depth - 1].childrenTime += step.totalTime;
+        }
+
+        if ( metrics != null )
+        {
+            metrics.getInterceptorLatency( step.interceptor, operation ).record( step.getSelfTime() );
+        }
+    }
+
+
+    /**
+     * Records the exit from all the entered interceptors
+     */
+    public void exitAll()
+    {
+        while ( depth > 0 )
+        {
+            exit();
+        }
+    }
+
+
+    /**
+     * @return The traced operation
+     */
+    public String getOperation()
+    {
+        return operation;
+    }
+
+
+    /**
+     * @return The recorded steps, in call order
+     */
+    public List<Step> getSteps()
+    {
+        return Collections.unmodifiableList( steps );
+    }
+
+
+    /**
+     * Get the time spent in an interceptor, excluding the time spent in the interceptors it has called
+     *
+     * @param interceptor The interceptor name
+     * @return The self time, in nanoseconds, summed on all the calls to the interceptor
+     */
+    public long getSelfTime( String interceptor )
+    {
+        long selfTime = 0L;
+
+        for ( Step step : steps )
+        {
+            if ( ( step.totalTime >= 0L ) && step.interceptor.equals( interceptor ) )
+            {
+                selfTime += step.getSelfTime();
+            }
+        }
+
+        return selfTime;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "Interceptors trace for " ).append( operation ).append( '\n' );
+
+        for ( Step step : steps )
+        {
+            sb.append( "    " ).append( step ).append( '\n' );
+        }
+
+        return sb.toString();
+    }
+}
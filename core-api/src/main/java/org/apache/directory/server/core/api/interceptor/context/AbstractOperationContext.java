@@ -30,7 +30,11 @@ import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.message.Control;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.interceptor.Interceptor;
+import org.apache.directory.server.core.api.interceptor.InterceptorChain;
+import org.apache.directory.server.core.api.interceptor.InterceptorTrace;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 
@@ -66,6 +70,9 @@ public abstract class AbstractOperationContext implements OperationContext
     /** The interceptors to call for this operation */
     protected List<String> interceptors;
 
+    /** The same interceptors, when they have been given as a compiled chain */
+    protected InterceptorChain interceptorChain;
+
     /** The current interceptor position */
     protected int currentInterceptor;
 
@@ -83,6 +90,9 @@ public abstract class AbstractOperationContext implements OperationContext
     /** The partition this operation will be applied on */
     protected Partition partition;
 
+    /** The trace of the interceptors this operation went through, if traced */
+    protected InterceptorTrace interceptorTrace;
+
 
     /**
      * Creates a new instance of AbstractOperationContext.
@@ -315,6 +325,15 @@ public abstract class AbstractOperationContext implements OperationContext
     public final void setInterceptors( List<String> interceptors )
     {
         this.interceptors = interceptors;
+
+        if ( interceptors instanceof InterceptorChain )
+        {
+            interceptorChain = ( InterceptorChain ) interceptors;
+        }
+        else
+        {
+            interceptorChain = null;
+        }
     }
 
 
@@ -336,6 +355,35 @@ public abstract class AbstractOperationContext implements OperationContext
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final Interceptor getNextInterceptor( DirectoryService directoryService )
+    {
+        if ( interceptorChain != null )
+        {
+            Interceptor interceptor = interceptorChain.getInterceptor( currentInterceptor );
+
+            if ( interceptor != null )
+            {
+                currentInterceptor++;
+            }
+
+            return interceptor;
+        }
+
+        String interceptorName = getNextInterceptor();
+
+        if ( "FINAL".equals( interceptorName ) )
+        {
+            return null;
+        }
+
+        return directoryService.getInterceptor( interceptorName );
+    }
+
+
     /**
      * @return The number of the current interceptor in the list
      */
@@ -516,4 +564,24 @@ public abstract class AbstractOperationContext implements OperationContext
     {
         this.partition = partition;
     }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InterceptorTrace getInterceptorTrace()
+    {
+        return interceptorTrace;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setInterceptorTrace( InterceptorTrace interceptorTrace )
+    {
+        this.interceptorTrace = interceptorTrace;
+    }
 }
@@ -27,8 +27,12 @@ import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.message.Control;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.LdapPrincipal;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
+import org.apache.directory.server.core.api.interceptor.Interceptor;
+import org.apache.directory.server.core.api.interceptor.InterceptorChain;
+import org.apache.directory.server.core.api.interceptor.InterceptorTrace;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 
@@ -225,6 +229,17 @@ public interface OperationContext
     String getNextInterceptor();
 
 
+    /**
+     * Gets the next interceptor to call. The position in the list will be incremented.
+     * When the interceptors are a compiled {@link InterceptorChain}, the interceptor is
+     * directly read from it, otherwise it's looked up by its name.
+     * 
+     * @param directoryService The DirectoryService the interceptors are looked up from
+     * @return The next interceptor, or null if the end of the list has been reached
+     */
+    Interceptor getNextInterceptor( DirectoryService directoryService );
+
+
     /**
      * Sets the list of interceptors to go through for an operation
      * 
@@ -309,4 +324,19 @@ public interface OperationContext
      */
     void setPartition( Partition partition );
 
+
+    /**
+     * @return The trace of the interceptors this operation went through, or null if the
+     * operation is not traced
+     */
+    InterceptorTrace getInterceptorTrace();
+
+
+    /**
+     * Attach a trace to this operation, recording the time spent in each interceptor
+     *
+     * @param interceptorTrace The trace, or null to stop tracing the operation
+     */
+    void setInterceptorTrace( InterceptorTrace interceptorTrace );
+
 }
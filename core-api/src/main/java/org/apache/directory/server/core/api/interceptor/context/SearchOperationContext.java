@@ -65,6 +65,9 @@ public class SearchOperationContext extends FilteringOperationContext
 
     /** flag to indicate if this search is done for replication */
     private boolean syncreplSearch;
+
+    /** flag set when the entries are returned in the order requested by the sort control */
+    private boolean sorted;
     
     /**
      * Creates a new instance of SearchOperationContext.
@@ -221,6 +224,28 @@ public class SearchOperationContext extends FilteringOperationContext
     }
 
 
+    /**
+     * @return true if the partition returns the entries in the order requested
+     * by the server side sort control, so that they don't have to be sorted again
+     */
+    public boolean isSorted()
+    {
+        return sorted;
+    }
+
+
+    /**
+     * Sets the flag to indicate if the partition returns the entries in the order
+     * requested by the server side sort control
+     * 
+     * @param sorted The flag indicating the entries are already sorted
+     */
+    public void setSorted( boolean sorted )
+    {
+        this.sorted = sorted;
+    }
+
+
     /**
      * @return The alias dereferencing mode
      */
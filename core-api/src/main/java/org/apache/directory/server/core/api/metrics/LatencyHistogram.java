@@ -0,0 +1,230 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.metrics;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * A lock-free latency histogram, recording durations in nanoseconds. The values are stored in
+ * log-linear buckets : each power of two is split in {@link #SUB_BUCKETS} buckets, so that the
+ * percentiles are computed with a relative error below 1/{@link #SUB_BUCKETS}, whatever the
+ * magnitude of the recorded values.
+ * <br>
+ * Recording a value is a few atomic increments, and never blocks. Reading the percentiles
+ * while values are being recorded gives an approximation of the current distribution.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LatencyHistogram
+{
+    /** The number of bits used for the sub buckets */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /** The number of buckets per power of two */
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** The number of buckets needed to store any positive long */
+    private static final int NB_BUCKETS = SUB_BUCKETS + ( 63 - SUB_BUCKET_BITS ) * SUB_BUCKETS;
+
+    /** The buckets */
+    private final AtomicLongArray buckets = new AtomicLongArray( NB_BUCKETS );
+
+    /** The number of recorded values */
+    private final LongAdder count = new LongAdder();
+
+    /** The sum of the recorded values */
+    private final LongAdder sum = new LongAdder();
+
+    /** The highest recorded value */
+    private final AtomicLong max = new AtomicLong();
+
+
+    /**
+     * Records a duration
+     *
+     * @param nanos The duration, in nanoseconds. Negative values are recorded as 0.
+     */
+    public void record( long nanos )
+    {
+        long value = Math.max( 0L, nanos );
+
+        buckets.incrementAndGet( getBucket( value ) );
+        count.increment();
+        sum.add( value );
+
+        long currentMax = max.get();
+
+        while ( ( value > currentMax ) && !max.compareAndSet( currentMax, value ) )
+        {
+            currentMax = max.get();
+        }
+    }
+
+
+    /**
+     * Compute the bucket a value is stored into
+     */
+    private static int getBucket( long value )
+    {
+        if ( value < SUB_BUCKETS )
+        {
+            return ( int ) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros( value );
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = ( int ) ( value >>> shift ) - SUB_BUCKETS;
+
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+
+    /**
+     * Compute the highest value stored in a bucket
+     */
+    private static long getHighestValue( int bucket )
+    {
+        if ( bucket < SUB_BUCKETS )
+        {
+            return bucket;
+        }
+
+        int shift = ( bucket - SUB_BUCKETS ) / SUB_BUCKETS;
+        long subBucket = ( bucket - SUB_BUCKETS ) % SUB_BUCKETS;
+
+        return ( ( SUB_BUCKETS + subBucket + 1 ) << shift ) - 1;
+    }
+
+
+    /**
+     * @return The number of recorded values
+     */
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+
+    /**
+     * @return The sum of the recorded values, in nanoseconds
+     */
+    public long getSum()
+    {
+        return sum.sum();
+    }
+
+
+    /**
+     * @return The highest recorded value, in nanoseconds
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+
+    /**
+     * Get the value below which a given percentage of the recorded values fall.
+     *
+     * @param percentile The percentile, between 0 and 100 (99.9 for the p999)
+     * @return The percentile value, in nanoseconds, or 0 if no value has been recorded
+     */
+    public long getPercentile( double percentile )
+    {
+        long total = 0L;
+        long[] snapshot = new long[NB_BUCKETS];
+
+        for ( int i = 0; i < NB_BUCKETS; i++ )
+        {
+            snapshot[i] = buckets.get( i );
+            total += snapshot[i];
+        }
+
+        if ( total == 0L )
+        {
+            return 0L;
+        }
+
+        long rank = ( long ) Math.ceil( Math.min( 100d, Math.max( 0d, percentile ) ) * total / 100d );
+        long seen = 0L;
+
+        for ( int i = 0; i < NB_BUCKETS; i++ )
+        {
+            seen += snapshot[i];
+
+            if ( ( seen >= rank ) && ( snapshot[i] > 0 ) )
+            {
+                return Math.min( getHighestValue( i ), getMax() );
+            }
+        }
+
+        return getMax();
+    }
+
+
+    /**
+     * Adds the values recorded by another histogram to this histogram
+     *
+     * @param other The histogram to add
+     */
+    public void add( LatencyHistogram other )
+    {
+        for ( int i = 0; i < NB_BUCKETS; i++ )
+        {
+            long nb = other.buckets.get( i );
+
+            if ( nb > 0 )
+            {
+                buckets.addAndGet( i, nb );
+            }
+        }
+
+        count.add( other.getCount() );
+        sum.add( other.getSum() );
+
+        long otherMax = other.getMax();
+        long currentMax = max.get();
+
+        while ( ( otherMax > currentMax ) && !max.compareAndSet( currentMax, otherMax ) )
+        {
+            currentMax = max.get();
+        }
+    }
+
+
+    /**
+     * Forget all the recorded values
+     */
+    public void reset()
+    {
+        for ( int i = 0; i < NB_BUCKETS; i++ )
+        {
+            buckets.set( i, 0L );
+        }
+
+        count.reset();
+        sum.reset();
+        max.set( 0L );
+    }
+}
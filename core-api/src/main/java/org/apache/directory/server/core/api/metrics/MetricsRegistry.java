@@ -0,0 +1,502 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.metrics;
+
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+
+/**
+ * The registry for the server metrics : the latency distributions of the operations, per
+ * operation type and per partition, the self time distributions of the interceptors, per
+ * interceptor and per operation type, and the statistics of the caches. The metrics can be
+ * read through JMX, or scraped as text using the Prometheus exposition format.
+ * <br>
+ * The caches must be built with statistics enabled (<code>Caffeine.recordStats()</code>),
+ * their statistics are only read when the metrics are scraped.
+ * <br>
+ * Each DirectoryService owns its registry (see <code>DirectoryService.getMetricsRegistry()</code>),
+ * so that the metrics of two instances running in the same JVM are never mixed. The components
+ * registering a cache must unregister it when they are destroyed.
+ * <br>
+ * The search latency is the <em>search setup</em> time, recorded as the <code>searchSetup</code>
+ * operation : it stops when the cursor over the results is created, and doesn't include the time
+ * spent reading the entries from the cursor.
+ * <br>
+ * The failed operations are recorded in the latency histograms like the successful ones, and
+ * they are also counted separately, per operation type and per partition.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MetricsRegistry implements MetricsRegistryMBean
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( MetricsRegistry.class );
+
+    /** The label used when an operation is not associated with a partition */
+    public static final String NO_PARTITION = "";
+
+    /** The JMX domain */
+    private static final String JMX_DOMAIN = "org.apache.directory.server";
+
+    /** The latencies, per operation and per partition */
+    private final ConcurrentMap<String, ConcurrentMap<String, LatencyHistogram>> latencies = new ConcurrentHashMap<>();
+
+    /** The failed operations, per operation and per partition */
+    private final ConcurrentMap<String, ConcurrentMap<String, LongAdder>> errors = new ConcurrentHashMap<>();
+
+    /** The interceptors self times, per interceptor and per operation */
+    private final ConcurrentMap<String, ConcurrentMap<String, LatencyHistogram>> interceptorLatencies = new ConcurrentHashMap<>();
+
+    /** The caches, per cache name and per partition */
+    private final ConcurrentMap<String, ConcurrentMap<String, Cache<?, ?>>> caches = new ConcurrentHashMap<>();
+
+
+    /**
+     * Creates a new instance of MetricsRegistry.
+     */
+    public MetricsRegistry()
+    {
+    }
+
+
+    /**
+     * Get the latency histogram of an operation on a partition, creating it if needed
+     *
+     * @param operation The operation name (add, searchSetup, ...)
+     * @param partition The partition ID, or {@link #NO_PARTITION}
+     * @return The histogram
+     */
+    public LatencyHistogram getLatency( String operation, String partition )
+    {
+        return getHistogram( latencies, operation, partition );
+    }
+
+
+    /**
+     * Count a failed operation on a partition. The operation latency must still be recorded
+     * using {@link #getLatency(String, String)}.
+     *
+     * @param operation The operation name (add, searchSetup, ...)
+     * @param partition The partition ID, or {@link #NO_PARTITION}
+     */
+    public void recordError( String operation, String partition )
+    {
+        errors.computeIfAbsent( operation, k -> new ConcurrentHashMap<>() )
+            .computeIfAbsent( partition, k -> new LongAdder() ).increment();
+    }
+
+
+    /**
+     * Get the self time histogram of an interceptor for an operation, creating it if needed
+     *
+     * @param interceptor The interceptor name
+     * @param operation The operation name
+     * @return The histogram
+     */
+    public LatencyHistogram getInterceptorLatency( String interceptor, String operation )
+    {
+        return getHistogram( interceptorLatencies, interceptor, operation );
+    }
+
+
+    private static LatencyHistogram getHistogram( ConcurrentMap<String, ConcurrentMap<String, LatencyHistogram>> map,
+        String key, String subKey )
+    {
+        ConcurrentMap<String, LatencyHistogram> histograms = map.get( key );
+
+        if ( histograms == null )
+        {
+            histograms = map.computeIfAbsent( key, k -> new ConcurrentHashMap<>() );
+        }
+
+        LatencyHistogram histogram = histograms.get( subKey );
+
+        if ( histogram == null )
+        {
+            histogram = histograms.computeIfAbsent( subKey, k -> new LatencyHistogram() );
+        }
+
+        return histogram;
+    }
+
+
+    /**
+     * Register a cache, which statistics will be exposed. A cache already registered with
+     * the same name and partition is replaced.
+     *
+     * @param name The cache name
+     * @param partition The partition ID, or {@link #NO_PARTITION}
+     * @param cache The cache
+     */
+    public void registerCache( String name, String partition, Cache<?, ?> cache )
+    {
+        caches.computeIfAbsent( name, k -> new ConcurrentHashMap<>() ).put( partition, cache );
+    }
+
+
+    /**
+     * Unregister a cache
+     *
+     * @param name The cache name
+     * @param partition The partition ID, or {@link #NO_PARTITION}
+     */
+    public void unregisterCache( String name, String partition )
+    {
+        Map<String, Cache<?, ?>> partitionCaches = caches.get( name );
+
+        if ( partitionCaches != null )
+        {
+            partitionCaches.remove( partition );
+        }
+    }
+
+
+    /**
+     * Unregister all the caches associated with a partition
+     *
+     * @param partition The partition ID
+     */
+    public void unregisterCaches( String partition )
+    {
+        for ( Map<String, Cache<?, ?>> partitionCaches : caches.values() )
+        {
+            partitionCaches.remove( partition );
+        }
+    }
+
+
+    /**
+     * Get the statistics of a registered cache
+     *
+     * @param name The cache name
+     * @param partition The partition ID, or {@link #NO_PARTITION}
+     * @return The cache statistics, or null if the cache is not registered
+     */
+    public CacheStats getCacheStats( String name, String partition )
+    {
+        Map<String, Cache<?, ?>> partitionCaches = caches.get( name );
+
+        if ( partitionCaches == null )
+        {
+            return null;
+        }
+
+        Cache<?, ?> cache = partitionCaches.get( partition );
+
+        return cache == null ? null : cache.stats();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getOperationCount( String operation )
+    {
+        return getMergedLatency( operation ).getCount();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getErrorCount( String operation )
+    {
+        Map<String, LongAdder> partitionErrors = errors.get( operation );
+        long count = 0L;
+
+        if ( partitionErrors != null )
+        {
+            for ( LongAdder error : partitionErrors.values() )
+            {
+                count += error.sum();
+            }
+        }
+
+        return count;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLatencyPercentileMicros( String operation, double percentile )
+    {
+        return getMergedLatency( operation ).getPercentile( percentile ) / 1000L;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getInterceptorSelfTimePercentileMicros( String interceptor, double percentile )
+    {
+        return merge( interceptorLatencies.get( interceptor ) ).getPercentile( percentile ) / 1000L;
+    }
+
+
+    /**
+     * Merge the latencies of an operation on all the partitions
+     */
+    private LatencyHistogram getMergedLatency( String operation )
+    {
+        return merge( latencies.get( operation ) );
+    }
+
+
+    private static LatencyHistogram merge( Map<String, LatencyHistogram> histograms )
+    {
+        LatencyHistogram merged = new LatencyHistogram();
+
+        if ( histograms != null )
+        {
+            for ( LatencyHistogram histogram : histograms.values() )
+            {
+                merged.add( histogram );
+            }
+        }
+
+        return merged;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset()
+    {
+        reset( latencies );
+        reset( interceptorLatencies );
+
+        for ( Map<String, LongAdder> partitionErrors : errors.values() )
+        {
+            for ( LongAdder error : partitionErrors.values() )
+            {
+                error.reset();
+            }
+        }
+    }
+
+
+    private static void reset( Map<String, ? extends Map<String, LatencyHistogram>> map )
+    {
+        for ( Map<String, LatencyHistogram> histograms : map.values() )
+        {
+            for ( LatencyHistogram histogram : histograms.values() )
+            {
+                histogram.reset();
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String scrape()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        scrapeSummaries( sb, "apacheds_operation_latency_seconds", "The operations latency", "operation",
+            "partition", latencies );
+        scrapeSummaries( sb, "apacheds_interceptor_self_time_seconds",
+            "The time spent in each interceptor, excluding the next interceptors", "interceptor", "operation",
+            interceptorLatencies );
+
+        sb.append( "# HELP apacheds_operation_errors_total The failed operations\n" );
+        sb.append( "# TYPE apacheds_operation_errors_total counter\n" );
+
+        for ( Map.Entry<String, Map<String, LongAdder>> operation : sorted( errors ).entrySet() )
+        {
+            for ( Map.Entry<String, LongAdder> partition : operation.getValue().entrySet() )
+            {
+                sb.append( "apacheds_operation_errors_total{operation=\"" ).append( escape( operation.getKey() ) );
+                sb.append( "\",partition=\"" ).append( escape( partition.getKey() ) ).append( "\"} " );
+                sb.append( partition.getValue().sum() ).append( '\n' );
+            }
+        }
+
+        sb.append( "# HELP apacheds_cache_requests_total The cache lookups, by result\n" );
+        sb.append( "# TYPE apacheds_cache_requests_total counter\n" );
+
+        for ( Map.Entry<String, Map<String, Cache<?, ?>>> cache : sorted( caches ).entrySet() )
+        {
+            for ( Map.Entry<String, Cache<?, ?>> partition : cache.getValue().entrySet() )
+            {
+                String labels = "cache=\"" + escape( cache.getKey() ) + "\",partition=\""
+                    + escape( partition.getKey() ) + "\"";
+                CacheStats stats = partition.getValue().stats();
+
+                sb.append( "apacheds_cache_requests_total{" ).append( labels ).append( ",result=\"hit\"} " );
+                sb.append( stats.hitCount() ).append( '\n' );
+                sb.append( "apacheds_cache_requests_total{" ).append( labels ).append( ",result=\"miss\"} " );
+                sb.append( stats.missCount() ).append( '\n' );
+            }
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * Write a set of histograms as a Prometheus summary
+     */
+    private static void scrapeSummaries( StringBuilder sb, String name, String help, String label, String subLabel,
+        Map<String, ? extends Map<String, LatencyHistogram>> histograms )
+    {
+        sb.append( "# HELP " ).append( name ).append( ' ' ).append( help ).append( '\n' );
+        sb.append( "# TYPE " ).append( name ).append( " summary\n" );
+
+        for ( Map.Entry<String, Map<String, LatencyHistogram>> entry : sorted( histograms ).entrySet() )
+        {
+            for ( Map.Entry<String, LatencyHistogram> subEntry : entry.getValue().entrySet() )
+            {
+                String labels = label + "=\"" + escape( entry.getKey() ) + "\"," + subLabel + "=\""
+                    + escape( subEntry.getKey() ) + "\"";
+                LatencyHistogram histogram = subEntry.getValue();
+
+                for ( String quantile : new String[] { "0.5", "0.9", "0.99", "0.999" } )
+                {
+                    double percentile = Double.parseDouble( quantile ) * 100d;
+                    sb.append( name ).append( '{' ).append( labels );
+                    sb.append( ",quantile=\"" ).append( quantile ).append( "\"} " );
+                    sb.append( toSeconds( histogram.getPercentile( percentile ) ) ).append( '\n' );
+                }
+
+                sb.append( name ).append( "_count{" ).append( labels ).append( "} " );
+                sb.append( histogram.getCount() ).append( '\n' );
+                sb.append( name ).append( "_sum{" ).append( labels ).append( "} " );
+                sb.append( toSeconds( histogram.getSum() ) ).append( '\n' );
+            }
+        }
+    }
+
+
+    /**
+     * Sort a two levels map, so that the scraped metrics are always in the same order
+     */
+    private static <V> Map<String, Map<String, V>> sorted( Map<String, ? extends Map<String, V>> map )
+    {
+        Map<String, Map<String, V>> sorted = new TreeMap<>();
+
+        for ( Map.Entry<String, ? extends Map<String, V>> entry : map.entrySet() )
+        {
+            sorted.put( entry.getKey(), new TreeMap<>( entry.getValue() ) );
+        }
+
+        return sorted;
+    }
+
+
+    private static String toSeconds( long nanos )
+    {
+        return String.format( Locale.ROOT, "%.9f", nanos / 1.0e9d );
+    }
+
+
+    /**
+     * Escape a label value
+     */
+    private static String escape( String value )
+    {
+        return value.replace( "\\", "\\\\" ).replace( "\"", "\\\"" ).replace( "\n", "\\n" );
+    }
+
+
+    /**
+     * Get the JMX name of the registry for a DirectoryService instance
+     */
+    private static ObjectName getObjectName( String instanceId ) throws JMException
+    {
+        return new ObjectName( JMX_DOMAIN + ":type=Metrics,instance=" + ObjectName.quote( String.valueOf( instanceId ) ) );
+    }
+
+
+    /**
+     * Register this registry in the platform MBean server
+     *
+     * @param instanceId The DirectoryService instance ID
+     */
+    public void registerMBean( String instanceId )
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try
+        {
+            ObjectName name = getObjectName( instanceId );
+
+            if ( !server.isRegistered( name ) )
+            {
+                server.registerMBean( this, name );
+            }
+        }
+        catch ( JMException jme )
+        {
+            LOG.warn( "Cannot register the metrics MBean for instance {} : {}", instanceId, jme.getMessage() );
+        }
+    }
+
+
+    /**
+     * Unregister this registry from the platform MBean server
+     *
+     * @param instanceId The DirectoryService instance ID
+     */
+    public void unregisterMBean( String instanceId )
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try
+        {
+            ObjectName name = getObjectName( instanceId );
+
+            if ( server.isRegistered( name ) )
+            {
+                server.unregisterMBean( name );
+            }
+        }
+        catch ( JMException jme )
+        {
+            LOG.warn( "Cannot unregister the metrics MBean for instance {} : {}", instanceId, jme.getMessage() );
+        }
+    }
+}
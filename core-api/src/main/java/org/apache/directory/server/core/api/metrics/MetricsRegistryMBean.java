@@ -0,0 +1,81 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.metrics;
+
+
+/**
+ * The JMX interface of the {@link MetricsRegistry}.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface MetricsRegistryMBean
+{
+    /**
+     * @return All the metrics, using the Prometheus text exposition format
+     */
+    String scrape();
+
+
+    /**
+     * Get the number of processed operations of a given type, on all the partitions
+     *
+     * @param operation The operation name (add, searchSetup, ...)
+     * @return The number of processed operations
+     */
+    long getOperationCount( String operation );
+
+
+    /**
+     * Get the number of failed operations of a given type, on all the partitions. The failed
+     * operations are also included in the operation count and in the latencies.
+     *
+     * @param operation The operation name (add, searchSetup, ...)
+     * @return The number of failed operations
+     */
+    long getErrorCount( String operation );
+
+
+    /**
+     * Get a latency percentile for a given type of operation, on all the partitions. The
+     * searchSetup latency stops when the search cursor is created.
+     *
+     * @param operation The operation name (add, searchSetup, ...)
+     * @param percentile The percentile, between 0 and 100 (99.9 for the p999)
+     * @return The percentile value, in microseconds
+     */
+    long getLatencyPercentileMicros( String operation, double percentile );
+
+
+    /**
+     * Get a self time percentile for a given interceptor, for all the operations. The self times
+     * are only recorded when the interceptors tracing is enabled.
+     *
+     * @param interceptor The interceptor name
+     * @param percentile The percentile, between 0 and 100 (99.9 for the p999)
+     * @return The percentile value, in microseconds
+     */
+    long getInterceptorSelfTimePercentileMicros( String interceptor, double percentile );
+
+
+    /**
+     * Forget all the recorded latencies and errors
+     */
+    void reset();
+}
@@ -33,6 +33,7 @@ import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
 import org.apache.directory.server.i18n.I18n;
 
 
@@ -318,4 +319,17 @@ public abstract class AbstractPartition implements Partition
     {
         // Do nothing by default
     }
+
+
+    /**
+     * Register the caches of this initialized partition, so that their statistics are
+     * exposed. They are unregistered using {@link MetricsRegistry#unregisterCaches(String)}.
+     * Does nothing by default.
+     *
+     * @param metrics The registry to register the caches into
+     */
+    public void registerCaches( MetricsRegistry metrics )
+    {
+        // Do nothing by default
+    }
 }
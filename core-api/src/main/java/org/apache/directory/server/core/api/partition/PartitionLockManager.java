@@ -0,0 +1,286 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.api.partition;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.directory.api.ldap.model.name.Dn;
+
+
+/**
+ * A lock manager which stripes the operation locks by partition. Each partition, identified by
+ * its normalized suffix, has its own R/W lock, so that a write on one partition does not block
+ * the readers on any other partition.
+ * <br>
+ * Writers are still serialized across partitions : an update may have to read (or write)
+ * some other partition from within the interceptor chain, and serializing the writers guarantees
+ * that two writers will never wait on each other's partition lock. When an operation
+ * spans more than one partition (a move from one partition to another one, for instance),
+ * all the involved locks are always acquired in the same order, the normalized suffix order.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PartitionLockManager
+{
+    /** The key used for the RootDSE, or when no partition is known */
+    private static final String ROOT_KEY = "";
+
+    /** The per partition locks, keyed by the partition normalized suffix */
+    private final ConcurrentMap<String, ReentrantReadWriteLock> locks = new ConcurrentHashMap<>();
+
+    /** The lock serializing the writers */
+    private final ReentrantLock writersLock;
+
+    /** Tells if the locks are fair or not */
+    private final boolean fair;
+
+
+    /**
+     * Creates a new instance of PartitionLockManager, using non fair locks.
+     */
+    public PartitionLockManager()
+    {
+        this( false );
+    }
+
+
+    /**
+     * Creates a new instance of PartitionLockManager.
+     *
+     * @param fair If the created locks should use a fair ordering policy
+     */
+    public PartitionLockManager( boolean fair )
+    {
+        this.fair = fair;
+        writersLock = new ReentrantLock( fair );
+    }
+
+
+    /**
+     * Get the key associated with a partition suffix
+     */
+    private static String getKey( Dn partitionDn )
+    {
+        if ( ( partitionDn == null ) || partitionDn.isRootDse() )
+        {
+            return ROOT_KEY;
+        }
+
+        return partitionDn.getNormName();
+    }
+
+
+    /**
+     * Get the R/W lock associated with a partition, creating it if needed
+     *
+     * @param partitionDn The partition suffix
+     * @return The partition R/W lock
+     */
+    public ReadWriteLock getLock( Dn partitionDn )
+    {
+        return getLock( getKey( partitionDn ) );
+    }
+
+
+    private ReentrantReadWriteLock getLock( String key )
+    {
+        ReentrantReadWriteLock lock = locks.get( key );
+
+        if ( lock == null )
+        {
+            lock = locks.computeIfAbsent( key, k -> new ReentrantReadWriteLock( fair ) );
+        }
+
+        return lock;
+    }
+
+
+    /**
+     * Acquires a ReadLock on a partition
+     *
+     * @param partitionDn The partition suffix
+     */
+    public void lockRead( Dn partitionDn )
+    {
+        getLock( getKey( partitionDn ) ).readLock().lock();
+    }
+
+
+    /**
+     * Releases a ReadLock on a partition
+     *
+     * @param partitionDn The partition suffix
+     */
+    public void unlockRead( Dn partitionDn )
+    {
+        getLock( getKey( partitionDn ) ).readLock().unlock();
+    }
+
+
+    /**
+     * Acquires a WriteLock on one or more partitions. The locks are acquired in a stable order.
+     *
+     * @param partitionDns The partitions suffixes
+     */
+    public void lockWrite( Dn... partitionDns )
+    {
+        writersLock.lock();
+
+        List<ReentrantReadWriteLock> acquired = new ArrayList<>();
+
+        try
+        {
+            for ( String key : sortedKeys( partitionDns ) )
+            {
+                ReentrantReadWriteLock lock = getLock( key );
+                lock.writeLock().lock();
+                acquired.add( lock );
+            }
+        }
+        catch ( RuntimeException re )
+        {
+            for ( int i = acquired.size() - 1; i >= 0; i-- )
+            {
+                acquired.get( i ).writeLock().unlock();
+            }
+
+            writersLock.unlock();
+
+            throw re;
+        }
+    }
+
+
+    /**
+     * Releases the WriteLocks on one or more partitions. The same partitions than the
+     * one given to {@link #lockWrite(Dn...)} must be provided.
+     *
+     * @param partitionDns The partitions suffixes
+     */
+    public void unlockWrite( Dn... partitionDns )
+    {
+        try
+        {
+            for ( String key : sortedKeys( partitionDns ).descendingSet() )
+            {
+                getLock( key ).writeLock().unlock();
+            }
+        }
+        finally
+        {
+            writersLock.unlock();
+        }
+    }
+
+
+    /**
+     * Acquires a ReadLock on all the known partitions
+     */
+    public void lockAllRead()
+    {
+        for ( String key : new TreeSet<>( locks.keySet() ) )
+        {
+            getLock( key ).readLock().lock();
+        }
+    }
+
+
+    /**
+     * Releases the ReadLock on all the known partitions
+     */
+    public void unlockAllRead()
+    {
+        for ( String key : new TreeSet<>( locks.keySet() ).descendingSet() )
+        {
+            ReentrantReadWriteLock lock = getLock( key );
+
+            if ( lock.getReadHoldCount() > 0 )
+            {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+
+    /**
+     * Acquires a WriteLock on all the known partitions, preventing any other operation
+     * to be processed.
+     */
+    public void lockAllWrite()
+    {
+        writersLock.lock();
+
+        for ( String key : new TreeSet<>( locks.keySet() ) )
+        {
+            getLock( key ).writeLock().lock();
+        }
+    }
+
+
+    /**
+     * Releases the WriteLock on all the known partitions
+     */
+    public void unlockAllWrite()
+    {
+        try
+        {
+            for ( String key : new TreeSet<>( locks.keySet() ).descendingSet() )
+            {
+                ReentrantReadWriteLock lock = getLock( key );
+
+                if ( lock.isWriteLockedByCurrentThread() )
+                {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+        finally
+        {
+            writersLock.unlock();
+        }
+    }
+
+
+    /**
+     * Sort and deduplicate the partitions keys, so that the locks are always taken in the same order
+     */
+    private static TreeSet<String> sortedKeys( Dn... partitionDns )
+    {
+        TreeSet<String> keys = new TreeSet<>();
+
+        if ( partitionDns != null )
+        {
+            for ( Dn partitionDn : partitionDns )
+            {
+                keys.add( getKey( partitionDn ) );
+            }
+        }
+
+        return keys;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.core.api.partition;
+
+import java.io.IOException;
+
+/**
+ * A listener registered on a {@link PartitionWriteTxn}, which is informed when the
+ * transaction is about to be completed.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface PartitionTxnListener
+{
+    /**
+     * Called before the transaction is committed or aborted, so that the changes which
+     * have been kept pending are written using this transaction. When the transaction is
+     * aborted, they will be dropped along with the other changes.
+     * 
+     * @param partitionTxn The transaction being completed
+     * @throws IOException If the pending changes can't be written
+     */
+    void beforeCompletion( PartitionWriteTxn partitionTxn ) throws IOException;
+}
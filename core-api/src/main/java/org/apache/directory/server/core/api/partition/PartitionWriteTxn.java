@@ -20,6 +20,8 @@
 package org.apache.directory.server.core.api.partition;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The Write Transaction interface
@@ -28,12 +30,69 @@ import java.io.IOException;
  */
 public class PartitionWriteTxn implements PartitionTxn
 {
+    /** The listeners to inform before the transaction is completed */
+    private List<PartitionTxnListener> listeners;
+
+
+    /**
+     * Registers a listener, which will be informed before the transaction is committed or aborted.
+     * 
+     * @param listener The listener to register
+     */
+    public void addListener( PartitionTxnListener listener )
+    {
+        if ( listeners == null )
+        {
+            listeners = new ArrayList<>( 1 );
+        }
+
+        listeners.add( listener );
+    }
+
+
+    /**
+     * Informs the registered listeners that the transaction is about to be completed. They
+     * are informed only once, and are all informed even if one of them fails.
+     * 
+     * @throws IOException If one of the listeners failed
+     */
+    protected void fireBeforeCompletion() throws IOException
+    {
+        if ( listeners == null )
+        {
+            return;
+        }
+
+        List<PartitionTxnListener> currentListeners = listeners;
+        listeners = null;
+        IOException exception = null;
+
+        for ( PartitionTxnListener listener : currentListeners )
+        {
+            try
+            {
+                listener.beforeCompletion( this );
+            }
+            catch ( IOException ioe )
+            {
+                exception = ioe;
+            }
+        }
+
+        if ( exception != null )
+        {
+            throw exception;
+        }
+    }
+
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void commit() throws IOException
     {
+        fireBeforeCompletion();
     }
 
 
@@ -43,6 +102,7 @@ public class PartitionWriteTxn implements PartitionTxn
     @Override
     public void abort() throws IOException
     {
+        fireBeforeCompletion();
     }
 
 
@@ -20,8 +20,13 @@
 package org.apache.directory.server.core.api.subtree;
 
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -31,7 +36,12 @@ import org.apache.directory.api.ldap.model.subtree.Subentry;
 
 /**
  * A cache for subtree specifications. It associates a Subentry with a Dn,
- * representing its position in the DIT.<br>
+ * representing its position in the DIT. The subentries are also indexed by
+ * their administrative point, so that the subentries which may select an
+ * entry are found by walking up its Dn.<br>
+ * When the cache is <em>virtual</em>, the subentry operational attributes
+ * (accessControlSubentries, collectiveAttributeSubentries, ...) aren't stored
+ * in the selected entries, but computed from this cache when an entry is read.<br>
  * This cache has a size limit set to 1000 at the moment. We should add a configuration
  * parameter to manage its size.
  *
@@ -51,6 +61,18 @@ public class SubentryCache implements Iterable<Dn>
     /** The Subentry cache */
     private final Map<Dn, Subentry> cache;
 
+    /** The subentries DNs, indexed by their administrative point Dn */
+    private final Map<Dn, Set<Dn>> subentriesByAp = new ConcurrentHashMap<>();
+
+    /** Tells if the subentry operational attributes are computed on read instead of being stored */
+    private volatile boolean virtual;
+
+    /** The pending propagations of the subentries operational attributes */
+    private final Set<SubentryPropagation> propagations = ConcurrentHashMap.newKeySet();
+
+    /** Set when the server is stopping : the failed propagations won't be retried */
+    private boolean stopping;
+
 
     /**
      * Creates a new instance of SubentryCache with a default maximum size.
@@ -101,6 +123,13 @@ public class SubentryCache implements Iterable<Dn>
         if ( oldSubentry != null )
         {
             cacheSize.decrementAndGet();
+
+            subentriesByAp.computeIfPresent( dn.getParent(), ( apDn, subentryDns ) ->
+            {
+                subentryDns.remove( dn );
+
+                return subentryDns.isEmpty() ? null : subentryDns;
+            } );
         }
 
         return oldSubentry;
@@ -126,12 +155,39 @@ public class SubentryCache implements Iterable<Dn>
         if ( oldSubentry == null )
         {
             cacheSize.getAndIncrement();
+
+            subentriesByAp.compute( dn.getParent(), ( apDn, subentryDns ) ->
+            {
+                Set<Dn> dns = ( subentryDns == null ) ? ConcurrentHashMap.newKeySet() : subentryDns;
+                dns.add( dn );
+
+                return dns;
+            } );
         }
 
         return oldSubentry;
     }
 
 
+    /**
+     * Tells if there is at least one collective attribute Subentry in the cache
+     *
+     * @return True if a collective attribute Subentry is found
+     */
+    public boolean hasCollectiveSubentries()
+    {
+        for ( Subentry subentry : cache.values() )
+        {
+            if ( subentry.isCollectiveAdminRole() )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
     /**
      * Tells if there is a Subentry associated with a Dn
      * @param dn The Dn
@@ -143,6 +199,63 @@ public class SubentryCache implements Iterable<Dn>
     }
 
 
+    /**
+     * Gets the DNs of the subentries which may select an entry, ie the subentries
+     * of the administrative points which are the entry itself or one of its ancestors.
+     *
+     * @param dn The entry Dn
+     * @return The subentries DNs, from the closest administrative point to the farthest
+     */
+    public List<Dn> getApplicableSubentries( Dn dn )
+    {
+        if ( subentriesByAp.isEmpty() || ( dn == null ) )
+        {
+            return Collections.emptyList();
+        }
+
+        List<Dn> subentryDns = new ArrayList<>();
+        Dn apDn = dn;
+
+        while ( !apDn.isEmpty() )
+        {
+            Set<Dn> apSubentries = subentriesByAp.get( apDn );
+
+            if ( apSubentries != null )
+            {
+                subentryDns.addAll( apSubentries );
+            }
+
+            apDn = apDn.getParent();
+        }
+
+        return subentryDns;
+    }
+
+
+    /**
+     * @return <code>true</code> if the subentry operational attributes are computed when
+     * an entry is read instead of being stored in the selected entries
+     */
+    public boolean isVirtual()
+    {
+        return virtual;
+    }
+
+
+    /**
+     * Sets the way the subentry operational attributes are managed. When virtual, adding,
+     * removing, moving or modifying a subentry only updates this cache, and the attributes
+     * are computed when an entry is read. This must be set before the server is started,
+     * as the attributes stored in the entries aren't rebuilt when the mode changes.
+     *
+     * @param virtual <code>true</code> if the subentry operational attributes are not stored
+     */
+    public void setVirtual( boolean virtual )
+    {
+        this.virtual = virtual;
+    }
+
+
     /**
      * @return An Iterator over the Subentry's DNs 
      */
@@ -152,6 +265,146 @@ public class SubentryCache implements Iterable<Dn>
     }
 
 
+    /**
+     * Registers a propagation of a subentry operational attributes. Until it's
+     * ended, the entries it covers must be evaluated on the fly.
+     *
+     * @param propagation The started propagation
+     */
+    public void startPropagation( SubentryPropagation propagation )
+    {
+        propagations.add( propagation );
+    }
+
+
+    /**
+     * Unregisters a propagation once all the selected entries have been updated.
+     *
+     * @param propagation The ended propagation
+     */
+    public void endPropagation( SubentryPropagation propagation )
+    {
+        propagation.setDone();
+
+        synchronized ( propagations )
+        {
+            propagations.remove( propagation );
+            propagations.notifyAll();
+        }
+    }
+
+
+    /**
+     * Marks a propagation as failed. It stays registered, so that the entries it
+     * covers are still evaluated on the fly, until it's retried.
+     *
+     * @param propagation The failed propagation
+     */
+    public void failPropagation( SubentryPropagation propagation )
+    {
+        synchronized ( propagations )
+        {
+            propagation.setFailed( true );
+            propagations.notifyAll();
+        }
+    }
+
+
+    /**
+     * Restarts a failed propagation, unless the server is stopping.
+     *
+     * @param propagation The failed propagation
+     * @return <code>true</code> if the propagation can be retried
+     */
+    public boolean retryPropagation( SubentryPropagation propagation )
+    {
+        synchronized ( propagations )
+        {
+            if ( stopping )
+            {
+                return false;
+            }
+
+            propagation.setFailed( false );
+
+            return true;
+        }
+    }
+
+
+    /**
+     * Forbids the failed propagations to be retried. This is called when the
+     * server is stopped, before waiting for the running propagations.
+     */
+    public void stopPropagations()
+    {
+        synchronized ( propagations )
+        {
+            stopping = true;
+        }
+    }
+
+
+    /**
+     * Waits for all the pending propagations to be either ended, or failed. This
+     * is called when the server is stopped, before the partitions are closed.
+     */
+    public void awaitPropagations()
+    {
+        synchronized ( propagations )
+        {
+            while ( isPropagating() )
+            {
+                try
+                {
+                    propagations.wait();
+                }
+                catch ( InterruptedException ie )
+                {
+                    Thread.currentThread().interrupt();
+
+                    return;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Tells if some propagation is running, or waiting to run
+     */
+    private boolean isPropagating()
+    {
+        for ( SubentryPropagation propagation : propagations )
+        {
+            if ( !propagation.isFailed() )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * @return <code>true</code> if some subentry operational attributes are being propagated
+     */
+    public boolean hasPropagations()
+    {
+        return !propagations.isEmpty();
+    }
+
+
+    /**
+     * @return The pending propagations, with their progress
+     */
+    public Collection<SubentryPropagation> getPropagations()
+    {
+        return Collections.unmodifiableSet( propagations );
+    }
+
+
     /**
      * @return The number of elements in the cache
      */
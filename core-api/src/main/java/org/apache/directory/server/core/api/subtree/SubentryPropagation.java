@@ -0,0 +1,269 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.core.api.subtree;
+
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.subtree.AdministrativeRole;
+import org.apache.directory.api.ldap.model.subtree.Subentry;
+import org.apache.directory.api.ldap.model.subtree.SubtreeSpecification;
+
+
+/**
+ * The state of a pending rewrite of the subentry operational attributes
+ * (accessControlSubentries, collectiveAttributeSubentries, ...) of the entries
+ * selected by a subentry. Until the propagation is done, the stored values of
+ * those attributes can't be trusted for the entries it covers, and the
+ * selection has to be evaluated on the fly (see {@link SubentryUtils}).
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SubentryPropagation
+{
+    /** The propagated subentry Dn */
+    private final Dn subentryDn;
+
+    /** The subentry roles and subtreeSpecification when the propagation started */
+    private final Subentry subentry;
+
+    /** The subentry roles when the propagation started */
+    private final Set<AdministrativeRole> administrativeRoles;
+
+    /** The subtreeSpecification which selects the entries to rewrite */
+    private final SubtreeSpecification subtreeSpecification;
+
+    /** Tells if the references are added or removed */
+    private final boolean adding;
+
+    /** The number of candidates read so far */
+    private final AtomicLong scanned = new AtomicLong();
+
+    /** The number of entries modified so far */
+    private final AtomicLong updated = new AtomicLong();
+
+    /** The start date */
+    private final long startTime;
+
+    /** Set when the propagation is over */
+    private volatile boolean done;
+
+    /** Set when the propagation has failed, until it's retried */
+    private volatile boolean failed;
+
+
+    /**
+     * Creates a new instance of SubentryPropagation.
+     *
+     * @param subentryDn The subentry Dn
+     * @param subentry The subentry
+     * @param subtreeSpecification The subtreeSpecification selecting the entries to rewrite
+     * @param adding <code>true</code> if the references have to be added, <code>false</code> if
+     * they have to be removed
+     */
+    public SubentryPropagation( Dn subentryDn, Subentry subentry, SubtreeSpecification subtreeSpecification,
+        boolean adding )
+    {
+        this.subentryDn = subentryDn;
+        this.administrativeRoles = getAdministrativeRoles( subentry );
+        this.subentry = new Subentry();
+        this.subentry.setAdministrativeRoles( new HashSet<>( administrativeRoles ) );
+        this.subentry.setSubtreeSpecification( subtreeSpecification );
+        this.subtreeSpecification = subtreeSpecification;
+        this.adding = adding;
+        startTime = System.currentTimeMillis();
+    }
+
+
+    /**
+     * Copies the roles of a subentry, as it may be modified while we propagate it
+     */
+    private static Set<AdministrativeRole> getAdministrativeRoles( Subentry subentry )
+    {
+        Set<AdministrativeRole> roles = new HashSet<>();
+
+        if ( subentry.isAccessControlAdminRole() )
+        {
+            roles.add( AdministrativeRole.AccessControlInnerArea );
+        }
+
+        if ( subentry.isSchemaAdminRole() )
+        {
+            roles.add( AdministrativeRole.SubSchemaSpecificArea );
+        }
+
+        if ( subentry.isCollectiveAdminRole() )
+        {
+            roles.add( AdministrativeRole.CollectiveAttributeSpecificArea );
+        }
+
+        if ( subentry.isTriggersAdminRole() )
+        {
+            roles.add( AdministrativeRole.TriggerExecutionInnerArea );
+        }
+
+        return roles;
+    }
+
+
+    /**
+     * @return The propagated subentry Dn
+     */
+    public Dn getSubentryDn()
+    {
+        return subentryDn;
+    }
+
+
+    /**
+     * @return The subentry roles at the beginning of the propagation
+     */
+    public Subentry getSubentry()
+    {
+        return subentry;
+    }
+
+
+    /**
+     * @return The subentry roles at the beginning of the propagation
+     */
+    public Set<AdministrativeRole> getAdministrativeRoles()
+    {
+        return Collections.unmodifiableSet( administrativeRoles );
+    }
+
+
+    /**
+     * @return The subtreeSpecification selecting the entries to rewrite
+     */
+    public SubtreeSpecification getSubtreeSpecification()
+    {
+        return subtreeSpecification;
+    }
+
+
+    /**
+     * @return <code>true</code> if the references to the subentry are added
+     */
+    public boolean isAdding()
+    {
+        return adding;
+    }
+
+
+    /**
+     * @return The number of candidates read so far
+     */
+    public long getScanned()
+    {
+        return scanned.get();
+    }
+
+
+    /**
+     * Increments the number of candidates read so far
+     */
+    public void incrementScanned()
+    {
+        scanned.incrementAndGet();
+    }
+
+
+    /**
+     * @return The number of entries modified so far
+     */
+    public long getUpdated()
+    {
+        return updated.get();
+    }
+
+
+    /**
+     * Adds to the number of entries modified so far
+     * 
+     * @param count The number of entries modified by the last batch
+     */
+    public void addUpdated( long count )
+    {
+        updated.addAndGet( count );
+    }
+
+
+    /**
+     * @return The propagation start date
+     */
+    public long getStartTime()
+    {
+        return startTime;
+    }
+
+
+    /**
+     * @return <code>true</code> when the propagation is over
+     */
+    public boolean isDone()
+    {
+        return done;
+    }
+
+
+    /**
+     * Marks the propagation as over
+     */
+    public void setDone()
+    {
+        done = true;
+    }
+
+
+    /**
+     * @return <code>true</code> if the propagation has failed, and is waiting to be retried
+     */
+    public boolean isFailed()
+    {
+        return failed;
+    }
+
+
+    /**
+     * Marks the propagation as failed, or as retried
+     *
+     * @param failed <code>true</code> if the propagation has failed
+     */
+    public void setFailed( boolean failed )
+    {
+        this.failed = failed;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return ( adding ? "add " : "remove " ) + subentryDn + " : " + scanned.get() + " scanned, " + updated.get()
+            + " updated" + ( done ? ", done" : "" ) + ( failed ? ", failed" : "" );
+    }
+}
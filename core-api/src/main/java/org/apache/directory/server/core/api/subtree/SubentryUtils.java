@@ -26,10 +26,13 @@ import org.apache.directory.api.ldap.model.entry.DefaultEntry;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.ldap.model.subtree.Subentry;
 import org.apache.directory.api.ldap.model.subtree.SubtreeSpecification;
 import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.entry.ClonedServerEntry;
+import org.apache.directory.server.core.api.interceptor.context.FilteringOperationContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -73,10 +76,17 @@ public class SubentryUtils
         SubentryCache subentryCache = directoryService.getSubentryCache();
         SubtreeEvaluator evaluator = directoryService.getEvaluator();
 
-        for ( Dn subentryDn : subentryCache )
+        for ( Dn subentryDn : subentryCache.getApplicableSubentries( dn ) )
         {
             Dn apDn = subentryDn.getParent();
             Subentry subentry = subentryCache.getSubentry( subentryDn );
+
+            if ( subentry == null )
+            {
+                // Removed in the meantime
+                continue;
+            }
+
             SubtreeSpecification ss = subentry.getSubtreeSpecification();
 
             if ( evaluator.evaluate( ss, apDn, dn, entryAttrs ) )
@@ -142,4 +152,197 @@ public class SubentryUtils
 
         return subentryAttrs;
     }
+
+
+    /**
+     * Tells if a subentry role is associated with a subentry operational attribute
+     */
+    private boolean hasRole( Subentry subentry, AttributeType attributeType )
+    {
+        if ( subentry == null )
+        {
+            return false;
+        }
+
+        if ( attributeType.equals( directoryService.getAtProvider().getAccessControlSubentries() ) )
+        {
+            return subentry.isAccessControlAdminRole();
+        }
+
+        if ( attributeType.equals( directoryService.getAtProvider().getSubschemaSubentry() ) )
+        {
+            return subentry.isSchemaAdminRole();
+        }
+
+        if ( attributeType.equals( directoryService.getAtProvider().getCollectiveAttributeSubentries() ) )
+        {
+            return subentry.isCollectiveAdminRole();
+        }
+
+        if ( attributeType.equals( directoryService.getAtProvider().getTriggerExecutionSubentries() ) )
+        {
+            return subentry.isTriggersAdminRole();
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Gets one of the subentry operational attributes of an entry. The stored values
+     * are used, unless some subentry is still being propagated : the subtreeSpecification
+     * of such a subentry is then evaluated on the fly, and the returned attribute
+     * is a copy where the reference to the subentry has been added or removed.
+     * When the SubentryCache is virtual, the attribute is always computed from the
+     * subentries of the administrative points above the entry.
+     *
+     * @param dn the normalized distinguished name of the entry
+     * @param entry the stored entry
+     * @param attributeType the subentry operational attribute
+     * @return the attribute, or null if the entry isn't selected by any subentry
+     * @throws LdapException if the subtreeSpecification evaluation failed
+     */
+    public Attribute getSubentryAttribute( Dn dn, Entry entry, AttributeType attributeType ) throws LdapException
+    {
+        SubentryCache subentryCache = directoryService.getSubentryCache();
+
+        if ( subentryCache.isVirtual() )
+        {
+            return computeSubentryAttribute( dn, entry, attributeType );
+        }
+
+        Attribute attribute = entry.get( attributeType );
+
+        if ( !subentryCache.hasPropagations() )
+        {
+            return attribute;
+        }
+
+        SubtreeEvaluator evaluator = directoryService.getEvaluator();
+        Attribute evaluated = attribute;
+
+        for ( SubentryPropagation propagation : subentryCache.getPropagations() )
+        {
+            Dn subentryDn = propagation.getSubentryDn();
+            Subentry subentry = subentryCache.getSubentry( subentryDn );
+
+            if ( !hasRole( propagation.getSubentry(), attributeType ) && !hasRole( subentry, attributeType ) )
+            {
+                continue;
+            }
+
+            // The reference is expected if the current subentry still exists and selects the entry
+            boolean selected = hasRole( subentry, attributeType )
+                && evaluator.evaluate( subentry.getSubtreeSpecification(), subentryDn.getParent(), dn, entry );
+            boolean present = ( evaluated != null ) && evaluated.contains( subentryDn.getName() );
+
+            if ( selected == present )
+            {
+                continue;
+            }
+
+            if ( evaluated == attribute )
+            {
+                evaluated = ( attribute == null ) ? new DefaultAttribute( attributeType ) : attribute.clone();
+            }
+
+            if ( selected )
+            {
+                evaluated.add( subentryDn.getName() );
+            }
+            else
+            {
+                evaluated.remove( subentryDn.getName() );
+            }
+        }
+
+        if ( ( evaluated != null ) && ( evaluated.size() == 0 ) )
+        {
+            return null;
+        }
+
+        return evaluated;
+    }
+
+
+    /**
+     * Computes one of the subentry operational attributes of an entry, evaluating
+     * the subentries of the administrative points above it.
+     */
+    private Attribute computeSubentryAttribute( Dn dn, Entry entry, AttributeType attributeType )
+        throws LdapException
+    {
+        SubentryCache subentryCache = directoryService.getSubentryCache();
+        SubtreeEvaluator evaluator = directoryService.getEvaluator();
+        Attribute attribute = null;
+
+        for ( Dn subentryDn : subentryCache.getApplicableSubentries( dn ) )
+        {
+            Subentry subentry = subentryCache.getSubentry( subentryDn );
+
+            if ( hasRole( subentry, attributeType )
+                && evaluator.evaluate( subentry.getSubtreeSpecification(), subentryDn.getParent(), dn, entry ) )
+            {
+                if ( attribute == null )
+                {
+                    attribute = new DefaultAttribute( attributeType );
+                }
+
+                attribute.add( subentryDn.getName() );
+            }
+        }
+
+        return attribute;
+    }
+
+
+    /**
+     * Updates the returned subentry operational attributes of an entry with the
+     * references to the subentries which are still being propagated, or with the
+     * computed references when the SubentryCache is virtual.
+     *
+     * @param opContext the lookup or search context, giving the attributes to return
+     * @param entry the returned entry
+     * @throws LdapException if the subtreeSpecification evaluation failed
+     */
+    public void updateSubentryAttributes( FilteringOperationContext opContext, Entry entry ) throws LdapException
+    {
+        SubentryCache subentryCache = directoryService.getSubentryCache();
+
+        if ( !subentryCache.isVirtual() && !subentryCache.hasPropagations() )
+        {
+            return;
+        }
+
+        Entry stored = entry;
+
+        if ( entry instanceof ClonedServerEntry )
+        {
+            stored = ( ( ClonedServerEntry ) entry ).getOriginalEntry();
+        }
+
+        for ( AttributeType attributeType : directoryService.getAtProvider().getSubentryOperationalAttributes() )
+        {
+            if ( !opContext.contains( schemaManager, attributeType ) )
+            {
+                continue;
+            }
+
+            Attribute attribute = getSubentryAttribute( entry.getDn(), stored, attributeType );
+
+            if ( attribute == stored.get( attributeType ) )
+            {
+                continue;
+            }
+
+            if ( attribute == null )
+            {
+                entry.removeAttributes( attributeType );
+            }
+            else
+            {
+                entry.put( attribute );
+            }
+        }
+    }
 }
@@ -45,6 +45,7 @@ import org.apache.directory.server.core.api.changelog.ChangeLog;
 import org.apache.directory.server.core.api.event.EventService;
 import org.apache.directory.server.core.api.interceptor.Interceptor;
 import org.apache.directory.server.core.api.journal.Journal;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
 import org.apache.directory.server.core.api.schema.SchemaPartition;
@@ -66,6 +67,9 @@ public class MockDirectoryService implements DirectoryService
     /** The schemaManager */
     SchemaManager schemaManager;
 
+    /** The metrics registry */
+    MetricsRegistry metricsRegistry = new MetricsRegistry();
+
 
     public MockDirectoryService()
     {
@@ -426,6 +430,28 @@ public class MockDirectoryService implements DirectoryService
     }
 
 
+    public boolean isInterceptorTracingEnabled()
+    {
+        return false;
+    }
+
+
+    public void setInterceptorTracingEnabled( boolean interceptorTracingEnabled )
+    {
+    }
+
+
+    public int getMaxSortedEntriesInMemory()
+    {
+        return 10000;
+    }
+
+
+    public void setMaxSortedEntriesInMemory( int maxSortedEntriesInMemory )
+    {
+    }
+
+
     public int getMaxPDUSize()
     {
         return Integer.MAX_VALUE;
@@ -542,6 +568,16 @@ public class MockDirectoryService implements DirectoryService
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MetricsRegistry getMetricsRegistry()
+    {
+        return metricsRegistry;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -581,6 +617,12 @@ public class MockDirectoryService implements DirectoryService
     }
 
 
+    @Override
+    public void updateInterceptorChains()
+    {
+    }
+
+
     @Override
     public void addFirst( Interceptor interceptor ) throws LdapException
     {
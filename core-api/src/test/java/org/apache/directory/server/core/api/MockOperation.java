@@ -33,6 +33,8 @@ import org.apache.directory.server.core.api.LdapPrincipal;
 import org.apache.directory.server.core.api.ReferralHandlingMode;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursorImpl;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
+import org.apache.directory.server.core.api.interceptor.Interceptor;
+import org.apache.directory.server.core.api.interceptor.InterceptorTrace;
 import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
@@ -231,6 +233,13 @@ public class MockOperation implements OperationContext
     }
 
 
+    @Override
+    public Interceptor getNextInterceptor( DirectoryService directoryService )
+    {
+        return null;
+    }
+
+
     @Override
     public int getCurrentInterceptor()
     {
@@ -271,4 +280,17 @@ public class MockOperation implements OperationContext
     {
         this.partition = partition;
     }
+
+
+    @Override
+    public InterceptorTrace getInterceptorTrace()
+    {
+        return null;
+    }
+
+
+    @Override
+    public void setInterceptorTrace( InterceptorTrace interceptorTrace )
+    {
+    }
 }
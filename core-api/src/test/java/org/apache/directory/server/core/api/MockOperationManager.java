@@ -25,6 +25,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursorImpl;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
@@ -152,7 +153,7 @@ public class MockOperationManager implements OperationManager
     /**
      * {@inheritDoc}
      */
-    public ReadWriteLock getRWLock()
+    public ReadWriteLock getRWLock( Dn partitionDn )
     {
         return new ReentrantReadWriteLock();
     }
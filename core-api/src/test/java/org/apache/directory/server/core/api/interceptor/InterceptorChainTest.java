@@ -0,0 +1,104 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.interceptor;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.directory.server.core.api.interceptor.context.HasEntryOperationContext;
+import org.junit.Test;
+
+
+/**
+ * Tests for the InterceptorChain class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class InterceptorChainTest
+{
+    /**
+     * An interceptor doing nothing
+     */
+    private static class NamedInterceptor extends BaseInterceptor
+    {
+        NamedInterceptor( String name )
+        {
+            super( name );
+        }
+    }
+
+
+    /**
+     * Check that the chain exposes the names of its interceptors
+     */
+    @Test
+    public void testNames()
+    {
+        InterceptorChain chain = new InterceptorChain( Arrays.<Interceptor> asList(
+            new NamedInterceptor( "first" ), new NamedInterceptor( "second" ) ) );
+
+        assertEquals( Arrays.asList( "first", "second" ), chain );
+        assertEquals( 0, InterceptorChain.EMPTY.size() );
+    }
+
+
+    /**
+     * Check that the chain can't be modified
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable()
+    {
+        List<String> chain = new InterceptorChain( Arrays.<Interceptor> asList( new NamedInterceptor( "first" ) ) );
+
+        chain.add( "second" );
+    }
+
+
+    /**
+     * Check that an operation walks through the chain without looking the interceptors up
+     */
+    @Test
+    public void testNextInterceptor()
+    {
+        Interceptor first = new NamedInterceptor( "first" );
+        Interceptor second = new NamedInterceptor( "second" );
+        InterceptorChain chain = new InterceptorChain( Arrays.asList( first, second ) );
+
+        HasEntryOperationContext hasEntryContext = new HasEntryOperationContext( null );
+        hasEntryContext.setInterceptors( chain );
+
+        assertSame( first, hasEntryContext.getNextInterceptor( null ) );
+        assertSame( second, hasEntryContext.getNextInterceptor( null ) );
+        assertNull( hasEntryContext.getNextInterceptor( null ) );
+        assertNull( hasEntryContext.getNextInterceptor( null ) );
+        assertEquals( 2, hasEntryContext.getCurrentInterceptor() );
+
+        // A second operation starts from the beginning of the same chain
+        HasEntryOperationContext otherContext = new HasEntryOperationContext( null );
+        otherContext.setInterceptors( chain );
+
+        assertSame( first, otherContext.getNextInterceptor( null ) );
+    }
+}
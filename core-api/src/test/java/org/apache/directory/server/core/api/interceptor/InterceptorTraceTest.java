@@ -0,0 +1,115 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.interceptor;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.directory.server.core.api.interceptor.InterceptorTrace.Step;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
+import org.junit.Test;
+
+
+/**
+ * Tests for the InterceptorTrace class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class InterceptorTraceTest
+{
+    private static void spin( long nanos )
+    {
+        long end = System.nanoTime() + nanos;
+
+        while ( System.nanoTime() < end )
+        {
+            // Busy wait
+        }
+    }
+
+
+    /**
+     * Check that the self time of an interceptor excludes the time spent in the next interceptors
+     */
+    @Test
+    public void testSelfTime()
+    {
+        MetricsRegistry metrics = new MetricsRegistry();
+        InterceptorTrace trace = new InterceptorTrace( "SEARCH_REQUEST", metrics );
+
+        trace.enter( "aciAuthorizationInterceptor" );
+        spin( 2000000L );
+        trace.enter( "subentryInterceptor" );
+        spin( 1000000L );
+        trace.enter( "FINAL" );
+        spin( 5000000L );
+        trace.exit();
+        trace.exit();
+        trace.exit();
+
+        List<Step> steps = trace.getSteps();
+
+        assertEquals( 3, steps.size() );
+        assertEquals( "aciAuthorizationInterceptor", steps.get( 0 ).getInterceptor() );
+        assertEquals( 0, steps.get( 0 ).getDepth() );
+        assertEquals( "FINAL", steps.get( 2 ).getInterceptor() );
+        assertEquals( 2, steps.get( 2 ).getDepth() );
+
+        long aciSelf = trace.getSelfTime( "aciAuthorizationInterceptor" );
+        long finalSelf = trace.getSelfTime( "FINAL" );
+
+        assertTrue( aciSelf >= 2000000L );
+        assertTrue( aciSelf < steps.get( 0 ).getTotalTime() - 6000000L );
+        assertTrue( finalSelf >= 5000000L );
+        assertEquals( steps.get( 0 ).getTotalTime(),
+            aciSelf + trace.getSelfTime( "subentryInterceptor" ) + finalSelf );
+
+        assertEquals( 1L, metrics.getInterceptorLatency( "FINAL", "SEARCH_REQUEST" ).getCount() );
+        assertTrue( metrics.getInterceptorSelfTimePercentileMicros( "FINAL", 100d ) >= 5000L );
+    }
+
+
+    /**
+     * Check that exitAll closes all the opened steps, and that a trace can be used without registry
+     */
+    @Test
+    public void testExitAll()
+    {
+        InterceptorTrace trace = new InterceptorTrace( "ADD_REQUEST", null );
+
+        trace.enter( "normalizationInterceptor" );
+        trace.enter( "schemaInterceptor" );
+        trace.exitAll();
+
+        // Unbalanced exits are ignored
+        trace.exit();
+
+        for ( Step step : trace.getSteps() )
+        {
+            assertTrue( step.getTotalTime() >= 0L );
+            assertTrue( step.getSelfTime() >= 0L );
+        }
+
+        assertTrue( trace.toString().contains( "  schemaInterceptor : self = " ) );
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.metrics;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+
+/**
+ * Tests for the LatencyHistogram class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LatencyHistogramTest
+{
+    /**
+     * Check that the small values are recorded exactly
+     */
+    @Test
+    public void testSmallValues()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for ( long i = 0; i < LatencyHistogram.SUB_BUCKETS; i++ )
+        {
+            histogram.record( i );
+        }
+
+        assertEquals( LatencyHistogram.SUB_BUCKETS, histogram.getCount() );
+        assertEquals( LatencyHistogram.SUB_BUCKETS - 1, histogram.getMax() );
+        assertEquals( 15L, histogram.getPercentile( 50d ) );
+        assertEquals( LatencyHistogram.SUB_BUCKETS - 1, histogram.getPercentile( 100d ) );
+    }
+
+
+    /**
+     * Check the percentiles precision on a uniform distribution
+     */
+    @Test
+    public void testPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // 1 to 100 000 microseconds
+        for ( long i = 1; i <= 100000L; i++ )
+        {
+            histogram.record( i * 1000L );
+        }
+
+        assertEquals( 100000L, histogram.getCount() );
+        assertEquals( 100000000L, histogram.getMax() );
+        assertPercentile( 50000000L, histogram.getPercentile( 50d ) );
+        assertPercentile( 99000000L, histogram.getPercentile( 99d ) );
+        assertPercentile( 99900000L, histogram.getPercentile( 99.9d ) );
+        assertEquals( 100000000L, histogram.getPercentile( 100d ) );
+    }
+
+
+    /**
+     * The buckets have a relative precision of 1/32
+     */
+    private void assertPercentile( long expected, long value )
+    {
+        assertTrue( "expected " + expected + " but was " + value, value >= expected );
+        assertTrue( "expected " + expected + " but was " + value, value <= expected + expected / 16 );
+    }
+
+
+    /**
+     * Check that an empty histogram returns 0, and that reset() forgets the recorded values
+     */
+    @Test
+    public void testEmptyAndReset()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals( 0L, histogram.getPercentile( 99d ) );
+
+        histogram.record( 1000L );
+        histogram.record( -5L );
+        histogram.record( Long.MAX_VALUE );
+
+        assertEquals( 3L, histogram.getCount() );
+        assertEquals( Long.MAX_VALUE, histogram.getPercentile( 100d ) );
+
+        histogram.reset();
+
+        assertEquals( 0L, histogram.getCount() );
+        assertEquals( 0L, histogram.getSum() );
+        assertEquals( 0L, histogram.getMax() );
+        assertEquals( 0L, histogram.getPercentile( 99d ) );
+    }
+
+
+    /**
+     * Check the merge of two histograms
+     */
+    @Test
+    public void testAdd()
+    {
+        LatencyHistogram h1 = new LatencyHistogram();
+        LatencyHistogram h2 = new LatencyHistogram();
+
+        h1.record( 10L );
+        h2.record( 20L );
+        h2.record( 30L );
+
+        h1.add( h2 );
+
+        assertEquals( 3L, h1.getCount() );
+        assertEquals( 60L, h1.getSum() );
+        assertEquals( 30L, h1.getMax() );
+        assertEquals( 20L, h1.getPercentile( 50d ) );
+    }
+
+
+    /**
+     * Check that concurrent writers don't lose any value
+     */
+    @Test
+    public void testConcurrentRecords() throws Exception
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        CountDownLatch done = new CountDownLatch( 4 );
+
+        for ( int i = 0; i < 4; i++ )
+        {
+            executor.execute( () ->
+            {
+                for ( long j = 0; j < 100000L; j++ )
+                {
+                    histogram.record( j );
+                }
+
+                done.countDown();
+            } );
+        }
+
+        assertTrue( done.await( 30, TimeUnit.SECONDS ) );
+        executor.shutdownNow();
+
+        assertEquals( 400000L, histogram.getCount() );
+        assertEquals( 99999L, histogram.getMax() );
+    }
+}
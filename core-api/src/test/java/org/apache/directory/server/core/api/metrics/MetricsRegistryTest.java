@@ -0,0 +1,151 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.metrics;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+
+/**
+ * Tests for the MetricsRegistry class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MetricsRegistryTest
+{
+    /**
+     * Check the latencies are merged across the partitions
+     */
+    @Test
+    public void testOperationLatencies()
+    {
+        MetricsRegistry metrics = new MetricsRegistry();
+
+        metrics.getLatency( "search", "example" ).record( 2000L );
+        metrics.getLatency( "search", "system" ).record( 4000L );
+
+        assertEquals( 2L, metrics.getOperationCount( "search" ) );
+        assertEquals( 0L, metrics.getOperationCount( "add" ) );
+        assertEquals( 4L, metrics.getLatencyPercentileMicros( "search", 100d ) );
+
+        metrics.reset();
+
+        assertEquals( 0L, metrics.getOperationCount( "search" ) );
+    }
+
+
+    /**
+     * Check the failed operations are counted across the partitions, and scraped
+     */
+    @Test
+    public void testErrors()
+    {
+        MetricsRegistry metrics = new MetricsRegistry();
+
+        metrics.getLatency( "bind", MetricsRegistry.NO_PARTITION ).record( 2000L );
+        metrics.getLatency( "bind", MetricsRegistry.NO_PARTITION ).record( 3000L );
+        metrics.recordError( "bind", MetricsRegistry.NO_PARTITION );
+        metrics.recordError( "lookup", "example" );
+        metrics.recordError( "lookup", "system" );
+
+        assertEquals( 2L, metrics.getOperationCount( "bind" ) );
+        assertEquals( 1L, metrics.getErrorCount( "bind" ) );
+        assertEquals( 2L, metrics.getErrorCount( "lookup" ) );
+        assertEquals( 0L, metrics.getErrorCount( "add" ) );
+
+        String scraped = metrics.scrape();
+
+        assertTrue( scraped, scraped.contains(
+            "apacheds_operation_errors_total{operation=\"bind\",partition=\"\"} 1\n" ) );
+        assertTrue( scraped, scraped.contains(
+            "apacheds_operation_errors_total{operation=\"lookup\",partition=\"example\"} 1\n" ) );
+
+        metrics.reset();
+
+        assertEquals( 0L, metrics.getErrorCount( "lookup" ) );
+    }
+
+
+    /**
+     * Check the scraped text
+     */
+    @Test
+    public void testScrape()
+    {
+        MetricsRegistry metrics = new MetricsRegistry();
+        Cache<String, String> cache = Caffeine.newBuilder().maximumSize( 10L ).recordStats().build();
+
+        metrics.getLatency( "add", "ex\"ample" ).record( 1500000L );
+        metrics.registerCache( "entryDn", "example", cache );
+
+        cache.put( "a", "a" );
+        cache.getIfPresent( "a" );
+        cache.getIfPresent( "b" );
+        cache.getIfPresent( "c" );
+
+        String scraped = metrics.scrape();
+
+        assertTrue( scraped, scraped.contains(
+            "apacheds_operation_latency_seconds_count{operation=\"add\",partition=\"ex\\\"ample\"} 1\n" ) );
+        assertTrue( scraped, scraped.contains(
+            "apacheds_operation_latency_seconds_sum{operation=\"add\",partition=\"ex\\\"ample\"} 0.001500000\n" ) );
+        assertTrue( scraped, scraped.contains(
+            "apacheds_cache_requests_total{cache=\"entryDn\",partition=\"example\",result=\"hit\"} 1\n" ) );
+        assertTrue( scraped, scraped.contains(
+            "apacheds_cache_requests_total{cache=\"entryDn\",partition=\"example\",result=\"miss\"} 2\n" ) );
+
+        metrics.unregisterCaches( "example" );
+
+        assertTrue( !metrics.scrape().contains( "entryDn" ) );
+    }
+
+
+    /**
+     * Check a single cache can be unregistered, and that two registries don't share anything
+     */
+    @Test
+    public void testUnregisterCache()
+    {
+        MetricsRegistry metrics = new MetricsRegistry();
+        MetricsRegistry otherMetrics = new MetricsRegistry();
+        Cache<String, String> dnCache = Caffeine.newBuilder().maximumSize( 10L ).recordStats().build();
+        Cache<String, String> credentialCache = Caffeine.newBuilder().maximumSize( 10L ).recordStats().build();
+
+        metrics.registerCache( "dn", MetricsRegistry.NO_PARTITION, dnCache );
+        metrics.registerCache( "credentials", MetricsRegistry.NO_PARTITION, credentialCache );
+        metrics.getLatency( "add", MetricsRegistry.NO_PARTITION ).record( 1000L );
+
+        assertNull( otherMetrics.getCacheStats( "dn", MetricsRegistry.NO_PARTITION ) );
+        assertEquals( 0L, otherMetrics.getOperationCount( "add" ) );
+
+        metrics.unregisterCache( "dn", MetricsRegistry.NO_PARTITION );
+
+        assertNull( metrics.getCacheStats( "dn", MetricsRegistry.NO_PARTITION ) );
+        assertNotNull( metrics.getCacheStats( "credentials", MetricsRegistry.NO_PARTITION ) );
+    }
+}
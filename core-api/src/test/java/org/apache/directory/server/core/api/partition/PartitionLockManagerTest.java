@@ -0,0 +1,259 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.partition;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests for the PartitionLockManager class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PartitionLockManagerTest
+{
+    private static Dn people;
+    private static Dn groups;
+
+    private static final int NB_READERS = 8;
+    private static final int NB_READS = 10000;
+    private static final int NB_SLOW_READS = 50;
+
+
+    @BeforeClass
+    public static void init() throws Exception
+    {
+        people = new Dn( "ou=people" );
+        groups = new Dn( "ou=groups" );
+    }
+
+
+    /**
+     * Runs some readers on a partition, each of them holding the read lock for
+     * about a millisecond on each read.
+     *
+     * @return the time it took for all the readers to complete, in nanoseconds
+     */
+    private long runReaders( PartitionLockManager lockManager, Dn partition, int nbReaders, int nbReadsPerReader )
+        throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( nbReaders );
+        AtomicLong nbReads = new AtomicLong();
+        CountDownLatch readersDone = new CountDownLatch( nbReaders );
+
+        try
+        {
+            long t0 = System.nanoTime();
+
+            for ( int i = 0; i < nbReaders; i++ )
+            {
+                executor.execute( () ->
+                {
+                    for ( int j = 0; j < nbReadsPerReader; j++ )
+                    {
+                        lockManager.lockRead( partition );
+
+                        try
+                        {
+                            Thread.sleep( 1L );
+                            nbReads.incrementAndGet();
+                        }
+                        catch ( InterruptedException ie )
+                        {
+                            Thread.currentThread().interrupt();
+
+                            return;
+                        }
+                        finally
+                        {
+                            lockManager.unlockRead( partition );
+                        }
+                    }
+
+                    readersDone.countDown();
+                } );
+            }
+
+            assertTrue( readersDone.await( 30, TimeUnit.SECONDS ) );
+            assertEquals( ( long ) nbReaders * nbReadsPerReader, nbReads.get() );
+
+            return System.nanoTime() - t0;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Check that the reads on a partition scale with the number of readers while
+     * a writer holds the lock on another partition : N readers doing the same
+     * total number of reads as a single reader must complete much faster, which
+     * would not be the case if the writer or the readers were excluding each others.
+     */
+    @Test
+    public void testReadsScaleWhileWritingAnotherPartition() throws Exception
+    {
+        PartitionLockManager lockManager = new PartitionLockManager();
+
+        // The writer holds the lock on ou=people during the whole test
+        lockManager.lockWrite( people );
+
+        try
+        {
+            long singleReader = runReaders( lockManager, groups, 1, NB_READERS * NB_SLOW_READS );
+            long manyReaders = runReaders( lockManager, groups, NB_READERS, NB_SLOW_READS );
+
+            // Perfect scaling would be NB_READERS times faster, ask for at least twice as fast
+            assertTrue( "1 reader : " + singleReader + "ns, " + NB_READERS + " readers : " + manyReaders + "ns",
+                manyReaders * 2L < singleReader );
+        }
+        finally
+        {
+            lockManager.unlockWrite( people );
+        }
+    }
+
+
+    /**
+     * Check that a writer still excludes the readers of its own partition
+     */
+    @Test
+    public void testWriteExcludesReadersOnSamePartition() throws Exception
+    {
+        PartitionLockManager lockManager = new PartitionLockManager();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        lockManager.lockWrite( people );
+
+        try
+        {
+            Future<Boolean> peopleRead = executor.submit(
+                () -> lockManager.getLock( people ).readLock().tryLock( 100, TimeUnit.MILLISECONDS ) );
+
+            assertFalse( peopleRead.get() );
+
+            Future<Boolean> groupsRead = executor.submit( () ->
+            {
+                boolean locked = lockManager.getLock( groups ).readLock().tryLock( 100, TimeUnit.MILLISECONDS );
+
+                if ( locked )
+                {
+                    lockManager.unlockRead( groups );
+                }
+
+                return locked;
+            } );
+
+            assertTrue( groupsRead.get() );
+        }
+        finally
+        {
+            lockManager.unlockWrite( people );
+            executor.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Check that concurrent moves across two partitions, in opposite directions,
+     * do not deadlock
+     */
+    @Test
+    public void testCrossPartitionMovesDoNotDeadlock() throws Exception
+    {
+        PartitionLockManager lockManager = new PartitionLockManager();
+        ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        CountDownLatch done = new CountDownLatch( 2 );
+
+        executor.execute( () ->
+        {
+            for ( int i = 0; i < NB_READS; i++ )
+            {
+                lockManager.lockWrite( people, groups );
+                lockManager.unlockWrite( people, groups );
+            }
+
+            done.countDown();
+        } );
+
+        executor.execute( () ->
+        {
+            for ( int i = 0; i < NB_READS; i++ )
+            {
+                lockManager.lockWrite( groups, people );
+                lockManager.unlockWrite( groups, people );
+            }
+
+            done.countDown();
+        } );
+
+        assertTrue( done.await( 30, TimeUnit.SECONDS ) );
+        executor.shutdownNow();
+    }
+
+
+    /**
+     * Check that the global write lock excludes the readers of every partition
+     */
+    @Test
+    public void testLockAllWrite() throws Exception
+    {
+        PartitionLockManager lockManager = new PartitionLockManager();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        // Register the partitions
+        lockManager.getLock( people );
+        lockManager.getLock( groups );
+
+        lockManager.lockAllWrite();
+
+        try
+        {
+            Future<Boolean> groupsRead = executor.submit(
+                () -> lockManager.getLock( groups ).readLock().tryLock( 100, TimeUnit.MILLISECONDS ) );
+
+            assertFalse( groupsRead.get() );
+        }
+        finally
+        {
+            lockManager.unlockAllWrite();
+            executor.shutdownNow();
+        }
+
+        lockManager.lockAllRead();
+        lockManager.unlockAllRead();
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.subtree;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.subtree.AdministrativeRole;
+import org.apache.directory.api.ldap.model.subtree.BaseSubtreeSpecification;
+import org.apache.directory.api.ldap.model.subtree.Subentry;
+import org.apache.directory.api.ldap.model.subtree.SubtreeSpecification;
+import org.junit.Test;
+
+
+/**
+ * Tests the tracking of the subentries propagations in the SubentryCache.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SubentryCacheTest
+{
+    private SubentryPropagation createPropagation( boolean adding ) throws Exception
+    {
+        SubtreeSpecification ss = new BaseSubtreeSpecification();
+        Subentry subentry = new Subentry();
+        subentry.setAdministrativeRoles( EnumSet.of( AdministrativeRole.AccessControlInnerArea ) );
+        subentry.setSubtreeSpecification( ss );
+
+        return new SubentryPropagation( new Dn( "cn=acs,ou=system" ), subentry, ss, adding );
+    }
+
+
+    @Test
+    public void testApplicableSubentries() throws Exception
+    {
+        SubentryCache cache = new SubentryCache();
+        Dn systemAcs = new Dn( "cn=acs,ou=system" );
+        Dn peopleAcs = new Dn( "cn=acs,ou=people,ou=system" );
+        Dn groupsAcs = new Dn( "cn=acs,ou=groups,ou=system" );
+
+        assertTrue( cache.getApplicableSubentries( new Dn( "uid=jdoe,ou=people,ou=system" ) ).isEmpty() );
+
+        cache.addSubentry( systemAcs, new Subentry() );
+        cache.addSubentry( peopleAcs, new Subentry() );
+        cache.addSubentry( groupsAcs, new Subentry() );
+
+        List<Dn> subentryDns = cache.getApplicableSubentries( new Dn( "uid=jdoe,ou=people,ou=system" ) );
+        assertEquals( 2, subentryDns.size() );
+        assertEquals( peopleAcs, subentryDns.get( 0 ) );
+        assertEquals( systemAcs, subentryDns.get( 1 ) );
+
+        // The AP itself is selected by its subentries
+        assertEquals( Arrays.asList( groupsAcs, systemAcs ),
+            cache.getApplicableSubentries( new Dn( "ou=groups,ou=system" ) ) );
+
+        assertTrue( cache.getApplicableSubentries( new Dn( "ou=config" ) ).isEmpty() );
+
+        cache.removeSubentry( peopleAcs );
+
+        assertEquals( Collections.singletonList( systemAcs ),
+            cache.getApplicableSubentries( new Dn( "uid=jdoe,ou=people,ou=system" ) ) );
+    }
+
+
+    @Test
+    public void testPropagationTracking() throws Exception
+    {
+        SubentryCache cache = new SubentryCache();
+        assertFalse( cache.hasPropagations() );
+
+        SubentryPropagation propagation = createPropagation( true );
+        cache.startPropagation( propagation );
+
+        assertTrue( cache.hasPropagations() );
+        assertEquals( 1, cache.getPropagations().size() );
+        assertFalse( propagation.isDone() );
+
+        propagation.incrementScanned();
+        propagation.incrementScanned();
+        propagation.addUpdated( 1 );
+        assertEquals( 2, propagation.getScanned() );
+        assertEquals( 1, propagation.getUpdated() );
+
+        cache.endPropagation( propagation );
+
+        assertFalse( cache.hasPropagations() );
+        assertTrue( propagation.isDone() );
+    }
+
+
+    @Test
+    public void testPropagationKeepsTheRoles() throws Exception
+    {
+        SubentryPropagation propagation = createPropagation( false );
+
+        assertTrue( propagation.getSubentry().isAccessControlAdminRole() );
+        assertFalse( propagation.getSubentry().isCollectiveAdminRole() );
+        assertFalse( propagation.isAdding() );
+    }
+
+
+    @Test
+    public void testAwaitPropagations() throws Exception
+    {
+        SubentryCache cache = new SubentryCache();
+        SubentryPropagation first = createPropagation( false );
+        SubentryPropagation second = createPropagation( true );
+        cache.startPropagation( first );
+        cache.startPropagation( second );
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try
+        {
+            Future<?> waiter = executor.submit( cache::awaitPropagations );
+
+            cache.endPropagation( first );
+            Thread.sleep( 50 );
+            assertFalse( waiter.isDone() );
+
+            cache.endPropagation( second );
+            waiter.get( 10, TimeUnit.SECONDS );
+            assertFalse( cache.hasPropagations() );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+
+    @Test
+    public void testFailedPropagation() throws Exception
+    {
+        SubentryCache cache = new SubentryCache();
+        SubentryPropagation propagation = createPropagation( true );
+        cache.startPropagation( propagation );
+
+        cache.failPropagation( propagation );
+
+        // Still evaluated on the fly, but not waited for
+        assertTrue( propagation.isFailed() );
+        assertFalse( propagation.isDone() );
+        assertTrue( cache.hasPropagations() );
+        cache.awaitPropagations();
+
+        assertTrue( cache.retryPropagation( propagation ) );
+        assertFalse( propagation.isFailed() );
+
+        // Once the server is stopping, the failed propagations aren't retried
+        cache.failPropagation( propagation );
+        cache.stopPropagations();
+
+        assertFalse( cache.retryPropagation( propagation ) );
+        assertTrue( propagation.isFailed() );
+        assertTrue( cache.hasPropagations() );
+    }
+
+
+    @Test
+    public void testAwaitPropagationsIgnoresFailedOnes() throws Exception
+    {
+        SubentryCache cache = new SubentryCache();
+        SubentryPropagation failed = createPropagation( false );
+        SubentryPropagation running = createPropagation( true );
+        cache.startPropagation( failed );
+        cache.startPropagation( running );
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try
+        {
+            Future<?> waiter = executor.submit( cache::awaitPropagations );
+
+            Thread.sleep( 50 );
+            assertFalse( waiter.isDone() );
+
+            cache.failPropagation( failed );
+            Thread.sleep( 50 );
+            assertFalse( waiter.isDone() );
+
+            cache.endPropagation( running );
+            waiter.get( 10, TimeUnit.SECONDS );
+            assertEquals( Collections.singletonList( failed ), new ArrayList<>( cache.getPropagations() ) );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.authn;
+
+
+import static org.apache.directory.server.core.integ.IntegrationUtils.apply;
+import static org.apache.directory.server.core.integ.IntegrationUtils.getAdminConnection;
+import static org.apache.directory.server.core.integ.IntegrationUtils.getConnectionAs;
+import static org.apache.directory.server.core.integ.IntegrationUtils.getUserAddLdif;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import org.apache.directory.api.ldap.model.constants.PasswordPolicySchemaConstants;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.ModifyRequest;
+import org.apache.directory.api.ldap.model.message.ModifyRequestImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.api.InterceptorEnum;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.apache.directory.server.core.integ.IntegrationUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+
+/**
+ * Tests the SimpleAuthenticator credential cache : a principal is read once, and
+ * evicted when it's locked, deleted, or when its password is modified.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(name = "SimpleAuthenticatorCacheIT-DS")
+public class SimpleAuthenticatorCacheIT extends AbstractLdapTestUnit
+{
+    private static final String USER_DN = "uid=akarasulu,ou=users,ou=system";
+
+    private SimpleAuthenticator authenticator;
+
+
+    @Before
+    public void init() throws Exception
+    {
+        apply( getService(), getUserAddLdif() );
+
+        AuthenticationInterceptor authenticationInterceptor = ( AuthenticationInterceptor ) getService()
+            .getInterceptor( InterceptorEnum.AUTHENTICATION_INTERCEPTOR.getName() );
+
+        for ( Authenticator candidate : authenticationInterceptor.getAuthenticators() )
+        {
+            if ( candidate instanceof SimpleAuthenticator )
+            {
+                authenticator = ( SimpleAuthenticator ) candidate;
+            }
+        }
+
+        assertNotNull( authenticator );
+    }
+
+
+    @After
+    public void closeConnections()
+    {
+        IntegrationUtils.closeConnections();
+    }
+
+
+    @Test
+    public void testRepeatedBindHitsTheCache() throws Exception
+    {
+        getConnectionAs( getService(), USER_DN, "test" );
+        CacheStats before = authenticator.getCacheStats();
+
+        getConnectionAs( getService(), USER_DN, "test" );
+        CacheStats after = authenticator.getCacheStats();
+
+        assertEquals( before.hitCount() + 1, after.hitCount() );
+        assertEquals( before.missCount(), after.missCount() );
+    }
+
+
+    @Test
+    public void testPasswordModificationEvictsThePrincipal() throws Exception
+    {
+        getConnectionAs( getService(), USER_DN, "test" );
+
+        ModifyRequest modifyRequest = new ModifyRequestImpl();
+        modifyRequest.setName( new Dn( getService().getSchemaManager(), USER_DN ) );
+        modifyRequest.replace( "userPassword", "newpwd" );
+        getAdminConnection( getService() ).modify( modifyRequest );
+
+        CacheStats before = authenticator.getCacheStats();
+
+        assertBindFails( "test" );
+        getConnectionAs( getService(), USER_DN, "newpwd" );
+
+        CacheStats after = authenticator.getCacheStats();
+
+        // The first bind has read the new password, the second one has found it in the cache
+        assertEquals( before.missCount() + 1, after.missCount() );
+        assertEquals( before.hitCount() + 1, after.hitCount() );
+    }
+
+
+    @Test
+    public void testLockEvictsThePrincipal() throws Exception
+    {
+        getConnectionAs( getService(), USER_DN, "test" );
+
+        ModifyRequest modifyRequest = new ModifyRequestImpl();
+        modifyRequest.setName( new Dn( getService().getSchemaManager(), USER_DN ) );
+        modifyRequest.replace( PasswordPolicySchemaConstants.PWD_ACCOUNT_LOCKED_TIME_AT, "000001010000Z" );
+        getAdminConnection( getService() ).modify( modifyRequest );
+
+        CacheStats before = authenticator.getCacheStats();
+
+        // The password policy is disabled : the lock is ignored, but the principal is read again
+        getConnectionAs( getService(), USER_DN, "test" );
+
+        CacheStats after = authenticator.getCacheStats();
+
+        assertEquals( before.missCount() + 1, after.missCount() );
+        assertEquals( before.hitCount(), after.hitCount() );
+    }
+
+
+    @Test
+    public void testDeleteEvictsThePrincipal() throws Exception
+    {
+        getConnectionAs( getService(), USER_DN, "test" );
+
+        getAdminConnection( getService() ).delete( USER_DN );
+
+        CacheStats before = authenticator.getCacheStats();
+
+        // The cached password must not be used anymore
+        assertBindFails( "test" );
+
+        assertEquals( before.hitCount(), authenticator.getCacheStats().hitCount() );
+    }
+
+
+    private void assertBindFails( String password )
+    {
+        try
+        {
+            LdapConnection connection = getConnectionAs( getService(), USER_DN, password );
+            fail( "Bound as " + connection );
+        }
+        catch ( LdapException le )
+        {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.directory.server.core.changelog;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.apache.directory.api.ldap.model.constants.AuthenticationLevel;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.ldif.ChangeType;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifRevertor;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.FileUtils;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.core.DefaultDirectoryService;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.InstanceLayout;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.changelog.ChangeLogEvent;
+import org.apache.directory.server.core.api.changelog.ChangeLogSearchEngine;
+import org.apache.directory.server.core.api.changelog.RevisionOrder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the FileChangeLogStore.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class FileChangeLogStoreTest
+{
+    private static SchemaManager schemaManager;
+
+    private DirectoryService directoryService;
+
+    private File workingDirectory;
+
+    private FileChangeLogStore store;
+
+    private LdapPrincipal admin;
+
+
+    @BeforeClass
+    public static void init() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+    }
+
+
+    @Before
+    public void setUp() throws Exception
+    {
+        String tmpDirPath = System.getProperty( "workingDirectory", System.getProperty( "java.io.tmpdir" ) );
+        workingDirectory = new File( tmpDirPath + "/server-work-" + FileChangeLogStoreTest.class.getSimpleName() );
+        FileUtils.deleteDirectory( workingDirectory );
+        workingDirectory.mkdirs();
+
+        directoryService = new DefaultDirectoryService();
+        InstanceLayout instanceLayout = new InstanceLayout( workingDirectory );
+        instanceLayout.setLogDir( new File( workingDirectory, "log" ) );
+        directoryService.setInstanceLayout( instanceLayout );
+        directoryService.setSchemaManager( schemaManager );
+
+        admin = new LdapPrincipal( schemaManager, new Dn( schemaManager, "uid=admin,ou=system" ),
+            AuthenticationLevel.SIMPLE, Strings.getBytesUtf8( "secret" ) );
+
+        store = new FileChangeLogStore();
+        store.init( directoryService );
+    }
+
+
+    @After
+    public void tearDown() throws Exception
+    {
+        store.destroy();
+        FileUtils.deleteDirectory( workingDirectory );
+    }
+
+
+    private ChangeLogEvent log( String dn ) throws Exception
+    {
+        LdifEntry forward = new LdifEntry();
+        forward.setDn( dn );
+        forward.setChangeType( ChangeType.Add );
+        forward.putAttribute( "objectClass", "organizationalUnit" );
+        forward.putAttribute( "ou", "test" );
+
+        return store.log( admin, forward, LdifRevertor.reverseAdd( forward.getDn() ) );
+    }
+
+
+    private FileChangeLogStore reload() throws Exception
+    {
+        store.destroy();
+        store = new FileChangeLogStore();
+        store.init( directoryService );
+
+        return store;
+    }
+
+
+    private File[] getSegments()
+    {
+        File directory = new File( directoryService.getInstanceLayout().getLogDirectory(),
+            FileChangeLogStore.CHANGELOG_DIR );
+
+        return directory.listFiles( ( dir, name ) -> name.endsWith( ".seg" ) );
+    }
+
+
+    private long[] revisions( Cursor<ChangeLogEvent> cursor ) throws Exception
+    {
+        long[] revisions = new long[0];
+
+        while ( cursor.next() )
+        {
+            revisions = Arrays.copyOf( revisions, revisions.length + 1 );
+            revisions[revisions.length - 1] = cursor.get().getRevision();
+        }
+
+        cursor.close();
+
+        return revisions;
+    }
+
+
+    @Test
+    public void testLogAndLookup() throws Exception
+    {
+        assertEquals( 0, store.getCurrentRevision() );
+
+        log( "ou=test1,ou=system" );
+        log( "ou=test2,ou=system" );
+        assertEquals( 2, store.getCurrentRevision() );
+
+        ChangeLogEvent event = store.lookup( 2 );
+        assertEquals( 2, event.getRevision() );
+        assertEquals( new Dn( "ou=test2,ou=system" ), event.getForwardLdif().getDn() );
+        assertEquals( admin.getDn(), event.getCommitterPrincipal().getDn() );
+    }
+
+
+    @Test
+    public void testReload() throws Exception
+    {
+        log( "ou=test1,ou=system" );
+        log( "ou=test2,ou=system" );
+        store.tag( "tag2" );
+
+        reload();
+
+        assertEquals( 2, store.getCurrentRevision() );
+        assertEquals( 2, store.getLatest().getRevision() );
+        assertEquals( "tag2", store.getLatest().getDescription() );
+        assertEquals( new Dn( "ou=test1,ou=system" ), store.lookup( 1 ).getForwardLdif().getDn() );
+
+        assertEquals( 3, log( "ou=test3,ou=system" ).getRevision() );
+        assertEquals( 2, revisions( store.findAfter( 1 ) ).length );
+    }
+
+
+    @Test
+    public void testIncompleteRecordIsTruncated() throws Exception
+    {
+        log( "ou=test1,ou=system" );
+        log( "ou=test2,ou=system" );
+        store.destroy();
+
+        // Simulate a crash in the middle of a write
+        File[] segments = getSegments();
+        assertEquals( 1, segments.length );
+        Files.write( segments[0].toPath(), new byte[]
+            { 0, 0, 1, 0, 42 }, StandardOpenOption.APPEND );
+
+        store = new FileChangeLogStore();
+        store.init( directoryService );
+
+        assertEquals( 2, store.getCurrentRevision() );
+        assertEquals( 3, log( "ou=test3,ou=system" ).getRevision() );
+        assertEquals( new Dn( "ou=test3,ou=system" ), reload().lookup( 3 ).getForwardLdif().getDn() );
+    }
+
+
+    @Test
+    public void testCursors() throws Exception
+    {
+        for ( int i = 1; i <= 5; i++ )
+        {
+            log( "ou=test" + i + ",ou=system" );
+        }
+
+        assertEquals( 5, revisions( store.find() ).length );
+        assertEquals( 2, revisions( store.findBefore( 3 ) ).length );
+        assertEquals( 2, revisions( store.findAfter( 3 ) ).length );
+        assertEquals( 3, revisions( store.find( 2, 4 ) ).length );
+
+        // The cursor is isolated from the events logged after its creation
+        Cursor<ChangeLogEvent> cursor = store.findAfter( 3 );
+        log( "ou=test6,ou=system" );
+        assertEquals( 2, revisions( cursor ).length );
+
+        // Walk backward, as a revert does
+        cursor = store.findAfter( 3 );
+        cursor.afterLast();
+        assertTrue( cursor.previous() );
+        assertEquals( 6, cursor.get().getRevision() );
+        assertTrue( cursor.previous() );
+        assertTrue( cursor.previous() );
+        assertEquals( 4, cursor.get().getRevision() );
+        assertFalse( cursor.previous() );
+        cursor.close();
+
+        ChangeLogSearchEngine engine = store.getChangeLogSearchEngine();
+        long[] revisions = revisions( engine.findBefore( 3, RevisionOrder.DescendingOrder ) );
+        assertEquals( 3, revisions.length );
+        assertEquals( 3, revisions[0] );
+        assertEquals( 1, revisions[2] );
+    }
+
+
+    @Test
+    public void testSearchEngine() throws Exception
+    {
+        log( "ou=test1,ou=system" );
+        log( "ou=child,ou=test1,ou=system" );
+        log( "ou=test2,ou=system" );
+        log( "ou=grandchild,ou=child,ou=test1,ou=system" );
+
+        ChangeLogSearchEngine engine = store.getChangeLogSearchEngine();
+
+        long[] revisions = revisions( engine.find( new Dn( "OU=Test1, ou=System" ), RevisionOrder.AscendingOrder ) );
+        assertEquals( 1, revisions.length );
+        assertEquals( 1, revisions[0] );
+
+        Dn test1 = new Dn( "ou=test1,ou=system" );
+        assertEquals( 1, revisions( engine.find( test1, SearchScope.ONELEVEL, RevisionOrder.AscendingOrder ) ).length );
+        revisions = revisions( engine.find( test1, SearchScope.SUBTREE, RevisionOrder.AscendingOrder ) );
+        assertEquals( 3, revisions.length );
+        assertEquals( 4, revisions[2] );
+
+        assertEquals( 4, revisions( engine.find( admin, RevisionOrder.AscendingOrder ) ).length );
+        assertEquals( 4, revisions( engine.find( ChangeType.Add, RevisionOrder.AscendingOrder ) ).length );
+        assertEquals( 0, revisions( engine.find( ChangeType.Delete, RevisionOrder.AscendingOrder ) ).length );
+        assertEquals( 4, revisions( engine.find( schemaManager.getAttributeType( "ou" ),
+            RevisionOrder.AscendingOrder ) ).length );
+
+        assertEquals( 4, engine.lookup( store.lookup( 4 ).getZuluTime() ) );
+        assertEquals( 0, engine.lookup( "19700101000000Z" ) );
+    }
+
+
+    @Test
+    public void testRetention() throws Exception
+    {
+        // One event per segment
+        store.setMaxSegmentSize( 1 );
+        store.setMaxRevisions( 2 );
+
+        for ( int i = 1; i <= 5; i++ )
+        {
+            log( "ou=test" + i + ",ou=system" );
+        }
+
+        store.sync();
+
+        assertEquals( 2, getSegments().length );
+        assertNull( store.lookup( 3 ) );
+        assertNotNull( store.lookup( 4 ) );
+        assertEquals( 2, revisions( store.find() ).length );
+        assertEquals( 0, revisions( store.getChangeLogSearchEngine().find( new Dn( "ou=test1,ou=system" ),
+            RevisionOrder.AscendingOrder ) ).length );
+
+        try
+        {
+            store.findAfter( 1 );
+            fail( "Revisions 2 and 3 have been truncated" );
+        }
+        catch ( IllegalArgumentException iae )
+        {
+            // Expected
+        }
+
+        assertEquals( 5, reload().getCurrentRevision() );
+        assertNull( store.lookup( 3 ) );
+    }
+
+
+    /**
+     * The DefaultChangeLog keeps the MemoryChangeLogStore as its default store
+     */
+    @Test
+    public void testDefaultStore() throws Exception
+    {
+        DefaultChangeLog changeLog = new DefaultChangeLog();
+        changeLog.setEnabled( true );
+        changeLog.init( directoryService );
+
+        try
+        {
+            assertTrue( changeLog.getChangeLogStore() instanceof MemoryChangeLogStore );
+        }
+        finally
+        {
+            changeLog.destroy();
+        }
+    }
+
+
+    /**
+     * The FileChangeLogStore can't be exposed as a partition : the DefaultChangeLog must refuse to start
+     */
+    @Test
+    public void testExposedStoreIsRejected() throws Exception
+    {
+        FileChangeLogStore exposedStore = new FileChangeLogStore();
+        DefaultChangeLog changeLog = new DefaultChangeLog();
+        changeLog.setEnabled( true );
+        changeLog.setExposed( true );
+        changeLog.setChangeLogStore( exposedStore );
+
+        try
+        {
+            changeLog.init( directoryService );
+            fail();
+        }
+        catch ( LdapOtherException loe )
+        {
+            // Expected
+        }
+        finally
+        {
+            exposedStore.destroy();
+        }
+    }
+}
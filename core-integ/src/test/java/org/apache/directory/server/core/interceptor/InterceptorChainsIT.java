@@ -0,0 +1,252 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.interceptor;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.annotations.ApplyLdifs;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.InterceptorEnum;
+import org.apache.directory.server.core.api.OperationEnum;
+import org.apache.directory.server.core.api.ReferralManager;
+import org.apache.directory.server.core.api.changelog.ChangeLog;
+import org.apache.directory.server.core.api.interceptor.Interceptor;
+import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Tests the interceptors left out of the operation chains when they have nothing to do,
+ * and the update of the chains when their state changes.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(name = "InterceptorChainsIT")
+@ApplyLdifs(
+    {
+        // The AP
+        "dn: dc=AP,ou=system",
+        "objectClass: top",
+        "objectClass: domain",
+        "administrativeRole: collectiveAttributeSpecificArea",
+        "dc: AP"
+})
+public class InterceptorChainsIT extends AbstractLdapTestUnit
+{
+    private static final String REFERRAL = InterceptorEnum.REFERRAL_INTERCEPTOR.getName();
+
+    private static final String COLLECTIVE = InterceptorEnum.COLLECTIVE_ATTRIBUTE_INTERCEPTOR.getName();
+
+    private static final String CHANGELOG = InterceptorEnum.CHANGE_LOG_INTERCEPTOR.getName();
+
+    private static final String JOURNAL = InterceptorEnum.JOURNAL_INTERCEPTOR.getName();
+
+    private static final OperationEnum[] WRITE_OPERATIONS =
+        {
+            OperationEnum.ADD,
+            OperationEnum.DELETE,
+            OperationEnum.MODIFY,
+            OperationEnum.MOVE,
+            OperationEnum.RENAME,
+            OperationEnum.MOVE_AND_RENAME
+        };
+
+
+    /**
+     * The ReferralInterceptor must stay in the write chains when there is no referral, as
+     * an operation may have got its chain before a referral is added.
+     */
+    @Test
+    public void testReferralInterceptorIsApplicableWithoutReferral() throws Exception
+    {
+        Interceptor referralInterceptor = getService().getInterceptor( REFERRAL );
+
+        for ( OperationEnum operation : OperationEnum.getOperations() )
+        {
+            assertTrue( operation.name(), referralInterceptor.isApplicable( operation ) );
+        }
+
+        for ( OperationEnum operation : WRITE_OPERATIONS )
+        {
+            assertTrue( operation.name(), getService().getInterceptors( operation ).contains( REFERRAL ) );
+        }
+    }
+
+
+    /**
+     * The ChangeLogInterceptor and the JournalInterceptor stay in the write chains when they are
+     * disabled, so that enabling the changeLog at runtime records the next operations.
+     */
+    @Test
+    public void testChangeLogEnabledAtRuntime() throws Exception
+    {
+        ChangeLog changeLog = getService().getChangeLog();
+        changeLog.setEnabled( false );
+
+        try
+        {
+            getService().updateInterceptorChains();
+
+            for ( OperationEnum operation : WRITE_OPERATIONS )
+            {
+                assertTrue( operation.name(), getService().getInterceptors( operation ).contains( CHANGELOG ) );
+                assertTrue( operation.name(), getService().getInterceptors( operation ).contains( JOURNAL ) );
+            }
+        }
+        finally
+        {
+            changeLog.setEnabled( true );
+        }
+
+        long revision = changeLog.getCurrentRevision();
+
+        Entry entry = new DefaultEntry( getService().getSchemaManager(), "ou=changelog-test,ou=system",
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: changelog-test" );
+        getService().getAdminSession().add( entry );
+
+        assertEquals( revision + 1, changeLog.getCurrentRevision() );
+    }
+
+
+    /**
+     * Deletes a referral with a context created before the referral was added : the
+     * referralManager must still be updated.
+     */
+    @Test
+    public void testDeleteReferralWithChainCreatedBeforeTheReferral() throws Exception
+    {
+        CoreSession session = getService().getAdminSession();
+        Dn referralDn = new Dn( getService().getSchemaManager(), "ou=referral,ou=system" );
+
+        // The chain is taken here, when there is no referral in the server
+        DeleteOperationContext deleteContext = new DeleteOperationContext( session, referralDn );
+
+        Entry referral = new DefaultEntry( getService().getSchemaManager(), referralDn,
+            "objectClass: top",
+            "objectClass: referral",
+            "objectClass: extensibleObject",
+            "ou: referral",
+            "ref: ldap://localhost:10389/ou=people,dc=example,dc=com" );
+        session.add( referral );
+
+        assertTrue( isReferral( referralDn ) );
+
+        getService().getOperationManager().delete( deleteContext );
+
+        assertFalse( session.exists( referralDn ) );
+        assertFalse( isReferral( referralDn ) );
+    }
+
+
+    /**
+     * The CollectiveAttributeInterceptor is only in the read chains when a collective
+     * attribute subentry exists, and always in the write chains.
+     */
+    @Test
+    public void testCollectiveAttributeInterceptorChains() throws Exception
+    {
+        CoreSession session = getService().getAdminSession();
+        Interceptor collectiveInterceptor = getService().getInterceptor( COLLECTIVE );
+
+        assertFalse( collectiveInterceptor.isApplicable( OperationEnum.LOOKUP ) );
+        assertFalse( collectiveInterceptor.isApplicable( OperationEnum.SEARCH ) );
+        assertFalse( getService().getInterceptors( OperationEnum.LOOKUP ).contains( COLLECTIVE ) );
+        assertFalse( getService().getInterceptors( OperationEnum.SEARCH ).contains( COLLECTIVE ) );
+        assertCollectiveInWriteChains();
+
+        // Add a collective attribute subentry : the chains are updated
+        Dn subentryDn = new Dn( getService().getSchemaManager(), "cn=collective,dc=AP,ou=system" );
+        Entry subentry = new DefaultEntry( getService().getSchemaManager(), subentryDn,
+            "objectClass: top",
+            "objectClass: subentry",
+            "objectClass: collectiveAttributeSubentry",
+            "subtreeSpecification: {}",
+            "c-o: Test Org",
+            "cn: collective" );
+        session.add( subentry );
+
+        assertTrue( collectiveInterceptor.isApplicable( OperationEnum.LOOKUP ) );
+        assertTrue( getService().getInterceptors( OperationEnum.LOOKUP ).contains( COLLECTIVE ) );
+        assertTrue( getService().getInterceptors( OperationEnum.SEARCH ).contains( COLLECTIVE ) );
+        assertCollectiveInWriteChains();
+
+        // Delete it : the interceptor leaves the read chains again
+        session.delete( subentryDn );
+
+        assertFalse( getService().getInterceptors( OperationEnum.LOOKUP ).contains( COLLECTIVE ) );
+        assertFalse( getService().getInterceptors( OperationEnum.SEARCH ).contains( COLLECTIVE ) );
+        assertCollectiveInWriteChains();
+    }
+
+
+    /**
+     * Recompiling the chains without any state change gives the same chains.
+     */
+    @Test
+    public void testUpdateInterceptorChains() throws Exception
+    {
+        for ( OperationEnum operation : OperationEnum.getOperations() )
+        {
+            List<String> before = getService().getInterceptors( operation );
+
+            getService().updateInterceptorChains();
+
+            assertEquals( operation.name(), before, getService().getInterceptors( operation ) );
+        }
+    }
+
+
+    private void assertCollectiveInWriteChains()
+    {
+        assertTrue( getService().getInterceptors( OperationEnum.ADD ).contains( COLLECTIVE ) );
+        assertTrue( getService().getInterceptors( OperationEnum.MODIFY ).contains( COLLECTIVE ) );
+    }
+
+
+    private boolean isReferral( Dn dn )
+    {
+        ReferralManager referralManager = getService().getReferralManager();
+        referralManager.lockRead();
+
+        try
+        {
+            return referralManager.isReferral( dn );
+        }
+        finally
+        {
+            referralManager.unlock();
+        }
+    }
+}
@@ -417,4 +417,101 @@ public class SortedSearchIT extends AbstractLdapTestUnit
         }
     }
 
+
+    @Test
+    public void testSortByMultipleKeys() throws Exception
+    {
+        sk.setAttributeTypeDesc( "givenName" );
+
+        SortKey snKey = new SortKey( "sn" );
+        snKey.setReverseOrder( true );
+        ctrl.addSortKey( snKey );
+
+        SearchCursor cursor = connection.search( req );
+
+        List<String> expectedOrder = new ArrayList<String>();
+        expectedOrder.add( "uid=person1,ou=parent,ou=system" );
+        expectedOrder.add( "uid=person2,ou=parent,ou=system" );
+        expectedOrder.add( "uid=person3,ou=parent,ou=system" );
+        // user0 and user2 have the same givenName, the reversed sn decides
+        expectedOrder.add( "uid=user2,ou=children,ou=parent,ou=system" );
+        expectedOrder.add( "uid=user0,ou=parent,ou=system" );
+        expectedOrder.add( "uid=user1,ou=parent,ou=system" );
+        expectedOrder.add( "uid=user3,ou=children,ou=parent,ou=system" );
+        expectedOrder.add( "uid=user4,ou=grandchildren,ou=children,ou=parent,ou=system" );
+        expectedOrder.add( "uid=user5,ou=grandchildren,ou=children,ou=parent,ou=system" );
+        expectedOrder.add( "uid=user6,ou=parent,ou=system" );
+        expectedOrder.add( "uid=user7,ou=parent,ou=system" );
+
+        List<String> actualOrder = new ArrayList<String>();
+
+        while ( cursor.next() )
+        {
+            SearchResultEntry se = ( SearchResultEntry ) cursor.get();
+            Entry entry = se.getEntry();
+            actualOrder.add( entry.getDn().getName() );
+        }
+
+        cursor.close();
+
+        // the LAST 3 entries don't have a "givenName" attribute
+        assertEquals( expectedOrder.size() + 3, actualOrder.size() );
+
+        for ( int i = 0; i < expectedOrder.size(); i++ )
+        {
+            assertEquals( expectedOrder.get( i ), actualOrder.get( i ) );
+        }
+    }
+
+
+    @Test
+    public void testSortWithSpilledRuns() throws Exception
+    {
+        int maxSortedEntriesInMemory = getService().getMaxSortedEntriesInMemory();
+
+        // force the sort to write sorted runs of 2 entries and to merge them
+        getService().setMaxSortedEntriesInMemory( 2 );
+
+        try
+        {
+            sk.setAttributeTypeDesc( "sn" );
+            SearchCursor cursor = connection.search( req );
+
+            List<String> expectedOrder = new ArrayList<String>();
+            expectedOrder.add( "uid=person1,ou=parent,ou=system" );
+            expectedOrder.add( "uid=person2,ou=parent,ou=system" );
+            expectedOrder.add( "uid=person3,ou=parent,ou=system" );
+            expectedOrder.add( "uid=user0,ou=parent,ou=system" );
+            expectedOrder.add( "uid=user1,ou=parent,ou=system" );
+            expectedOrder.add( "uid=user2,ou=children,ou=parent,ou=system" );
+            expectedOrder.add( "uid=user3,ou=children,ou=parent,ou=system" );
+            expectedOrder.add( "uid=user4,ou=grandchildren,ou=children,ou=parent,ou=system" );
+            expectedOrder.add( "uid=user5,ou=grandchildren,ou=children,ou=parent,ou=system" );
+            expectedOrder.add( "uid=user6,ou=parent,ou=system" );
+            expectedOrder.add( "uid=user7,ou=parent,ou=system" );
+
+            List<String> actualOrder = new ArrayList<String>();
+
+            while ( cursor.next() )
+            {
+                SearchResultEntry se = ( SearchResultEntry ) cursor.get();
+                Entry entry = se.getEntry();
+                actualOrder.add( entry.getDn().getName() );
+            }
+
+            cursor.close();
+
+            // the LAST 3 entries don't have a "sn" attribute
+            assertEquals( expectedOrder.size() + 3, actualOrder.size() );
+
+            for ( int i = 0; i < expectedOrder.size(); i++ )
+            {
+                assertEquals( expectedOrder.get( i ), actualOrder.get( i ) );
+            }
+        }
+        finally
+        {
+            getService().setMaxSortedEntriesInMemory( maxSortedEntriesInMemory );
+        }
+    }
 }
@@ -0,0 +1,257 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.subtree;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.subtree.Subentry;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.server.core.annotations.ApplyLdifs;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.api.subtree.SubentryCache;
+import org.apache.directory.server.core.api.subtree.SubentryPropagation;
+import org.apache.directory.server.core.api.subtree.SubentryUtils;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.apache.directory.server.core.integ.IntegrationUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Tests the SubentryPropagator : the background update of the subentry operational
+ * attributes, and the retry of a failed propagation.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(name = "SubentryPropagatorIT")
+@ApplyLdifs(
+    {
+        // The AP
+        "dn: dc=AP,ou=system",
+        "objectClass: top",
+        "objectClass: domain",
+        "administrativeRole: collectiveAttributeSpecificArea",
+        "dc: AP",
+        "",
+        "dn: cn=A1,dc=AP,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: A1",
+        "sn: a1",
+        "",
+        "dn: cn=A2,dc=AP,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: A2",
+        "sn: a2",
+        "",
+        // The subentry selecting the whole AP
+        "dn: cn=collective,dc=AP,ou=system",
+        "objectClass: top",
+        "objectClass: subentry",
+        "objectClass: collectiveAttributeSubentry",
+        "subtreeSpecification: {}",
+        "c-o: Test Org",
+        "cn: collective"
+})
+public class SubentryPropagatorIT extends AbstractLdapTestUnit
+{
+    private static final String SUBENTRY_DN = "cn=collective,dc=AP,ou=system";
+
+
+    @Test
+    public void testPropagate() throws Exception
+    {
+        awaitPropagations();
+
+        Dn a1 = new Dn( getService().getSchemaManager(), "cn=A1,dc=AP,ou=system" );
+
+        assertTrue( getStoredReferences( a1 ).contains( SUBENTRY_DN ) );
+    }
+
+
+    @Test
+    public void testFailedPropagationIsRetried() throws Exception
+    {
+        awaitPropagations();
+
+        SubentryCache subentryCache = getService().getSubentryCache();
+        Dn subentryDn = new Dn( getService().getSchemaManager(), SUBENTRY_DN );
+        Dn a1 = new Dn( getService().getSchemaManager(), "cn=A1,dc=AP,ou=system" );
+
+        // Drop the stored reference, bypassing the interceptors
+        removeStoredReferences( a1 );
+        assertNull( getStoredReferences( a1 ) );
+
+        Subentry subentry = subentryCache.getSubentry( subentryDn );
+        SubentryPropagation propagation = new SubentryPropagation( subentryDn, subentry,
+            subentry.getSubtreeSpecification(), true );
+        File file = File.createTempFile( "SubentryPropagatorIT", ".dat" );
+        file.delete();
+        SubentryPropagationStore store = new SubentryPropagationStore( file );
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        AtomicInteger failures = new AtomicInteger( 1 );
+        AtomicInteger attempts = new AtomicInteger();
+
+        try
+        {
+            subentryCache.startPropagation( propagation );
+            store.add( propagation );
+
+            SubentryPropagator propagator = new SubentryPropagator( getService(), new SubentryUtils( getService() ),
+                propagation, subentryDn.getParent(), 1, executor, store )
+            {
+                @Override
+                void propagate() throws Exception
+                {
+                    attempts.incrementAndGet();
+
+                    if ( failures.getAndDecrement() > 0 )
+                    {
+                        throw new LdapOtherException( "Injected failure" );
+                    }
+
+                    super.propagate();
+                }
+            };
+
+            propagator.run();
+
+            // The failed propagation is kept, and still evaluated on the fly
+            assertTrue( propagation.isFailed() );
+            assertFalse( propagation.isDone() );
+            assertTrue( subentryCache.getPropagations().contains( propagation ) );
+            assertTrue( store.contains( propagation ) );
+            assertTrue( file.exists() );
+
+            LdapConnection connection = IntegrationUtils.getAdminConnection( getService() );
+            Entry entry = connection.lookup( "cn=A1,dc=AP,ou=system", "+" );
+            assertTrue( entry.get( SchemaConstants.COLLECTIVE_ATTRIBUTE_SUBENTRIES_AT ).contains( SUBENTRY_DN ) );
+
+            // It's retried after a while, and succeeds
+            long deadline = System.currentTimeMillis() + SubentryPropagator.INITIAL_RETRY_DELAY + 10000L;
+
+            while ( !propagation.isDone() && ( System.currentTimeMillis() < deadline ) )
+            {
+                Thread.sleep( 50 );
+            }
+
+            assertTrue( propagation.isDone() );
+            assertEquals( 2, attempts.get() );
+            assertFalse( subentryCache.getPropagations().contains( propagation ) );
+            assertFalse( store.contains( propagation ) );
+            assertFalse( file.exists() );
+            assertTrue( getStoredReferences( a1 ).contains( SUBENTRY_DN ) );
+        }
+        finally
+        {
+            executor.shutdownNow();
+            subentryCache.endPropagation( propagation );
+        }
+    }
+
+
+    /**
+     * Waits for the propagations started by the SubentryInterceptor
+     */
+    private void awaitPropagations() throws Exception
+    {
+        SubentryCache subentryCache = getService().getSubentryCache();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( 10 );
+
+        while ( subentryCache.hasPropagations() && ( System.currentTimeMillis() < deadline ) )
+        {
+            Thread.sleep( 50 );
+        }
+
+        assertFalse( subentryCache.hasPropagations() );
+    }
+
+
+    /**
+     * Reads the collectiveAttributeSubentries stored in an entry, bypassing the interceptors
+     */
+    private Attribute getStoredReferences( Dn dn ) throws Exception
+    {
+        Partition partition = getService().getPartitionNexus().getPartition( dn );
+
+        try ( PartitionTxn transaction = partition.beginReadTransaction() )
+        {
+            LookupOperationContext lookupContext = new LookupOperationContext( getService().getAdminSession(), dn,
+                SchemaConstants.ALL_ATTRIBUTES_ARRAY );
+            lookupContext.setPartition( partition );
+            lookupContext.setTransaction( transaction );
+
+            return getService().getPartitionNexus().lookup( lookupContext )
+                .get( SchemaConstants.COLLECTIVE_ATTRIBUTE_SUBENTRIES_AT );
+        }
+    }
+
+
+    /**
+     * Removes the collectiveAttributeSubentries stored in an entry, bypassing the interceptors
+     */
+    private void removeStoredReferences( Dn dn ) throws Exception
+    {
+        Partition partition = getService().getPartitionNexus().getPartition( dn );
+        AttributeType attributeType = getService().getAtProvider().getCollectiveAttributeSubentries();
+        PartitionTxn transaction = partition.beginWriteTransaction();
+
+        List<Modification> modifications = new ArrayList<>();
+        modifications.add( new DefaultModification( ModificationOperation.REMOVE_ATTRIBUTE,
+            new DefaultAttribute( attributeType ) ) );
+
+        ModifyOperationContext modifyContext = new ModifyOperationContext( getService().getAdminSession(), dn,
+            modifications );
+        modifyContext.setPartition( partition );
+        modifyContext.setTransaction( transaction );
+
+        getService().getPartitionNexus().modify( modifyContext );
+        transaction.commit();
+    }
+}
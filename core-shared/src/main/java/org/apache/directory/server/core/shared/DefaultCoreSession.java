@@ -20,10 +20,8 @@
 package org.apache.directory.server.core.shared;
 
 
-import java.io.File;
 import java.io.IOException;
 import java.net.SocketAddress;
-import java.nio.file.Files;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -33,8 +31,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
-import jdbm.recman.BaseRecordManager;
-
 import org.apache.directory.api.ldap.extras.controls.syncrepl.syncRequest.SyncRequestValue;
 import org.apache.directory.api.ldap.model.constants.AuthenticationLevel;
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
@@ -63,6 +59,7 @@ import org.apache.directory.api.ldap.model.message.ResultResponse;
 import org.apache.directory.api.ldap.model.message.SearchRequest;
 import org.apache.directory.api.ldap.model.message.SearchScope;
 import org.apache.directory.api.ldap.model.message.UnbindRequest;
+import org.apache.directory.api.ldap.model.message.controls.PagedResults;
 import org.apache.directory.api.ldap.model.message.controls.SortKey;
 import org.apache.directory.api.ldap.model.message.controls.SortRequest;
 import org.apache.directory.api.ldap.model.message.controls.SortResponse;
@@ -1218,9 +1215,11 @@ public class DefaultCoreSession implements CoreSession
         {
             cursor = operationManager.search( searchContext );
 
-            if ( ( sortRespCtrl != null ) && ( sortRespCtrl.getSortResult() == SortResultCode.SUCCESS ) )
+            // The partition may already have returned the entries in the requested order
+            if ( ( sortRespCtrl != null ) && ( sortRespCtrl.getSortResult() == SortResultCode.SUCCESS )
+                && !searchContext.isSorted() )
             {
-                cursor = sortResults( cursor, sortControl, getDirectoryService().getSchemaManager() );
+                cursor = sortResults( cursor, sortControl, searchRequest, getDirectoryService().getSchemaManager() );
             }
 
             // the below condition is to satisfy the scenario 6 in section 2 of rfc2891
@@ -1304,18 +1303,26 @@ public class DefaultCoreSession implements CoreSession
     {
         SortResponse resp = new SortResponseImpl();
 
-        List<SortKey> keys = sortControl.getSortKeys();
-
-        // only ONE key is supported by the server for now
-        if ( keys.size() > 1 )
+        for ( SortKey sk : sortControl.getSortKeys() )
         {
-            ldapResult.setDiagnosticMessage( "Cannot sort results based on more than one attribute" );
-            resp.setSortResult( SortResultCode.UNWILLINGTOPERFORM );
-            return resp;
+            if ( !canSort( sk, resp, ldapResult, schemaManager ) )
+            {
+                return resp;
+            }
         }
 
-        SortKey sk = keys.get( 0 );
+        resp.setSortResult( SortResultCode.SUCCESS );
+
+        return resp;
+    }
+
 
+    /**
+     * Checks if the given sort key can be used for sorting, and sets the sort result
+     * of the response if it can't.
+     */
+    private boolean canSort( SortKey sk, SortResponse resp, LdapResult ldapResult, SchemaManager schemaManager )
+    {
         AttributeType at = schemaManager.getAttributeType( sk.getAttributeTypeDesc() );
 
         if ( at == null )
@@ -1324,7 +1331,7 @@ public class DefaultCoreSession implements CoreSession
                 + " exists in the server's schema" );
             resp.setSortResult( SortResultCode.NOSUCHATTRIBUTE );
             resp.setAttributeName( sk.getAttributeTypeDesc() );
-            return resp;
+            return false;
         }
 
         String mrOid = sk.getMatchingRuleId();
@@ -1339,7 +1346,7 @@ public class DefaultCoreSession implements CoreSession
                     + " is not applicable for the attribute " + sk.getAttributeTypeDesc() );
                 resp.setSortResult( SortResultCode.INAPPROPRIATEMATCHING );
                 resp.setAttributeName( sk.getAttributeTypeDesc() );
-                return resp;
+                return false;
             }
 
             try
@@ -1351,7 +1358,7 @@ public class DefaultCoreSession implements CoreSession
                 ldapResult.setDiagnosticMessage( "Given matchingrule " + mrOid + " is not supported" );
                 resp.setSortResult( SortResultCode.INAPPROPRIATEMATCHING );
                 resp.setAttributeName( sk.getAttributeTypeDesc() );
-                return resp;
+                return false;
             }
         }
         else
@@ -1370,7 +1377,7 @@ public class DefaultCoreSession implements CoreSession
 
             if ( mr == null )
             {
-                return resp;
+                return false;
             }
 
             try
@@ -1379,90 +1386,68 @@ public class DefaultCoreSession implements CoreSession
             }
             catch ( LdapException e )
             {
-                return resp;
+                return false;
             }
         }
 
-        resp.setSortResult( SortResultCode.SUCCESS );
-
-        return resp;
+        return true;
     }
 
 
     /**
-     * Sorts the entries based on the given sortkey and returns the cursor
+     * Sorts the entries based on the given sort keys and returns the cursor
      * 
      * @param unsortedEntries the cursor containing un-sorted entries
      * @param control the sort control
+     * @param searchRequest the search request
      * @param schemaManager schema manager
      * @return a cursor containing sorted entries
      * @throws CursorException
      * @throws LdapException
      * @throws IOException
-     * @throws KeyNotFoundException 
      */
-    private Cursor<Entry> sortResults( Cursor<Entry> unsortedEntries, SortRequest control, SchemaManager schemaManager )
-        throws CursorException, LdapException, IOException
+    private Cursor<Entry> sortResults( Cursor<Entry> unsortedEntries, SortRequest control, SearchRequest searchRequest,
+        SchemaManager schemaManager ) throws CursorException, LdapException, IOException
     {
-        unsortedEntries.beforeFirst();
+        SortedEntryComparator comparator = new SortedEntryComparator( control.getSortKeys(), schemaManager );
+        SortedEntrySerializer.setSchemaManager( schemaManager );
 
-        Entry first = null;
+        // Only the entries within the size limit will be sent. We keep one more entry
+        // so that the size limit exceeded error is still returned.
+        long sizeLimit = searchRequest.getSizeLimit();
+        int maxEntries = 0;
 
-        if ( unsortedEntries.next() )
+        if ( ( sizeLimit > 0L ) && ( sizeLimit < Integer.MAX_VALUE ) )
         {
-            first = unsortedEntries.get();
+            maxEntries = ( int ) sizeLimit + 1;
         }
 
-        if ( !unsortedEntries.next() )
-        {
-            unsortedEntries.beforeFirst();
+        boolean paged = searchRequest.getControls().containsKey( PagedResults.OID );
 
-            return unsortedEntries;
-        }
-
-        SortKey sk = control.getSortKeys().get( 0 );
+        EntrySorter sorter = new EntrySorter( comparator, directoryService.getMaxSortedEntriesInMemory(), maxEntries,
+            paged );
 
-        AttributeType at = schemaManager.getAttributeType( sk.getAttributeTypeDesc() );
+        try
+        {
+            unsortedEntries.beforeFirst();
 
-        SortedEntryComparator comparator = new SortedEntryComparator( at, sk.getMatchingRuleId(), sk.isReverseOrder(),
-            schemaManager );
+            while ( unsortedEntries.next() )
+            {
+                sorter.add( unsortedEntries.get() );
+            }
 
-        SortedEntrySerializer keySerializer = new SortedEntrySerializer();
-        SortedEntrySerializer.setSchemaManager( schemaManager );
-        
-        File file = null;
-        
-        try 
-        {
-            file = Files.createTempFile( "replica", ".sorted-data" ).toFile();    // see DIRSERVER-2007
-        } 
-        catch ( IOException e ) 
+            return new SortedEntryCursor( sorter.sort() );
+        }
+        catch ( IOException | LdapException | CursorException | RuntimeException e )
         {
-            // see DIRSERVER-2091
-            LOG.error( "Error creating temp file in directory {} for sorting: {}",  
-                System.getProperty( "java.io.tmpdir" ),  e.getMessage(), e );
+            sorter.abort();
+
             throw e;
         }
-
-        BaseRecordManager recMan = new BaseRecordManager( file.getAbsolutePath() );
-
-        jdbm.btree.BTree<Entry, String> btree = new jdbm.btree.BTree<>( recMan, comparator, keySerializer, NullStringSerializer.INSTANCE );
-        
-
-        btree.insert( first, "", false );
-
-        // at this stage the cursor will be _on_ the next element, so read it
-        btree.insert( unsortedEntries.get(), "", false );
-
-        while ( unsortedEntries.next() )
+        finally
         {
-            Entry entry = unsortedEntries.get();
-            btree.insert( entry, "", false );
+            unsortedEntries.close();
         }
-
-        unsortedEntries.close();
-
-        return new SortedEntryCursor( btree, recMan, file );
     }
 
 
@@ -27,6 +27,7 @@ import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,6 +44,9 @@ public class DefaultDnFactory implements DnFactory
 {
     private static final Logger LOG = LoggerFactory.getLogger( DefaultDnFactory.class );
 
+    /** The name of the DN cache in the MetricsRegistry */
+    public static final String CACHE_NAME = "dn";
+
     /** The cache for DNs */
     private Cache<String, Dn> dnCache;
 
@@ -67,7 +71,19 @@ public class DefaultDnFactory implements DnFactory
     {
         this.schemaManager = schemaManager;
         this.dnCache = Caffeine.newBuilder().maximumSize( cacheSize ).expireAfterAccess( Duration.ofMinutes( 10L ) )
-            .build();
+            .recordStats().build();
+    }
+
+
+    /**
+     * Exposes the DN cache statistics. The cache must be unregistered from the same registry
+     * when the factory is not used anymore.
+     *
+     * @param metrics The registry to register the cache into
+     */
+    public void registerCache( MetricsRegistry metrics )
+    {
+        metrics.registerCache( CACHE_NAME, MetricsRegistry.NO_PARTITION, dnCache );
     }
 
 
@@ -0,0 +1,632 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server.core.shared;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Sorts the entries returned by a search for the server side sort control. The entries are
+ * sorted in memory, up to a limit. Above this limit, they are written in sorted runs in temporary
+ * files, which are merged at the end with a k-way merge.
+ * <br>
+ * When only the first N entries will be read, because of a size limit, only those N entries
+ * are kept, in a bounded heap.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class EntrySorter
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( EntrySorter.class );
+
+    /** The comparator */
+    private final SortedEntryComparator comparator;
+
+    /** The order of the sorted entries, the insertion order being used for equal entries */
+    private final Comparator<SortedEntry> order;
+
+    /** The maximum number of entries kept in memory */
+    private final int maxEntriesInMemory;
+
+    /** The maximum number of entries to return, 0 if there is no limit */
+    private final int maxEntries;
+
+    /** Tells if the entries will be read page by page */
+    private final boolean paged;
+
+    /** The serializer used to write the entries in the runs */
+    private final SortedEntrySerializer serializer = new SortedEntrySerializer();
+
+    /** The entries not written in a run yet */
+    private List<SortedEntry> buffer = new ArrayList<>();
+
+    /** The N first entries when the number of entries to return is limited, the last one on top */
+    private PriorityQueue<SortedEntry> topEntries;
+
+    /** The sorted runs written in the temporary files */
+    private final List<File> runs = new ArrayList<>();
+
+    /** The number of added entries */
+    private long nbEntries;
+
+
+    /**
+     * An entry, with its sort values
+     */
+    private static final class SortedEntry
+    {
+        private final Object[] values;
+        private final Entry entry;
+        private final long sequence;
+
+
+        private SortedEntry( Object[] values, Entry entry, long sequence )
+        {
+            this.values = values;
+            this.entry = entry;
+            this.sequence = sequence;
+        }
+    }
+
+
+    /**
+     * The sorted entries, read by the {@link SortedEntryCursor}
+     */
+    interface SortedEntries extends Closeable
+    {
+        /**
+         * @return The number of entries
+         */
+        int size();
+
+
+        /**
+         * Get the entry at a given position
+         *
+         * @param index the position of the entry
+         * @return the entry
+         * @throws IOException If the entry can't be read
+         */
+        Entry get( int index ) throws IOException;
+    }
+
+
+    /**
+     * Creates a new instance of EntrySorter.
+     *
+     * @param comparator the comparator to use
+     * @param maxEntriesInMemory the maximum number of entries kept in memory
+     * @param maxEntries the maximum number of entries to return, 0 if there is no limit
+     * @param paged tells if the entries will be read page by page
+     */
+    EntrySorter( SortedEntryComparator comparator, int maxEntriesInMemory, int maxEntries, boolean paged )
+    {
+        this.comparator = comparator;
+        this.maxEntriesInMemory = Math.max( 1, maxEntriesInMemory );
+        this.maxEntries = Math.max( 0, maxEntries );
+        this.paged = paged;
+
+        order = ( sortedEntry1, sortedEntry2 ) ->
+        {
+            int c = comparator.compareSortValues( sortedEntry1.values, sortedEntry2.values );
+
+            if ( c != 0 )
+            {
+                return c;
+            }
+
+            return Long.compare( sortedEntry1.sequence, sortedEntry2.sequence );
+        };
+
+        if ( ( this.maxEntries > 0 ) && ( this.maxEntries <= this.maxEntriesInMemory ) )
+        {
+            topEntries = new PriorityQueue<>( Math.min( this.maxEntries, 1024 ), Collections.reverseOrder( order ) );
+        }
+    }
+
+
+    /**
+     * Add an entry to sort
+     *
+     * @param entry the entry
+     * @throws IOException If the entries can't be written in a temporary file
+     */
+    void add( Entry entry ) throws IOException
+    {
+        SortedEntry sortedEntry = new SortedEntry( comparator.getSortValues( entry ), entry, nbEntries++ );
+
+        if ( topEntries != null )
+        {
+            if ( topEntries.size() < maxEntries )
+            {
+                topEntries.add( sortedEntry );
+            }
+            else if ( order.compare( sortedEntry, topEntries.peek() ) < 0 )
+            {
+                topEntries.poll();
+                topEntries.add( sortedEntry );
+            }
+
+            return;
+        }
+
+        buffer.add( sortedEntry );
+
+        if ( buffer.size() >= maxEntriesInMemory )
+        {
+            writeRun();
+        }
+    }
+
+
+    /**
+     * Sort the added entries
+     *
+     * @return the sorted entries
+     * @throws IOException If the temporary files can't be read or written
+     */
+    SortedEntries sort() throws IOException
+    {
+        if ( topEntries != null )
+        {
+            buffer = new ArrayList<>( topEntries );
+            topEntries = null;
+        }
+
+        if ( runs.isEmpty() )
+        {
+            SortedEntry[] entries = buffer.toArray( new SortedEntry[0] );
+            buffer = null;
+
+            if ( paged )
+            {
+                return new LazyInMemoryEntries( entries, order );
+            }
+
+            Arrays.sort( entries, order );
+
+            return new InMemoryEntries( entries );
+        }
+
+        try
+        {
+            if ( !buffer.isEmpty() )
+            {
+                writeRun();
+            }
+
+            buffer = null;
+
+            return merge();
+        }
+        finally
+        {
+            deleteRuns();
+        }
+    }
+
+
+    /**
+     * Delete the temporary files if the entries are not sorted
+     */
+    void abort()
+    {
+        buffer = null;
+        topEntries = null;
+        deleteRuns();
+    }
+
+
+    /**
+     * Sort the entries in memory and write them in a new run
+     */
+    private void writeRun() throws IOException
+    {
+        buffer.sort( order );
+
+        File run = Files.createTempFile( "apacheds-sort", ".run" ).toFile();
+        runs.add( run );
+
+        try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( Files.newOutputStream(
+            run.toPath() ) ) ) )
+        {
+            for ( SortedEntry sortedEntry : buffer )
+            {
+                byte[] data = serializer.serialize( sortedEntry.entry );
+                out.writeInt( data.length );
+                out.write( data );
+            }
+        }
+
+        LOG.debug( "Wrote a sorted run of {} entries in {}", buffer.size(), run );
+
+        buffer.clear();
+    }
+
+
+    /**
+     * A sorted run being merged
+     */
+    private final class Run implements Closeable
+    {
+        private final DataInputStream in;
+        private final int number;
+        private SortedEntry head;
+
+
+        private Run( File file, int number ) throws IOException
+        {
+            this.in = new DataInputStream( new BufferedInputStream( Files.newInputStream( file.toPath() ) ) );
+            this.number = number;
+        }
+
+
+        /**
+         * Read the next entry of the run
+         *
+         * @return false if the run has been fully read
+         */
+        private boolean advance() throws IOException
+        {
+            int length;
+
+            try
+            {
+                length = in.readInt();
+            }
+            catch ( EOFException eofe )
+            {
+                head = null;
+
+                return false;
+            }
+
+            byte[] data = new byte[length];
+            in.readFully( data );
+            Entry entry = ( Entry ) serializer.deserialize( data );
+
+            // The runs are numbered in the order of insertion of their entries
+            head = new SortedEntry( comparator.getSortValues( entry ), entry, number );
+
+            return true;
+        }
+
+
+        @Override
+        public void close() throws IOException
+        {
+            in.close();
+        }
+    }
+
+
+    /**
+     * Merge the runs in a single file
+     */
+    private SortedEntries merge() throws IOException
+    {
+        List<Run> openedRuns = new ArrayList<>( runs.size() );
+        PriorityQueue<Run> heads = new PriorityQueue<>( runs.size(), ( run1, run2 ) -> order.compare( run1.head,
+            run2.head ) );
+        File merged = Files.createTempFile( "apacheds-sort", ".sorted" ).toFile();
+        long[] offsets = new long[1024];
+        int nbMerged = 0;
+        long offset = 0L;
+
+        try
+        {
+            for ( int i = 0; i < runs.size(); i++ )
+            {
+                Run run = new Run( runs.get( i ), i );
+                openedRuns.add( run );
+
+                if ( run.advance() )
+                {
+                    heads.add( run );
+                }
+            }
+
+            try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( Files.newOutputStream(
+                merged.toPath() ) ) ) )
+            {
+                while ( !heads.isEmpty() && ( ( maxEntries == 0 ) || ( nbMerged < maxEntries ) ) )
+                {
+                    Run run = heads.poll();
+
+                    if ( nbMerged == offsets.length )
+                    {
+                        offsets = Arrays.copyOf( offsets, offsets.length * 2 );
+                    }
+
+                    offsets[nbMerged++] = offset;
+
+                    byte[] data = serializer.serialize( run.head.entry );
+                    out.writeInt( data.length );
+                    out.write( data );
+                    offset += 4 + data.length;
+
+                    if ( run.advance() )
+                    {
+                        heads.add( run );
+                    }
+                }
+            }
+
+            LOG.debug( "Merged {} sorted runs, {} entries", runs.size(), nbMerged );
+
+            return new FileEntries( merged, offsets, nbMerged );
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            if ( !merged.delete() )
+            {
+                LOG.warn( "Failed to delete the sorted entries file {}", merged );
+            }
+
+            throw e;
+        }
+        finally
+        {
+            for ( Run run : openedRuns )
+            {
+                run.close();
+            }
+        }
+    }
+
+
+    private void deleteRuns()
+    {
+        for ( File run : runs )
+        {
+            if ( !run.delete() )
+            {
+                LOG.warn( "Failed to delete the sorted run {}", run );
+            }
+        }
+
+        runs.clear();
+    }
+
+
+    /**
+     * The entries sorted in memory
+     */
+    private static final class InMemoryEntries implements SortedEntries
+    {
+        private final SortedEntry[] entries;
+
+
+        private InMemoryEntries( SortedEntry[] entries )
+        {
+            this.entries = entries;
+        }
+
+
+        @Override
+        public int size()
+        {
+            return entries.length;
+        }
+
+
+        @Override
+        public Entry get( int index )
+        {
+            return entries[index].entry;
+        }
+
+
+        @Override
+        public void close()
+        {
+            // Nothing to do
+        }
+    }
+
+
+    /**
+     * The entries kept in memory, sorted when they are read : the entries are stored in
+     * a heap, the next entry being removed from the heap when it's read. The cost of
+     * reading the first pages is then proportional to the number of entries, instead of
+     * the cost of sorting them all.
+     */
+    private static final class LazyInMemoryEntries implements SortedEntries
+    {
+        /** The already sorted entries, followed by the heap */
+        private final SortedEntry[] entries;
+
+        /** The order */
+        private final Comparator<SortedEntry> order;
+
+        /** The number of sorted entries */
+        private int nbSorted;
+
+
+        private LazyInMemoryEntries( SortedEntry[] entries, Comparator<SortedEntry> order )
+        {
+            this.entries = entries;
+            this.order = order;
+
+            // Build a heap, with the smallest entry at the end of the array
+            for ( int i = ( entries.length / 2 ) - 1; i >= 0; i-- )
+            {
+                siftDown( i, entries.length );
+            }
+        }
+
+
+        @Override
+        public int size()
+        {
+            return entries.length;
+        }
+
+
+        @Override
+        public Entry get( int index )
+        {
+            while ( nbSorted <= index )
+            {
+                // The heap is stored in reverse order at the end of the array : its root is
+                // the last element. Move the root at the beginning of the heap and
+                // restore the heap property.
+                int heapSize = entries.length - nbSorted;
+                SortedEntry root = heapAt( 0 );
+                setHeapAt( 0, heapAt( heapSize - 1 ) );
+                setHeapAt( heapSize - 1, root );
+                siftDown( 0, heapSize - 1 );
+                nbSorted++;
+            }
+
+            return entries[index].entry;
+        }
+
+
+        /**
+         * The heap element at a given position. The heap root is the last element of the array.
+         */
+        private SortedEntry heapAt( int position )
+        {
+            return entries[entries.length - 1 - position];
+        }
+
+
+        private void setHeapAt( int position, SortedEntry sortedEntry )
+        {
+            entries[entries.length - 1 - position] = sortedEntry;
+        }
+
+
+        private void siftDown( int position, int heapSize )
+        {
+            SortedEntry sortedEntry = heapAt( position );
+
+            while ( true )
+            {
+                int child = ( 2 * position ) + 1;
+
+                if ( child >= heapSize )
+                {
+                    break;
+                }
+
+                if ( ( child + 1 < heapSize ) && ( order.compare( heapAt( child + 1 ), heapAt( child ) ) < 0 ) )
+                {
+                    child++;
+                }
+
+                if ( order.compare( sortedEntry, heapAt( child ) ) <= 0 )
+                {
+                    break;
+                }
+
+                setHeapAt( position, heapAt( child ) );
+                position = child;
+            }
+
+            setHeapAt( position, sortedEntry );
+        }
+
+
+        @Override
+        public void close()
+        {
+            // Nothing to do
+        }
+    }
+
+
+    /**
+     * The entries sorted in a temporary file, which is deleted when closed
+     */
+    private final class FileEntries implements SortedEntries
+    {
+        private final File file;
+        private final RandomAccessFile raf;
+        private final long[] offsets;
+        private final int size;
+
+
+        private FileEntries( File file, long[] offsets, int size ) throws IOException
+        {
+            this.file = file;
+            this.raf = new RandomAccessFile( file, "r" );
+            this.offsets = offsets;
+            this.size = size;
+        }
+
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+
+
+        @Override
+        public Entry get( int index ) throws IOException
+        {
+            raf.seek( offsets[index] );
+            byte[] data = new byte[raf.readInt()];
+            raf.readFully( data );
+
+            return ( Entry ) serializer.deserialize( data );
+        }
+
+
+        @Override
+        public void close() throws IOException
+        {
+            try
+            {
+                raf.close();
+            }
+            finally
+            {
+                if ( !file.delete() )
+                {
+                    LOG.warn( "Failed to delete the sorted entries file {}", file );
+                }
+            }
+        }
+    }
+}
@@ -20,15 +20,15 @@
 package org.apache.directory.server.core.shared;
 
 
-import java.io.Serializable;
 import java.util.Comparator;
-import java.util.TreeSet;
+import java.util.List;
 
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.controls.SortKey;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.LdapComparator;
 import org.apache.directory.api.ldap.model.schema.MatchingRule;
@@ -36,174 +36,211 @@ import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.ldap.model.schema.comparators.ParsedDnComparator;
 
 /**
- * A comparator to sort the entries as per <a href="http://tools.ietf.org/html/rfc2891">RFC 2891</a>
+ * A comparator to sort the entries as per <a href="http://tools.ietf.org/html/rfc2891">RFC 2891</a>.
+ * The entries are compared on each sort key in turn, the next key being used when the
+ * values of the previous one are equal.
+ * <br>
+ * The values used for the comparison can be extracted once per entry with {@link #getSortValues(Entry)},
+ * and compared with {@link #compareSortValues(Object[], Object[])}.
  * 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
-class SortedEntryComparator implements Comparator<Entry>, Serializable
+class SortedEntryComparator implements Comparator<Entry>
 {
+    /** the sort keys attribute types */
+    private final AttributeType[] types;
 
-    /** the attribute's type */
-    private transient AttributeType type;
+    /** comparators used for comparing the values of each sort key */
+    private final LdapComparator[] comparators;
 
-    /** comparator used for comparing the values of the given attribute type */
-    private transient LdapComparator comparator;
+    /** flags to indicate if the sort keys attribute types are multivalued */
+    private final boolean[] multivalued;
 
-    /** flag to indicate if the attribute type is multivalued */
-    private boolean multivalued;
+    /** flags for indicating the order of sorting of each key */
+    private final boolean[] reverse;
 
-    /** flag for indicating the order of sorting */
-    private boolean reverse;
+    /** flags to indicate if the sort keys attributes are human readable or binary */
+    private final boolean[] hr;
 
-    /** flag to indicate if the attribute is human readable or binary */
-    private boolean hr;
+    /** flags to indicate if the sort key is the entry's DN */
+    private final boolean[] dn;
 
 
     /**
-     * 
      * Creates a new instance of SortedEntryComparator.
      *
-     * @param at the attribute's type
-     * @param mrOid the OID or name of the matchingrule
-     * @param reverse flag to indicate the sort order
+     * @param sortKeys the sort keys, in order of precedence
+     * @param schemaManager the schema manager
+     * @throws LdapException if one of the sort key can't be used
      */
-    SortedEntryComparator( AttributeType at, String mrule, boolean reverse, SchemaManager schemaManager ) throws LdapException
+    SortedEntryComparator( List<SortKey> sortKeys, SchemaManager schemaManager ) throws LdapException
     {
-        this.type = at;
-        this.reverse = reverse;
-
-        if ( !at.isSingleValued() )
-        {
-            multivalued = true;
-        }
-        
-        // Special case : entryDn
-        if ( SchemaConstants.ENTRY_DN_AT_OID.equals( at.getOid() ) )
+        int nbKeys = sortKeys.size();
+        types = new AttributeType[nbKeys];
+        comparators = new LdapComparator[nbKeys];
+        multivalued = new boolean[nbKeys];
+        reverse = new boolean[nbKeys];
+        hr = new boolean[nbKeys];
+        dn = new boolean[nbKeys];
+
+        for ( int i = 0; i < nbKeys; i++ )
         {
-            // We will use the Entry's DN comparator.
-            comparator = new ParsedDnComparator( SchemaConstants.ENTRY_DN_AT_OID );
-            comparator.setSchemaManager( schemaManager );
-            hr = true;
-        }
-        else
-        { 
-            hr = at.getSyntax().isHumanReadable();
-    
-            if ( mrule != null )
+            SortKey sortKey = sortKeys.get( i );
+            AttributeType at = schemaManager.lookupAttributeTypeRegistry( sortKey.getAttributeTypeDesc() );
+            String mrule = sortKey.getMatchingRuleId();
+
+            types[i] = at;
+            reverse[i] = sortKey.isReverseOrder();
+            multivalued[i] = !at.isSingleValued();
+
+            // Special case : entryDn
+            if ( SchemaConstants.ENTRY_DN_AT_OID.equals( at.getOid() ) )
             {
-                comparator = schemaManager.lookupComparatorRegistry( mrule );
+                // We will use the Entry's DN comparator.
+                comparators[i] = new ParsedDnComparator( SchemaConstants.ENTRY_DN_AT_OID );
+                dn[i] = true;
+                hr[i] = true;
             }
             else
             {
-                MatchingRule mr = at.getOrdering();
-                
-                if ( mr == null )
+                hr[i] = at.getSyntax().isHumanReadable();
+
+                if ( mrule != null )
                 {
-                    mr = at.getEquality();
+                    comparators[i] = schemaManager.lookupComparatorRegistry( mrule );
+                }
+                else
+                {
+                    MatchingRule mr = at.getOrdering();
+
+                    if ( mr == null )
+                    {
+                        mr = at.getEquality();
+                    }
+
+                    comparators[i] = schemaManager.lookupComparatorRegistry( mr.getOid() );
                 }
-                
-                comparator = schemaManager.lookupComparatorRegistry( mr.getOid() );
             }
-            
-            comparator.setSchemaManager( schemaManager );
+
+            comparators[i].setSchemaManager( schemaManager );
         }
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
     @Override
     public int compare( Entry entry1, Entry entry2 )
     {
-        Attribute at1 = entry1.get( type );
-
-        Attribute at2 = entry2.get( type );
+        return compareSortValues( getSortValues( entry1 ), getSortValues( entry2 ) );
+    }
 
-        // as per section 2.2 of the spec null values are considered larger
-        if ( at1 == null )
-        {
-            return reverse ? -1 : 1;
-        }
-        else if ( at2 == null )
-        {
-            return reverse ? 1 : -1;
-        }
 
-        Object o1;
-        Object o2;
+    /**
+     * Extract the values of an entry used to sort it : for each sort key, the normalized
+     * value of the attribute, the least one if the attribute has many values, or null
+     * if the entry does not have the attribute.
+     *
+     * @param entry the entry
+     * @return the entry's sort values
+     */
+    @SuppressWarnings("unchecked")
+    Object[] getSortValues( Entry entry )
+    {
+        Object[] values = new Object[types.length];
 
-        if ( multivalued )
+        for ( int i = 0; i < types.length; i++ )
         {
-            TreeSet ts = new TreeSet( comparator );
-
-            o1 = sortAndGetFirst( at1, ts );
+            if ( dn[i] )
+            {
+                values[i] = entry.getDn();
+                continue;
+            }
 
-            ts.clear();
-            o2 = sortAndGetFirst( at2, ts );
-        }
-        else
-        {
-            Value v1 = at1.get();
-            Value v2 = at2.get();
+            Attribute attribute = entry.get( types[i] );
 
-            if ( hr )
+            if ( ( attribute == null ) || ( attribute.size() == 0 ) )
             {
-                o1 = v1.getString();
-                o2 = v2.getString();
+                continue;
             }
-            else
+
+            if ( multivalued[i] )
             {
-                o1 = v1.getBytes();
-                o2 = v2.getBytes();
-            }
-        }
+                Object least = null;
 
-        int c;
+                for ( Value value : attribute )
+                {
+                    Object candidate = getValue( i, value );
 
-        try
-        {
-            if ( reverse )
-            {
-                c = comparator.compare( comparator.getNormalizer().normalize( ( String ) o2 ), o1 );
+                    if ( ( least == null ) || ( comparators[i].compare( candidate, least ) < 0 ) )
+                    {
+                        least = candidate;
+                    }
+                }
+
+                values[i] = least;
             }
             else
             {
-                c = comparator.compare( comparator.getNormalizer().normalize( ( String ) o1 ), o2 );
-            }
-    
-            if ( c == 0 )
-            {
-                return 1;
+                values[i] = getValue( i, attribute.get() );
             }
+        }
+
+        return values;
+    }
+
 
-            return c;
+    private Object getValue( int key, Value value )
+    {
+        if ( hr[key] )
+        {
+            return value.getNormalized();
         }
-        catch ( LdapException le )
+        else
         {
-            return 0;
+            return value.getBytes();
         }
     }
 
 
     /**
-     * sorts the values of an attribute and picks the least value
-     * 
-     * @param at the attribute
-     * @param ts the TreeSet for sorting 
-     * @return the least value among the values of the attribute
+     * Compare the sort values of two entries.
+     *
+     * @param values1 the sort values of the first entry
+     * @param values2 the sort values of the second entry
+     * @return a negative number, zero or a positive number if the first entry is sorted before,
+     * at the same position or after the second entry
      */
-    private Object sortAndGetFirst( Attribute at, TreeSet ts )
+    @SuppressWarnings("unchecked")
+    int compareSortValues( Object[] values1, Object[] values2 )
     {
-        for ( Value v : at )
+        for ( int i = 0; i < values1.length; i++ )
         {
-            if ( hr )
+            Object value1 = values1[i];
+            Object value2 = values2[i];
+            int c;
+
+            // as per section 2.2 of the spec null values are considered larger
+            if ( value1 == null )
+            {
+                c = ( value2 == null ) ? 0 : 1;
+            }
+            else if ( value2 == null )
             {
-                ts.add( v.getNormalized() );
+                c = -1;
             }
             else
             {
-                ts.add( v.getBytes() );
+                c = comparators[i].compare( value1, value2 );
+            }
+
+            if ( c != 0 )
+            {
+                return reverse[i] ? -c : c;
             }
         }
 
-        return ts.first();
+        return 0;
     }
-}
\ No newline at end of file
+}
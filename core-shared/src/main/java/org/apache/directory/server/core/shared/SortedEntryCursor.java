@@ -1,34 +1,27 @@
 /*
- *   Licensed to the Apache Software Foundation (ASF) under one
- *   or more contributor license agreements.  See the NOTICE file
- *   distributed with this work for additional information
- *   regarding copyright ownership.  The ASF licenses this file
- *   to you under the Apache License, Version 2.0 (the
- *   "License"); you may not use this file except in compliance
- *   with the License.  You may obtain a copy of the License at
- *
- *     http://www.apache.org/licenses/LICENSE-2.0
- *
- *   Unless required by applicable law or agreed to in writing,
- *   software distributed under the License is distributed on an
- *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
- *   KIND, either express or implied.  See the License for the
- *   specific language governing permissions and limitations
- *   under the License.
- *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
  */
 package org.apache.directory.server.core.shared;
 
 
-import java.io.File;
 import java.io.IOException;
 import java.util.List;
-import java.util.NoSuchElementException;
-
-import jdbm.RecordManager;
-import jdbm.btree.BTree;
-import jdbm.helper.Tuple;
-import jdbm.helper.TupleBrowser;
 
 import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
 import org.apache.directory.api.ldap.model.cursor.CursorException;
@@ -38,15 +31,13 @@ import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.server.core.api.filtering.EntryFilter;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.shared.EntrySorter.SortedEntries;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 /**
  * Cursor for sorted entries.
- * 
- * Note: This currently uses JDBM, but will be migrated to use Mavibot
- *       when ready.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -54,31 +45,27 @@ public class SortedEntryCursor extends AbstractCursor<Entry> implements EntryFil
 {
 
     private static final Logger LOG = LoggerFactory.getLogger( SortedEntryCursor.class );
-    
-    private TupleBrowser browser;
 
-    private final Tuple tuple = new Tuple();
+    /** The sorted entries */
+    private SortedEntries entries;
+
+    /** The current position, -1 when before the first entry */
+    private int position = -1;
 
-    private RecordManager recMan;
+    /** The current entry */
+    private Entry current;
 
-    private File dataFile;
-    
-    private BTree<Entry, String> btree;
-    
 
-    public SortedEntryCursor( BTree<Entry, String> btree, RecordManager recMan, File dataFile ) throws IOException
+    SortedEntryCursor( SortedEntries entries )
     {
-        this.recMan = recMan;
-        this.dataFile = dataFile;
-        this.btree = btree;
-        browser = btree.browse();
+        this.entries = entries;
     }
 
 
     @Override
     public boolean available()
     {
-        return tuple.getKey() != null;
+        return current != null;
     }
 
 
@@ -99,31 +86,16 @@ public class SortedEntryCursor extends AbstractCursor<Entry> implements EntryFil
     @Override
     public void beforeFirst() throws LdapException, CursorException
     {
-        try
-        {
-            clearValue();
-            browser = btree.browse();
-        }
-        catch ( IOException e )
-        {
-            throw new CursorException( e );
-        }
+        current = null;
+        position = -1;
     }
 
 
     @Override
     public void afterLast() throws LdapException, CursorException
     {
-        try
-        {
-            clearValue();
-            browser = btree.browse( null );
-        }
-        catch ( IOException e )
-        {
-            throw new CursorException( e );
-        }
-
+        current = null;
+        position = entries.size();
     }
 
 
@@ -146,80 +118,65 @@ public class SortedEntryCursor extends AbstractCursor<Entry> implements EntryFil
     @Override
     public boolean previous() throws LdapException, CursorException
     {
-        try
+        if ( position >= 0 )
         {
-
-            if ( browser == null )
-            {
-                browser = btree.browse( null );
-            }
-            
-            if ( browser.getPrevious( tuple ) )
-            {
-                return true;
-            }
-        }
-        catch ( IOException e )
-        {
-            throw new CursorException( e );
-        }
-        catch ( NoSuchElementException e )
-        {
-            // ignore this is due to the call wrapped.prev()
-            // instead of doing a check like if(wrapped.hasPrev())
+            position--;
         }
 
-        clearValue();
-        return false;
+        return fetch();
     }
 
 
     @Override
     public boolean next() throws LdapException, CursorException
     {
+        if ( position < entries.size() )
+        {
+            position++;
+        }
+
+        return fetch();
+    }
+
+
+    private boolean fetch() throws CursorException
+    {
+        if ( ( position < 0 ) || ( position >= entries.size() ) )
+        {
+            current = null;
+
+            return false;
+        }
+
         try
         {
-            if ( browser == null )
-            {
-                browser = btree.browse();
-            }
-            
-            if ( browser.getNext( tuple ) )
-            {
-                return true;
-            }
+            current = entries.get( position );
         }
         catch ( IOException e )
         {
             throw new CursorException( e );
         }
-        catch ( NoSuchElementException e )
-        {
-            // ignore, this is due to the call wrapped.prev()
-            // instead of doing a check like if(wrapped.hasNext())
-        }
 
-        clearValue();
-        return false;
+        return true;
     }
 
 
     @Override
     public Entry get() throws CursorException
     {
-        if ( tuple.getKey() == null )
+        if ( current == null )
         {
             throw new InvalidCursorPositionException();
         }
 
-        return ( Entry ) tuple.getKey();
+        return current;
     }
 
 
     @Override
     public void close() throws IOException
     {
-        deleteFile();
+        closeEntries();
         super.close();
     }
 
@@ -227,7 +184,7 @@ public class SortedEntryCursor extends AbstractCursor<Entry> implements EntryFil
     @Override
     public void close( Exception cause ) throws IOException
     {
-        deleteFile();
+        closeEntries();
         super.close( cause );
     }
 
@@ -252,29 +209,23 @@ public class SortedEntryCursor extends AbstractCursor<Entry> implements EntryFil
         return null;
     }
 
-    
-    private void clearValue()
-    {
-        tuple.setKey( null );
-        tuple.setValue( null );
-    }
 
-    
-    private void deleteFile()
+    private void closeEntries()
     {
-        if ( recMan == null )
+        if ( entries == null )
         {
             return;
         }
 
         try
         {
-            recMan.close();
-            dataFile.delete();
+            entries.close();
         }
         catch ( IOException e )
         {
-            LOG.warn( "Failed to delete the sorted entry data file {}", dataFile, e );
+            LOG.warn( "Failed to delete the sorted entries", e );
         }
+
+        entries = null;
     }
 }
@@ -23,12 +23,9 @@ package org.apache.directory.server.core.shared.partition;
 import java.io.InputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -39,10 +36,7 @@ import org.apache.directory.api.ldap.model.cursor.SingletonCursor;
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
 import org.apache.directory.api.ldap.model.entry.DefaultEntry;
-import org.apache.directory.api.ldap.model.entry.DefaultModification;
 import org.apache.directory.api.ldap.model.entry.Entry;
-import org.apache.directory.api.ldap.model.entry.Modification;
-import org.apache.directory.api.ldap.model.entry.ModificationOperation;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapNoSuchAttributeException;
@@ -57,7 +51,6 @@ import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.AttributeTypeOptions;
 import org.apache.directory.api.ldap.model.schema.UsageEnum;
-import org.apache.directory.api.ldap.util.tree.DnNode;
 import org.apache.directory.api.util.exception.MultiException;
 import org.apache.directory.server.constants.ServerDNConstants;
 import org.apache.directory.server.core.api.DirectoryService;
@@ -118,13 +111,11 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
     /** The DirectoryService instance */
     private DirectoryService directoryService;
 
-    /** the partitions keyed by normalized suffix strings */
-    private Map<String, Partition> partitions = new HashMap<>();
-
-    /** A structure to hold all the partitions */
-    private DnNode<Partition> partitionLookupTree = new DnNode<>();
-
-    private final List<Modification> mods = new ArrayList<>( 2 );
+    /**
+     * The partitions, and the structure used to route a Dn to its partition. It's
+     * immutable, and replaced when a partition is added or removed.
+     */
+    private volatile PartitionRoutingTable routingTable = PartitionRoutingTable.EMPTY;
 
     /** The cn=schema Dn */
     private Dn subschemaSubentryDn;
@@ -243,8 +234,6 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
                     initializedPartitions.add( partition );
                 }
 
-                createContextCsnModList();
-
                 initialized = true;
             }
             finally
@@ -290,7 +279,7 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
 
         // make sure this loop is not fail fast so all backing stores can
         // have an attempt at closing down and synching their cached entries
-        for ( String suffix : new HashSet<>( this.partitions.keySet() ) )
+        for ( String suffix : routingTable.getPartitions().keySet() )
         {
             try
             {
@@ -334,7 +323,7 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
     {
         MultiException errors = null;
 
-        for ( Partition partition : this.partitions.values() )
+        for ( Partition partition : routingTable.getPartitions().values() )
         {
             try
             {
@@ -705,7 +694,7 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
             // We will look into all the partitions, thus we create a list of cursors.
             List<EntryFilteringCursor> cursors = new ArrayList<>();
 
-            for ( Partition partition : partitions.values() )
+            for ( Partition partition : routingTable.getPartitions().values() )
             {
                 Dn contextDn = partition.getSuffixDn();
                 PartitionTxn partitionTxn = partition.beginReadTransaction();
@@ -733,7 +722,7 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
             // a CursorList into the EntryFilteringCursor
             List<EntryFilteringCursor> cursors = new ArrayList<>();
 
-            for ( Partition partition : partitions.values() )
+            for ( Partition partition : routingTable.getPartitions().values() )
             {
                 PartitionTxn partitionTxn = partition.beginReadTransaction();
                 Dn contextDn = partition.getSuffixDn();
@@ -773,6 +762,9 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
             }
             else
             {
+                // Each partition's entries may be sorted, but not the list of them
+                searchContext.setSorted( false );
+
                 return new CursorList( cursors, searchContext );
             }
         }
@@ -824,7 +816,7 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
         // Turn on default indices
         String key = partition.getSuffixDn().getNormName();
 
-        if ( partitions.containsKey( key ) )
+        if ( routingTable.getPartitions().containsKey( key ) )
         {
             throw new LdapOtherException( I18n.err( I18n.ERR_263, key ) );
         }
@@ -834,30 +826,31 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
             partition.initialize();
         }
 
-        synchronized ( partitionLookupTree )
+        if ( ( directoryService != null ) && ( partition instanceof AbstractPartition ) )
         {
-            Dn partitionSuffix = partition.getSuffixDn();
+            ( ( AbstractPartition ) partition ).registerCaches( directoryService.getMetricsRegistry() );
+        }
 
-            if ( partitionSuffix == null )
-            {
-                throw new LdapOtherException( I18n.err( I18n.ERR_267, partition.getId() ) );
-            }
+        Dn partitionSuffix = partition.getSuffixDn();
 
-            partitions.put( partitionSuffix.getNormName(), partition );
-            partitionLookupTree.add( partition.getSuffixDn(), partition );
+        if ( partitionSuffix == null )
+        {
+            throw new LdapOtherException( I18n.err( I18n.ERR_267, partition.getId() ) );
+        }
 
-            Attribute namingContexts = rootDse.get( SchemaConstants.NAMING_CONTEXTS_AT );
+        routingTable = routingTable.add( partition );
 
-            if ( namingContexts == null )
-            {
-                namingContexts = new DefaultAttribute( schemaManager
-                    .lookupAttributeTypeRegistry( SchemaConstants.NAMING_CONTEXTS_AT ), partitionSuffix.getName() );
-                rootDse.put( namingContexts );
-            }
-            else
-            {
-                namingContexts.add( partitionSuffix.getName() );
-            }
+        Attribute namingContexts = rootDse.get( SchemaConstants.NAMING_CONTEXTS_AT );
+
+        if ( namingContexts == null )
+        {
+            namingContexts = new DefaultAttribute( schemaManager
+                .lookupAttributeTypeRegistry( SchemaConstants.NAMING_CONTEXTS_AT ), partitionSuffix.getName() );
+            rootDse.put( namingContexts );
+        }
+        else
+        {
+            namingContexts.add( partitionSuffix.getName() );
         }
     }
 
@@ -870,7 +863,7 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
         throws LdapException
     {
         // Retrieve this partition from the aprtition's table
-        Partition partition = partitions.get( partitionDn );
+        Partition partition = routingTable.getPartitions().get( partitionDn );
 
         if ( partition == null )
         {
@@ -913,13 +906,13 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
         }
 
         // Update the partition tree
-        synchronized ( partitionLookupTree )
+        routingTable = routingTable.remove( partitionDn );
+
+        if ( directoryService != null )
         {
-            partitionLookupTree.remove( partition.getSuffixDn() );
+            directoryService.getMetricsRegistry().unregisterCaches( partition.getId() );
         }
 
-        partitions.remove( partitionDn );
-
         try
         {
             partition.destroy( partition.beginReadTransaction() );
@@ -954,10 +947,7 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
             return new RootPartition( schemaManager );
         }
 
-        synchronized ( partitionLookupTree )
-        {
-            parent = partitionLookupTree.getElement( dn );
-        }
+        parent = routingTable.getPartition( dn );
 
         if ( parent == null )
         {
@@ -987,7 +977,7 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
     @Override
     public Set<String> listSuffixes() throws LdapException
     {
-        return Collections.unmodifiableSet( partitions.keySet() );
+        return routingTable.getPartitions().keySet();
     }
 
 
@@ -1045,7 +1035,7 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
      * BackendNexus.
      * @throws Exception if there are problems unregistering the partition
      */
-    private void unregister( Partition partition )
+    private synchronized void unregister( Partition partition )
     {
         Attribute namingContexts = rootDse.get( SchemaConstants.NAMING_CONTEXTS_AT );
 
@@ -1054,7 +1044,7 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
             namingContexts.remove( partition.getSuffixDn().getName() );
         }
 
-        partitions.remove( partition.getSuffixDn().getName() );
+        routingTable = routingTable.remove( partition.getSuffixDn().getNormName() );
     }
 
 
@@ -1076,24 +1066,6 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
     }
 
 
-    private void createContextCsnModList() throws LdapException
-    {
-        Modification contextCsnMod = new DefaultModification();
-        contextCsnMod.setOperation( ModificationOperation.REPLACE_ATTRIBUTE );
-        DefaultAttribute contextCsnAt = new DefaultAttribute( schemaManager
-            .lookupAttributeTypeRegistry( SchemaConstants.CONTEXT_CSN_AT ) );
-        contextCsnMod.setAttribute( contextCsnAt );
-
-        mods.add( contextCsnMod );
-
-        Modification timeStampMod = new DefaultModification();
-        timeStampMod.setOperation( ModificationOperation.REPLACE_ATTRIBUTE );
-        DefaultAttribute timeStampAt = new DefaultAttribute( schemaManager
-            .lookupAttributeTypeRegistry( SchemaConstants.MODIFY_TIMESTAMP_AT ) );
-        timeStampMod.setAttribute( timeStampAt );
-
-        mods.add( timeStampMod );
-    }
 
 
     /**
@@ -0,0 +1,208 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.shared.partition;
+
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.partition.Partition;
+
+
+/**
+ * An immutable structure routing a Dn to the partition holding it. It's a trie of the
+ * partitions suffixes, keyed on their normalized Rdns, from the top-most one. As it's
+ * never modified once created, it can be read concurrently without any lock : adding or
+ * removing a partition creates a new table, which replaces the previous one.
+ * <br>
+ * When there is only one partition, the Dn is directly compared with its suffix.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class PartitionRoutingTable
+{
+    /** A table without any partition */
+    public static final PartitionRoutingTable EMPTY = new PartitionRoutingTable( new HashMap<String, Partition>() );
+
+    /** The partitions, keyed by their normalized suffix */
+    private final Map<String, Partition> partitions;
+
+    /** The root of the trie */
+    private final Node root = new Node();
+
+    /** The single partition, if there is only one */
+    private final Partition singlePartition;
+
+    /** The normalized Rdns of the single partition suffix, from the top-most one */
+    private final String[] singleSuffixRdns;
+
+    /**
+     * A node of the trie. The nodes are only modified while the table is being built.
+     */
+    private static final class Node
+    {
+        /** The children, keyed by their normalized Rdn */
+        private final Map<String, Node> children = new HashMap<>();
+
+        /** The partition whose suffix ends at this node, if any */
+        private Partition partition;
+    }
+
+
+    /**
+     * Creates a new table routing to the given partitions.
+     *
+     * @param partitions The partitions, keyed by their normalized suffix. The map is not copied.
+     */
+    private PartitionRoutingTable( Map<String, Partition> partitions )
+    {
+        this.partitions = Collections.unmodifiableMap( partitions );
+
+        for ( Partition partition : partitions.values() )
+        {
+            Dn suffixDn = partition.getSuffixDn();
+            Node node = root;
+
+            for ( int i = suffixDn.size() - 1; i >= 0; i-- )
+            {
+                node = node.children.computeIfAbsent( suffixDn.getRdn( i ).getNormName(), k -> new Node() );
+            }
+
+            node.partition = partition;
+        }
+
+        if ( partitions.size() == 1 )
+        {
+            singlePartition = partitions.values().iterator().next();
+            Dn suffixDn = singlePartition.getSuffixDn();
+            int size = suffixDn.size();
+            singleSuffixRdns = new String[size];
+
+            for ( int i = 0; i < size; i++ )
+            {
+                singleSuffixRdns[i] = suffixDn.getRdn( size - 1 - i ).getNormName();
+            }
+        }
+        else
+        {
+            singlePartition = null;
+            singleSuffixRdns = null;
+        }
+    }
+
+
+    /**
+     * Creates a new table containing the partitions of this table, plus the given one.
+     * Its suffix must be schema aware.
+     *
+     * @param partition The partition to add
+     * @return The new table
+     */
+    public PartitionRoutingTable add( Partition partition )
+    {
+        Map<String, Partition> newPartitions = new HashMap<>( partitions );
+        newPartitions.put( partition.getSuffixDn().getNormName(), partition );
+
+        return new PartitionRoutingTable( newPartitions );
+    }
+
+
+    /**
+     * Creates a new table containing the partitions of this table, except the one with
+     * the given suffix.
+     *
+     * @param suffix The normalized suffix of the partition to remove
+     * @return The new table, or this table if it does not contain such a partition
+     */
+    public PartitionRoutingTable remove( String suffix )
+    {
+        if ( !partitions.containsKey( suffix ) )
+        {
+            return this;
+        }
+
+        Map<String, Partition> newPartitions = new HashMap<>( partitions );
+        newPartitions.remove( suffix );
+
+        return new PartitionRoutingTable( newPartitions );
+    }
+
+
+    /**
+     * Gets the partition holding a Dn, ie the one with the longest suffix which is an
+     * ancestor of, or equal to, this Dn.
+     *
+     * @param dn The schema aware Dn
+     * @return The partition, or null if no partition can hold this Dn
+     */
+    public Partition getPartition( Dn dn )
+    {
+        int size = dn.size();
+
+        if ( singleSuffixRdns != null )
+        {
+            if ( size < singleSuffixRdns.length )
+            {
+                return null;
+            }
+
+            for ( int i = 0; i < singleSuffixRdns.length; i++ )
+            {
+                if ( !singleSuffixRdns[i].equals( dn.getRdn( size - 1 - i ).getNormName() ) )
+                {
+                    return null;
+                }
+            }
+
+            return singlePartition;
+        }
+
+        Node node = root;
+        Partition partition = null;
+
+        for ( int i = size - 1; i >= 0; i-- )
+        {
+            node = node.children.get( dn.getRdn( i ).getNormName() );
+
+            if ( node == null )
+            {
+                break;
+            }
+
+            if ( node.partition != null )
+            {
+                partition = node.partition;
+            }
+        }
+
+        return partition;
+    }
+
+
+    /**
+     * @return The unmodifiable map of the partitions, keyed by their normalized suffix
+     */
+    public Map<String, Partition> getPartitions()
+    {
+        return partitions;
+    }
+}
@@ -31,6 +31,7 @@ import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
 import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -94,12 +95,14 @@ import org.apache.directory.server.core.api.changelog.TaggableSearchableChangeLo
 import org.apache.directory.server.core.api.event.EventService;
 import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
 import org.apache.directory.server.core.api.interceptor.Interceptor;
+import org.apache.directory.server.core.api.interceptor.InterceptorChain;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.BindOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.HasEntryOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
 import org.apache.directory.server.core.api.journal.Journal;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
@@ -182,6 +185,12 @@ public class DefaultDirectoryService implements DirectoryService
     /** A flag to tell if the userPassword attribute's value must be hidden */
     private boolean passwordHidden = false;
 
+    /** Whether the time spent in each interceptor is traced */
+    private volatile boolean interceptorTracingEnabled = false;
+
+    /** The maximum number of entries sorted in memory for a server side sort control */
+    private int maxSortedEntriesInMemory = DEFAULT_MAX_SORTED_ENTRIES_IN_MEMORY;
+
     /** The service's CSN factory */
     private CsnFactory csnFactory;
 
@@ -201,6 +210,9 @@ public class DefaultDirectoryService implements DirectoryService
     /** The default delay to wait between sync on disk : 15 seconds */
     private static final long DEFAULT_SYNC_PERIOD = 15000;
 
+    /** The default maximum number of entries sorted in memory */
+    private static final int DEFAULT_MAX_SORTED_ENTRIES_IN_MEMORY = 10000;
+
     /** The default timeLimit : 100 entries */
     public static final int MAX_SIZE_LIMIT_DEFAULT = 100;
 
@@ -243,8 +255,8 @@ public class DefaultDirectoryService implements DirectoryService
     private Lock readLock = interceptorsLock.readLock();
     private Lock writeLock = interceptorsLock.writeLock();
 
-    /** A map associating a list of interceptor to each operation */
-    private Map<OperationEnum, List<String>> operationInterceptors;
+    /** The compiled chain of interceptors of each operation, replaced each time the interceptors change */
+    private volatile Map<OperationEnum, InterceptorChain> operationChains;
 
     /** The System partition */
     private Partition systemPartition;
@@ -281,6 +293,9 @@ public class DefaultDirectoryService implements DirectoryService
     /** The Dn factory */
     private DnFactory dnFactory;
 
+    /** The registry of this instance metrics */
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
     /** The Subentry cache */
     SubentryCache subentryCache = new SubentryCache();
 
@@ -453,51 +468,72 @@ public class DefaultDirectoryService implements DirectoryService
      */
     public List<String> getInterceptors( OperationEnum operation )
     {
-        List<String> cloned = new ArrayList<>();
+        // The chains are immutable, there is no need to copy them
+        return operationChains.get( operation );
+    }
 
-        readLock.lock();
+
+    /**
+     * Compute the list of  to call for each operation
+     */
+    private void initOperationsList()
+    {
+        writeLock.lock();
 
         try
         {
-            cloned.addAll( operationInterceptors.get( operation ) );
-
-            return cloned;
+            compileChains();
         }
         finally
         {
-            readLock.unlock();
+            writeLock.unlock();
         }
+    }
 
+
+    /**
+     * {@inheritDoc}
+     */
+    public void updateInterceptorChains()
+    {
+        initOperationsList();
     }
 
 
     /**
-     * Compute the list of  to call for each operation
+     * Compiles the chain of interceptors to call for each operation. All the chains are
+     * replaced at once, so that an operation always sees a consistent set of chains
+     * without having to lock. The interceptors which aren't applicable to an operation
+     * in the current state of the server are left out of its chain.
+     * It must be called while holding the write lock.
      */
-    private void initOperationsList()
+    private void compileChains()
     {
-        writeLock.lock();
+        Map<OperationEnum, InterceptorChain> chains = new EnumMap<>( OperationEnum.class );
 
-        try
+        for ( OperationEnum operation : OperationEnum.getOperations() )
         {
-            operationInterceptors = new ConcurrentHashMap<>();
+            List<String> operationList = new ArrayList<>();
 
-            for ( OperationEnum operation : OperationEnum.getOperations() )
+            for ( Interceptor interceptor : interceptors )
             {
-                List<String> operationList = new ArrayList<>();
-
-                for ( Interceptor interceptor : interceptors )
+                if ( interceptor.isApplicable( operation ) )
                 {
                     gatherInterceptors( interceptor, interceptor.getClass(), operation, operationList );
                 }
+            }
+
+            List<Interceptor> chain = new ArrayList<>( operationList.size() );
 
-                operationInterceptors.put( operation, operationList );
+            for ( String interceptorName : operationList )
+            {
+                chain.add( interceptorNames.get( interceptorName ) );
             }
+
+            chains.put( operation, new InterceptorChain( chain ) );
         }
-        finally
-        {
-            writeLock.unlock();
-        }
+
+        operationChains = chains;
     }
 
 
@@ -558,30 +594,6 @@ public class DefaultDirectoryService implements DirectoryService
 
         try
         {
-            for ( OperationEnum operation : OperationEnum.getOperations() )
-            {
-                List<String> operationList = operationInterceptors.get( operation );
-
-                Method[] methods = interceptor.getClass().getDeclaredMethods();
-
-                for ( Method method : methods )
-                {
-                    if ( method.getName().equals( operation.getMethodName() ) )
-                    {
-                        if ( position == -1 )
-                        {
-                            operationList.add( interceptor.getName() );
-                        }
-                        else
-                        {
-                            operationList.add( position, interceptor.getName() );
-                        }
-
-                        break;
-                    }
-                }
-            }
-
             interceptorNames.put( interceptor.getName(), interceptor );
 
             if ( position == -1 )
@@ -592,6 +604,8 @@ public class DefaultDirectoryService implements DirectoryService
             {
                 interceptors.add( position, interceptor );
             }
+
+            compileChains();
         }
         finally
         {
@@ -605,31 +619,17 @@ public class DefaultDirectoryService implements DirectoryService
      */
     private void removeOperationsList( String interceptorName )
     {
-        Interceptor interceptor = interceptorNames.get( interceptorName );
-
         writeLock.lock();
 
         try
         {
-            for ( OperationEnum operation : OperationEnum.getOperations() )
-            {
-                List<String> operationList = operationInterceptors.get( operation );
-
-                Method[] methods = interceptor.getClass().getDeclaredMethods();
-
-                for ( Method method : methods )
-                {
-                    if ( method.getName().equals( operation.getMethodName() ) )
-                    {
-                        operationList.remove( interceptor.getName() );
+            Interceptor interceptor = interceptorNames.remove( interceptorName );
 
-                        break;
-                    }
-                }
+            if ( interceptor != null )
+            {
+                interceptors.remove( interceptor );
+                compileChains();
             }
-
-            interceptorNames.remove( interceptorName );
-            interceptors.remove( interceptor );
         }
         finally
         {
@@ -1274,6 +1274,14 @@ public class DefaultDirectoryService implements DirectoryService
             return;
         }
 
+        // --------------------------------------------------------------------
+        // Wait for the subentries operational attributes to be propagated. The
+        // failed propagations will be resumed on the next startup
+        // --------------------------------------------------------------------
+        LOG.debug( "--- Waiting for the subentries propagations" );
+        subentryCache.stopPropagations();
+        subentryCache.awaitPropagations();
+
         // --------------------------------------------------------------------
         // Shutdown the sync thread
         // --------------------------------------------------------------------
@@ -1321,6 +1329,7 @@ public class DefaultDirectoryService implements DirectoryService
         // And shutdown the server
         // --------------------------------------------------------------------
         LOG.debug( "---Deleting the DnCache" );
+        metricsRegistry.unregisterCache( DefaultDnFactory.CACHE_NAME, MetricsRegistry.NO_PARTITION );
         dnFactory = null;
 
         if ( lockFile != null )
@@ -1967,6 +1976,11 @@ public class DefaultDirectoryService implements DirectoryService
             dnFactory = new DefaultDnFactory( schemaManager, 10000 );
         }
 
+        if ( dnFactory instanceof DefaultDnFactory )
+        {
+            ( ( DefaultDnFactory ) dnFactory ).registerCache( metricsRegistry );
+        }
+
         // triggers partition to load schema fully from schema partition
         schemaPartition.initialize();
         partitions.add( schemaPartition );
@@ -2038,6 +2052,10 @@ public class DefaultDirectoryService implements DirectoryService
             journal.init( this );
         }
 
+        // Now that the interceptors and the subentry cache are initialized,
+        // leave the interceptors which have nothing to do out of the chains
+        updateInterceptorChains();
+
         if ( LOG.isDebugEnabled() )
         {
             LOG.debug( "<--- DefaultDirectoryService initialized" );
@@ -2168,6 +2186,46 @@ public class DefaultDirectoryService implements DirectoryService
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isInterceptorTracingEnabled()
+    {
+        return interceptorTracingEnabled;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setInterceptorTracingEnabled( boolean interceptorTracingEnabled )
+    {
+        this.interceptorTracingEnabled = interceptorTracingEnabled;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMaxSortedEntriesInMemory()
+    {
+        return maxSortedEntriesInMemory;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setMaxSortedEntriesInMemory( int maxSortedEntriesInMemory )
+    {
+        this.maxSortedEntriesInMemory = maxSortedEntriesInMemory;
+    }
+
+
     /**
      * @return The maximum allowed size for an incoming PDU
      */
@@ -2242,14 +2300,17 @@ public class DefaultDirectoryService implements DirectoryService
                 position++;
             }
 
-            if ( position == interceptors.size() )
+            if ( position >= interceptors.size() - 1 )
             {
                 interceptors.add( interceptor );
             }
             else
             {
-                interceptors.add( position, interceptor );
+                interceptors.add( position + 1, interceptor );
             }
+
+            interceptorNames.put( interceptor.getName(), interceptor );
+            compileChains();
         }
         finally
         {
@@ -2429,6 +2490,16 @@ public class DefaultDirectoryService implements DirectoryService
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MetricsRegistry getMetricsRegistry()
+    {
+        return metricsRegistry;
+    }
+
+
     /**
      * {@inheritDoc}
      */
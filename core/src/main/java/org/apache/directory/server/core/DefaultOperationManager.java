@@ -24,7 +24,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.directory.api.ldap.extras.controls.ad.TreeDelete;
 import org.apache.directory.api.ldap.model.constants.Loggers;
@@ -56,6 +55,7 @@ import org.apache.directory.server.core.api.OperationManager;
 import org.apache.directory.server.core.api.ReferralManager;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
 import org.apache.directory.server.core.api.interceptor.Interceptor;
+import org.apache.directory.server.core.api.interceptor.InterceptorTrace;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.BindOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.CompareOperationContext;
@@ -71,6 +71,7 @@ import org.apache.directory.server.core.api.interceptor.context.RenameOperationC
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
 import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionLockManager;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.i18n.I18n;
 import org.slf4j.Logger;
@@ -101,8 +102,8 @@ public class DefaultOperationManager implements OperationManager
     /** The directory service instance */
     private final DirectoryService directoryService;
 
-    /** A lock used to protect against concurrent operations */
-    private ReadWriteLock rwLock = new ReentrantReadWriteLock( true );
+    /** The per partition locks used to protect against concurrent operations */
+    private final PartitionLockManager lockManager = new PartitionLockManager();
 
     /** A reference to the ObjectClass AT */
     protected AttributeType objectClassAT;
@@ -119,45 +120,136 @@ public class DefaultOperationManager implements OperationManager
     /**
      * {@inheritDoc}
      */
-    public ReadWriteLock getRWLock()
+    public ReadWriteLock getRWLock( Dn partitionDn )
     {
-        return rwLock;
+        return lockManager.getLock( partitionDn );
     }
 
 
     /**
-     * Acquires a ReadLock
+     * Acquires a ReadLock on all the partitions
      */
     public void lockRead()
     {
-        rwLock.readLock().lock();
+        lockManager.lockAllRead();
     }
 
 
     /**
-     * Acquires a WriteLock
+     * Acquires a WriteLock on all the partitions
      */
     public void lockWrite()
     {
-        rwLock.writeLock().lock();
+        lockManager.lockAllWrite();
     }
 
 
     /**
-     * Releases a WriteLock
+     * Releases a WriteLock on all the partitions
      */
     public void unlockWrite()
     {
-        rwLock.writeLock().unlock();
+        lockManager.unlockAllWrite();
     }
 
 
     /**
-     * Releases a ReadLock
+     * Releases a ReadLock on all the partitions
      */
     public void unlockRead()
     {
-        rwLock.readLock().unlock();
+        lockManager.unlockAllRead();
+    }
+
+
+    /**
+     * Acquires a ReadLock on the given partition
+     */
+    private void lockRead( Partition partition )
+    {
+        lockManager.lockRead( partition.getSuffixDn() );
+    }
+
+
+    /**
+     * Releases a ReadLock on the given partition
+     */
+    private void unlockRead( Partition partition )
+    {
+        lockManager.unlockRead( partition.getSuffixDn() );
+    }
+
+
+    /**
+     * Acquires a WriteLock on the given partitions
+     */
+    private void lockWrite( Partition... partitions )
+    {
+        lockManager.lockWrite( getSuffixDns( partitions ) );
+    }
+
+
+    /**
+     * Releases a WriteLock on the given partitions
+     */
+    private void unlockWrite( Partition... partitions )
+    {
+        lockManager.unlockWrite( getSuffixDns( partitions ) );
+    }
+
+
+    private Dn[] getSuffixDns( Partition... partitions )
+    {
+        Dn[] suffixDns = new Dn[partitions.length];
+
+        for ( int i = 0; i < partitions.length; i++ )
+        {
+            suffixDns[i] = partitions[i].getSuffixDn();
+        }
+
+        return suffixDns;
+    }
+
+
+    /**
+     * Attach a trace to the operation if the interceptors tracing is enabled, and
+     * record the entry in the first interceptor.
+     */
+    private void startTrace( OperationContext opContext, Interceptor head )
+    {
+        InterceptorTrace trace = opContext.getInterceptorTrace();
+
+        if ( trace == null )
+        {
+            if ( !directoryService.isInterceptorTracingEnabled() )
+            {
+                return;
+            }
+
+            trace = new InterceptorTrace( opContext.getName(), directoryService.getMetricsRegistry() );
+            opContext.setInterceptorTrace( trace );
+        }
+
+        trace.enter( head.getName() );
+    }
+
+
+    /**
+     * Record the exit from the first interceptor, if the operation is traced.
+     */
+    private void stopTrace( OperationContext opContext )
+    {
+        InterceptorTrace trace = opContext.getInterceptorTrace();
+
+        if ( trace != null )
+        {
+            trace.exit();
+
+            if ( IS_TIME )
+            {
+                OPERATION_TIME.debug( "{}", trace );
+            }
+        }
     }
 
 
@@ -407,9 +499,9 @@ public class DefaultOperationManager implements OperationManager
         }
 
         // Call the Add method
-        Interceptor head = directoryService.getInterceptor( addContext.getNextInterceptor() );
+        Interceptor head = addContext.getNextInterceptor( directoryService );
 
-        lockWrite();
+        lockWrite( partition );
 
         // Start a Write transaction right away
         PartitionTxn transaction = addContext.getSession().getTransaction( partition ); 
@@ -428,7 +520,16 @@ public class DefaultOperationManager implements OperationManager
             
             addContext.setTransaction( transaction );
 
-            head.add( addContext );
+            startTrace( addContext, head );
+
+            try
+            {
+                head.add( addContext );
+            }
+            finally
+            {
+                stopTrace( addContext );
+            }
             
             if ( !addContext.getSession().hasSessionTransaction() )
             {
@@ -466,7 +567,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            unlockWrite( partition );
         }
 
         if ( IS_DEBUG )
@@ -501,7 +602,7 @@ public class DefaultOperationManager implements OperationManager
         ensureStarted();
 
         // Call the Delete method
-        Interceptor head = directoryService.getInterceptor( bindContext.getNextInterceptor() );
+        Interceptor head = bindContext.getNextInterceptor( directoryService );
 
         // Normalize the addContext Dn
         Dn dn = bindContext.getDn();
@@ -512,18 +613,27 @@ public class DefaultOperationManager implements OperationManager
             bindContext.setDn( dn );
         }
 
-        lockRead();
+        Partition partition = directoryService.getPartitionNexus().getPartition( dn );
+
+        lockRead( partition );
 
         try
         {
-            Partition partition = directoryService.getPartitionNexus().getPartition( dn );
-            
             try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
             {
                 bindContext.setPartition( partition );
                 bindContext.setTransaction( partitionTxn );
                 
-                head.bind( bindContext );
+                startTrace( bindContext, head );
+
+                try
+                {
+                    head.bind( bindContext );
+                }
+                finally
+                {
+                    stopTrace( bindContext );
+                }
             }
             catch ( IOException ioe )
             {
@@ -532,7 +642,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockRead();
+            unlockRead( partition );
         }
 
         if ( IS_DEBUG )
@@ -623,22 +733,31 @@ public class DefaultOperationManager implements OperationManager
         compareContext.setOriginalEntry( getOriginalEntry( compareContext ) );
 
         // Call the Compare method
-        Interceptor head = directoryService.getInterceptor( compareContext.getNextInterceptor() );
+        Interceptor head = compareContext.getNextInterceptor( directoryService );
 
         boolean result = false;
 
-        lockRead();
+        Partition partition = directoryService.getPartitionNexus().getPartition( dn );
+
+        lockRead( partition );
 
         try
         {
-            Partition partition = directoryService.getPartitionNexus().getPartition( dn );
-            
             try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
             {
                 compareContext.setPartition( partition );
                 compareContext.setTransaction( partitionTxn );
                 
-                result = head.compare( compareContext );
+                startTrace( compareContext, head );
+
+                try
+                {
+                    result = head.compare( compareContext );
+                }
+                finally
+                {
+                    stopTrace( compareContext );
+                }
             }
             catch ( IOException ioe )
             {
@@ -647,7 +766,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockRead();
+            unlockRead( partition );
         }
 
         if ( IS_DEBUG )
@@ -673,9 +792,18 @@ public class DefaultOperationManager implements OperationManager
         eagerlyPopulateFields( entryDeleteContext );
         
         // Call the Delete method
-        Interceptor head = directoryService.getInterceptor( deleteContext.getNextInterceptor() );
+        Interceptor head = deleteContext.getNextInterceptor( directoryService );
 
-        head.delete( entryDeleteContext );
+        startTrace( entryDeleteContext, head );
+
+        try
+        {
+            head.delete( entryDeleteContext );
+        }
+        finally
+        {
+            stopTrace( entryDeleteContext );
+        }
     }
     
     
@@ -795,7 +923,7 @@ public class DefaultOperationManager implements OperationManager
         }
 
         // populate the context with the old entry
-        lockWrite();
+        lockWrite( partition );
 
         // Start a Write transaction right away
         PartitionTxn transaction = deleteContext.getSession().getTransaction( partition ); 
@@ -848,9 +976,18 @@ public class DefaultOperationManager implements OperationManager
                 eagerlyPopulateFields( deleteContext );
     
                 // Call the Delete method
-                Interceptor head = directoryService.getInterceptor( deleteContext.getNextInterceptor() );
+                Interceptor head = deleteContext.getNextInterceptor( directoryService );
     
-                head.delete( deleteContext );
+                startTrace( deleteContext, head );
+
+                try
+                {
+                    head.delete( deleteContext );
+                }
+                finally
+                {
+                    stopTrace( deleteContext );
+                }
     
                 if ( !deleteContext.getSession().hasSessionTransaction() )
                 {
@@ -889,7 +1026,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            unlockWrite( partition );
         }
 
         if ( IS_DEBUG )
@@ -923,21 +1060,30 @@ public class DefaultOperationManager implements OperationManager
 
         ensureStarted();
 
-        Interceptor head = directoryService.getInterceptor( getRootDseContext.getNextInterceptor() );
+        Interceptor head = getRootDseContext.getNextInterceptor( directoryService );
         Entry root;
 
+        Partition partition = directoryService.getPartitionNexus().getPartition( Dn.ROOT_DSE );
+
+        lockRead( partition );
+
         try
         {
-            lockRead();
-            
-            Partition partition = directoryService.getPartitionNexus().getPartition( Dn.ROOT_DSE );
-            
             try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
             {
                 getRootDseContext.setPartition( partition );
                 getRootDseContext.setTransaction( partitionTxn );
                 
-                root = head.getRootDse( getRootDseContext );
+                startTrace( getRootDseContext, head );
+
+                try
+                {
+                    root = head.getRootDse( getRootDseContext );
+                }
+                finally
+                {
+                    stopTrace( getRootDseContext );
+                }
             }
             catch ( IOException ioe )
             {
@@ -946,7 +1092,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockRead();
+            unlockRead( partition );
         }
 
         if ( IS_DEBUG )
@@ -982,12 +1128,10 @@ public class DefaultOperationManager implements OperationManager
 
         ensureStarted();
 
-        Interceptor head = directoryService.getInterceptor( hasEntryContext.getNextInterceptor() );
+        Interceptor head = hasEntryContext.getNextInterceptor( directoryService );
 
         boolean result = false;
 
-        lockRead();
-
         // Normalize the addContext Dn
         Dn dn = hasEntryContext.getDn();
         
@@ -997,16 +1141,27 @@ public class DefaultOperationManager implements OperationManager
             hasEntryContext.setDn( dn );
         }
 
+        Partition partition = directoryService.getPartitionNexus().getPartition( dn );
+
+        lockRead( partition );
+
         try
         {
-            Partition partition = directoryService.getPartitionNexus().getPartition( dn );
-
             try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
             {
                 hasEntryContext.setPartition( partition );
                 hasEntryContext.setTransaction( partitionTxn );
 
-                result = head.hasEntry( hasEntryContext );
+                startTrace( hasEntryContext, head );
+
+                try
+                {
+                    result = head.hasEntry( hasEntryContext );
+                }
+                finally
+                {
+                    stopTrace( hasEntryContext );
+                }
             }
             catch ( IOException ioe )
             {
@@ -1015,7 +1170,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockRead();
+            unlockRead( partition );
         }
 
         if ( IS_DEBUG )
@@ -1051,7 +1206,7 @@ public class DefaultOperationManager implements OperationManager
 
         ensureStarted();
 
-        Interceptor head = directoryService.getInterceptor( lookupContext.getNextInterceptor() );
+        Interceptor head = lookupContext.getNextInterceptor( directoryService );
 
         Entry entry = null;
 
@@ -1072,15 +1227,24 @@ public class DefaultOperationManager implements OperationManager
         {
             lookupContext.setTransaction( transaction );
 
-            lockRead();
+            lockRead( partition );
     
             try
             {
-                entry = head.lookup( lookupContext );
+                startTrace( lookupContext, head );
+
+                try
+                {
+                    entry = head.lookup( lookupContext );
+                }
+                finally
+                {
+                    stopTrace( lookupContext );
+                }
             }
             finally
             {
-                unlockRead();
+                unlockRead( partition );
             }
         }
         catch ( IOException ioe )
@@ -1187,7 +1351,7 @@ public class DefaultOperationManager implements OperationManager
         Partition partition = directoryService.getPartitionNexus().getPartition( dn );
         modifyContext.setPartition( partition );
         
-        lockWrite();
+        lockWrite( partition );
         
         // Start a Write transaction right away
         PartitionTxn transaction = modifyContext.getSession().getTransaction( partition ); 
@@ -1210,9 +1374,18 @@ public class DefaultOperationManager implements OperationManager
             eagerlyPopulateFields( modifyContext );
 
             // Call the Modify method
-            Interceptor head = directoryService.getInterceptor( modifyContext.getNextInterceptor() );
+            Interceptor head = modifyContext.getNextInterceptor( directoryService );
+
+            startTrace( modifyContext, head );
 
-            head.modify( modifyContext );
+            try
+            {
+                head.modify( modifyContext );
+            }
+            finally
+            {
+                stopTrace( modifyContext );
+            }
             
             if ( !modifyContext.getSession().hasSessionTransaction() )
             {
@@ -1250,7 +1423,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            unlockWrite( partition );
         }
 
         if ( IS_DEBUG )
@@ -1358,12 +1531,14 @@ public class DefaultOperationManager implements OperationManager
             directoryService.getReferralManager().unlock();
         }
 
-        lockWrite();
-        
-        // Find the working partition
+        // Find the working partition, and the destination one. Both of them
+        // have to be locked, as the moved entry may end in another partition
         Partition partition = directoryService.getPartitionNexus().getPartition( dn );
+        Partition newPartition = directoryService.getPartitionNexus().getPartition( newSuperiorDn );
         moveContext.setPartition( partition );
 
+        lockWrite( partition, newPartition );
+
         // Start a Write transaction right away
         PartitionTxn transaction = moveContext.getSession().getTransaction( partition ); 
         
@@ -1385,9 +1560,18 @@ public class DefaultOperationManager implements OperationManager
             moveContext.setOriginalEntry( originalEntry );
 
             // Call the Move method
-            Interceptor head = directoryService.getInterceptor( moveContext.getNextInterceptor() );
+            Interceptor head = moveContext.getNextInterceptor( directoryService );
 
-            head.move( moveContext );
+            startTrace( moveContext, head );
+
+            try
+            {
+                head.move( moveContext );
+            }
+            finally
+            {
+                stopTrace( moveContext );
+            }
             
             if ( !moveContext.getSession().hasSessionTransaction() )
             {
@@ -1428,7 +1612,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            unlockWrite( partition, newPartition );
         }
 
         if ( IS_DEBUG )
@@ -1537,11 +1721,13 @@ public class DefaultOperationManager implements OperationManager
             directoryService.getReferralManager().unlock();
         }
 
-        // Find the working partition
+        // Find the working partition, and the destination one
         Partition partition = directoryService.getPartitionNexus().getPartition( dn );
+        Partition newPartition = directoryService.getPartitionNexus().getPartition(
+            moveAndRenameContext.getNewSuperiorDn() );
         moveAndRenameContext.setPartition( partition );
 
-        lockWrite();
+        lockWrite( partition, newPartition );
         
         // Start a Write transaction right away
         PartitionTxn transaction = moveAndRenameContext.getSession().getTransaction( partition ); 
@@ -1563,9 +1749,18 @@ public class DefaultOperationManager implements OperationManager
             moveAndRenameContext.setTransaction( transaction );
 
             // Call the MoveAndRename method
-            Interceptor head = directoryService.getInterceptor( moveAndRenameContext.getNextInterceptor() );
+            Interceptor head = moveAndRenameContext.getNextInterceptor( directoryService );
 
-            head.moveAndRename( moveAndRenameContext );
+            startTrace( moveAndRenameContext, head );
+
+            try
+            {
+                head.moveAndRename( moveAndRenameContext );
+            }
+            finally
+            {
+                stopTrace( moveAndRenameContext );
+            }
 
             if ( !moveAndRenameContext.getSession().hasSessionTransaction() )
             {
@@ -1603,7 +1798,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            unlockWrite( partition, newPartition );
         }
 
         if ( IS_DEBUG )
@@ -1709,10 +1904,10 @@ public class DefaultOperationManager implements OperationManager
             directoryService.getReferralManager().unlock();
         }
 
-        lockWrite();
-
         Partition partition = directoryService.getPartitionNexus().getPartition( dn );
 
+        lockWrite( partition );
+
         // Start a Write transaction right away
         PartitionTxn transaction = renameContext.getSession().getTransaction( partition ); 
         
@@ -1761,7 +1956,7 @@ public class DefaultOperationManager implements OperationManager
             Entry originalEntry = getOriginalEntry( renameContext );
             renameContext.setOriginalEntry( originalEntry );
             renameContext.setModifiedEntry( originalEntry.clone() );
-            Interceptor head = directoryService.getInterceptor( renameContext.getNextInterceptor() );
+            Interceptor head = renameContext.getNextInterceptor( directoryService );
 
             // Start a Write transaction right away
             transaction = renameContext.getSession().getTransaction( partition ); 
@@ -1781,7 +1976,16 @@ public class DefaultOperationManager implements OperationManager
 
                 renameContext.setTransaction( transaction );
 
-                head.rename( renameContext );
+                startTrace( renameContext, head );
+
+                try
+                {
+                    head.rename( renameContext );
+                }
+                finally
+                {
+                    stopTrace( renameContext );
+                }
                 
                 if ( !renameContext.getSession().hasSessionTransaction() )
                 {
@@ -1823,7 +2027,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            unlockWrite( partition );
         }
 
         if ( IS_DEBUG )
@@ -1913,7 +2117,7 @@ public class DefaultOperationManager implements OperationManager
         }
 
         // Call the Search method
-        Interceptor head = directoryService.getInterceptor( searchContext.getNextInterceptor() );
+        Interceptor head = searchContext.getNextInterceptor( directoryService );
 
         EntryFilteringCursor cursor = null;
         Partition partition = directoryService.getPartitionNexus().getPartition( dn );
@@ -1922,15 +2126,24 @@ public class DefaultOperationManager implements OperationManager
         {
             searchContext.setPartition( partition );
             searchContext.setTransaction( partitionTxn );
-            lockRead();
+            lockRead( partition );
     
             try
             {
-                cursor = head.search( searchContext );
+                startTrace( searchContext, head );
+
+                try
+                {
+                    cursor = head.search( searchContext );
+                }
+                finally
+                {
+                    stopTrace( searchContext );
+                }
             }
             finally
             {
-                unlockRead();
+                unlockRead( partition );
             }
         }
         catch ( IOException ioe )
@@ -1972,9 +2185,18 @@ public class DefaultOperationManager implements OperationManager
         ensureStarted();
 
         // Call the Unbind method
-        Interceptor head = directoryService.getInterceptor( unbindContext.getNextInterceptor() );
+        Interceptor head = unbindContext.getNextInterceptor( directoryService );
 
-        head.unbind( unbindContext );
+        startTrace( unbindContext, head );
+
+        try
+        {
+            head.unbind( unbindContext );
+        }
+        finally
+        {
+            stopTrace( unbindContext );
+        }
 
         if ( IS_DEBUG )
         {
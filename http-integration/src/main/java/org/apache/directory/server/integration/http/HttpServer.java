@@ -90,6 +90,9 @@ public class HttpServer
     /** protocol identifier for https */
     public static final String HTTPS_TRANSPORT_ID = "https";
 
+    /** The context path of the metrics endpoint, null when the metrics are not exposed */
+    private String metricsContextPath;
+
     /** an internal flag to check the server configuration */
     private boolean configured = false;
 
@@ -233,6 +236,15 @@ public class HttpServer
             }
 
             HandlerList handlers = new HandlerList();
+
+            if ( metricsContextPath != null )
+            {
+                ContextHandler metricsContext = new ContextHandler( metricsContextPath );
+                metricsContext.setHandler( new MetricsHandler( dirService.getMetricsRegistry() ) );
+                metricsContext.setAllowNullPathInfo( true );
+                handlers.addHandler( metricsContext );
+            }
+
             for ( WebApp w : webApps )
             {
                 WebAppContext webapp = new WebAppContext();
@@ -345,4 +357,25 @@ public class HttpServer
         this.httpsTransport = httpsTransport;
     }
 
+
+    /**
+     * @return The context path of the metrics endpoint, or null if the metrics are not exposed
+     */
+    public String getMetricsContextPath()
+    {
+        return metricsContextPath;
+    }
+
+
+    /**
+     * Expose the server metrics on a context path (typically <code>/metrics</code>). The
+     * metrics are not exposed by default.
+     *
+     * @param metricsContextPath The context path, or null to disable the endpoint
+     */
+    public void setMetricsContextPath( String metricsContextPath )
+    {
+        this.metricsContextPath = metricsContextPath;
+    }
+
 }
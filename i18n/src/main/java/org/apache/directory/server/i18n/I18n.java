@@ -784,7 +784,11 @@ public enum I18n
     ERR_747("ERR_747"),
     ERR_748("ERR_748"),
     ERR_749("ERR_749"),
-    ERR_750("ERR_750");
+    ERR_750("ERR_750"),
+    ERR_751_CHANGELOG_SEARCH_NOT_SUPPORTED("ERR_751_CHANGELOG_SEARCH_NOT_SUPPORTED"),
+    ERR_752_CHANGELOG_TRUNCATED_RECORD("ERR_752_CHANGELOG_TRUNCATED_RECORD"),
+    ERR_753_CHANGELOG_PARTITION_NOT_SUPPORTED("ERR_753_CHANGELOG_PARTITION_NOT_SUPPORTED"),
+    ERR_754_CHANGELOG_REVISION_TRUNCATED("ERR_754_CHANGELOG_REVISION_TRUNCATED");
 
     private static final ResourceBundle ERR_BUNDLE = ResourceBundle
         .getBundle( "org.apache.directory.server.i18n.errors", Locale.ROOT );
@@ -178,6 +178,15 @@ public abstract class AbstractAuthenticator implements Authenticator
     }
 
 
+    /**
+     * Does nothing leaving it so subclasses can override.
+     */
+    @Override
+    public void invalidateSubtreeCache( Dn baseDn )
+    {
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -929,6 +929,22 @@ public class AuthenticationInterceptor extends BaseInterceptor
         }
     }
 
+
+    /**
+     * Invalidates the cached credentials of an entry and of all its descendants,
+     * as their Dn are changed when their ancestor is moved or renamed.
+     */
+    private void invalidateAuthenticatorSubtreeCaches( Dn baseDn )
+    {
+        for ( AuthenticationLevel authMech : authenticatorsMapByType.keySet() )
+        {
+            for ( Authenticator authenticator : getAuthenticators( authMech ) )
+            {
+                authenticator.invalidateSubtreeCache( baseDn );
+            }
+        }
+    }
+
     
     /**
      * {@inheritDoc}
@@ -965,8 +981,11 @@ public class AuthenticationInterceptor extends BaseInterceptor
 
         for ( Modification modification : modifications )
         {
-            if ( directoryService.getAtProvider().getUserPassword()
-                .equals( modification.getAttribute().getAttributeType() ) )
+            AttributeType attributeType = modification.getAttribute().getAttributeType();
+
+            // A cached principal is stale when its password changes, or when its account is locked
+            if ( directoryService.getAtProvider().getUserPassword().equals( attributeType )
+                || attributeType.equals( pwdAccountLockedTimeAT ) )
             {
                 invalidateAuthenticatorCaches( modifyContext.getDn() );
                 break;
@@ -1333,7 +1352,7 @@ public class AuthenticationInterceptor extends BaseInterceptor
         checkAuthenticated( moveContext );
         checkPwdReset( moveContext );
         next( moveContext );
-        invalidateAuthenticatorCaches( moveContext.getDn() );
+        invalidateAuthenticatorSubtreeCaches( moveContext.getDn() );
     }
 
 
@@ -1351,7 +1370,7 @@ public class AuthenticationInterceptor extends BaseInterceptor
         checkAuthenticated( moveAndRenameContext );
         checkPwdReset( moveAndRenameContext );
         next( moveAndRenameContext );
-        invalidateAuthenticatorCaches( moveAndRenameContext.getDn() );
+        invalidateAuthenticatorSubtreeCaches( moveAndRenameContext.getDn() );
     }
 
 
@@ -1369,7 +1388,7 @@ public class AuthenticationInterceptor extends BaseInterceptor
         checkAuthenticated( renameContext );
         checkPwdReset( renameContext );
         next( renameContext );
-        invalidateAuthenticatorCaches( renameContext.getDn() );
+        invalidateAuthenticatorSubtreeCaches( renameContext.getDn() );
     }
 
 
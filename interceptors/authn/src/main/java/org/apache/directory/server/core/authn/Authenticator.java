@@ -86,6 +86,16 @@ public interface Authenticator
     void invalidateCache( Dn bindDn );
 
 
+    /**
+     * Callback used to invalidate the cached credentials of an entry and of all
+     * its descendants, if a cache is implemented. This is called on every del,
+     * move and rename operation, as the Dn of the descendants changes too.
+     * 
+     * @param baseDn the already normalized distinguished name of the subtree base
+     */
+    void invalidateSubtreeCache( Dn baseDn );
+
+
     /**
      * Performs authentication and returns the principal if succeeded.
      * 
@@ -21,13 +21,14 @@ package org.apache.directory.server.core.authn;
 
 
 import java.net.SocketAddress;
+import java.time.Duration;
 
 import javax.naming.Context;
 
-import org.apache.commons.collections4.map.LRUMap;
 import org.apache.directory.api.ldap.model.constants.AuthenticationLevel;
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapAuthenticationException;
@@ -42,9 +43,14 @@ import org.apache.directory.server.core.api.authn.ppolicy.PasswordPolicyExceptio
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
 import org.apache.directory.server.core.api.interceptor.context.BindOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.mina.core.session.IoSession;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
 
 /**
  * A simple {@link Authenticator} that authenticates clear text passwords
@@ -75,12 +81,20 @@ public class SimpleAuthenticator extends AbstractAuthenticator
      * just have to offer an access to refresh the local cache.
      *
      * We need to be sure that frequently used passwords be always in cache, and not discarded.
-     * We will use a LRU cache for this purpose.
+     * The cache is concurrent, bounded in size, and the principals expire after a while, so
+     * that a change made outside of the server (a restored backup, for instance) is eventually
+     * seen. It's keyed by the normalized bind Dn.
      */
-    private final LRUMap credentialCache;
+    private final Cache<String, LdapPrincipal> credentialCache;
+
+    /** The default cache size */
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    /** The default time a principal is kept in the cache */
+    public static final Duration DEFAULT_CACHE_TTL = Duration.ofMinutes( 10 );
 
-    /** Declare a default for this cache. 100 entries seems to be enough */
-    private static final int DEFAULT_CACHE_SIZE = 100;
+    /** The name used to expose the cache statistics */
+    private static final String CACHE_NAME = "credentials";
 
 
     /**
@@ -89,7 +103,7 @@ public class SimpleAuthenticator extends AbstractAuthenticator
     public SimpleAuthenticator()
     {
         super( AuthenticationLevel.SIMPLE );
-        credentialCache = new LRUMap( DEFAULT_CACHE_SIZE );
+        credentialCache = createCache( DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TTL );
     }
 
 
@@ -102,7 +116,7 @@ public class SimpleAuthenticator extends AbstractAuthenticator
     public SimpleAuthenticator( Dn baseDn )
     {
         super( AuthenticationLevel.SIMPLE, baseDn );
-        credentialCache = new LRUMap( DEFAULT_CACHE_SIZE );
+        credentialCache = createCache( DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TTL );
     }
 
 
@@ -114,7 +128,7 @@ public class SimpleAuthenticator extends AbstractAuthenticator
     {
         super( AuthenticationLevel.SIMPLE, Dn.ROOT_DSE );
 
-        credentialCache = new LRUMap( cacheSize > 0 ? cacheSize : DEFAULT_CACHE_SIZE );
+        credentialCache = createCache( cacheSize, DEFAULT_CACHE_TTL );
     }
 
 
@@ -128,7 +142,96 @@ public class SimpleAuthenticator extends AbstractAuthenticator
     {
         super( AuthenticationLevel.SIMPLE, baseDn );
 
-        credentialCache = new LRUMap( cacheSize > 0 ? cacheSize : DEFAULT_CACHE_SIZE );
+        credentialCache = createCache( cacheSize, DEFAULT_CACHE_TTL );
+    }
+
+
+    /**
+     * Creates a new instance, with a cache size and the time a principal is kept in the cache
+     *
+     * @param cacheSize the size of the credential cache
+     * @param cacheTtl the time a principal is kept in the cache
+     * @param baseDn The base Dn
+     */
+    public SimpleAuthenticator( int cacheSize, Duration cacheTtl, Dn baseDn )
+    {
+        super( AuthenticationLevel.SIMPLE, baseDn );
+
+        credentialCache = createCache( cacheSize, cacheTtl );
+    }
+
+
+    /**
+     * Creates the credential cache
+     */
+    private static Cache<String, LdapPrincipal> createCache( int cacheSize, Duration cacheTtl )
+    {
+        return Caffeine.newBuilder()
+            .maximumSize( cacheSize > 0 ? cacheSize : DEFAULT_CACHE_SIZE )
+            .expireAfterWrite( ( cacheTtl != null ) && !cacheTtl.isNegative() && !cacheTtl.isZero() ? cacheTtl
+                : DEFAULT_CACHE_TTL )
+            .recordStats()
+            .build();
+    }
+
+
+    /**
+     * Exposes the cache statistics
+     */
+    @Override
+    protected void doInit()
+    {
+        DirectoryService directoryService = getDirectoryService();
+
+        if ( directoryService != null )
+        {
+            directoryService.getMetricsRegistry().registerCache( CACHE_NAME, getBaseDnName(), credentialCache );
+        }
+    }
+
+
+    /**
+     * Clears the cache, and stops exposing its statistics
+     */
+    @Override
+    protected void doDestroy()
+    {
+        credentialCache.invalidateAll();
+        DirectoryService directoryService = getDirectoryService();
+
+        if ( directoryService != null )
+        {
+            directoryService.getMetricsRegistry().unregisterCache( CACHE_NAME, getBaseDnName() );
+        }
+    }
+
+
+    /**
+     * @return The label used to expose the cache statistics, the base Dn of this authenticator
+     */
+    private String getBaseDnName()
+    {
+        Dn baseDn = getBaseDn();
+
+        return ( baseDn == null ) ? MetricsRegistry.NO_PARTITION : baseDn.getNormName();
+    }
+
+
+    /**
+     * @return The credential cache hits, misses and evictions
+     */
+    public CacheStats getCacheStats()
+    {
+        return credentialCache.stats();
+    }
+
+
+    /**
+     * @return The number of principals in the credential cache
+     */
+    public long getCacheSize()
+    {
+        return credentialCache.estimatedSize();
     }
 
 
@@ -145,10 +248,7 @@ public class SimpleAuthenticator extends AbstractAuthenticator
         // use cache only if pwdpolicy is not enabled
         if ( !getDirectoryService().isPwdPolicyEnabled() )
         {
-            synchronized ( credentialCache )
-            {
-                principal = ( LdapPrincipal ) credentialCache.get( bindContext.getDn() );
-            }
+            principal = credentialCache.getIfPresent( bindContext.getDn().getNormName() );
         }
 
         byte[][] storedPasswords;
@@ -177,10 +277,7 @@ public class SimpleAuthenticator extends AbstractAuthenticator
             // Now, update the local cache ONLY if pwdpolicy is not enabled.
             if ( !getDirectoryService().isPwdPolicyEnabled() )
             {
-                synchronized ( credentialCache )
-                {
-                    credentialCache.put( bindContext.getDn().getNormName(), principal );
-                }
+                credentialCache.put( bindContext.getDn().getNormName(), principal );
             }
         }
 
@@ -258,6 +355,39 @@ public class SimpleAuthenticator extends AbstractAuthenticator
     }
 
 
+    /**
+     * Reads the principal entry from the partition. When the password policy is disabled, only
+     * the password is needed to authenticate, so we only keep it. Otherwise, the whole entry
+     * is kept : the policy may store the password in another attribute, and its state is
+     * needed to check the lockout and the expiration.
+     */
+    private Entry fetchPrincipal( BindOperationContext bindContext ) throws LdapException
+    {
+        LookupOperationContext lookupContext = new LookupOperationContext( getDirectoryService().getAdminSession(),
+            bindContext.getDn(), SchemaConstants.ALL_USER_ATTRIBUTES, SchemaConstants.ALL_OPERATIONAL_ATTRIBUTES );
+
+        lookupContext.setPartition( bindContext.getPartition() );
+        lookupContext.setTransaction( bindContext.getTransaction() );
+
+        Entry entry = getDirectoryService().getPartitionNexus().lookup( lookupContext );
+
+        if ( ( entry == null ) || getDirectoryService().isPwdPolicyEnabled() )
+        {
+            return entry;
+        }
+
+        Entry principal = new DefaultEntry( getDirectoryService().getSchemaManager(), entry.getDn() );
+        Attribute userPassword = entry.get( getDirectoryService().getAtProvider().getUserPassword() );
+
+        if ( userPassword != null )
+        {
+            principal.put( userPassword.clone() );
+        }
+
+        return principal;
+    }
+
+
     /**
      * Local function which request the password from the backend
      * @param bindContext the Bind operation context
@@ -277,19 +407,14 @@ public class SimpleAuthenticator extends AbstractAuthenticator
              * cannot use lookup() yet.  This is a very special
              * case where we cannot rely on the bindContext to perform a new
              * sub operation.
-             * We request all the attributes
+             * The entry is read directly from its partition, in the bind
+             * transaction, without going through the lookup interceptors.
              */
             userEntry = bindContext.getPrincipal();
             
             if ( userEntry == null )
             {
-                LookupOperationContext lookupContext = new LookupOperationContext( getDirectoryService().getAdminSession(),
-                    bindContext.getDn(), SchemaConstants.ALL_USER_ATTRIBUTES, SchemaConstants.ALL_OPERATIONAL_ATTRIBUTES );
-    
-                lookupContext.setPartition( bindContext.getPartition() );
-                lookupContext.setTransaction( bindContext.getTransaction() );
-    
-                userEntry = getDirectoryService().getPartitionNexus().lookup( lookupContext );
+                userEntry = fetchPrincipal( bindContext );
             }
 
             if ( userEntry == null )
@@ -354,9 +479,28 @@ public class SimpleAuthenticator extends AbstractAuthenticator
     @Override
     public void invalidateCache( Dn bindDn )
     {
-        synchronized ( credentialCache )
+        credentialCache.invalidate( bindDn.getNormName() );
+    }
+
+
+    /**
+     * Remove the principals of an entry and of all its descendants from the cache.
+     * This is used when an entry is moved, renamed or deleted.
+     */
+    @Override
+    public void invalidateSubtreeCache( Dn baseDn )
+    {
+        String normName = baseDn.getNormName();
+        credentialCache.invalidate( normName );
+
+        if ( normName.isEmpty() )
         {
-            credentialCache.remove( bindDn.getNormName() );
+            credentialCache.invalidateAll();
+
+            return;
         }
+
+        String suffix = "," + normName;
+        credentialCache.asMap().keySet().removeIf( key -> key.endsWith( suffix ) );
     }
 }
@@ -23,6 +23,7 @@ package org.apache.directory.server.core.authz;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -81,6 +82,7 @@ import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.api.subtree.SubentryUtils;
 import org.apache.directory.server.core.authz.support.ACDFEngine;
 import org.apache.directory.server.core.authz.support.AciContext;
+import org.apache.directory.server.core.authz.support.OperationScope;
 import org.apache.directory.server.i18n.I18n;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -152,6 +154,9 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
     /** a groupCache that responds to add, delete, and modify attempts */
     private GroupCache groupCache;
 
+    /** a cache for the decisions made while filtering the search results */
+    private AciDecisionCache decisionCache;
+
     /** a normalizing ACIItem parser */
     private ACIItemParser aciParser;
 
@@ -296,6 +301,7 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
         // Create the caches
         tupleCache = new TupleCache( adminSession );
         groupCache = new GroupCache( directoryService );
+        decisionCache = new AciDecisionCache( tupleCache, groupCache, AciDecisionCache.DEFAULT_MAX_SIZE );
 
         // Iitialize the ACI PARSER and ACDF engine
         aciParser = new ACIItemParser( new ConcreteNameComponentNormalizer( schemaManager ), schemaManager );
@@ -351,6 +357,26 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
      */
     private void addPerscriptiveAciTuples( OperationContext opContext, Collection<ACITuple> tuples, Dn dn, Entry entry )
         throws LdapException
+    {
+        for ( AciTuplePlan plan : getPerscriptiveAciPlans( opContext, dn, entry ) )
+        {
+            tuples.addAll( plan.getTuples() );
+        }
+    }
+
+
+    /**
+     * Gets the compiled perscriptiveACI tuples of the A/C subentries associated
+     * with the protected entry. Subentries are handled like in
+     * {@link #addPerscriptiveAciTuples(OperationContext, Collection, Dn, Entry)}.
+     *
+     * @param dn the normalized distinguished name of the protected entry
+     * @param entry the target entry whose access is being controlled
+     * @return the plans of the entry A/C subentries
+     * @throws LdapException if there are problems accessing attribute values
+     */
+    private List<AciTuplePlan> getPerscriptiveAciPlans( OperationContext opContext, Dn dn, Entry entry )
+        throws LdapException
     {
         Entry originalEntry;
 
@@ -386,19 +412,66 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
             originalEntry = directoryService.getPartitionNexus().lookup( lookupContext );
         }
 
-        Attribute subentries = originalEntry.get( directoryService.getAtProvider().getAccessControlSubentries() );
+        // The access control subentries which are still being propagated are evaluated on the fly
+        Attribute subentries = subentryUtils.getSubentryAttribute( originalEntry.getDn(), originalEntry,
+            directoryService.getAtProvider().getAccessControlSubentries() );
 
         if ( subentries == null )
         {
-            return;
+            return Collections.emptyList();
         }
 
+        List<AciTuplePlan> plans = new ArrayList<>( subentries.size() );
+
         for ( Value value : subentries )
         {
             String subentryDnStr = value.getString();
             Dn subentryDn = dnFactory.create( subentryDnStr );
-            tuples.addAll( tupleCache.getACITuples( subentryDn.getNormName() ) );
+            plans.add( tupleCache.getPlan( subentryDn.getNormName() ) );
         }
+
+        return plans;
+    }
+
+
+    /**
+     * Selects the tuples which may be related to the checked permission : the given
+     * tuples, and the tuples of the compiled subentries that the ACDF engine would
+     * not discard right away.
+     *
+     * @param aciContext the ACI context, with everything but the tuples
+     * @param plans the compiled perscriptiveACI tuples
+     * @param tuples the entryACI and subentryACI tuples
+     * @return the tuples to evaluate
+     */
+    private Collection<ACITuple> selectTuples( AciContext aciContext, List<AciTuplePlan> plans,
+        Collection<ACITuple> tuples )
+    {
+        OperationScope scope;
+
+        if ( aciContext.getAttributeType() == null )
+        {
+            scope = OperationScope.ENTRY;
+        }
+        else if ( aciContext.getAttrValue() == null )
+        {
+            scope = OperationScope.ATTRIBUTE_TYPE;
+        }
+        else
+        {
+            scope = OperationScope.ATTRIBUTE_TYPE_AND_VALUE;
+        }
+
+        Collection<ACITuple> selected = new ArrayList<>( tuples );
+
+        for ( AciTuplePlan plan : plans )
+        {
+            plan.select( selected, aciContext.getUserDn().getNormName(), aciContext.getUserGroupNames(),
+                aciContext.getAuthenticationLevel(), scope, aciContext.getAttributeType(),
+                aciContext.getMicroOperations() );
+        }
+
+        return selected;
     }
 
 
@@ -1291,8 +1364,8 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
         LdapPrincipal principal = lookupContext.getSession().getEffectivePrincipal();
         Dn userName = principal.getDn();
         Set<String> userGroups = groupCache.getGroups( userName.getNormName() );
+        List<AciTuplePlan> plans = getPerscriptiveAciPlans( lookupContext, dn, entry );
         Collection<ACITuple> tuples = new HashSet<>();
-        addPerscriptiveAciTuples( lookupContext, tuples, dn, entry );
         addEntryAciTuples( tuples, entry );
         addSubentryAciTuples( lookupContext, tuples, dn, entry );
 
@@ -1303,8 +1376,8 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
         aciContext.setAuthenticationLevel( principal.getAuthenticationLevel() );
         aciContext.setEntryDn( dn );
         aciContext.setMicroOperations( LOOKUP_PERMS );
-        aciContext.setAciTuples( tuples );
         aciContext.setEntry( entry );
+        aciContext.setAciTuples( selectTuples( aciContext, plans, tuples ) );
 
         engine.checkPermission( aciContext );
 
@@ -1322,8 +1395,8 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
                 valueAciContext.setAttributeType( attribute.getAttributeType() );
                 valueAciContext.setAttrValue( value );
                 valueAciContext.setMicroOperations( READ_PERMS );
-                valueAciContext.setAciTuples( tuples );
                 valueAciContext.setEntry( entry );
+                valueAciContext.setAciTuples( selectTuples( valueAciContext, plans, tuples ) );
 
                 engine.checkPermission( valueAciContext );
             }
@@ -1343,6 +1416,88 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
     }
 
 
+    /**
+     * Gets the key used to share the decisions made for an entry with the other entries
+     * having the same set of access control subentries.
+     *
+     * @param entry the original entry
+     * @return the normalized access control subentries DNs, or null if the entry has
+     * its own ACIs
+     * @throws LdapException if the pending subentries can't be evaluated
+     */
+    private String getDecisionSubentries( Entry entry ) throws LdapException
+    {
+        // The entryACI and the subentries ACI are specific to the entry
+        if ( ( entry.get( directoryService.getAtProvider().getEntryACI() ) != null )
+            || entry.contains( SchemaConstants.OBJECT_CLASS_AT, SchemaConstants.SUBENTRY_OC ) )
+        {
+            return null;
+        }
+
+        Attribute subentries = subentryUtils.getSubentryAttribute( entry.getDn(), entry,
+            directoryService.getAtProvider().getAccessControlSubentries() );
+
+        if ( subentries == null )
+        {
+            return "";
+        }
+
+        if ( subentries.size() == 1 )
+        {
+            return subentries.get().getNormalized();
+        }
+
+        // Sort the DNs, the values order may differ from one entry to the other
+        String[] subentryDns = new String[subentries.size()];
+        int pos = 0;
+
+        for ( Value value : subentries )
+        {
+            subentryDns[pos++] = value.getNormalized();
+        }
+
+        Arrays.sort( subentryDns );
+
+        return String.join( "|", subentryDns );
+    }
+
+
+    /**
+     * Checks a permission, using the decisions cache if the tuples allow it.
+     *
+     * @param aciContext the ACI context, with everything but the tuples
+     * @param plans the compiled perscriptiveACI tuples
+     * @param tuples the entryACI and subentryACI tuples
+     * @param key the decision key, null if the decision can't be cached
+     * @param version the decisions cache version read before the tuples
+     * @return true if the permission is granted
+     * @throws LdapException if the permission can't be evaluated
+     */
+    private boolean hasPermission( AciContext aciContext, List<AciTuplePlan> plans, Collection<ACITuple> tuples,
+        AciDecisionCache.Key key, long version ) throws LdapException
+    {
+        if ( key != null )
+        {
+            Boolean decision = decisionCache.get( key );
+
+            if ( decision != null )
+            {
+                return decision;
+            }
+        }
+
+        aciContext.setAciTuples( selectTuples( aciContext, plans, tuples ) );
+        boolean granted = engine.hasPermission( aciContext );
+
+        if ( key != null )
+        {
+            decisionCache.put( key, granted, version );
+        }
+
+        return granted;
+    }
+
+
     private boolean filter( OperationContext opContext, Dn normName, Entry clonedEntry ) throws LdapException
     {
         /*
@@ -1353,11 +1508,28 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
 
         LdapPrincipal principal = opContext.getSession().getEffectivePrincipal();
         Dn userDn = principal.getDn();
+        Entry originalEntry = ( ( ClonedServerEntry ) clonedEntry ).getOriginalEntry();
+
+        // Read the version before the tuples, so that a decision made with outdated tuples is not cached
+        long version = decisionCache.getVersion();
         Set<String> userGroups = groupCache.getGroups( userDn.getNormName() );
+        List<AciTuplePlan> plans = getPerscriptiveAciPlans( opContext, normName, clonedEntry );
         Collection<ACITuple> tuples = new HashSet<>();
-        addPerscriptiveAciTuples( opContext, tuples, normName, clonedEntry );
-        addEntryAciTuples( tuples, ( ( ClonedServerEntry ) clonedEntry ).getOriginalEntry() );
-        addSubentryAciTuples( opContext, tuples, normName, ( ( ClonedServerEntry ) clonedEntry ).getOriginalEntry() );
+        addEntryAciTuples( tuples, originalEntry );
+        addSubentryAciTuples( opContext, tuples, normName, originalEntry );
+
+        // The decisions can be shared with the entries having the same subentries,
+        // as long as the tuples don't depend on the entry itself
+        String subentries = getDecisionSubentries( originalEntry );
+
+        for ( AciTuplePlan plan : plans )
+        {
+            if ( !plan.isCacheable() )
+            {
+                subentries = null;
+                break;
+            }
+        }
 
         AciContext aciContext = new AciContext( schemaManager, opContext );
         aciContext.setUserGroupNames( userGroups );
@@ -1365,10 +1537,10 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
         aciContext.setAuthenticationLevel( principal.getAuthenticationLevel() );
         aciContext.setEntryDn( normName );
         aciContext.setMicroOperations( SEARCH_ENTRY_PERMS );
-        aciContext.setAciTuples( tuples );
-        aciContext.setEntry( ( ( ClonedServerEntry ) clonedEntry ).getOriginalEntry() );
+        aciContext.setEntry( originalEntry );
 
-        if ( !engine.hasPermission( aciContext ) )
+        if ( !hasPermission( aciContext, plans, tuples, getDecisionKey( principal, subentries, null,
+            OperationScope.ENTRY, SEARCH_ENTRY_PERMS ), version ) )
         {
             return false;
         }
@@ -1395,10 +1567,10 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
             aciContext.setEntryDn( normName );
             aciContext.setAttributeType( attributeType );
             aciContext.setMicroOperations( SEARCH_ATTRVAL_PERMS );
-            aciContext.setAciTuples( tuples );
             aciContext.setEntry( clonedEntry );
 
-            if ( !engine.hasPermission( aciContext ) )
+            if ( !hasPermission( aciContext, plans, tuples, getDecisionKey( principal, subentries, attributeType,
+                OperationScope.ATTRIBUTE_TYPE, SEARCH_ATTRVAL_PERMS ), version ) )
             {
                 attributeToRemove.add( attributeType );
 
@@ -1407,6 +1579,10 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
 
             List<Value> valueToRemove = new ArrayList<>();
 
+            // When the decision is cached, it's the same for all the values
+            AciDecisionCache.Key valueKey = getDecisionKey( principal, subentries, attributeType,
+                OperationScope.ATTRIBUTE_TYPE_AND_VALUE, SEARCH_ATTRVAL_PERMS );
+
             // attribute type scope is ok now let's determine value level scope
             for ( Value value : attr )
             {
@@ -1418,10 +1594,9 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
                 aciContext.setAttributeType( attr.getAttributeType() );
                 aciContext.setAttrValue( value );
                 aciContext.setMicroOperations( SEARCH_ATTRVAL_PERMS );
-                aciContext.setAciTuples( tuples );
                 aciContext.setEntry( clonedEntry );
 
-                if ( !engine.hasPermission( aciContext ) )
+                if ( !hasPermission( aciContext, plans, tuples, valueKey, version ) )
                 {
                     valueToRemove.add( value );
                 }
@@ -1446,6 +1621,19 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
         return true;
     }
 
+
+    private AciDecisionCache.Key getDecisionKey( LdapPrincipal principal, String subentries,
+        AttributeType attributeType, OperationScope scope, Collection<MicroOperation> microOperations )
+    {
+        if ( subentries == null )
+        {
+            return null;
+        }
+
+        return new AciDecisionCache.Key( principal.getDn().getNormName(), principal.getAuthenticationLevel(),
+            subentries, attributeType == null ? null : attributeType.getOid(), scope, microOperations );
+    }
+
     /**
      * WARNING: create one of these filters fresh every time for each new search.
      */
@@ -0,0 +1,324 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.authz;
+
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.directory.api.ldap.aci.ACITuple;
+import org.apache.directory.api.ldap.aci.MicroOperation;
+import org.apache.directory.api.ldap.aci.ProtectedItem;
+import org.apache.directory.api.ldap.aci.UserClass;
+import org.apache.directory.api.ldap.aci.protectedItem.AllAttributeValuesItem;
+import org.apache.directory.api.ldap.aci.protectedItem.AttributeTypeItem;
+import org.apache.directory.api.ldap.model.constants.AuthenticationLevel;
+import org.apache.directory.api.ldap.model.subtree.SubtreeSpecification;
+import org.apache.directory.server.core.authz.support.OperationScope;
+
+
+/**
+ * A cache for the access control decisions made by the ACDF engine. Most of the entries
+ * returned by a search share the same set of access control subentries, so the same
+ * tuples get evaluated over and over for each of them : when these tuples don't depend
+ * on the protected entry itself, the decision only depends on the user, on the set of
+ * subentries, and on the requested attribute and operation.
+ * <br>
+ * The decisions are dropped when the tuples or the groups are modified, which is
+ * detected using the {@link TupleCache} and {@link GroupCache} versions.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class AciDecisionCache
+{
+    /** The default maximum number of decisions kept in the cache */
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    /** The tuples cache */
+    private final TupleCache tupleCache;
+
+    /** The groups cache */
+    private final GroupCache groupCache;
+
+    /** The maximum number of cached decisions */
+    private final int maxSize;
+
+    /** The cached decisions */
+    private final Map<Key, Boolean> decisions = new ConcurrentHashMap<>();
+
+    /** The tuples and groups version the cached decisions have been computed with */
+    private volatile long version;
+
+
+    /**
+     * Creates a new AciDecisionCache instance
+     *
+     * @param tupleCache The tuples cache
+     * @param groupCache The groups cache
+     * @param maxSize The maximum number of decisions to keep
+     */
+    public AciDecisionCache( TupleCache tupleCache, GroupCache groupCache, int maxSize )
+    {
+        this.tupleCache = tupleCache;
+        this.groupCache = groupCache;
+        this.maxSize = maxSize;
+        version = getVersion();
+    }
+
+
+    /**
+     * Gets the current version of the tuples and groups. It has to be read before the
+     * tuples used to compute a decision, and given back when the decision is stored.
+     *
+     * @return The current version
+     */
+    public long getVersion()
+    {
+        // Both counters only grow, so does their sum
+        return tupleCache.getVersion() + groupCache.getVersion();
+    }
+
+
+    /**
+     * Gets a cached decision
+     *
+     * @param key The decision key
+     * @return The cached decision, or null if it's not in the cache
+     */
+    public Boolean get( Key key )
+    {
+        long currentVersion = getVersion();
+
+        if ( currentVersion != version )
+        {
+            synchronized ( decisions )
+            {
+                if ( currentVersion != version )
+                {
+                    decisions.clear();
+                    version = currentVersion;
+                }
+            }
+
+            return null;
+        }
+
+        return decisions.get( key );
+    }
+
+
+    /**
+     * Stores a decision, unless the tuples or the groups have changed since it was computed.
+     *
+     * @param key The decision key
+     * @param granted The decision
+     * @param decisionVersion The version read before the tuples used to compute the decision
+     */
+    public void put( Key key, boolean granted, long decisionVersion )
+    {
+        // Synchronized with the invalidation, so that a decision computed with old tuples
+        // is either rejected, or removed when the new version is seen
+        synchronized ( decisions )
+        {
+            if ( ( decisionVersion != version ) || ( decisionVersion != getVersion() ) )
+            {
+                return;
+            }
+
+            if ( decisions.size() >= maxSize )
+            {
+                decisions.clear();
+            }
+
+            decisions.put( key, granted );
+        }
+    }
+
+
+    /**
+     * Removes all the cached decisions
+     */
+    public void clear()
+    {
+        decisions.clear();
+    }
+
+
+    /**
+     * @return The number of cached decisions
+     */
+    public int size()
+    {
+        return decisions.size();
+    }
+
+
+    /**
+     * Tells if the decisions made using a set of tuples can be cached, ie if none
+     * of the tuples depends on the protected entry, its DN or its values.
+     *
+     * @param tuples The tuples to check
+     * @return true if the decisions made from these tuples can be shared among entries
+     */
+    public static boolean isCacheable( Collection<ACITuple> tuples )
+    {
+        for ( ACITuple tuple : tuples )
+        {
+            for ( ProtectedItem item : tuple.getProtectedItems() )
+            {
+                if ( ( item != ProtectedItem.ENTRY )
+                    && ( item != ProtectedItem.ALL_USER_ATTRIBUTE_TYPES )
+                    && ( item != ProtectedItem.ALL_USER_ATTRIBUTE_TYPES_AND_VALUES )
+                    && !( item instanceof AllAttributeValuesItem )
+                    && !( item instanceof AttributeTypeItem ) )
+                {
+                    // The classes, the values, the ranges, and the limits are checked against the entry
+                    return false;
+                }
+            }
+
+            for ( UserClass userClass : tuple.getUserClasses() )
+            {
+                if ( ( userClass == UserClass.THIS_ENTRY ) || ( userClass == UserClass.PARENT_OF_ENTRY ) )
+                {
+                    return false;
+                }
+
+                if ( userClass instanceof UserClass.Subtree )
+                {
+                    // A refinement is evaluated against the user entry, which may change
+                    for ( SubtreeSpecification subtreeSpec : ( ( UserClass.Subtree ) userClass )
+                        .getSubtreeSpecifications() )
+                    {
+                        if ( subtreeSpec.getRefinement() != null )
+                        {
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * The key of a decision : the user, the set of access control subentries of the
+     * protected entry, and the requested attribute and operation.
+     */
+    public static final class Key
+    {
+        /** The normalized user DN */
+        private final String userDn;
+
+        /** The user authentication level */
+        private final AuthenticationLevel authenticationLevel;
+
+        /** The normalized access control subentries DNs */
+        private final String subentries;
+
+        /** The attribute type OID, null for the entry itself */
+        private final String attributeOid;
+
+        /** The operation scope */
+        private final OperationScope scope;
+
+        /** The requested micro operations */
+        private final Collection<MicroOperation> microOperations;
+
+        /** The precomputed hashcode */
+        private final int hash;
+
+
+        /**
+         * Creates a new Key instance
+         *
+         * @param userDn The normalized user DN
+         * @param authenticationLevel The user authentication level
+         * @param subentries The normalized access control subentries DNs
+         * @param attributeOid The attribute type OID, null for the entry itself
+         * @param scope The operation scope
+         * @param microOperations The requested micro operations
+         */
+        public Key( String userDn, AuthenticationLevel authenticationLevel, String subentries,
+            String attributeOid, OperationScope scope, Collection<MicroOperation> microOperations )
+        {
+            this.userDn = userDn;
+            this.authenticationLevel = authenticationLevel;
+            this.subentries = subentries;
+            this.attributeOid = attributeOid;
+            this.scope = scope;
+            this.microOperations = microOperations;
+            hash = Objects.hash( userDn, authenticationLevel, subentries, attributeOid, scope, microOperations );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+
+            if ( !( o instanceof Key ) )
+            {
+                return false;
+            }
+
+            Key that = ( Key ) o;
+
+            return ( hash == that.hash )
+                && ( authenticationLevel == that.authenticationLevel )
+                && ( scope == that.scope )
+                && userDn.equals( that.userDn )
+                && subentries.equals( that.subentries )
+                && Objects.equals( attributeOid, that.attributeOid )
+                && microOperations.equals( that.microOperations );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString()
+        {
+            return "<" + userDn + ", " + subentries + ", " + attributeOid + ", " + scope + ", " + microOperations
+                + ">";
+        }
+    }
+}
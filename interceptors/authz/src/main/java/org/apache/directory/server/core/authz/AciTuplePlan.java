@@ -0,0 +1,404 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.authz;
+
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.api.ldap.aci.ACITuple;
+import org.apache.directory.api.ldap.aci.MicroOperation;
+import org.apache.directory.api.ldap.aci.ProtectedItem;
+import org.apache.directory.api.ldap.aci.UserClass;
+import org.apache.directory.api.ldap.aci.protectedItem.AllAttributeValuesItem;
+import org.apache.directory.api.ldap.aci.protectedItem.AttributeTypeItem;
+import org.apache.directory.api.ldap.aci.protectedItem.AttributeValueItem;
+import org.apache.directory.api.ldap.aci.protectedItem.MaxValueCountElem;
+import org.apache.directory.api.ldap.aci.protectedItem.MaxValueCountItem;
+import org.apache.directory.api.ldap.aci.protectedItem.RestrictedByElem;
+import org.apache.directory.api.ldap.aci.protectedItem.RestrictedByItem;
+import org.apache.directory.api.ldap.aci.protectedItem.SelfValueItem;
+import org.apache.directory.api.ldap.model.constants.AuthenticationLevel;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.server.core.authz.support.OperationScope;
+
+
+/**
+ * The compiled form of the tuples of an access control subentry. The tuples are indexed
+ * by micro operation, by attribute type and scope, and by user, so that only the tuples
+ * which may be related to an operation are given to the ACDF engine, instead of running
+ * all its filters on all the tuples for each decision.
+ * <br>
+ * The selection is conservative : a tuple whose relevance depends on the protected entry,
+ * or on the user entry, is always selected, and the ACDF engine filters the selected tuples
+ * as usual. The selection only avoids evaluating tuples that the engine would discard.
+ * <br>
+ * A plan is immutable once built.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class AciTuplePlan
+{
+    /** An empty plan */
+    public static final AciTuplePlan EMPTY = new AciTuplePlan( Collections.<ACITuple> emptyList() );
+
+    /** The compiled tuples */
+    private final List<ACITuple> tuples;
+
+    /** The tuples granting or denying each micro operation */
+    private final Map<MicroOperation, BitSet> byMicroOperation = new EnumMap<>( MicroOperation.class );
+
+    /** The tuples related to the entry scope */
+    private final BitSet entryScope = new BitSet();
+
+    /** The tuples related to any attribute type, in the attribute type scope */
+    private final BitSet anyAttributeType = new BitSet();
+
+    /** The tuples related to any attribute type, in the attribute type and value scope */
+    private final BitSet anyAttributeValue = new BitSet();
+
+    /** The tuples related to a given attribute type OID, in the attribute type scope */
+    private final Map<String, BitSet> byAttributeType = new HashMap<>();
+
+    /** The tuples related to a given attribute type OID, in the attribute type and value scope */
+    private final Map<String, BitSet> byAttributeValue = new HashMap<>();
+
+    /** The tuples whose protected items are evaluated against the entry, in any scope */
+    private final BitSet entryDependent = new BitSet();
+
+    /** The tuples applying to all the users */
+    private final BitSet allUsers = new BitSet();
+
+    /** The tuples applying to a given normalized user DN */
+    private final Map<String, BitSet> byUserName = new HashMap<>();
+
+    /** The tuples applying to a given normalized group DN */
+    private final Map<String, BitSet> byUserGroup = new HashMap<>();
+
+    /** The tuples whose user classes are evaluated against the entry or the user entry */
+    private final BitSet userDependent = new BitSet();
+
+    /** The denials which are kept for the users whose authentication level is below the tuple one */
+    private final Map<AuthenticationLevel, BitSet> denialsAbove = new EnumMap<>( AuthenticationLevel.class );
+
+    /** Tells if the decisions made with these tuples don't depend on the protected entry */
+    private final boolean cacheable;
+
+
+    /**
+     * Compiles a list of tuples.
+     *
+     * @param tuples The tuples to compile
+     */
+    public AciTuplePlan( List<ACITuple> tuples )
+    {
+        this.tuples = Collections.unmodifiableList( tuples );
+
+        for ( MicroOperation microOperation : MicroOperation.values() )
+        {
+            byMicroOperation.put( microOperation, new BitSet() );
+        }
+
+        for ( AuthenticationLevel authenticationLevel : AuthenticationLevel.values() )
+        {
+            denialsAbove.put( authenticationLevel, new BitSet() );
+        }
+
+        for ( int i = 0; i < tuples.size(); i++ )
+        {
+            ACITuple tuple = tuples.get( i );
+
+            for ( MicroOperation microOperation : tuple.getMicroOperations() )
+            {
+                byMicroOperation.get( microOperation ).set( i );
+            }
+
+            compileProtectedItems( i, tuple );
+            compileUserClasses( i, tuple );
+        }
+
+        cacheable = AciDecisionCache.isCacheable( tuples );
+    }
+
+
+    /**
+     * Indexes a tuple by the scopes and attribute types its protected items are related to,
+     * following the RelatedProtectedItemFilter rules.
+     */
+    private void compileProtectedItems( int i, ACITuple tuple )
+    {
+        for ( ProtectedItem item : tuple.getProtectedItems() )
+        {
+            if ( item == ProtectedItem.ENTRY )
+            {
+                entryScope.set( i );
+            }
+            else if ( ( item == ProtectedItem.ALL_USER_ATTRIBUTE_TYPES )
+                || ( item == ProtectedItem.ALL_USER_ATTRIBUTE_TYPES_AND_VALUES ) )
+            {
+                anyAttributeType.set( i );
+                anyAttributeValue.set( i );
+            }
+            else if ( item instanceof AllAttributeValuesItem )
+            {
+                for ( Iterator<AttributeType> iterator = ( ( AllAttributeValuesItem ) item ).iterator(); iterator
+                    .hasNext(); )
+                {
+                    set( byAttributeValue, iterator.next().getOid(), i );
+                }
+            }
+            else if ( item instanceof AttributeTypeItem )
+            {
+                for ( Iterator<AttributeType> iterator = ( ( AttributeTypeItem ) item ).iterator(); iterator
+                    .hasNext(); )
+                {
+                    set( byAttributeType, iterator.next().getOid(), i );
+                }
+            }
+            else if ( item instanceof AttributeValueItem )
+            {
+                for ( Iterator<Attribute> iterator = ( ( AttributeValueItem ) item ).iterator(); iterator.hasNext(); )
+                {
+                    Attribute attribute = iterator.next();
+
+                    if ( attribute.getAttributeType() == null )
+                    {
+                        // The attribute type will be resolved by the filter
+                        entryDependent.set( i );
+                    }
+                    else
+                    {
+                        set( byAttributeValue, attribute.getAttributeType().getOid(), i );
+                    }
+                }
+            }
+            else if ( item instanceof MaxValueCountItem )
+            {
+                for ( Iterator<MaxValueCountElem> iterator = ( ( MaxValueCountItem ) item ).iterator(); iterator
+                    .hasNext(); )
+                {
+                    set( byAttributeValue, iterator.next().getAttributeType().getOid(), i );
+                }
+            }
+            else if ( item instanceof RestrictedByItem )
+            {
+                for ( Iterator<RestrictedByElem> iterator = ( ( RestrictedByItem ) item ).iterator(); iterator
+                    .hasNext(); )
+                {
+                    set( byAttributeValue, iterator.next().getAttributeType().getOid(), i );
+                }
+            }
+            else if ( item instanceof SelfValueItem )
+            {
+                for ( Iterator<AttributeType> iterator = ( ( SelfValueItem ) item ).iterator(); iterator.hasNext(); )
+                {
+                    AttributeType attributeType = iterator.next();
+                    set( byAttributeType, attributeType.getOid(), i );
+                    set( byAttributeValue, attributeType.getOid(), i );
+                }
+            }
+            else
+            {
+                // Classes, range of values, max immediate subordinates, and unknown items
+                // are evaluated against the entry whatever the scope
+                entryDependent.set( i );
+            }
+        }
+    }
+
+
+    /**
+     * Indexes a tuple by the users its user classes apply to, following the
+     * RelatedUserClassFilter rules.
+     */
+    private void compileUserClasses( int i, ACITuple tuple )
+    {
+        for ( UserClass userClass : tuple.getUserClasses() )
+        {
+            if ( userClass == UserClass.ALL_USERS )
+            {
+                allUsers.set( i );
+            }
+            else if ( userClass instanceof UserClass.Name )
+            {
+                for ( String name : ( ( UserClass.Name ) userClass ).getNames() )
+                {
+                    set( byUserName, name, i );
+                }
+            }
+            else if ( userClass instanceof UserClass.UserGroup )
+            {
+                for ( String name : ( ( UserClass.UserGroup ) userClass ).getNames() )
+                {
+                    set( byUserGroup, name, i );
+                }
+            }
+            else
+            {
+                // thisEntry, parentOfEntry and subtree depend on the entry or on the user entry
+                userDependent.set( i );
+            }
+        }
+
+        if ( !tuple.isGrant() )
+        {
+            // A denial is kept by the filter, even if unrelated, when the user
+            // authentication level is below the tuple one
+            for ( AuthenticationLevel authenticationLevel : AuthenticationLevel.values() )
+            {
+                if ( authenticationLevel.compareTo( tuple.getAuthenticationLevel() ) < 0 )
+                {
+                    denialsAbove.get( authenticationLevel ).set( i );
+                }
+            }
+        }
+    }
+
+
+    private static void set( Map<String, BitSet> index, String key, int i )
+    {
+        BitSet bits = index.get( key );
+
+        if ( bits == null )
+        {
+            bits = new BitSet();
+            index.put( key, bits );
+        }
+
+        bits.set( i );
+    }
+
+
+    /**
+     * @return The compiled tuples
+     */
+    public List<ACITuple> getTuples()
+    {
+        return tuples;
+    }
+
+
+    /**
+     * @return true if the decisions made with these tuples don't depend on the protected entry
+     */
+    public boolean isCacheable()
+    {
+        return cacheable;
+    }
+
+
+    /**
+     * Adds the tuples which may be related to an operation to a collection. The selected
+     * tuples are a superset of the tuples the ACDF engine would keep after its related user
+     * class, related protected item and micro operation filters.
+     *
+     * @param selected The collection the selected tuples are added to
+     * @param userDn The normalized user DN
+     * @param userGroups The normalized DNs of the user groups
+     * @param authenticationLevel The user authentication level
+     * @param scope The operation scope
+     * @param attributeType The attribute type, if the scope is not the entry
+     * @param microOperations The requested micro operations
+     */
+    public void select( Collection<ACITuple> selected, String userDn, Collection<String> userGroups,
+        AuthenticationLevel authenticationLevel, OperationScope scope, AttributeType attributeType,
+        Collection<MicroOperation> microOperations )
+    {
+        if ( tuples.isEmpty() )
+        {
+            return;
+        }
+
+        // The tuples must contain all the requested micro operations
+        BitSet candidates = new BitSet( tuples.size() );
+        candidates.set( 0, tuples.size() );
+
+        for ( MicroOperation microOperation : microOperations )
+        {
+            candidates.and( byMicroOperation.get( microOperation ) );
+        }
+
+        if ( candidates.isEmpty() )
+        {
+            return;
+        }
+
+        // The tuples must protect the requested item
+        BitSet items = ( BitSet ) entryDependent.clone();
+
+        if ( scope == OperationScope.ENTRY )
+        {
+            items.or( entryScope );
+        }
+        else if ( scope == OperationScope.ATTRIBUTE_TYPE )
+        {
+            items.or( anyAttributeType );
+            or( items, byAttributeType, attributeType.getOid() );
+        }
+        else
+        {
+            items.or( anyAttributeValue );
+            or( items, byAttributeValue, attributeType.getOid() );
+        }
+
+        candidates.and( items );
+
+        if ( candidates.isEmpty() )
+        {
+            return;
+        }
+
+        // The tuples must apply to the user
+        BitSet users = ( BitSet ) allUsers.clone();
+        users.or( userDependent );
+        users.or( denialsAbove.get( authenticationLevel ) );
+        or( users, byUserName, userDn );
+
+        for ( String userGroup : userGroups )
+        {
+            or( users, byUserGroup, userGroup );
+        }
+
+        candidates.and( users );
+
+        for ( int i = candidates.nextSetBit( 0 ); i >= 0; i = candidates.nextSetBit( i + 1 ) )
+        {
+            selected.add( tuples.get( i ) );
+        }
+    }
+
+
+    private static void or( BitSet bits, Map<String, BitSet> index, String key )
+    {
+        BitSet keyBits = index.get( key );
+
+        if ( keyBits != null )
+        {
+            bits.or( keyBits );
+        }
+    }
+}
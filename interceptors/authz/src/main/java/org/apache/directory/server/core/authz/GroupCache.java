@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.naming.directory.SearchControls;
 
@@ -94,6 +95,9 @@ public class GroupCache
     /** String key for the Dn of a group to a Set (HashSet) for the Strings of member DNs */
     private final Map<String, Set<String>> groups = new ConcurrentHashMap<>();
 
+    /** A counter incremented each time the groups membership changes */
+    private final AtomicLong version = new AtomicLong( 0L );
+
 
     /**
      * Creates a static group cache.
@@ -309,6 +313,7 @@ public class GroupCache
         addMembers( memberSet, members );
 
         groups.put( name, memberSet );
+        version.incrementAndGet();
 
         if ( IS_DEBUG )
         {
@@ -335,6 +340,7 @@ public class GroupCache
         }
 
         groups.remove( name.getNormName() );
+        version.incrementAndGet();
 
         if ( IS_DEBUG )
         {
@@ -424,6 +430,7 @@ public class GroupCache
                 if ( memberSet != null )
                 {
                     modify( memberSet, modification.getOperation(), modification.getAttribute() );
+                    version.incrementAndGet();
                 }
 
                 break;
@@ -460,6 +467,7 @@ public class GroupCache
         if ( memberSet != null )
         {
             modify( memberSet, modOp, members );
+            version.incrementAndGet();
         }
 
         if ( IS_DEBUG )
@@ -548,6 +556,7 @@ public class GroupCache
             groups.remove( oldName.getNormName() );
 
             groups.put( newName.getNormName(), members );
+            version.incrementAndGet();
 
             if ( IS_DEBUG )
             {
@@ -559,4 +568,16 @@ public class GroupCache
 
         return false;
     }
+
+
+    /**
+     * Gets the version of the groups membership, which is incremented after each change
+     * of a group. It's used to invalidate the decisions computed from older memberships.
+     *
+     * @return the current version of the cache
+     */
+    public long getVersion()
+    {
+        return version.get();
+    }
 }
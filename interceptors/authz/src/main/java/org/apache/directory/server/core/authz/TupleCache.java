@@ -27,6 +27,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.naming.directory.SearchControls;
 
@@ -65,7 +66,11 @@ import org.slf4j.LoggerFactory;
 /**
  * A cache for tuple sets which responds to specific events to perform
  * cache house keeping as access control subentries are added, deleted
- * and modified.
+ * and modified. The tuples are compiled into an {@link AciTuplePlan} when
+ * they are loaded or changed.
+ * <br>
+ * The cache is copy-on-write : each change replaces the whole map, so
+ * readers never need to lock it.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -74,8 +79,11 @@ public class TupleCache
     /** the logger for this class */
     private static final Logger LOG = LoggerFactory.getLogger( TupleCache.class );
 
-    /** a map of strings to ACITuple collections */
-    private final Map<String, List<ACITuple>> tuples = new HashMap<>();
+    /** a map of subentry normalized DNs to their compiled tuples, replaced on each change */
+    private volatile Map<String, AciTuplePlan> plans = Collections.emptyMap();
+
+    /** A counter incremented each time the cached tuples change */
+    private final AtomicLong version = new AtomicLong( 0L );
 
     /** the directory service */
     private final DirectoryService directoryService;
@@ -234,7 +242,16 @@ public class TupleCache
             }
         }
 
-        tuples.put( dn.getNormName(), entryTuples );
+        AciTuplePlan plan = new AciTuplePlan( entryTuples );
+
+        synchronized ( this )
+        {
+            Map<String, AciTuplePlan> newPlans = new HashMap<>( plans );
+            newPlans.put( dn.getNormName(), plan );
+            plans = newPlans;
+        }
+
+        version.incrementAndGet();
     }
 
 
@@ -245,7 +262,14 @@ public class TupleCache
             return;
         }
 
-        tuples.remove( dn.getNormName() );
+        synchronized ( this )
+        {
+            Map<String, AciTuplePlan> newPlans = new HashMap<>( plans );
+            newPlans.remove( dn.getNormName() );
+            plans = newPlans;
+        }
+
+        version.incrementAndGet();
     }
 
 
@@ -260,7 +284,7 @@ public class TupleCache
         {
             if ( mod.getAttribute().isInstanceOf( directoryService.getAtProvider().getPrescriptiveACI() ) )
             {
-                subentryDeleted( normName, entry );
+                // Replaces the previous tuples
                 subentryAdded( normName, entry );
             }
         }
@@ -276,7 +300,7 @@ public class TupleCache
 
         if ( mods.get( directoryService.getAtProvider().getPrescriptiveACI() ) != null )
         {
-            subentryDeleted( normName, entry );
+            // Replaces the previous tuples
             subentryAdded( normName, entry );
         }
     }
@@ -284,19 +308,58 @@ public class TupleCache
 
     public List<ACITuple> getACITuples( String subentryDn )
     {
-        List<ACITuple> aciTuples = tuples.get( subentryDn );
+        return getPlan( subentryDn ).getTuples();
+    }
+
+
+    /**
+     * Gets the compiled tuples of an access control subentry.
+     *
+     * @param subentryDn the normalized subentry DN
+     * @return the subentry plan, empty if the subentry is unknown
+     */
+    public AciTuplePlan getPlan( String subentryDn )
+    {
+        AciTuplePlan plan = plans.get( subentryDn );
 
-        if ( aciTuples == null )
+        if ( plan == null )
         {
-            return Collections.emptyList();
+            return AciTuplePlan.EMPTY;
         }
 
-        return Collections.unmodifiableList( aciTuples );
+        return plan;
     }
 
 
     public void subentryRenamed( Dn oldName, Dn newName )
     {
-        tuples.put( newName.getNormName(), tuples.remove( oldName.getNormName() ) );
+        synchronized ( this )
+        {
+            AciTuplePlan plan = plans.get( oldName.getNormName() );
+
+            if ( plan == null )
+            {
+                return;
+            }
+
+            Map<String, AciTuplePlan> newPlans = new HashMap<>( plans );
+            newPlans.remove( oldName.getNormName() );
+            newPlans.put( newName.getNormName(), plan );
+            plans = newPlans;
+        }
+
+        version.incrementAndGet();
+    }
+
+
+    /**
+     * Gets the version of the cached tuples, which is incremented after each change
+     * of the tuples. It's used to invalidate the decisions computed from older tuples.
+     *
+     * @return the current version of the cache
+     */
+    public long getVersion()
+    {
+        return version.get();
     }
 }
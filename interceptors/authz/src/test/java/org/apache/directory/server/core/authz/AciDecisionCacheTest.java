@@ -0,0 +1,124 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.core.authz;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+import org.apache.directory.api.ldap.aci.ACITuple;
+import org.apache.directory.api.ldap.aci.MicroOperation;
+import org.apache.directory.api.ldap.aci.ProtectedItem;
+import org.apache.directory.api.ldap.aci.UserClass;
+import org.apache.directory.api.ldap.aci.protectedItem.AllAttributeValuesItem;
+import org.apache.directory.api.ldap.aci.protectedItem.AttributeTypeItem;
+import org.apache.directory.api.ldap.aci.protectedItem.MaxImmSubItem;
+import org.apache.directory.api.ldap.aci.protectedItem.SelfValueItem;
+import org.apache.directory.api.ldap.model.constants.AuthenticationLevel;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.server.core.authz.support.OperationScope;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Tests {@link AciDecisionCache}.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class AciDecisionCacheTest
+{
+    private static final Set<AttributeType> EMPTY_ATTRIBUTE_TYPE_COLLECTION = Collections
+        .unmodifiableSet( new HashSet<AttributeType>() );
+
+    private static final Set<MicroOperation> BROWSE = Collections.singleton( MicroOperation.BROWSE );
+
+    private static final Set<MicroOperation> READ = Collections.singleton( MicroOperation.READ );
+
+
+    private static Collection<ACITuple> tuples( UserClass userClass, ProtectedItem protectedItem )
+    {
+        Collection<ACITuple> tuples = new ArrayList<ACITuple>();
+        tuples.add( new ACITuple( Collections.singleton( userClass ), AuthenticationLevel.NONE,
+            Collections.singleton( protectedItem ), BROWSE, true, 0 ) );
+
+        return tuples;
+    }
+
+
+    @Test
+    public void testEntryIndependentTuplesAreCacheable()
+    {
+        assertTrue( AciDecisionCache.isCacheable( new ArrayList<ACITuple>() ) );
+        assertTrue( AciDecisionCache.isCacheable( tuples( UserClass.ALL_USERS, ProtectedItem.ENTRY ) ) );
+        assertTrue( AciDecisionCache.isCacheable( tuples( UserClass.ALL_USERS,
+            ProtectedItem.ALL_USER_ATTRIBUTE_TYPES_AND_VALUES ) ) );
+        assertTrue( AciDecisionCache.isCacheable( tuples( UserClass.ALL_USERS,
+            new AttributeTypeItem( EMPTY_ATTRIBUTE_TYPE_COLLECTION ) ) ) );
+        assertTrue( AciDecisionCache.isCacheable( tuples( UserClass.ALL_USERS,
+            new AllAttributeValuesItem( EMPTY_ATTRIBUTE_TYPE_COLLECTION ) ) ) );
+    }
+
+
+    @Test
+    public void testEntryDependentTuplesAreNotCacheable()
+    {
+        assertFalse( AciDecisionCache.isCacheable( tuples( UserClass.THIS_ENTRY, ProtectedItem.ENTRY ) ) );
+        assertFalse( AciDecisionCache.isCacheable( tuples( UserClass.PARENT_OF_ENTRY, ProtectedItem.ENTRY ) ) );
+        assertFalse( AciDecisionCache.isCacheable( tuples( UserClass.ALL_USERS,
+            new SelfValueItem( EMPTY_ATTRIBUTE_TYPE_COLLECTION ) ) ) );
+        assertFalse( AciDecisionCache.isCacheable( tuples( UserClass.ALL_USERS, new MaxImmSubItem( 2 ) ) ) );
+    }
+
+
+    @Test
+    public void testKey()
+    {
+        AciDecisionCache.Key key = new AciDecisionCache.Key( "uid=akarasulu,ou=users,ou=system",
+            AuthenticationLevel.SIMPLE, "2.5.4.3=aci,ou=system", null, OperationScope.ENTRY, BROWSE );
+        AciDecisionCache.Key same = new AciDecisionCache.Key( "uid=akarasulu,ou=users,ou=system",
+            AuthenticationLevel.SIMPLE, "2.5.4.3=aci,ou=system", null, OperationScope.ENTRY,
+            Collections.singleton( MicroOperation.BROWSE ) );
+
+        assertEquals( key, same );
+        assertEquals( key.hashCode(), same.hashCode() );
+
+        assertNotEquals( key, new AciDecisionCache.Key( "uid=akarasulu,ou=users,ou=system",
+            AuthenticationLevel.STRONG, "2.5.4.3=aci,ou=system", null, OperationScope.ENTRY, BROWSE ) );
+        assertNotEquals( key, new AciDecisionCache.Key( "uid=akarasulu,ou=users,ou=system",
+            AuthenticationLevel.SIMPLE, "", null, OperationScope.ENTRY, BROWSE ) );
+        assertNotEquals( key, new AciDecisionCache.Key( "uid=akarasulu,ou=users,ou=system",
+            AuthenticationLevel.SIMPLE, "2.5.4.3=aci,ou=system", "2.5.4.3", OperationScope.ATTRIBUTE_TYPE,
+            READ ) );
+    }
+}
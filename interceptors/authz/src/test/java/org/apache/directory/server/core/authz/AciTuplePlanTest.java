@@ -0,0 +1,191 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.core.authz;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+import org.apache.directory.api.ldap.aci.ACITuple;
+import org.apache.directory.api.ldap.aci.MicroOperation;
+import org.apache.directory.api.ldap.aci.ProtectedItem;
+import org.apache.directory.api.ldap.aci.UserClass;
+import org.apache.directory.api.ldap.aci.protectedItem.AttributeTypeItem;
+import org.apache.directory.api.ldap.aci.protectedItem.MaxImmSubItem;
+import org.apache.directory.api.ldap.model.constants.AuthenticationLevel;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.server.core.authz.support.OperationScope;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Tests {@link AciTuplePlan}.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class AciTuplePlanTest
+{
+    private static final String USER = "2.5.4.11=test,2.5.4.11=users,2.5.4.11=system";
+
+    private static final String OTHER_USER = "2.5.4.11=other,2.5.4.11=users,2.5.4.11=system";
+
+    private static final String GROUP = "2.5.4.11=test,2.5.4.11=groups,2.5.4.11=system";
+
+    private static final Set<String> NO_GROUPS = Collections.emptySet();
+
+    private static final Set<MicroOperation> BROWSE = Collections.singleton( MicroOperation.BROWSE );
+
+    private static final Set<MicroOperation> READ = Collections.singleton( MicroOperation.READ );
+
+    private static AttributeType CN_AT;
+
+    private static AttributeType SN_AT;
+
+
+    @BeforeClass
+    public static void setup() throws Exception
+    {
+        DefaultSchemaManager schemaManager = new DefaultSchemaManager();
+        CN_AT = schemaManager.lookupAttributeTypeRegistry( "cn" );
+        SN_AT = schemaManager.lookupAttributeTypeRegistry( "sn" );
+    }
+
+
+    private static ACITuple tuple( UserClass userClass, ProtectedItem protectedItem, Set<MicroOperation> ops,
+        boolean grant, AuthenticationLevel authenticationLevel )
+    {
+        return new ACITuple( Collections.singleton( userClass ), authenticationLevel,
+            Collections.singleton( protectedItem ), ops, grant, 0 );
+    }
+
+
+    private static Collection<ACITuple> select( AciTuplePlan plan, String userDn, Collection<String> groups,
+        AuthenticationLevel authenticationLevel, OperationScope scope, AttributeType attributeType,
+        Set<MicroOperation> ops )
+    {
+        Collection<ACITuple> selected = new ArrayList<ACITuple>();
+        plan.select( selected, userDn, groups, authenticationLevel, scope, attributeType, ops );
+
+        return selected;
+    }
+
+
+    @Test
+    public void testEmptyPlan()
+    {
+        assertTrue( AciTuplePlan.EMPTY.getTuples().isEmpty() );
+        assertTrue( AciTuplePlan.EMPTY.isCacheable() );
+        assertTrue( select( AciTuplePlan.EMPTY, USER, NO_GROUPS, AuthenticationLevel.SIMPLE,
+            OperationScope.ENTRY, null, BROWSE ).isEmpty() );
+    }
+
+
+    @Test
+    public void testSelectByMicroOperationAndScope()
+    {
+        Set<AttributeType> cn = new HashSet<AttributeType>();
+        cn.add( CN_AT );
+        ACITuple entryBrowse = tuple( UserClass.ALL_USERS, ProtectedItem.ENTRY, BROWSE, true,
+            AuthenticationLevel.NONE );
+        ACITuple cnRead = tuple( UserClass.ALL_USERS, new AttributeTypeItem( cn ), READ, true,
+            AuthenticationLevel.NONE );
+        List<ACITuple> tuples = new ArrayList<ACITuple>();
+        tuples.add( entryBrowse );
+        tuples.add( cnRead );
+        AciTuplePlan plan = new AciTuplePlan( tuples );
+
+        assertTrue( plan.isCacheable() );
+        assertEquals( Collections.singletonList( entryBrowse ), select( plan, USER, NO_GROUPS,
+            AuthenticationLevel.SIMPLE, OperationScope.ENTRY, null, BROWSE ) );
+        assertTrue( select( plan, USER, NO_GROUPS, AuthenticationLevel.SIMPLE, OperationScope.ENTRY, null,
+            READ ).isEmpty() );
+        assertEquals( Collections.singletonList( cnRead ), select( plan, USER, NO_GROUPS,
+            AuthenticationLevel.SIMPLE, OperationScope.ATTRIBUTE_TYPE, CN_AT, READ ) );
+        assertTrue( select( plan, USER, NO_GROUPS, AuthenticationLevel.SIMPLE, OperationScope.ATTRIBUTE_TYPE,
+            SN_AT, READ ).isEmpty() );
+        assertTrue( select( plan, USER, NO_GROUPS, AuthenticationLevel.SIMPLE,
+            OperationScope.ATTRIBUTE_TYPE_AND_VALUE, CN_AT, READ ).isEmpty() );
+    }
+
+
+    @Test
+    public void testSelectByUser()
+    {
+        ACITuple byName = tuple( new UserClass.Name( Collections.singleton( USER ) ), ProtectedItem.ENTRY,
+            BROWSE, true, AuthenticationLevel.NONE );
+        ACITuple byGroup = tuple( new UserClass.UserGroup( Collections.singleton( GROUP ) ), ProtectedItem.ENTRY,
+            BROWSE, true, AuthenticationLevel.NONE );
+        ACITuple strongDenial = tuple( new UserClass.Name( Collections.singleton( OTHER_USER ) ),
+            ProtectedItem.ENTRY, BROWSE, false, AuthenticationLevel.STRONG );
+        List<ACITuple> tuples = new ArrayList<ACITuple>();
+        tuples.add( byName );
+        tuples.add( byGroup );
+        tuples.add( strongDenial );
+        AciTuplePlan plan = new AciTuplePlan( tuples );
+
+        Collection<ACITuple> selected = select( plan, USER, NO_GROUPS, AuthenticationLevel.STRONG,
+            OperationScope.ENTRY, null, BROWSE );
+        assertEquals( 1, selected.size() );
+        assertTrue( selected.contains( byName ) );
+
+        selected = select( plan, OTHER_USER, Collections.singleton( GROUP ), AuthenticationLevel.STRONG,
+            OperationScope.ENTRY, null, BROWSE );
+        assertEquals( 2, selected.size() );
+        assertTrue( selected.contains( byGroup ) );
+        assertTrue( selected.contains( strongDenial ) );
+
+        // An unrelated denial still applies when the user is not strongly authenticated
+        selected = select( plan, USER, NO_GROUPS, AuthenticationLevel.SIMPLE, OperationScope.ENTRY, null,
+            BROWSE );
+        assertEquals( 2, selected.size() );
+        assertTrue( selected.contains( strongDenial ) );
+    }
+
+
+    @Test
+    public void testEntryDependentTuplesAlwaysSelected()
+    {
+        ACITuple maxImmSub = tuple( UserClass.THIS_ENTRY, new MaxImmSubItem( 2 ), BROWSE, true,
+            AuthenticationLevel.NONE );
+        AciTuplePlan plan = new AciTuplePlan( Collections.singletonList( maxImmSub ) );
+
+        assertFalse( plan.isCacheable() );
+        assertEquals( 1, select( plan, USER, NO_GROUPS, AuthenticationLevel.SIMPLE, OperationScope.ENTRY, null,
+            BROWSE ).size() );
+        assertEquals( 1, select( plan, USER, NO_GROUPS, AuthenticationLevel.SIMPLE,
+            OperationScope.ATTRIBUTE_TYPE, SN_AT, BROWSE ).size() );
+    }
+}
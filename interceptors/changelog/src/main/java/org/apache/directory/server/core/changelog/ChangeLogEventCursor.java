@@ -0,0 +1,401 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.directory.server.core.changelog;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+import org.apache.directory.api.ldap.model.constants.Loggers;
+import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.server.core.api.changelog.ChangeLogEvent;
+import org.apache.directory.server.core.api.changelog.RevisionOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A Cursor streaming the ChangeLogEvents of a {@link FileChangeLogStore}. The
+ * Cursor only holds the revisions it walks through, either as a range or as
+ * an array of revisions obtained from one of the store indexes, and reads each
+ * event from the segment files when it moves on it. Events which have been
+ * truncated from the store in the meantime, or which are rejected by the
+ * optional filter, are skipped.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class ChangeLogEventCursor extends AbstractCursor<ChangeLogEvent>
+{
+    /** A dedicated log for cursors */
+    private static final Logger LOG_CURSOR = LoggerFactory.getLogger( Loggers.CURSOR_LOG.getName() );
+
+    /** Speedup for logs */
+    private static final boolean IS_DEBUG = LOG_CURSOR.isDebugEnabled();
+
+    /** The store the events are read from */
+    private final FileChangeLogStore store;
+
+    /** The sorted revisions to walk through, or null when walking through a range */
+    private final long[] revisions;
+
+    /** The lowest revision of the range */
+    private final long low;
+
+    /** The number of positions in this cursor */
+    private final long size;
+
+    /** Tells if the revisions are returned in ascending order */
+    private final boolean ascending;
+
+    /** An optional filter the events must pass */
+    private final Predicate<ChangeLogEvent> filter;
+
+    /** The current position, from -1 (before first) to size (after last) */
+    private long position = -1L;
+
+    /** The event at the current position */
+    private ChangeLogEvent current;
+
+
+    /**
+     * Creates a Cursor over a range of revisions.
+     *
+     * @param store the store to read the events from
+     * @param low the lowest revision, inclusive
+     * @param high the highest revision, inclusive
+     * @param order the order in which the events are returned
+     * @param filter an optional filter the events must pass
+     */
+    ChangeLogEventCursor( FileChangeLogStore store, long low, long high, RevisionOrder order,
+        Predicate<ChangeLogEvent> filter )
+    {
+        this.store = store;
+        this.revisions = null;
+        this.low = low;
+        this.size = Math.max( 0L, high - low + 1L );
+        this.ascending = order.isAscending();
+        this.filter = filter;
+
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Creating ChangeLogEventCursor {}", this );
+        }
+    }
+
+
+    /**
+     * Creates a Cursor over a sorted array of revisions.
+     *
+     * @param store the store to read the events from
+     * @param revisions the revisions, sorted in ascending order
+     * @param order the order in which the events are returned
+     */
+    ChangeLogEventCursor( FileChangeLogStore store, long[] revisions, RevisionOrder order )
+    {
+        this.store = store;
+        this.revisions = revisions;
+        this.low = 0L;
+        this.size = revisions.length;
+        this.ascending = order.isAscending();
+        this.filter = null;
+
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Creating ChangeLogEventCursor {}", this );
+        }
+    }
+
+
+    /**
+     * @return the revision at a given position, taking the order into account
+     */
+    private long revisionAt( long pos )
+    {
+        long index = ascending ? pos : size - 1L - pos;
+
+        if ( revisions == null )
+        {
+            return low + index;
+        }
+
+        return revisions[( int ) index];
+    }
+
+
+    /**
+     * @return the number of revisions strictly lower than the given revision
+     */
+    private long countLower( long revision )
+    {
+        if ( revisions == null )
+        {
+            return Math.min( size, Math.max( 0L, revision - low ) );
+        }
+
+        int index = Arrays.binarySearch( revisions, revision );
+
+        return index >= 0 ? index : -( index + 1 );
+    }
+
+
+    /**
+     * @return the number of positions coming before the given revision in this cursor order
+     */
+    private long countBefore( long revision )
+    {
+        if ( ascending )
+        {
+            return countLower( revision );
+        }
+
+        return size - countLower( revision + 1L );
+    }
+
+
+    /**
+     * Moves to the next position holding an event, in the given direction.
+     */
+    private boolean move( int step ) throws CursorException
+    {
+        checkNotClosed();
+        current = null;
+
+        try
+        {
+            for ( position += step; ( position >= 0L ) && ( position < size ); position += step )
+            {
+                ChangeLogEvent event = store.read( revisionAt( position ) );
+
+                if ( ( event != null ) && ( ( filter == null ) || filter.test( event ) ) )
+                {
+                    current = event;
+
+                    return true;
+                }
+            }
+        }
+        catch ( IOException ioe )
+        {
+            throw new CursorException( ioe.getMessage(), ioe );
+        }
+
+        position = step > 0 ? size : -1L;
+
+        return false;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean available()
+    {
+        return current != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void before( ChangeLogEvent element ) throws LdapException, CursorException
+    {
+        checkNotClosed();
+        position = countBefore( element.getRevision() ) - 1L;
+        current = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void after( ChangeLogEvent element ) throws LdapException, CursorException
+    {
+        checkNotClosed();
+        long revision = element.getRevision();
+        position = countBefore( ascending ? revision + 1L : revision - 1L ) - 1L;
+        current = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        position = -1L;
+        current = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterLast() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        position = size;
+        current = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean first() throws LdapException, CursorException
+    {
+        beforeFirst();
+
+        return next();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean last() throws LdapException, CursorException
+    {
+        afterLast();
+
+        return previous();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean previous() throws LdapException, CursorException
+    {
+        return move( -1 );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean next() throws LdapException, CursorException
+    {
+        return move( 1 );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChangeLogEvent get() throws CursorException
+    {
+        checkNotClosed();
+
+        if ( current != null )
+        {
+            return current;
+        }
+
+        throw new InvalidCursorPositionException();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Closing ChangeLogEventCursor {}", this );
+        }
+
+        current = null;
+
+        super.close();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close( Exception cause ) throws IOException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Closing ChangeLogEventCursor {}", this );
+        }
+
+        current = null;
+
+        super.close( cause );
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString( String tabs )
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( tabs ).append( "ChangeLogEventCursor (" );
+
+        if ( available() )
+        {
+            sb.append( "available)" );
+        }
+        else
+        {
+            sb.append( "absent)" );
+        }
+
+        sb.append( ascending ? " ascending" : " descending" );
+        sb.append( ", " ).append( size ).append( " revisions" );
+
+        if ( revisions == null )
+        {
+            sb.append( " from " ).append( low );
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return toString( "" );
+    }
+}
@@ -22,6 +22,7 @@ package org.apache.directory.server.core.changelog;
 import java.util.List;
 
 import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
 import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
 import org.apache.directory.api.ldap.model.ldif.LdifEntry;
 import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
@@ -44,7 +45,7 @@ import org.slf4j.LoggerFactory;
 
 /**
  * The default ChangeLog service implementation. It stores operations 
- * in memory.
+ * in memory, unless another store, like the {@link FileChangeLogStore}, is set.
  * 
  * Entries are stored into a dedicated partition, named ou=changelog, under which
  * we have two other sub-entries : ou=tags and ou= revisions :
@@ -358,10 +359,25 @@ public long getCurrentRevision() throws LdapException
                 tmp.createPartition( partitionSuffix, revContainerName, tagContainerName );
 
                 Partition partition = tmp.getPartition();
+
+                // The store may not be able to expose its content
+                if ( partition == null )
+                {
+                    String message = I18n.err( I18n.ERR_753_CHANGELOG_PARTITION_NOT_SUPPORTED,
+                        store.getClass().getSimpleName() );
+                    LOG.error( message );
+                    throw new LdapOtherException( message );
+                }
+
                 partition.initialize();
 
                 service.addPartition( partition );
             }
+            else if ( exposed )
+            {
+                LOG.warn( I18n.err( I18n.ERR_753_CHANGELOG_PARTITION_NOT_SUPPORTED,
+                    store.getClass().getSimpleName() ) );
+            }
         }
 
         // Flip the protection flag
@@ -0,0 +1,1715 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.directory.server.core.changelog;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.ListCursor;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.ldif.ChangeType;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.ObjectClass;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.DateUtils;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.api.util.TimeProvider;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.changelog.ChangeLogEvent;
+import org.apache.directory.server.core.api.changelog.ChangeLogEventSerializer;
+import org.apache.directory.server.core.api.changelog.ChangeLogSearchEngine;
+import org.apache.directory.server.core.api.changelog.RevisionOrder;
+import org.apache.directory.server.core.api.changelog.Tag;
+import org.apache.directory.server.core.api.changelog.TagSearchEngine;
+import org.apache.directory.server.core.api.changelog.TaggableSearchableChangeLogStore;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.i18n.I18n;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A change log store that appends the events to segment files on disk instead
+ * of keeping them in memory. Each event is written as a record made of :
+ * <ul>
+ *   <li>the length of the record body</li>
+ *   <li>the body : the revision, the commit time, the change type, the normalized
+ *   Dn of the modified entry, the normalized Dn of the committer and the serialized
+ *   event</li>
+ *   <li>a CRC32 checksum of the body</li>
+ * </ul>
+ * A new segment file is started when the current one exceeds a configurable size.
+ * Only the record headers are kept in memory : they index the events by revision,
+ * commit time, change type, entry Dn and committer. They are rebuilt when the store
+ * is initialized, truncating an incomplete record written by a crash. Events are
+ * read back one at a time by the cursors the store returns.
+ * <p>
+ * Old events can be truncated by setting a retention period and/or a maximum number
+ * of revisions : whole segments are dropped when all their events are out of the
+ * retention window, the current segment being always kept.
+ * </p>
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class FileChangeLogStore implements TaggableSearchableChangeLogStore
+{
+    /** The class logger */
+    private static final Logger LOG = LoggerFactory.getLogger( FileChangeLogStore.class );
+
+    /** The directory, under the instance log directory, where the changelog is stored */
+    public static final String CHANGELOG_DIR = "changelog";
+
+    /** The default maximum size of a segment file : 16Mb */
+    public static final long DEFAULT_MAX_SEGMENT_SIZE = 16L * 1024L * 1024L;
+
+    private static final String REV_FILE = "revision";
+    private static final String TAG_FILE = "tags";
+    private static final String SEGMENT_PREFIX = "changelog-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    /** The record length and checksum surrounding each record body */
+    private static final int RECORD_OVERHEAD = 8;
+
+    /** The size at which a new segment is started */
+    private long maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
+
+    /** The time, in milliseconds, events are kept. 0 keeps them forever */
+    private long retentionPeriod;
+
+    /** The number of revisions kept. 0 keeps them all */
+    private long maxRevisions;
+
+    /** Tells if each event is forced to the disk when it's logged */
+    private boolean syncOnWrite;
+
+    /** An incremental number giving the current revision */
+    private long currentRevision;
+
+    /** The latest tag */
+    private Tag latest;
+
+    /** The tags, ordered by revision */
+    private final NavigableMap<Long, Tag> tags = new TreeMap<>();
+
+    /** The segments, ordered by revision. The last one is the one we append to */
+    private final List<Segment> segments = new ArrayList<>();
+
+    /** The revisions of the events, per normalized entry Dn */
+    private final Map<String, RevisionList> dnIndex = new HashMap<>();
+
+    /** The revisions of the events, per normalized committer Dn */
+    private final Map<String, RevisionList> principalIndex = new HashMap<>();
+
+    /** The directory containing the segments */
+    private File workingDirectory;
+
+    /** The SchemaManager used to normalize the Dns and to read the events */
+    private SchemaManager schemaManager;
+
+    private TimeProvider timeProvider = TimeProvider.DEFAULT;
+
+    /** The search engines */
+    private final ChangeLogSearchEngine changeLogSearchEngine = new FileChangeLogSearchEngine();
+    private final TagSearchEngine tagSearchEngine = new FileTagSearchEngine();
+
+
+    /**
+     * The revisions of a segment file, and the position of their record.
+     */
+    private static final class Segment
+    {
+        private final File file;
+        private final FileChannel channel;
+
+        /** The revision of the first record */
+        private final long firstRevision;
+
+        /** The offset, commit time and change type of each record */
+        private long[] offsets = new long[64];
+        private long[] times = new long[64];
+        private byte[] changeTypes = new byte[64];
+
+        /** The number of records */
+        private int count;
+
+        /** The size of the valid part of the file */
+        private long size;
+
+
+        private Segment( File file, long firstRevision ) throws IOException
+        {
+            this.file = file;
+            this.firstRevision = firstRevision;
+            channel = FileChannel.open( file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE );
+        }
+
+
+        private void add( long offset, long time, int changeType )
+        {
+            if ( count == offsets.length )
+            {
+                offsets = Arrays.copyOf( offsets, count * 2 );
+                times = Arrays.copyOf( times, count * 2 );
+                changeTypes = Arrays.copyOf( changeTypes, count * 2 );
+            }
+
+            offsets[count] = offset;
+            times[count] = time;
+            changeTypes[count] = ( byte ) changeType;
+            count++;
+        }
+
+
+        private long getLastRevision()
+        {
+            return firstRevision + count - 1;
+        }
+
+
+        private boolean contains( long revision )
+        {
+            return ( revision >= firstRevision ) && ( revision < firstRevision + count );
+        }
+    }
+
+
+    /**
+     * A growable array of ascending revisions, which can be truncated from its head.
+     */
+    private static final class RevisionList
+    {
+        private long[] revisions = new long[4];
+        private int start;
+        private int end;
+
+
+        private void add( long revision )
+        {
+            if ( end == revisions.length )
+            {
+                if ( start > revisions.length / 2 )
+                {
+                    System.arraycopy( revisions, start, revisions, 0, end - start );
+                }
+                else
+                {
+                    revisions = Arrays.copyOf( revisions, revisions.length * 2 );
+                }
+
+                end -= start;
+                start = 0;
+            }
+
+            revisions[end++] = revision;
+        }
+
+
+        private void removeBefore( long revision )
+        {
+            while ( ( start < end ) && ( revisions[start] < revision ) )
+            {
+                start++;
+            }
+        }
+
+
+        private boolean isEmpty()
+        {
+            return start == end;
+        }
+
+
+        private long[] toArray( long highest )
+        {
+            int index = Arrays.binarySearch( revisions, start, end, highest );
+            int last = index >= 0 ? index + 1 : -( index + 1 );
+
+            return Arrays.copyOfRange( revisions, start, last );
+        }
+    }
+
+
+    /**
+     * Sets the size, in bytes, above which a new segment file is started.
+     *
+     * @param maxSegmentSize the maximum size of a segment file
+     */
+    public void setMaxSegmentSize( long maxSegmentSize )
+    {
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+
+    /**
+     * @return the size, in bytes, above which a new segment file is started
+     */
+    public long getMaxSegmentSize()
+    {
+        return maxSegmentSize;
+    }
+
+
+    /**
+     * Sets the time the events are kept. Events older than this period are
+     * truncated, a segment at a time.
+     *
+     * @param retentionPeriod the retention period, in milliseconds. 0 keeps the events forever
+     */
+    public void setRetentionPeriod( long retentionPeriod )
+    {
+        this.retentionPeriod = retentionPeriod;
+    }
+
+
+    /**
+     * @return the time, in milliseconds, the events are kept. 0 means forever
+     */
+    public long getRetentionPeriod()
+    {
+        return retentionPeriod;
+    }
+
+
+    /**
+     * Sets the number of revisions to keep. Older revisions are truncated, a
+     * segment at a time.
+     *
+     * @param maxRevisions the number of revisions to keep. 0 keeps them all
+     */
+    public void setMaxRevisions( long maxRevisions )
+    {
+        this.maxRevisions = maxRevisions;
+    }
+
+
+    /**
+     * @return the number of revisions kept. 0 means all of them
+     */
+    public long getMaxRevisions()
+    {
+        return maxRevisions;
+    }
+
+
+    /**
+     * Tells the store to force each event to the disk when it's logged, instead
+     * of when the store is synced.
+     *
+     * @param syncOnWrite <tt>true</tt> if every event has to be forced to the disk
+     */
+    public void setSyncOnWrite( boolean syncOnWrite )
+    {
+        this.syncOnWrite = syncOnWrite;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if every event is forced to the disk when it's logged
+     */
+    public boolean isSyncOnWrite()
+    {
+        return syncOnWrite;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized Tag tag( long revision )
+    {
+        return tag( revision, null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized Tag tag()
+    {
+        return tag( ( String ) null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized Tag tag( String description )
+    {
+        if ( ( latest != null ) && ( latest.getRevision() == currentRevision ) )
+        {
+            return latest;
+        }
+
+        latest = new Tag( currentRevision, description );
+        tags.put( currentRevision, latest );
+
+        return latest;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized Tag tag( long revision, String description )
+    {
+        Tag tag = tags.get( revision );
+
+        if ( tag != null )
+        {
+            return tag;
+        }
+
+        latest = new Tag( revision, description );
+        tags.put( revision, latest );
+
+        return latest;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized Tag getLatest()
+    {
+        return latest;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized Tag removeTag( long revision )
+    {
+        return tags.remove( revision );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void init( DirectoryService service ) throws LdapException
+    {
+        workingDirectory = new File( service.getInstanceLayout().getLogDirectory(), CHANGELOG_DIR );
+        schemaManager = service.getSchemaManager();
+        timeProvider = service.getTimeProvider();
+
+        try
+        {
+            if ( !workingDirectory.exists() && !workingDirectory.mkdirs() )
+            {
+                throw new IOException( I18n.err( I18n.ERR_112_COULD_NOT_CREATE_DIRECTORY, workingDirectory ) );
+            }
+
+            loadRevision();
+            loadTags();
+            loadSegments();
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    private void loadRevision() throws IOException
+    {
+        File revFile = new File( workingDirectory, REV_FILE );
+
+        if ( revFile.exists() )
+        {
+            try ( BufferedReader reader = Files.newBufferedReader( revFile.toPath(), StandardCharsets.UTF_8 ) )
+            {
+                String line = reader.readLine();
+
+                if ( line != null )
+                {
+                    currentRevision = Long.parseLong( line.trim() );
+                }
+            }
+        }
+    }
+
+
+    private void saveRevision() throws IOException
+    {
+        File tmpFile = new File( workingDirectory, REV_FILE + ".tmp" );
+
+        try ( PrintWriter out = new PrintWriter( Files.newBufferedWriter( tmpFile.toPath(), StandardCharsets.UTF_8 ) ) )
+        {
+            out.println( currentRevision );
+            out.flush();
+        }
+
+        Files.move( tmpFile.toPath(), new File( workingDirectory, REV_FILE ).toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    }
+
+
+    private void loadTags() throws IOException
+    {
+        File tagFile = new File( workingDirectory, TAG_FILE );
+        tags.clear();
+        latest = null;
+
+        if ( tagFile.exists() )
+        {
+            Properties props = new Properties();
+
+            try ( InputStream in = Files.newInputStream( tagFile.toPath() ) )
+            {
+                props.load( in );
+            }
+
+            for ( String key : props.stringPropertyNames() )
+            {
+                long revision = Long.parseLong( key );
+                String description = props.getProperty( key );
+
+                if ( "null".equals( description ) )
+                {
+                    description = null;
+                }
+
+                tags.put( revision, new Tag( revision, description ) );
+            }
+
+            if ( !tags.isEmpty() )
+            {
+                latest = tags.lastEntry().getValue();
+            }
+        }
+    }
+
+
+    private void saveTags() throws IOException
+    {
+        File tmpFile = new File( workingDirectory, TAG_FILE + ".tmp" );
+        Properties props = new Properties();
+
+        for ( Tag tag : tags.values() )
+        {
+            String key = String.valueOf( tag.getRevision() );
+
+            if ( tag.getDescription() == null )
+            {
+                props.setProperty( key, "null" );
+            }
+            else
+            {
+                props.setProperty( key, tag.getDescription() );
+            }
+        }
+
+        try ( OutputStream out = Files.newOutputStream( tmpFile.toPath() ) )
+        {
+            props.store( out, null );
+            out.flush();
+        }
+
+        Files.move( tmpFile.toPath(), new File( workingDirectory, TAG_FILE ).toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    }
+
+
+    /**
+     * Opens the existing segments, rebuilding the indexes from the record headers.
+     */
+    private void loadSegments() throws IOException
+    {
+        closeSegments();
+
+        File[] files = workingDirectory.listFiles( ( dir, name ) -> name.startsWith( SEGMENT_PREFIX )
+            && name.endsWith( SEGMENT_SUFFIX ) );
+
+        if ( files == null )
+        {
+            return;
+        }
+
+        // The segment names contain the zero padded first revision, so they sort by revision
+        Arrays.sort( files );
+
+        for ( int i = 0; i < files.length; i++ )
+        {
+            String name = files[i].getName();
+            long firstRevision = Long.parseLong( name.substring( SEGMENT_PREFIX.length(),
+                name.length() - SEGMENT_SUFFIX.length() ) );
+            Segment segment = new Segment( files[i], firstRevision );
+            scan( segment );
+
+            if ( ( segment.count == 0 ) && ( i < files.length - 1 ) )
+            {
+                // An empty segment followed by another one is useless
+                segment.channel.close();
+                Files.delete( files[i].toPath() );
+
+                continue;
+            }
+
+            segments.add( segment );
+
+            if ( segment.count > 0 )
+            {
+                currentRevision = Math.max( currentRevision, segment.getLastRevision() );
+            }
+        }
+    }
+
+
+    /**
+     * Reads the record headers of a segment, truncating it after the last valid record.
+     */
+    private void scan( Segment segment ) throws IOException
+    {
+        long fileSize = segment.channel.size();
+        long position = 0L;
+
+        try ( DataInputStream in = new DataInputStream( new BufferedInputStream(
+            Files.newInputStream( segment.file.toPath() ) ) ) )
+        {
+            while ( position + RECORD_OVERHEAD <= fileSize )
+            {
+                int length = in.readInt();
+
+                if ( ( length <= 0 ) || ( position + RECORD_OVERHEAD + length > fileSize ) )
+                {
+                    break;
+                }
+
+                byte[] body = new byte[length];
+                in.readFully( body );
+
+                if ( in.readInt() != checksum( body, 0, length ) )
+                {
+                    break;
+                }
+
+                DataInputStream header = new DataInputStream( new ByteArrayInputStream( body ) );
+                long revision = header.readLong();
+
+                if ( revision != segment.firstRevision + segment.count )
+                {
+                    break;
+                }
+
+                long time = header.readLong();
+                int changeType = header.readInt();
+                String dn = readString( header );
+                String principal = readString( header );
+
+                segment.add( position, time, changeType );
+                index( dnIndex, dn, revision );
+                index( principalIndex, principal, revision );
+                position += RECORD_OVERHEAD + length;
+            }
+        }
+        catch ( EOFException eofe )
+        {
+            // The last record is incomplete, it will be truncated
+        }
+
+        if ( position < fileSize )
+        {
+            LOG.warn( I18n.err( I18n.ERR_752_CHANGELOG_TRUNCATED_RECORD, position, segment.file ) );
+            segment.channel.truncate( position );
+        }
+
+        segment.size = position;
+    }
+
+
+    private static void index( Map<String, RevisionList> index, String key, long revision )
+    {
+        index.computeIfAbsent( key, k -> new RevisionList() ).add( revision );
+    }
+
+
+    private static int checksum( byte[] bytes, int offset, int length )
+    {
+        CRC32 crc = new CRC32();
+        crc.update( bytes, offset, length );
+
+        return ( int ) crc.getValue();
+    }
+
+
+    private static void writeString( DataOutput out, String value ) throws IOException
+    {
+        byte[] bytes = Strings.getBytesUtf8( value );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+
+    private static String readString( DataInput in ) throws IOException
+    {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully( bytes );
+
+        return Strings.utf8ToString( bytes );
+    }
+
+
+    /**
+     * @return the normalized form of a Dn, used as a key in the indexes
+     */
+    private String normalize( Dn dn )
+    {
+        if ( dn == null )
+        {
+            return "";
+        }
+
+        return schemaAware( dn ).getNormName();
+    }
+
+
+    private Dn schemaAware( Dn dn )
+    {
+        if ( dn.isSchemaAware() || ( schemaManager == null ) )
+        {
+            return dn;
+        }
+
+        try
+        {
+            return new Dn( schemaManager, dn );
+        }
+        catch ( LdapException le )
+        {
+            return dn;
+        }
+    }
+
+
+    /**
+     * @return the current time, as given by the DirectoryService time provider
+     */
+    private long now()
+    {
+        return DateUtils.getDate( DateUtils.getGeneralizedTime( timeProvider ) ).getTime();
+    }
+
+
+    /**
+     * Appends an event to the current segment, starting a new one if needed.
+     */
+    private void append( ChangeLogEvent event ) throws IOException
+    {
+        Segment segment = segments.isEmpty() ? null : segments.get( segments.size() - 1 );
+
+        if ( ( segment == null ) || ( segment.size >= maxSegmentSize )
+            || ( segment.getLastRevision() != event.getRevision() - 1 ) )
+        {
+            segment = roll( event.getRevision() );
+        }
+
+        LdifEntry forward = event.getForwardLdif();
+        long time = DateUtils.getDate( event.getZuluTime() ).getTime();
+        int changeType = forward.getChangeType().getChangeType();
+        String dn = normalize( forward.getDn() );
+        String principal = normalize( event.getCommitterPrincipal().getDn() );
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream( baos );
+
+        // The record length, set once the record is serialized
+        header.writeInt( 0 );
+        header.writeLong( event.getRevision() );
+        header.writeLong( time );
+        header.writeInt( changeType );
+        writeString( header, dn );
+        writeString( header, principal );
+        header.flush();
+
+        ObjectOutputStream out = new ObjectOutputStream( baos );
+        ChangeLogEventSerializer.serialize( event, out );
+        out.flush();
+
+        // The checksum, set below
+        header.writeInt( 0 );
+        header.flush();
+
+        byte[] record = baos.toByteArray();
+        int length = record.length - RECORD_OVERHEAD;
+        ByteBuffer buffer = ByteBuffer.wrap( record );
+        buffer.putInt( 0, length );
+        buffer.putInt( record.length - 4, checksum( record, 4, length ) );
+
+        try
+        {
+            long position = segment.size;
+
+            while ( buffer.hasRemaining() )
+            {
+                position += segment.channel.write( buffer, position );
+            }
+
+            if ( syncOnWrite )
+            {
+                segment.channel.force( false );
+            }
+        }
+        catch ( IOException ioe )
+        {
+            // Don't leave a partial record behind
+            segment.channel.truncate( segment.size );
+
+            throw ioe;
+        }
+
+        segment.add( segment.size, time, changeType );
+        segment.size += record.length;
+        index( dnIndex, dn, event.getRevision() );
+        index( principalIndex, principal, event.getRevision() );
+    }
+
+
+    /**
+     * Starts a new segment, forcing the previous one to the disk.
+     */
+    private Segment roll( long firstRevision ) throws IOException
+    {
+        if ( !segments.isEmpty() )
+        {
+            Segment previous = segments.get( segments.size() - 1 );
+            previous.channel.force( false );
+
+            if ( previous.count == 0 )
+            {
+                previous.channel.close();
+                Files.delete( previous.file.toPath() );
+                segments.remove( segments.size() - 1 );
+            }
+        }
+
+        String name = String.format( Locale.ROOT, "%s%020d%s", SEGMENT_PREFIX, firstRevision, SEGMENT_SUFFIX );
+        Segment segment = new Segment( new File( workingDirectory, name ), firstRevision );
+        segments.add( segment );
+        applyRetention();
+
+        return segment;
+    }
+
+
+    /**
+     * Drops the segments which only contain events out of the retention window.
+     * The last segment is always kept.
+     */
+    private void applyRetention() throws IOException
+    {
+        if ( ( retentionPeriod <= 0L ) && ( maxRevisions <= 0L ) )
+        {
+            return;
+        }
+
+        long expiration = retentionPeriod > 0L ? now() - retentionPeriod : Long.MIN_VALUE;
+        long oldestKept = maxRevisions > 0L ? currentRevision - maxRevisions + 1L : Long.MIN_VALUE;
+        int dropped = 0;
+
+        while ( dropped < segments.size() - 1 )
+        {
+            Segment segment = segments.get( dropped );
+
+            if ( ( segment.count > 0 ) && ( segment.getLastRevision() >= oldestKept )
+                && ( segment.times[segment.count - 1] >= expiration ) )
+            {
+                break;
+            }
+
+            segment.channel.close();
+            Files.delete( segment.file.toPath() );
+            dropped++;
+        }
+
+        if ( dropped > 0 )
+        {
+            segments.subList( 0, dropped ).clear();
+            long firstRevision = getFirstRevision();
+            truncate( dnIndex, firstRevision );
+            truncate( principalIndex, firstRevision );
+        }
+    }
+
+
+    private static void truncate( Map<String, RevisionList> index, long firstRevision )
+    {
+        Iterator<RevisionList> lists = index.values().iterator();
+
+        while ( lists.hasNext() )
+        {
+            RevisionList list = lists.next();
+            list.removeBefore( firstRevision );
+
+            if ( list.isEmpty() )
+            {
+                lists.remove();
+            }
+        }
+    }
+
+
+    /**
+     * @return the oldest revision still available in the store
+     */
+    private long getFirstRevision()
+    {
+        if ( segments.isEmpty() )
+        {
+            return currentRevision + 1L;
+        }
+
+        return segments.get( 0 ).firstRevision;
+    }
+
+
+    private Segment findSegment( long revision )
+    {
+        int low = 0;
+        int high = segments.size() - 1;
+
+        while ( low <= high )
+        {
+            int middle = ( low + high ) >>> 1;
+            Segment segment = segments.get( middle );
+
+            if ( revision < segment.firstRevision )
+            {
+                high = middle - 1;
+            }
+            else if ( !segment.contains( revision ) )
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                return segment;
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Reads an event from its segment.
+     *
+     * @param revision the event revision
+     * @return the event, or null if it's not available in the store
+     * @throws IOException if the segment can't be read
+     */
+    synchronized ChangeLogEvent read( long revision ) throws IOException
+    {
+        Segment segment = findSegment( revision );
+
+        if ( segment == null )
+        {
+            return null;
+        }
+
+        int index = ( int ) ( revision - segment.firstRevision );
+        long offset = segment.offsets[index];
+        long end = index + 1 < segment.count ? segment.offsets[index + 1] : segment.size;
+        ByteBuffer buffer = ByteBuffer.allocate( ( int ) ( end - offset ) );
+
+        while ( buffer.hasRemaining() )
+        {
+            if ( segment.channel.read( buffer, offset + buffer.position() ) < 0 )
+            {
+                throw new EOFException();
+            }
+        }
+
+        byte[] record = buffer.array();
+        DataInputStream in = new DataInputStream( new ByteArrayInputStream( record, 4,
+            record.length - RECORD_OVERHEAD ) );
+
+        // Skip the header
+        in.readLong();
+        in.readLong();
+        in.readInt();
+        readString( in );
+        readString( in );
+
+        ChangeLogEvent event = ChangeLogEventSerializer.deserialize( schemaManager, new ObjectInputStream( in ) );
+        event.getCommitterPrincipal().setSchemaManager( schemaManager );
+
+        return event;
+    }
+
+
+    private void closeSegments() throws IOException
+    {
+        for ( Segment segment : segments )
+        {
+            segment.channel.close();
+        }
+
+        segments.clear();
+        dnIndex.clear();
+        principalIndex.clear();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void sync() throws LdapException
+    {
+        try
+        {
+            if ( !segments.isEmpty() )
+            {
+                segments.get( segments.size() - 1 ).channel.force( false );
+            }
+
+            applyRetention();
+            saveRevision();
+            saveTags();
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * Syncs the store and closes the segments
+     */
+    @Override
+    public synchronized void destroy() throws LdapException
+    {
+        sync();
+
+        try
+        {
+            closeSegments();
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized long getCurrentRevision()
+    {
+        return currentRevision;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized ChangeLogEvent log( LdapPrincipal principal, LdifEntry forward, LdifEntry reverse )
+    {
+        ChangeLogEvent event = new ChangeLogEvent( currentRevision + 1,
+            DateUtils.getGeneralizedTime( timeProvider ), principal, forward, reverse );
+
+        return log( event );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized ChangeLogEvent log( LdapPrincipal principal, LdifEntry forward, List<LdifEntry> reverses )
+    {
+        ChangeLogEvent event = new ChangeLogEvent( currentRevision + 1,
+            DateUtils.getGeneralizedTime( timeProvider ), principal, forward, reverses );
+
+        return log( event );
+    }
+
+
+    private ChangeLogEvent log( ChangeLogEvent event )
+    {
+        try
+        {
+            append( event );
+        }
+        catch ( IOException ioe )
+        {
+            throw new UncheckedIOException( ioe );
+        }
+
+        currentRevision++;
+
+        return event;
+    }
+
+
+    private void checkRevision( long revision )
+    {
+        if ( revision < 0 )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_239 ) );
+        }
+
+        if ( revision > currentRevision )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_240 ) );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @return the event, or null if the revision has been truncated from the store
+     */
+    @Override
+    public synchronized ChangeLogEvent lookup( long revision )
+    {
+        checkRevision( revision );
+
+        try
+        {
+            return read( revision );
+        }
+        catch ( IOException ioe )
+        {
+            throw new UncheckedIOException( ioe );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized Cursor<ChangeLogEvent> find()
+    {
+        return new ChangeLogEventCursor( this, getFirstRevision(), currentRevision, RevisionOrder.AscendingOrder,
+            null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized Cursor<ChangeLogEvent> findBefore( long revision )
+    {
+        checkRevision( revision );
+
+        return new ChangeLogEventCursor( this, getFirstRevision(), revision - 1, RevisionOrder.AscendingOrder,
+            null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @throws IllegalArgumentException if some of the revisions following the given one have been truncated
+     * from the store
+     */
+    @Override
+    public synchronized Cursor<ChangeLogEvent> findAfter( long revision )
+    {
+        checkRevision( revision );
+        long firstRevision = getFirstRevision();
+
+        // Returning a partial set of changes would, for instance, silently break a revert
+        if ( revision + 1 < firstRevision )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_754_CHANGELOG_REVISION_TRUNCATED, revision,
+                firstRevision ) );
+        }
+
+        return new ChangeLogEventCursor( this, revision + 1, currentRevision, RevisionOrder.AscendingOrder, null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized Cursor<ChangeLogEvent> find( long startRevision, long endRevision )
+    {
+        return new ChangeLogEventCursor( this, Math.max( startRevision, getFirstRevision() ),
+            Math.min( endRevision, currentRevision ), RevisionOrder.AscendingOrder, null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChangeLogSearchEngine getChangeLogSearchEngine()
+    {
+        return changeLogSearchEngine;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TagSearchEngine getTagSearchEngine()
+    {
+        return tagSearchEngine;
+    }
+
+
+    /**
+     * The events are not stored in a Partition, so they can't be exposed through one :
+     * nothing is created, and the DefaultChangeLog refuses to start if it's exposed.
+     */
+    @Override
+    public void createPartition( String partitionSuffix, String revContainerName, String tagContainerName )
+    {
+        // Nothing to do
+    }
+
+
+    /**
+     * @return <tt>null</tt>, the events are not stored in a Partition
+     */
+    @Override
+    public Partition getPartition()
+    {
+        return null;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public synchronized String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "FileChangeLog\n" );
+        sb.append( "latest tag : " ).append( latest ).append( '\n' );
+        sb.append( "revisions : " ).append( getFirstRevision() ).append( " to " ).append( currentRevision )
+            .append( '\n' );
+        sb.append( "Nb of segments : " ).append( segments.size() ).append( '\n' );
+
+        for ( Segment segment : segments )
+        {
+            sb.append( "    " ).append( segment.file.getName() ).append( " : " ).append( segment.count )
+                .append( " events, " ).append( segment.size ).append( " bytes\n" );
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the forward LDIF of an event modifies the given AttributeType
+     */
+    private static boolean hasAttribute( ChangeLogEvent event, AttributeType attributeType )
+    {
+        LdifEntry forward = event.getForwardLdif();
+
+        if ( forward.isChangeModify() )
+        {
+            for ( Modification modification : forward.getModifications() )
+            {
+                if ( matches( modification.getAttribute(), attributeType ) )
+                {
+                    return true;
+                }
+            }
+        }
+        else if ( forward.isChangeAdd() && ( forward.getEntry() != null ) )
+        {
+            for ( Attribute attribute : forward.getEntry() )
+            {
+                if ( matches( attribute, attributeType ) )
+                {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+
+    private static boolean matches( Attribute attribute, AttributeType attributeType )
+    {
+        if ( attributeType.equals( attribute.getAttributeType() ) )
+        {
+            return true;
+        }
+
+        String id = attribute.getId();
+
+        if ( attributeType.getOid().equals( id ) )
+        {
+            return true;
+        }
+
+        for ( String name : attributeType.getNames() )
+        {
+            if ( name.equalsIgnoreCase( id ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * The ChangeLogSearchEngine, using the store indexes.
+     */
+    private class FileChangeLogSearchEngine implements ChangeLogSearchEngine
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long lookup( String generalizedTime ) throws Exception
+        {
+            long time = DateUtils.getDate( generalizedTime ).getTime();
+
+            synchronized ( FileChangeLogStore.this )
+            {
+                long revision = getFirstRevision() - 1;
+
+                for ( Segment segment : segments )
+                {
+                    if ( ( segment.count == 0 ) || ( segment.times[0] > time ) )
+                    {
+                        break;
+                    }
+
+                    int index = Arrays.binarySearch( segment.times, 0, segment.count, time );
+
+                    if ( index < 0 )
+                    {
+                        index = -( index + 1 ) - 1;
+                    }
+                    else
+                    {
+                        // Several events may have been committed at the same time
+                        while ( ( index + 1 < segment.count ) && ( segment.times[index + 1] == time ) )
+                        {
+                            index++;
+                        }
+                    }
+
+                    revision = segment.firstRevision + index;
+                }
+
+                return revision;
+            }
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public ChangeLogEvent lookup( long revision ) throws Exception
+        {
+            return FileChangeLogStore.this.lookup( revision );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Cursor<ChangeLogEvent> find( RevisionOrder order ) throws Exception
+        {
+            synchronized ( FileChangeLogStore.this )
+            {
+                return new ChangeLogEventCursor( FileChangeLogStore.this, getFirstRevision(), currentRevision, order,
+                    null );
+            }
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Cursor<ChangeLogEvent> findBefore( long revision, RevisionOrder order ) throws Exception
+        {
+            synchronized ( FileChangeLogStore.this )
+            {
+                checkRevision( revision );
+
+                return new ChangeLogEventCursor( FileChangeLogStore.this, getFirstRevision(), revision, order, null );
+            }
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Cursor<ChangeLogEvent> findAfter( long revision, RevisionOrder order ) throws Exception
+        {
+            synchronized ( FileChangeLogStore.this )
+            {
+                checkRevision( revision );
+
+                return new ChangeLogEventCursor( FileChangeLogStore.this, Math.max( revision, getFirstRevision() ),
+                    currentRevision, order, null );
+            }
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Cursor<ChangeLogEvent> find( long startRevision, long endRevision, RevisionOrder order )
+            throws Exception
+        {
+            synchronized ( FileChangeLogStore.this )
+            {
+                return new ChangeLogEventCursor( FileChangeLogStore.this, Math.max( startRevision, getFirstRevision() ),
+                    Math.min( endRevision, currentRevision ), order, null );
+            }
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Cursor<ChangeLogEvent> find( Dn dn, RevisionOrder order ) throws Exception
+        {
+            synchronized ( FileChangeLogStore.this )
+            {
+                RevisionList revisions = dnIndex.get( normalize( dn ) );
+                long[] found = revisions == null ? new long[0] : revisions.toArray( currentRevision );
+
+                return new ChangeLogEventCursor( FileChangeLogStore.this, found, order );
+            }
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Cursor<ChangeLogEvent> find( Dn base, SearchScope scope, RevisionOrder order ) throws Exception
+        {
+            if ( scope == SearchScope.OBJECT )
+            {
+                return find( base, order );
+            }
+
+            Dn baseDn = schemaAware( base );
+            String baseNorm = baseDn.getNormName();
+            String suffix = "," + baseNorm;
+
+            synchronized ( FileChangeLogStore.this )
+            {
+                long[] found = new long[0];
+
+                for ( Map.Entry<String, RevisionList> entry : dnIndex.entrySet() )
+                {
+                    String key = entry.getKey();
+
+                    // Filter the candidates on their normalized name before parsing them
+                    if ( !baseNorm.isEmpty() && !key.endsWith( suffix ) )
+                    {
+                        continue;
+                    }
+
+                    Dn dn = schemaAware( new Dn( key ) );
+
+                    if ( ( dn.size() <= baseDn.size() ) || !dn.isDescendantOf( baseDn )
+                        || ( ( scope == SearchScope.ONELEVEL ) && ( dn.size() != baseDn.size() + 1 ) ) )
+                    {
+                        continue;
+                    }
+
+                    long[] revisions = entry.getValue().toArray( currentRevision );
+                    int length = found.length;
+                    found = Arrays.copyOf( found, length + revisions.length );
+                    System.arraycopy( revisions, 0, found, length, revisions.length );
+                }
+
+                if ( scope == SearchScope.SUBTREE )
+                {
+                    RevisionList revisions = dnIndex.get( baseNorm );
+
+                    if ( revisions != null )
+                    {
+                        long[] baseRevisions = revisions.toArray( currentRevision );
+                        int length = found.length;
+                        found = Arrays.copyOf( found, length + baseRevisions.length );
+                        System.arraycopy( baseRevisions, 0, found, length, baseRevisions.length );
+                    }
+                }
+
+                Arrays.sort( found );
+
+                return new ChangeLogEventCursor( FileChangeLogStore.this, found, order );
+            }
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Cursor<ChangeLogEvent> find( LdapPrincipal principal, RevisionOrder order ) throws Exception
+        {
+            synchronized ( FileChangeLogStore.this )
+            {
+                RevisionList revisions = principalIndex.get( normalize( principal.getDn() ) );
+                long[] found = revisions == null ? new long[0] : revisions.toArray( currentRevision );
+
+                return new ChangeLogEventCursor( FileChangeLogStore.this, found, order );
+            }
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Cursor<ChangeLogEvent> find( ChangeType changeType, RevisionOrder order ) throws Exception
+        {
+            synchronized ( FileChangeLogStore.this )
+            {
+                long[] found = new long[16];
+                int nbFound = 0;
+
+                for ( Segment segment : segments )
+                {
+                    for ( int i = 0; i < segment.count; i++ )
+                    {
+                        if ( segment.changeTypes[i] == changeType.getChangeType() )
+                        {
+                            if ( nbFound == found.length )
+                            {
+                                found = Arrays.copyOf( found, nbFound * 2 );
+                            }
+
+                            found[nbFound++] = segment.firstRevision + i;
+                        }
+                    }
+                }
+
+                return new ChangeLogEventCursor( FileChangeLogStore.this, Arrays.copyOf( found, nbFound ), order );
+            }
+        }
+
+
+        /**
+         * {@inheritDoc}
+         * 
+         * The attributes are not indexed, the events are filtered while the cursor reads them.
+         */
+        @Override
+        public Cursor<ChangeLogEvent> find( AttributeType attributeType, RevisionOrder order ) throws Exception
+        {
+            synchronized ( FileChangeLogStore.this )
+            {
+                return new ChangeLogEventCursor( FileChangeLogStore.this, getFirstRevision(), currentRevision, order,
+                    event -> hasAttribute( event, attributeType ) );
+            }
+        }
+
+
+        /**
+         * Not supported : the events don't keep the modified entries.
+         */
+        @Override
+        public Cursor<ChangeLogEvent> find( ObjectClass objectClass, RevisionOrder order ) throws Exception
+        {
+            throw new UnsupportedOperationException( I18n.err( I18n.ERR_751_CHANGELOG_SEARCH_NOT_SUPPORTED,
+                FileChangeLogStore.class.getSimpleName(), "ObjectClass" ) );
+        }
+
+
+        /**
+         * Not supported : the events don't keep the modified entries.
+         */
+        @Override
+        public Cursor<ChangeLogEvent> find( ExprNode filter, RevisionOrder order ) throws Exception
+        {
+            throw new UnsupportedOperationException( I18n.err( I18n.ERR_751_CHANGELOG_SEARCH_NOT_SUPPORTED,
+                FileChangeLogStore.class.getSimpleName(), "filter" ) );
+        }
+    }
+
+
+    /**
+     * The TagSearchEngine, working on the in memory tags.
+     */
+    private class FileTagSearchEngine implements TagSearchEngine
+    {
+        private Cursor<Tag> cursor( Map<Long, Tag> selected, RevisionOrder order )
+        {
+            List<Tag> list = new ArrayList<>( selected.values() );
+
+            if ( !order.isAscending() )
+            {
+                Collections.reverse( list );
+            }
+
+            return new ListCursor<>( list );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Tag lookup( long revision ) throws Exception
+        {
+            synchronized ( FileChangeLogStore.this )
+            {
+                return tags.get( revision );
+            }
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean has( long revision ) throws Exception
+        {
+            synchronized ( FileChangeLogStore.this )
+            {
+                return tags.containsKey( revision );
+            }
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Cursor<Tag> find( RevisionOrder order ) throws Exception
+        {
+            synchronized ( FileChangeLogStore.this )
+            {
+                return cursor( tags, order );
+            }
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Cursor<Tag> findBefore( long revision, RevisionOrder order ) throws Exception
+        {
+            synchronized ( FileChangeLogStore.this )
+            {
+                return cursor( tags.headMap( revision, true ), order );
+            }
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Cursor<Tag> findAfter( long revision, RevisionOrder order ) throws Exception
+        {
+            synchronized ( FileChangeLogStore.this )
+            {
+                return cursor( tags.tailMap( revision, true ), order );
+            }
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Cursor<Tag> find( long startRevision, long endRevision, RevisionOrder order ) throws Exception
+        {
+            synchronized ( FileChangeLogStore.this )
+            {
+                if ( startRevision > endRevision )
+                {
+                    return cursor( new TreeMap<>(), order );
+                }
+
+                return cursor( tags.subMap( startRevision, true, endRevision, true ), order );
+            }
+        }
+    }
+}
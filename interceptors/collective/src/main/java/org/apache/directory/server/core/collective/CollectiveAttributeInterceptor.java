@@ -41,6 +41,7 @@ import org.apache.directory.api.ldap.model.schema.SchemaUtils;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.InterceptorEnum;
+import org.apache.directory.server.core.api.OperationEnum;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
 import org.apache.directory.server.core.api.filtering.EntryFilter;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
@@ -50,6 +51,7 @@ import org.apache.directory.server.core.api.interceptor.context.FilteringOperati
 import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.subtree.SubentryUtils;
 import org.apache.directory.server.i18n.I18n;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -108,6 +110,9 @@ public class CollectiveAttributeInterceptor extends BaseInterceptor
     /** The CollectiveAttribute search filter */
     private final EntryFilter searchFilter = new CollectiveAttributeFilter();
 
+    /** The helper evaluating the subentries which are being propagated */
+    private SubentryUtils subentryUtils;
+
 
     //-------------------------------------------------------------------------------------
     // Initialization
@@ -120,10 +125,30 @@ public class CollectiveAttributeInterceptor extends BaseInterceptor
     {
         super.init( directoryService );
 
+        subentryUtils = new SubentryUtils( directoryService );
+
         LOG.debug( "CollectiveAttribute interceptor initialized" );
     }
 
 
+    /**
+     * The added and modified entries are always checked, but there is no collective attribute
+     * to inject into the read entries as long as there is no collective attribute subentry.
+     * 
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isApplicable( OperationEnum operation )
+    {
+        if ( ( operation == OperationEnum.LOOKUP ) || ( operation == OperationEnum.SEARCH ) )
+        {
+            return ( subentryUtils == null ) || directoryService.getSubentryCache().hasCollectiveSubentries();
+        }
+
+        return true;
+    }
+
+
     // ------------------------------------------------------------------------
     // Interceptor Method Overrides
     // ------------------------------------------------------------------------
@@ -338,8 +363,9 @@ public class CollectiveAttributeInterceptor extends BaseInterceptor
     {
         CoreSession session = opContext.getSession();
 
-        Attribute collectiveAttributeSubentries = ( ( ClonedServerEntry ) entry ).getOriginalEntry().get(
-            directoryService.getAtProvider().getCollectiveAttributeSubentries() );
+        Entry originalEntry = ( ( ClonedServerEntry ) entry ).getOriginalEntry();
+        Attribute collectiveAttributeSubentries = subentryUtils.getSubentryAttribute( originalEntry.getDn(),
+            originalEntry, directoryService.getAtProvider().getCollectiveAttributeSubentries() );
 
         /*
          * If there are no collective attribute subentries referenced then we
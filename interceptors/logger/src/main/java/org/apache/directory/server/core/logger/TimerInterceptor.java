@@ -41,7 +41,10 @@ import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOpe
 import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.OperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
+import org.apache.directory.server.core.api.partition.Partition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,6 +59,13 @@ import org.slf4j.LoggerFactory;
  * 
  * Thos two loggers must be set to DEBUG.
  * 
+ * In any case, the latency of each operation is recorded in the {@link MetricsRegistry}
+ * of the DirectoryService, per operation type and per partition. The latency distributions
+ * are exposed through JMX and can be scraped as text. The search latency only covers the
+ * search setup, until the cursor over the results is created, and is recorded as the
+ * <em>searchSetup</em> operation.
+ * The failed operations are recorded too, and they are also counted as errors.
+ * 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
 public class TimerInterceptor extends BaseInterceptor
@@ -122,6 +132,12 @@ public class TimerInterceptor extends BaseInterceptor
     private static AtomicLong totalUnbind = new AtomicLong( 0 );
     private static AtomicInteger nbUnbindCalls = new AtomicInteger( 0 );
 
+    /** The registry storing the operations latencies */
+    private MetricsRegistry metrics;
+
+    /** The DirectoryService instance ID, used to register the metrics MBean */
+    private String instanceId;
+
 
     /**
      * 
@@ -141,6 +157,9 @@ public class TimerInterceptor extends BaseInterceptor
     @Override
     public void init( DirectoryService directoryService ) throws LdapException
     {
+        instanceId = directoryService.getInstanceId();
+        metrics = directoryService.getMetricsRegistry();
+        metrics.registerMBean( instanceId );
     }
 
 
@@ -148,28 +167,77 @@ public class TimerInterceptor extends BaseInterceptor
      * {@inheritDoc}
      */
     @Override
-    public void add( AddOperationContext addContext ) throws LdapException
+    public void destroy()
     {
-        long t0 = System.nanoTime();
-        next( addContext );
-        long delta = System.nanoTime() - t0;
+        if ( metrics != null )
+        {
+            metrics.unregisterMBean( instanceId );
+        }
+    }
+
 
-        if ( IS_DEBUG_STATS )
+    /**
+     * Record the latency of an operation, for the partition it has been processed by. A failed
+     * operation is recorded too, and is also counted as an error.
+     */
+    private void record( String operation, OperationContext opContext, long delta, boolean failed )
+    {
+        Partition partition = opContext.getPartition();
+        String partitionId = MetricsRegistry.NO_PARTITION;
+
+        if ( ( partition != null ) && ( partition.getId() != null ) )
         {
-            nbAddCalls.incrementAndGet();
-            totalAdd.getAndAdd( delta );
+            partitionId = partition.getId();
+        }
 
-            if ( nbAddCalls.get() % 1000 == 0 )
+        if ( metrics != null )
+        {
+            metrics.getLatency( operation, partitionId ).record( delta );
+
+            if ( failed )
             {
-                long average = totalAdd.get() / ( nbAddCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average add = {} microseconds, nb adds = {}", getName(), average,
-                    nbAddCalls.get() );
+                metrics.recordError( operation, partitionId );
             }
         }
+    }
+
 
-        if ( IS_DEBUG_TIME )
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void add( AddOperationContext addContext ) throws LdapException
+    {
+        long t0 = System.nanoTime();
+        boolean failed = true;
+
+        try
         {
-            OPERATION_TIME.debug( "{} : Delta add = {}", getName(), delta );
+            next( addContext );
+            failed = false;
+        }
+        finally
+        {
+            long delta = System.nanoTime() - t0;
+            record( "add", addContext, delta, failed );
+
+            if ( IS_DEBUG_STATS )
+            {
+                nbAddCalls.incrementAndGet();
+                totalAdd.getAndAdd( delta );
+
+                if ( nbAddCalls.get() % 1000 == 0 )
+                {
+                    long average = totalAdd.get() / ( nbAddCalls.get() * 1000 );
+                    OPERATION_STATS.debug( "{} : Average add = {} microseconds, nb adds = {}", getName(), average,
+                        nbAddCalls.get() );
+                }
+            }
+
+            if ( IS_DEBUG_TIME )
+            {
+                OPERATION_TIME.debug( "{} : Delta add = {}", getName(), delta );
+            }
         }
     }
 
@@ -181,25 +249,35 @@ public class TimerInterceptor extends BaseInterceptor
     public void bind( BindOperationContext bindContext ) throws LdapException
     {
         long t0 = System.nanoTime();
-        next( bindContext );
-        long delta = System.nanoTime() - t0;
+        boolean failed = true;
 
-        if ( IS_DEBUG_STATS )
+        try
         {
-            nbBindCalls.incrementAndGet();
-            totalBind.getAndAdd( delta );
+            next( bindContext );
+            failed = false;
+        }
+        finally
+        {
+            long delta = System.nanoTime() - t0;
+            record( "bind", bindContext, delta, failed );
 
-            if ( nbBindCalls.get() % 1000 == 0 )
+            if ( IS_DEBUG_STATS )
             {
-                long average = totalBind.get() / ( nbBindCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average bind = {} microseconds, nb binds = {}", getName(), average,
-                    nbBindCalls.get() );
+                nbBindCalls.incrementAndGet();
+                totalBind.getAndAdd( delta );
+
+                if ( nbBindCalls.get() % 1000 == 0 )
+                {
+                    long average = totalBind.get() / ( nbBindCalls.get() * 1000 );
+                    OPERATION_STATS.debug( "{} : Average bind = {} microseconds, nb binds = {}", getName(), average,
+                        nbBindCalls.get() );
+                }
             }
-        }
 
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta bind = {}", getName(), delta );
+            if ( IS_DEBUG_TIME )
+            {
+                OPERATION_TIME.debug( "{} : Delta bind = {}", getName(), delta );
+            }
         }
     }
 
@@ -211,25 +289,36 @@ public class TimerInterceptor extends BaseInterceptor
     public boolean compare( CompareOperationContext compareContext ) throws LdapException
     {
         long t0 = System.nanoTime();
-        boolean compare = next( compareContext );
-        long delta = System.nanoTime() - t0;
+        boolean compare;
+        boolean failed = true;
 
-        if ( IS_DEBUG_STATS )
+        try
         {
-            nbCompareCalls.incrementAndGet();
-            totalCompare.getAndAdd( delta );
+            compare = next( compareContext );
+            failed = false;
+        }
+        finally
+        {
+            long delta = System.nanoTime() - t0;
+            record( "compare", compareContext, delta, failed );
 
-            if ( nbCompareCalls.get() % 1000 == 0 )
+            if ( IS_DEBUG_STATS )
             {
-                long average = totalCompare.get() / ( nbCompareCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average compare = {} microseconds, nb compares = {}", getName(), average,
-                    nbCompareCalls.get() );
+                nbCompareCalls.incrementAndGet();
+                totalCompare.getAndAdd( delta );
+
+                if ( nbCompareCalls.get() % 1000 == 0 )
+                {
+                    long average = totalCompare.get() / ( nbCompareCalls.get() * 1000 );
+                    OPERATION_STATS.debug( "{} : Average compare = {} microseconds, nb compares = {}", getName(), average,
+                        nbCompareCalls.get() );
+                }
             }
-        }
 
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta compare = {}", getName(), delta );
+            if ( IS_DEBUG_TIME )
+            {
+                OPERATION_TIME.debug( "{} : Delta compare = {}", getName(), delta );
+            }
         }
 
         return compare;
@@ -243,25 +332,35 @@ public class TimerInterceptor extends BaseInterceptor
     public void delete( DeleteOperationContext deleteContext ) throws LdapException
     {
         long t0 = System.nanoTime();
-        next( deleteContext );
-        long delta = System.nanoTime() - t0;
+        boolean failed = true;
 
-        if ( IS_DEBUG_STATS )
+        try
         {
-            nbDeleteCalls.incrementAndGet();
-            totalDelete.getAndAdd( delta );
+            next( deleteContext );
+            failed = false;
+        }
+        finally
+        {
+            long delta = System.nanoTime() - t0;
+            record( "delete", deleteContext, delta, failed );
 
-            if ( nbDeleteCalls.get() % 1000 == 0 )
+            if ( IS_DEBUG_STATS )
             {
-                long average = totalDelete.get() / ( nbDeleteCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average delete = {} microseconds, nb deletes = {}", getName(), average,
-                    nbDeleteCalls.get() );
+                nbDeleteCalls.incrementAndGet();
+                totalDelete.getAndAdd( delta );
+
+                if ( nbDeleteCalls.get() % 1000 == 0 )
+                {
+                    long average = totalDelete.get() / ( nbDeleteCalls.get() * 1000 );
+                    OPERATION_STATS.debug( "{} : Average delete = {} microseconds, nb deletes = {}", getName(), average,
+                        nbDeleteCalls.get() );
+                }
             }
-        }
 
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta delete = {}", getName(), delta );
+            if ( IS_DEBUG_TIME )
+            {
+                OPERATION_TIME.debug( "{} : Delta delete = {}", getName(), delta );
+            }
         }
     }
 
@@ -273,25 +372,36 @@ public class TimerInterceptor extends BaseInterceptor
     public Entry getRootDse( GetRootDseOperationContext getRootDseContext ) throws LdapException
     {
         long t0 = System.nanoTime();
-        Entry rootDse = next( getRootDseContext );
-        long delta = System.nanoTime() - t0;
+        Entry rootDse;
+        boolean failed = true;
 
-        if ( IS_DEBUG_STATS )
+        try
+        {
+            rootDse = next( getRootDseContext );
+            failed = false;
+        }
+        finally
         {
-            nbGetRootDseCalls.incrementAndGet();
-            totalGetRootDse.getAndAdd( delta );
+            long delta = System.nanoTime() - t0;
+            record( "getRootDse", getRootDseContext, delta, failed );
 
-            if ( nbGetRootDseCalls.get() % 1000 == 0 )
+            if ( IS_DEBUG_STATS )
             {
-                long average = totalGetRootDse.get() / ( nbGetRootDseCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average getRootDSE = {} microseconds, nb getRootDSEs = {}", getName(),
-                    average, nbGetRootDseCalls.get() );
+                nbGetRootDseCalls.incrementAndGet();
+                totalGetRootDse.getAndAdd( delta );
+
+                if ( nbGetRootDseCalls.get() % 1000 == 0 )
+                {
+                    long average = totalGetRootDse.get() / ( nbGetRootDseCalls.get() * 1000 );
+                    OPERATION_STATS.debug( "{} : Average getRootDSE = {} microseconds, nb getRootDSEs = {}", getName(),
+                        average, nbGetRootDseCalls.get() );
+                }
             }
-        }
 
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta getRootDSE = {}", getName(), delta );
+            if ( IS_DEBUG_TIME )
+            {
+                OPERATION_TIME.debug( "{} : Delta getRootDSE = {}", getName(), delta );
+            }
         }
 
         return rootDse;
@@ -305,25 +415,36 @@ public class TimerInterceptor extends BaseInterceptor
     public boolean hasEntry( HasEntryOperationContext hasEntryContext ) throws LdapException
     {
         long t0 = System.nanoTime();
-        boolean hasEntry = next( hasEntryContext );
-        long delta = System.nanoTime() - t0;
+        boolean hasEntry;
+        boolean failed = true;
 
-        if ( IS_DEBUG_STATS )
+        try
+        {
+            hasEntry = next( hasEntryContext );
+            failed = false;
+        }
+        finally
         {
-            nbHasEntryCalls.incrementAndGet();
-            totalHasEntry.getAndAdd( delta );
+            long delta = System.nanoTime() - t0;
+            record( "hasEntry", hasEntryContext, delta, failed );
 
-            if ( nbHasEntryCalls.get() % 1000 == 0 )
+            if ( IS_DEBUG_STATS )
             {
-                long average = totalHasEntry.get() / ( nbHasEntryCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average hasEntry = {} microseconds, nb hasEntrys = {}", getName(), average,
-                    nbHasEntryCalls.get() );
+                nbHasEntryCalls.incrementAndGet();
+                totalHasEntry.getAndAdd( delta );
+
+                if ( nbHasEntryCalls.get() % 1000 == 0 )
+                {
+                    long average = totalHasEntry.get() / ( nbHasEntryCalls.get() * 1000 );
+                    OPERATION_STATS.debug( "{} : Average hasEntry = {} microseconds, nb hasEntrys = {}", getName(), average,
+                        nbHasEntryCalls.get() );
+                }
             }
-        }
 
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta hasEntry = {}", getName(), delta );
+            if ( IS_DEBUG_TIME )
+            {
+                OPERATION_TIME.debug( "{} : Delta hasEntry = {}", getName(), delta );
+            }
         }
 
         return hasEntry;
@@ -337,25 +458,36 @@ public class TimerInterceptor extends BaseInterceptor
     public Entry lookup( LookupOperationContext lookupContext ) throws LdapException
     {
         long t0 = System.nanoTime();
-        Entry entry = next( lookupContext );
-        long delta = System.nanoTime() - t0;
+        Entry entry;
+        boolean failed = true;
 
-        if ( IS_DEBUG_STATS )
+        try
         {
-            nbLookupCalls.incrementAndGet();
-            totalLookup.getAndAdd( delta );
+            entry = next( lookupContext );
+            failed = false;
+        }
+        finally
+        {
+            long delta = System.nanoTime() - t0;
+            record( "lookup", lookupContext, delta, failed );
 
-            if ( nbLookupCalls.get() % 1000 == 0 )
+            if ( IS_DEBUG_STATS )
             {
-                long average = totalLookup.get() / ( nbLookupCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average lookup = {} microseconds, nb lookups = {}", getName(), average,
-                    nbLookupCalls.get() );
+                nbLookupCalls.incrementAndGet();
+                totalLookup.getAndAdd( delta );
+
+                if ( nbLookupCalls.get() % 1000 == 0 )
+                {
+                    long average = totalLookup.get() / ( nbLookupCalls.get() * 1000 );
+                    OPERATION_STATS.debug( "{} : Average lookup = {} microseconds, nb lookups = {}", getName(), average,
+                        nbLookupCalls.get() );
+                }
             }
-        }
 
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta lookup = {}", getName(), delta );
+            if ( IS_DEBUG_TIME )
+            {
+                OPERATION_TIME.debug( "{} : Delta lookup = {}", getName(), delta );
+            }
         }
 
         return entry;
@@ -369,25 +501,35 @@ public class TimerInterceptor extends BaseInterceptor
     public void modify( ModifyOperationContext modifyContext ) throws LdapException
     {
         long t0 = System.nanoTime();
-        next( modifyContext );
-        long delta = System.nanoTime() - t0;
+        boolean failed = true;
 
-        if ( IS_DEBUG_STATS )
+        try
         {
-            nbModifyCalls.incrementAndGet();
-            totalModify.getAndAdd( delta );
+            next( modifyContext );
+            failed = false;
+        }
+        finally
+        {
+            long delta = System.nanoTime() - t0;
+            record( "modify", modifyContext, delta, failed );
 
-            if ( nbModifyCalls.get() % 1000 == 0 )
+            if ( IS_DEBUG_STATS )
             {
-                long average = totalModify.get() / ( nbModifyCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average modify = {} microseconds, nb modifys = {}", getName(), average,
-                    nbModifyCalls.get() );
+                nbModifyCalls.incrementAndGet();
+                totalModify.getAndAdd( delta );
+
+                if ( nbModifyCalls.get() % 1000 == 0 )
+                {
+                    long average = totalModify.get() / ( nbModifyCalls.get() * 1000 );
+                    OPERATION_STATS.debug( "{} : Average modify = {} microseconds, nb modifys = {}", getName(), average,
+                        nbModifyCalls.get() );
+                }
             }
-        }
 
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta modify = {}", getName(), delta );
+            if ( IS_DEBUG_TIME )
+            {
+                OPERATION_TIME.debug( "{} : Delta modify = {}", getName(), delta );
+            }
         }
     }
 
@@ -399,25 +541,35 @@ public class TimerInterceptor extends BaseInterceptor
     public void move( MoveOperationContext moveContext ) throws LdapException
     {
         long t0 = System.nanoTime();
-        next( moveContext );
-        long delta = System.nanoTime() - t0;
+        boolean failed = true;
 
-        if ( IS_DEBUG_STATS )
+        try
+        {
+            next( moveContext );
+            failed = false;
+        }
+        finally
         {
-            nbMoveCalls.incrementAndGet();
-            totalMove.getAndAdd( delta );
+            long delta = System.nanoTime() - t0;
+            record( "move", moveContext, delta, failed );
 
-            if ( nbMoveCalls.get() % 1000 == 0 )
+            if ( IS_DEBUG_STATS )
             {
-                long average = totalMove.get() / ( nbMoveCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average move = {} microseconds, nb moves = {}", getName(), average,
-                    nbMoveCalls.get() );
+                nbMoveCalls.incrementAndGet();
+                totalMove.getAndAdd( delta );
+
+                if ( nbMoveCalls.get() % 1000 == 0 )
+                {
+                    long average = totalMove.get() / ( nbMoveCalls.get() * 1000 );
+                    OPERATION_STATS.debug( "{} : Average move = {} microseconds, nb moves = {}", getName(), average,
+                        nbMoveCalls.get() );
+                }
             }
-        }
 
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta move = {}", getName(), delta );
+            if ( IS_DEBUG_TIME )
+            {
+                OPERATION_TIME.debug( "{} : Delta move = {}", getName(), delta );
+            }
         }
     }
 
@@ -429,26 +581,36 @@ public class TimerInterceptor extends BaseInterceptor
     public void moveAndRename( MoveAndRenameOperationContext moveAndRenameContext ) throws LdapException
     {
         long t0 = System.nanoTime();
-        next( moveAndRenameContext );
-        long delta = System.nanoTime() - t0;
+        boolean failed = true;
 
-        if ( IS_DEBUG_STATS )
+        try
+        {
+            next( moveAndRenameContext );
+            failed = false;
+        }
+        finally
         {
-            nbMoveAndRenameCalls.incrementAndGet();
-            totalMoveAndRename.getAndAdd( delta );
+            long delta = System.nanoTime() - t0;
+            record( "moveAndRename", moveAndRenameContext, delta, failed );
 
-            if ( nbMoveAndRenameCalls.get() % 1000 == 0 )
+            if ( IS_DEBUG_STATS )
             {
-                long average = totalMoveAndRename.get() / ( nbMoveAndRenameCalls.get() * 1000 );
-                OPERATION_STATS.debug(
-                    "{} : Average moveAndRename = {} microseconds, nb moveAndRenames = {}", getName(), average,
-                    nbMoveAndRenameCalls.get() );
+                nbMoveAndRenameCalls.incrementAndGet();
+                totalMoveAndRename.getAndAdd( delta );
+
+                if ( nbMoveAndRenameCalls.get() % 1000 == 0 )
+                {
+                    long average = totalMoveAndRename.get() / ( nbMoveAndRenameCalls.get() * 1000 );
+                    OPERATION_STATS.debug(
+                        "{} : Average moveAndRename = {} microseconds, nb moveAndRenames = {}", getName(), average,
+                        nbMoveAndRenameCalls.get() );
+                }
             }
-        }
 
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta moveAndRename = {}", getName(), delta );
+            if ( IS_DEBUG_TIME )
+            {
+                OPERATION_TIME.debug( "{} : Delta moveAndRename = {}", getName(), delta );
+            }
         }
     }
 
@@ -460,25 +622,35 @@ public class TimerInterceptor extends BaseInterceptor
     public void rename( RenameOperationContext renameContext ) throws LdapException
     {
         long t0 = System.nanoTime();
-        next( renameContext );
-        long delta = System.nanoTime() - t0;
+        boolean failed = true;
 
-        if ( IS_DEBUG_STATS )
+        try
+        {
+            next( renameContext );
+            failed = false;
+        }
+        finally
         {
-            nbRenameCalls.incrementAndGet();
-            totalRename.getAndAdd( delta );
+            long delta = System.nanoTime() - t0;
+            record( "rename", renameContext, delta, failed );
 
-            if ( nbRenameCalls.get() % 1000 == 0 )
+            if ( IS_DEBUG_STATS )
             {
-                long average = totalRename.get() / ( nbRenameCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average rename = {} microseconds, nb renames = {}", getName(), average,
-                    nbRenameCalls.get() );
+                nbRenameCalls.incrementAndGet();
+                totalRename.getAndAdd( delta );
+
+                if ( nbRenameCalls.get() % 1000 == 0 )
+                {
+                    long average = totalRename.get() / ( nbRenameCalls.get() * 1000 );
+                    OPERATION_STATS.debug( "{} : Average rename = {} microseconds, nb renames = {}", getName(), average,
+                        nbRenameCalls.get() );
+                }
             }
-        }
 
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta rename = {}", getName(), delta );
+            if ( IS_DEBUG_TIME )
+            {
+                OPERATION_TIME.debug( "{} : Delta rename = {}", getName(), delta );
+            }
         }
     }
 
@@ -490,24 +662,36 @@ public class TimerInterceptor extends BaseInterceptor
     public EntryFilteringCursor search( SearchOperationContext searchContext ) throws LdapException
     {
         long t0 = System.nanoTime();
-        EntryFilteringCursor cursor = next( searchContext );
-        long delta = System.nanoTime() - t0;
+        EntryFilteringCursor cursor;
+        boolean failed = true;
 
-        if ( IS_DEBUG_STATS )
+        try
+        {
+            cursor = next( searchContext );
+            failed = false;
+        }
+        finally
         {
-            nbSearchCalls.incrementAndGet();
-            totalSearch.getAndAdd( delta );
+            long delta = System.nanoTime() - t0;
+            // The cursor has not been read yet : this is only the search setup time
+            record( "searchSetup", searchContext, delta, failed );
 
-            if ( nbSearchCalls.get() % 1000 == 0 )
+            if ( IS_DEBUG_STATS )
             {
-                long average = totalSearch.get() / ( nbSearchCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average search = {} microseconds, nb searches = {}", getName(), average, nbSearchCalls.get() );
+                nbSearchCalls.incrementAndGet();
+                totalSearch.getAndAdd( delta );
+
+                if ( nbSearchCalls.get() % 1000 == 0 )
+                {
+                    long average = totalSearch.get() / ( nbSearchCalls.get() * 1000 );
+                    OPERATION_STATS.debug( "{} : Average search = {} microseconds, nb searches = {}", getName(), average, nbSearchCalls.get() );
+                }
             }
-        }
 
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta search = {}", getName(), delta );
+            if ( IS_DEBUG_TIME )
+            {
+                OPERATION_TIME.debug( "{} : Delta search = {}", getName(), delta );
+            }
         }
 
         return cursor;
@@ -521,25 +705,35 @@ public class TimerInterceptor extends BaseInterceptor
     public void unbind( UnbindOperationContext unbindContext ) throws LdapException
     {
         long t0 = System.nanoTime();
-        next( unbindContext );
-        long delta = System.nanoTime() - t0;
+        boolean failed = true;
 
-        if ( IS_DEBUG_STATS )
+        try
         {
-            nbUnbindCalls.incrementAndGet();
-            totalUnbind.getAndAdd( delta );
+            next( unbindContext );
+            failed = false;
+        }
+        finally
+        {
+            long delta = System.nanoTime() - t0;
+            record( "unbind", unbindContext, delta, failed );
 
-            if ( nbUnbindCalls.get() % 1000 == 0 )
+            if ( IS_DEBUG_STATS )
             {
-                long average = totalUnbind.get() / ( nbUnbindCalls.get() * 1000 );
-                OPERATION_STATS.debug( "{} : Average unbind = {} microseconds, nb unbinds = {}", getName(), average,
-                    nbUnbindCalls.get() );
+                nbUnbindCalls.incrementAndGet();
+                totalUnbind.getAndAdd( delta );
+
+                if ( nbUnbindCalls.get() % 1000 == 0 )
+                {
+                    long average = totalUnbind.get() / ( nbUnbindCalls.get() * 1000 );
+                    OPERATION_STATS.debug( "{} : Average unbind = {} microseconds, nb unbinds = {}", getName(), average,
+                        nbUnbindCalls.get() );
+                }
             }
-        }
 
-        if ( IS_DEBUG_TIME )
-        {
-            OPERATION_TIME.debug( "{} : Delta unbind = {}", getName(), delta );
+            if ( IS_DEBUG_TIME )
+            {
+                OPERATION_TIME.debug( "{} : Delta unbind = {}", getName(), delta );
+            }
         }
     }
 }
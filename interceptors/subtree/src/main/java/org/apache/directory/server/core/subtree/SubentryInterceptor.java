@@ -20,10 +20,15 @@
 package org.apache.directory.server.core.subtree;
 
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import javax.naming.directory.SearchControls;
 
@@ -39,13 +44,11 @@ import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
 import org.apache.directory.api.ldap.model.exception.LdapNoSuchAttributeException;
-import org.apache.directory.api.ldap.model.exception.LdapOperationErrorException;
 import org.apache.directory.api.ldap.model.exception.LdapOperationException;
 import org.apache.directory.api.ldap.model.exception.LdapOtherException;
 import org.apache.directory.api.ldap.model.exception.LdapSchemaViolationException;
 import org.apache.directory.api.ldap.model.filter.EqualityNode;
 import org.apache.directory.api.ldap.model.filter.ExprNode;
-import org.apache.directory.api.ldap.model.filter.ObjectClassNode;
 import org.apache.directory.api.ldap.model.filter.PresenceNode;
 import org.apache.directory.api.ldap.model.message.AliasDerefMode;
 import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
@@ -77,6 +80,8 @@ import org.apache.directory.server.core.api.interceptor.context.SearchOperationC
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
 import org.apache.directory.server.core.api.subtree.SubentryCache;
+import org.apache.directory.server.core.api.subtree.SubentryPropagation;
+import org.apache.directory.server.core.api.subtree.SubentryUtils;
 import org.apache.directory.server.core.api.subtree.SubtreeEvaluator;
 import org.apache.directory.server.i18n.I18n;
 import org.slf4j.Logger;
@@ -105,13 +110,20 @@ public class SubentryInterceptor extends BaseInterceptor
     /** A reference to the nexus for direct backend operations */
     private PartitionNexus nexus;
 
-    /** An enum used for the entries update */
-    private enum OperationEnum
-    {
-        ADD,
-        REMOVE,
-        REPLACE
-    }
+    /** The default max number of entries updated in a single transaction by a subentry propagation */
+    public static final int DEFAULT_PROPAGATION_BATCH_SIZE = 1000;
+
+    /** The max number of entries updated in a single transaction by a subentry propagation */
+    private int propagationBatchSize = DEFAULT_PROPAGATION_BATCH_SIZE;
+
+    /** The executor running the subentries propagations, one at a time */
+    private ScheduledExecutorService propagationExecutor;
+
+    /** The pending propagations, kept on disk */
+    private SubentryPropagationStore propagationStore;
+
+    /** The helper evaluating the subentries which are being propagated */
+    private SubentryUtils subentryUtils;
 
 
     /**
@@ -191,6 +203,35 @@ public class SubentryInterceptor extends BaseInterceptor
     }
 
 
+    /**
+     * SearchResultFilter used to update the subentry operational attributes of the returned
+     * entries while some subentries are being propagated, or when they are virtual.
+     */
+    private class PendingSubentriesFilter implements EntryFilter
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean accept( SearchOperationContext searchContext, Entry entry ) throws LdapException
+        {
+            subentryUtils.updateSubentryAttributes( searchContext, entry );
+
+            return true;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString( String tabs )
+        {
+            return tabs + "PendingSubentriesFilter";
+        }
+    }
+
+
     //-------------------------------------------------------------------------------------------
     // Interceptor initialization
     //-------------------------------------------------------------------------------------------
@@ -205,6 +246,15 @@ public class SubentryInterceptor extends BaseInterceptor
         super.init( directoryService );
 
         nexus = directoryService.getPartitionNexus();
+        subentryUtils = new SubentryUtils( directoryService );
+
+        propagationExecutor = Executors.newSingleThreadScheduledExecutor( runnable ->
+        {
+            Thread thread = new Thread( runnable, "subentry-propagation" );
+            thread.setDaemon( true );
+
+            return thread;
+        } );
 
         ssParser = new SubtreeSpecificationParser( schemaManager );
         AttributeType ocAt = directoryService.getAtProvider().getObjectClass();
@@ -282,6 +332,74 @@ public class SubentryInterceptor extends BaseInterceptor
                 }
             }
         }
+
+        resumePropagations();
+    }
+
+
+    /**
+     * Resumes the propagations which were not done when the server was stopped. As
+     * we don't know which entries were already updated, the whole administrative area
+     * of each subentry is verified.
+     */
+    private void resumePropagations() throws LdapException
+    {
+        propagationStore = new SubentryPropagationStore( new File(
+            directoryService.getInstanceLayout().getPartitionsDirectory(), SubentryPropagationStore.FILE_NAME ) );
+
+        for ( SubentryPropagation propagation : propagationStore.load( schemaManager ) )
+        {
+            if ( directoryService.getSubentryCache().isVirtual() )
+            {
+                // Nothing is stored in the selected entries anymore
+                propagationStore.remove( propagation );
+
+                continue;
+            }
+
+            LOG.info( "Resuming the propagation of the subentry {}", propagation.getSubentryDn() );
+
+            directoryService.getSubentryCache().startPropagation( propagation );
+            propagationExecutor.execute( new SubentryPropagator( directoryService, subentryUtils, propagation,
+                propagation.getSubentryDn().getParent(), propagationBatchSize, propagationExecutor,
+                propagationStore ) );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy()
+    {
+        // The running propagations have been waited for before the partitions were closed,
+        // the failed ones will be resumed on the next startup
+        if ( propagationExecutor != null )
+        {
+            propagationExecutor.shutdownNow();
+        }
+    }
+
+
+    /**
+     * @return The max number of entries updated in a single transaction by a subentry propagation
+     */
+    public int getPropagationBatchSize()
+    {
+        return propagationBatchSize;
+    }
+
+
+    /**
+     * Sets the max number of entries updated in a single transaction by a subentry propagation.
+     * Smaller batches hold the partition write lock for shorter periods.
+     *
+     * @param propagationBatchSize The batch size
+     */
+    public void setPropagationBatchSize( int propagationBatchSize )
+    {
+        this.propagationBatchSize = propagationBatchSize;
     }
 
 
@@ -352,81 +470,28 @@ public class SubentryInterceptor extends BaseInterceptor
 
 
     /**
-     * Update all the entries under an AP adding the
+     * Schedules the update of the subentry operational attributes of all the entries
+     * selected by a subtreeSpecification. Until it's done, the selection is evaluated
+     * on the fly when those entries are read.
      */
-    private void updateEntries( OperationContext opContext, OperationEnum operation, 
-        Dn apDn, SubtreeSpecification ss, Dn baseDn, List<Attribute> operationalAttributes ) throws LdapException
+    private void propagate( Dn subentryDn, Subentry subentry, SubtreeSpecification ss, boolean adding )
+        throws LdapException
     {
-        ExprNode filter = ObjectClassNode.OBJECT_CLASS_NODE; // (objectClass=*)
-        SearchControls controls = new SearchControls();
-        controls.setSearchScope( SearchControls.SUBTREE_SCOPE );
-        controls.setReturningAttributes( new String[]
-            { SchemaConstants.ALL_OPERATIONAL_ATTRIBUTES, SchemaConstants.ALL_USER_ATTRIBUTES } );
-
-        SearchOperationContext searchOperationContext = new SearchOperationContext( opContext.getSession(),
-            baseDn, filter, controls );
-        searchOperationContext.setAliasDerefMode( AliasDerefMode.NEVER_DEREF_ALIASES );
-        searchOperationContext.setPartition( opContext.getPartition() );
-        searchOperationContext.setTransaction( opContext.getTransaction() );
-
-        EntryFilteringCursor subentries = nexus.search( searchOperationContext );
-
-        try
+        if ( directoryService.getSubentryCache().isVirtual() )
         {
-            while ( subentries.next() )
-            {
-                Entry candidate = subentries.get();
-                Dn candidateDn = candidate.getDn();
-
-                if ( directoryService.getEvaluator().evaluate( ss, apDn, candidateDn, candidate ) )
-                {
-                    List<Modification> modifications = null;
-
-                    switch ( operation )
-                    {
-                        case ADD:
-                            modifications = getOperationalModsForAdd( candidate, operationalAttributes );
-                            break;
+            // Nothing is stored in the selected entries
+            return;
+        }
 
-                        case REMOVE:
-                            modifications = getOperationalModsForRemove( opContext.getDn(), candidate );
-                            break;
+        Dn baseDn = subentryDn.getParent();
+        baseDn = baseDn.add( ss.getBase() );
 
-                        case REPLACE:
-                            // TODO: why is that commented out???
-                            //modifications = getOperationalModsForReplace( subentryDn, candidate );
-                            break;
+        SubentryPropagation propagation = new SubentryPropagation( subentryDn, subentry, ss, adding );
+        directoryService.getSubentryCache().startPropagation( propagation );
+        propagationStore.add( propagation );
 
-                        default:
-                            throw new IllegalArgumentException( "Unexpected operation " + operation );
-                    }
-
-                    LOG.debug( "The entry {} has been evaluated to true for subentry {}", candidate.getDn(), opContext.getDn() );
-                    ModifyOperationContext modifyContext = new ModifyOperationContext( opContext.getSession(), candidateDn, modifications );
-                    modifyContext.setPartition( opContext.getPartition() );
-                    modifyContext.setTransaction( opContext.getTransaction() );
-                    
-                    nexus.modify( modifyContext );
-                }
-            }
-
-            subentries.close();
-        }
-        catch ( Exception e )
-        {
-            throw new LdapOtherException( e.getMessage(), e );
-        }
-        finally
-        {
-            try
-            {
-                subentries.close();
-            }
-            catch ( Exception e )
-            {
-                LOG.error( I18n.err( I18n.ERR_168 ), e );
-            }
-        }
+        propagationExecutor.execute( new SubentryPropagator( directoryService, subentryUtils, propagation, baseDn,
+            propagationBatchSize, propagationExecutor, propagationStore ) );
     }
 
 
@@ -560,10 +625,21 @@ public class SubentryInterceptor extends BaseInterceptor
         SubentryCache subentryCache = directoryService.getSubentryCache();
         SubtreeEvaluator evaluator = directoryService.getEvaluator();
 
-        for ( Dn subentryDn : subentryCache )
+        // Only the subentries of the APs above the old or the new name may select the entry
+        Set<Dn> subentryDns = new LinkedHashSet<>( subentryCache.getApplicableSubentries( oldName ) );
+        subentryDns.addAll( subentryCache.getApplicableSubentries( newName ) );
+
+        for ( Dn subentryDn : subentryDns )
         {
             Dn apDn = subentryDn.getParent();
-            SubtreeSpecification ss = subentryCache.getSubentry( subentryDn ).getSubtreeSpecification();
+            Subentry subentry = subentryCache.getSubentry( subentryDn );
+
+            if ( subentry == null )
+            {
+                continue;
+            }
+
+            SubtreeSpecification ss = subentry.getSubtreeSpecification();
             boolean isOldNameSelected = evaluator.evaluate( ss, apDn, oldName, entry );
             boolean isNewNameSelected = evaluator.evaluate( ss, apDn, newName, entry );
 
@@ -711,120 +787,6 @@ public class SubentryInterceptor extends BaseInterceptor
     }
 
 
-    /**
-     * Gets the subschema operational attributes to be added to or removed from
-     * an entry selected by a subentry's subtreeSpecification.
-     */
-    private List<Attribute> getSubentryOperationalAttributes( Dn dn, Subentry subentry ) throws LdapException
-    {
-        List<Attribute> attributes = new ArrayList<>();
-
-        if ( subentry.isAccessControlAdminRole() )
-        {
-            Attribute accessControlSubentries = new DefaultAttribute( directoryService.getAtProvider()
-                .getAccessControlSubentries(), dn.getName() );
-            attributes.add( accessControlSubentries );
-        }
-
-        if ( subentry.isSchemaAdminRole() )
-        {
-            Attribute subschemaSubentry = new DefaultAttribute(
-                directoryService.getAtProvider().getSubschemaSubentry(), dn.getName() );
-            attributes.add( subschemaSubentry );
-        }
-
-        if ( subentry.isCollectiveAdminRole() )
-        {
-            Attribute collectiveAttributeSubentries = new DefaultAttribute( directoryService.getAtProvider()
-                .getCollectiveAttributeSubentries(), dn.getName() );
-            attributes.add( collectiveAttributeSubentries );
-        }
-
-        if ( subentry.isTriggersAdminRole() )
-        {
-            Attribute tiggerExecutionSubentries = new DefaultAttribute( directoryService.getAtProvider()
-                .getTriggerExecutionSubentries(), dn.getName() );
-            attributes.add( tiggerExecutionSubentries );
-        }
-
-        return attributes;
-    }
-
-
-    /**
-     * Calculates the subentry operational attributes to remove from a candidate
-     * entry selected by a subtreeSpecification.  When we remove a subentry we
-     * must remove the operational attributes in the entries that were once selected
-     * by the subtree specification of that subentry.  To do so we must perform
-     * a modify operation with the set of modifications to perform.  This method
-     * calculates those modifications.
-     *
-     * @param subentryDn the distinguished name of the subentry
-     * @param candidate the candidate entry to removed from the
-     * @return the set of modifications required to remove an entry's reference to
-     * a subentry
-     */
-    private List<Modification> getOperationalModsForRemove( Dn subentryDn, Entry candidate ) throws LdapException
-    {
-        List<Modification> modifications = new ArrayList<>();
-        String dn = subentryDn.getName();
-
-        for ( AttributeType operationalAttribute : directoryService.getAtProvider().getSubentryOperationalAttributes() )
-        {
-            Attribute opAttr = candidate.get( operationalAttribute );
-
-            if ( ( opAttr != null ) && opAttr.contains( dn ) )
-            {
-                Attribute attr = new DefaultAttribute( operationalAttribute, dn );
-                modifications.add( new DefaultModification( ModificationOperation.REMOVE_ATTRIBUTE, attr ) );
-            }
-        }
-
-        return modifications;
-    }
-
-
-    /**
-     * Calculates the subentry operational attributes to add or replace from
-     * a candidate entry selected by a subtree specification.  When a subentry
-     * is added or it's specification is modified some entries must have new
-     * operational attributes added to it to point back to the associated
-     * subentry.  To do so a modify operation must be performed on entries
-     * selected by the subtree specification.  This method calculates the
-     * modify operation to be performed on the entry.
-     */
-    private List<Modification> getOperationalModsForAdd( Entry entry, List<Attribute> operationalAttributes )
-        throws LdapException
-    {
-        List<Modification> modifications = new ArrayList<>();
-
-        for ( Attribute operationalAttribute : operationalAttributes )
-        {
-            Attribute opAttrInEntry = entry.get( operationalAttribute.getAttributeType() );
-
-            if ( ( opAttrInEntry != null ) && ( opAttrInEntry.size() > 0 ) )
-            {
-                Attribute newOperationalAttribute = operationalAttribute.clone();
-
-                for ( Value value : opAttrInEntry )
-                {
-                    newOperationalAttribute.add( value );
-                }
-
-                modifications.add( new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE,
-                    newOperationalAttribute ) );
-            }
-            else
-            {
-                modifications
-                    .add( new DefaultModification( ModificationOperation.ADD_ATTRIBUTE, operationalAttribute ) );
-            }
-        }
-
-        return modifications;
-    }
-
-
     /**
      * Get the list of modification to apply to all the entries
      */
@@ -833,11 +795,17 @@ public class SubentryInterceptor extends BaseInterceptor
     {
         List<Modification> modList = new ArrayList<>();
 
-        for ( Dn subentryDn : directoryService.getSubentryCache() )
+        for ( Dn subentryDn : directoryService.getSubentryCache().getApplicableSubentries( name ) )
         {
             Dn apDn = subentryDn.getParent();
-            SubtreeSpecification ss = directoryService.getSubentryCache().getSubentry( subentryDn )
-                .getSubtreeSpecification();
+            Subentry subentry = directoryService.getSubentryCache().getSubentry( subentryDn );
+
+            if ( subentry == null )
+            {
+                continue;
+            }
+
+            SubtreeSpecification ss = subentry.getSubtreeSpecification();
             boolean isOldEntrySelected = directoryService.getEvaluator().evaluate( ss, apDn, name, oldEntry );
             boolean isNewEntrySelected = directoryService.getEvaluator().evaluate( ss, apDn, name, newEntry );
 
@@ -934,16 +902,13 @@ public class SubentryInterceptor extends BaseInterceptor
             checkAdministrativeRole( addContext, apDn );
 
             /* ----------------------------------------------------------------
-             * Build the set of operational attributes to be injected into
-             * entries that are contained within the subtree represented by this
-             * new subentry.  In the process we make sure the proper roles are
-             * supported by the administrative point to allow the addition of
-             * this new subentry.
+             * Get the roles of the new subentry, which tell which operational
+             * attributes will be injected into the entries that are contained
+             * within the subtree represented by this new subentry.
              * ----------------------------------------------------------------
              */
             Subentry subentry = new Subentry();
             subentry.setAdministrativeRoles( getSubentryAdminRoles( entry ) );
-            List<Attribute> operationalAttributes = getSubentryOperationalAttributes( dn, subentry );
 
             /* ----------------------------------------------------------------
              * Parse the subtreeSpecification of the subentry and add it to the
@@ -958,19 +923,17 @@ public class SubentryInterceptor extends BaseInterceptor
             // Now inject the subentry into the backend
             next( addContext );
 
+            // The interceptors depending on the subentries may have to be included
+            directoryService.updateInterceptorChains();
+
             /* ----------------------------------------------------------------
-             * Find the baseDn for the subentry and use that to search the tree
-             * while testing each entry returned for inclusion within the
-             * subtree of the subentry's subtreeSpecification.  All included
-             * entries will have their operational attributes merged with the
-             * operational attributes calculated above.
+             * All the entries included in the subtree of the subentry's
+             * subtreeSpecification will have their operational attributes
+             * updated in the background. Meanwhile, the subtreeSpecification
+             * is evaluated when they are read.
              * ----------------------------------------------------------------
              */
-            Dn baseDn = apDn;
-            baseDn = baseDn.add( subentry.getSubtreeSpecification().getBase() );
-
-            updateEntries( addContext, OperationEnum.ADD, apDn, subentry.getSubtreeSpecification(),
-                baseDn, operationalAttributes );
+            propagate( dn, subentry, subentry.getSubtreeSpecification(), true );
 
             // Store the newly modified entry into the context for later use in interceptor
             // just in case
@@ -980,18 +943,19 @@ public class SubentryInterceptor extends BaseInterceptor
         {
             // The added entry is not a Subentry.
             // Nevertheless, we have to check if the entry is added into an AdministrativePoint
-            // and is associated with some SubtreeSpecification
-            // We brutally check *all* the subentries, as we don't hold a hierarchy
-            // of AP
-            // TODO : add a hierarchy of subentries
-            for ( Dn subentryDn : directoryService.getSubentryCache() )
+            // and is associated with some SubtreeSpecification. Only the subentries of the
+            // APs above the entry are checked. Nothing is stored if the cache is virtual.
+            SubentryCache subentryCache = directoryService.getSubentryCache();
+            List<Dn> subentryDns = subentryCache.isVirtual() ? Collections.<Dn> emptyList()
+                : subentryCache.getApplicableSubentries( dn );
+
+            for ( Dn subentryDn : subentryDns )
             {
                 Dn apDn = subentryDn.getParent();
+                Subentry subentry = subentryCache.getSubentry( subentryDn );
 
-                // No need to evaluate the entry if it's not below an AP.
-                if ( dn.isDescendantOf( apDn ) )
+                if ( subentry != null )
                 {
-                    Subentry subentry = directoryService.getSubentryCache().getSubentry( subentryDn );
                     SubtreeSpecification ss = subentry.getSubtreeSpecification();
 
                     // Now, evaluate the entry wrt the subentry ss
@@ -1049,29 +1013,21 @@ public class SubentryInterceptor extends BaseInterceptor
         // We first remove the re
         if ( entry.contains( directoryService.getAtProvider().getObjectClass(), SchemaConstants.SUBENTRY_OC ) )
         {
-            Subentry removedSubentry = directoryService.getSubentryCache().getSubentry( dn );
-
-            /* ----------------------------------------------------------------
-             * Find the baseDn for the subentry and use that to search the tree
-             * for all entries included by the subtreeSpecification.  Then we
-             * check the entry for subentry operational attribute that contain
-             * the Dn of the subentry.  These are the subentry operational
-             * attributes we remove from the entry in a modify operation.
-             * ----------------------------------------------------------------
-             */
-            Dn apDn = dn.getParent();
-            Dn baseDn = apDn;
-            baseDn = baseDn.add( removedSubentry.getSubtreeSpecification().getBase() );
-
-            // Remove all the references to this removed subentry from all the selected entries
-            updateEntries( deleteContext, OperationEnum.REMOVE, apDn,
-                removedSubentry.getSubtreeSpecification(), baseDn, null );
-
             // Update the cache
-            directoryService.getSubentryCache().removeSubentry( dn );
+            Subentry removedSubentry = directoryService.getSubentryCache().removeSubentry( dn );
 
             // Now delete the subentry itself
             next( deleteContext );
+            directoryService.updateInterceptorChains();
+
+            /* ----------------------------------------------------------------
+             * The references to this removed subentry will be removed in the
+             * background from all the entries included by the subtreeSpecification.
+             * As the subentry isn't cached anymore, they are ignored when
+             * those entries are read in the meantime.
+             * ----------------------------------------------------------------
+             */
+            propagate( dn, removedSubentry, removedSubentry.getSubtreeSpecification(), false );
         }
         else
         {
@@ -1124,6 +1080,11 @@ public class SubentryInterceptor extends BaseInterceptor
             SubtreeSpecification ssOld = subentry.getSubtreeSpecification();
             SubtreeSpecification ssNew;
 
+            // Keep the old roles, the subentry instance is updated below
+            Subentry oldSubentry = new Subentry();
+            oldSubentry.setAdministrativeRoles( getSubentryAdminRoles( entry ) );
+            oldSubentry.setSubtreeSpecification( ssOld );
+
             try
             {
                 ssNew = ssParser.parse( subtreeMod.getAttribute().getString() );
@@ -1140,112 +1101,18 @@ public class SubentryInterceptor extends BaseInterceptor
             directoryService.getSubentryCache().addSubentry( dn, subentry );
 
             next( modifyContext );
+            directoryService.updateInterceptorChains();
 
-            // search for all entries selected by the old SS and remove references to subentry
-            Dn apName = dn.getParent();
-            Dn oldBaseDn = apName;
-            oldBaseDn = oldBaseDn.add( ssOld.getBase() );
-
-            ExprNode filter = new PresenceNode( directoryService.getAtProvider().getObjectClass() );
-            SearchControls controls = new SearchControls();
-            controls.setSearchScope( SearchControls.SUBTREE_SCOPE );
-            controls.setReturningAttributes( new String[]
-                { SchemaConstants.ALL_OPERATIONAL_ATTRIBUTES, SchemaConstants.ALL_USER_ATTRIBUTES } );
-
-            SearchOperationContext searchOperationContext = new SearchOperationContext( modifyContext.getSession(),
-                oldBaseDn, filter, controls );
-            searchOperationContext.setAliasDerefMode( AliasDerefMode.NEVER_DEREF_ALIASES );
-            searchOperationContext.setPartition( modifyContext.getPartition() );
-            searchOperationContext.setTransaction( modifyContext.getTransaction() );
-
-            EntryFilteringCursor subentries = nexus.search( searchOperationContext );
-
-            try
-            {
-                while ( subentries.next() )
-                {
-                    Entry candidate = subentries.get();
-                    Dn candidateDn = candidate.getDn();
-
-                    if ( directoryService.getEvaluator().evaluate( ssOld, apName, candidateDn, candidate ) )
-                    {
-                        ModifyOperationContext newModifyContext = new ModifyOperationContext( modifyContext.getSession(), candidateDn,
-                            getOperationalModsForRemove( dn, candidate ) );
-                        newModifyContext.setPartition( modifyContext.getPartition() );
-                        newModifyContext.setTransaction( modifyContext.getTransaction() );
-                        
-                        nexus.modify( newModifyContext );
-                    }
-                }
-
-                subentries.close();
-            }
-            catch ( Exception e )
-            {
-                throw new LdapOperationErrorException( e.getMessage(), e );
-            }
-            finally
-            {
-                try
-                {
-                    subentries.close();
-                }
-                catch ( Exception e )
-                {
-                    LOG.error( I18n.err( I18n.ERR_168 ), e );
-                }
-            }
-
-            // search for all selected entries by the new SS and add references to subentry
-            subentry = directoryService.getSubentryCache().getSubentry( dn );
-            List<Attribute> operationalAttributes = getSubentryOperationalAttributes( dn, subentry );
-            Dn newBaseDn = apName;
-            newBaseDn = newBaseDn.add( ssNew.getBase() );
-
-            searchOperationContext = new SearchOperationContext( modifyContext.getSession(), newBaseDn, filter,
-                controls );
-            searchOperationContext.setAliasDerefMode( AliasDerefMode.NEVER_DEREF_ALIASES );
-            searchOperationContext.setPartition( modifyContext.getPartition() );
-            searchOperationContext.setTransaction( modifyContext.getTransaction() );
-
-            subentries = nexus.search( searchOperationContext );
-
-            try
-            {
-                while ( subentries.next() )
-                {
-                    Entry candidate = subentries.get();
-                    Dn candidateDn = candidate.getDn();
-
-                    if ( directoryService.getEvaluator().evaluate( ssNew, apName, candidateDn, candidate ) )
-                    {
-                        nexus.modify( new ModifyOperationContext( modifyContext.getSession(), candidateDn,
-                            getOperationalModsForAdd( candidate, operationalAttributes ) ) );
-                    }
-                }
-                subentries.close();
-            }
-            catch ( Exception e )
-            {
-                throw new LdapOperationErrorException( e.getMessage(), e );
-            }
-            finally
-            {
-                try
-                {
-                    subentries.close();
-                }
-                catch ( Exception e )
-                {
-                    LOG.error( I18n.err( I18n.ERR_168 ), e );
-                }
-            }
+            // Remove the references to the subentry from the entries selected by the old SS,
+            // and add some to the entries selected by the new SS, in the background
+            propagate( dn, oldSubentry, ssOld, false );
+            propagate( dn, subentry, ssNew, true );
         }
         else
         {
             next( modifyContext );
 
-            if ( !containsSubentryOC )
+            if ( !containsSubentryOC && !directoryService.getSubentryCache().isVirtual() )
             {
                 Entry newEntry = modifyContext.getAlteredEntry();
 
@@ -1326,6 +1193,12 @@ public class SubentryInterceptor extends BaseInterceptor
 
             next( moveContext );
 
+            if ( directoryService.getSubentryCache().isVirtual() )
+            {
+                // Nothing to update in the selected entries
+                return;
+            }
+
             subentry = directoryService.getSubentryCache().getSubentry( newName );
 
             ExprNode filter = new PresenceNode( directoryService.getAtProvider().getObjectClass() );
@@ -1400,6 +1273,12 @@ public class SubentryInterceptor extends BaseInterceptor
             // Move the entry
             next( moveContext );
 
+            if ( directoryService.getSubentryCache().isVirtual() )
+            {
+                // Nothing to update in the selected entries
+                return;
+            }
+
             // calculate the new Dn now for use below to modify subentry operational
             // attributes contained within this regular entry with name changes
             Dn newDn = moveContext.getNewDn();
@@ -1448,6 +1327,12 @@ public class SubentryInterceptor extends BaseInterceptor
 
             next( moveAndRenameContext );
 
+            if ( directoryService.getSubentryCache().isVirtual() )
+            {
+                // Nothing to update in the selected entries
+                return;
+            }
+
             subentry = directoryService.getSubentryCache().getSubentry( newName );
 
             ExprNode filter = new PresenceNode( directoryService.getAtProvider().getObjectClass() );
@@ -1514,6 +1399,12 @@ public class SubentryInterceptor extends BaseInterceptor
 
             next( moveAndRenameContext );
 
+            if ( directoryService.getSubentryCache().isVirtual() )
+            {
+                // Nothing to update in the selected entries
+                return;
+            }
+
             // calculate the new Dn now for use below to modify subentry operational
             // attributes contained within this regular entry with name changes
             Dn newDn = moveAndRenameContext.getNewDn();
@@ -1557,6 +1448,12 @@ public class SubentryInterceptor extends BaseInterceptor
             directoryService.getSubentryCache().addSubentry( newName, subentry );
             next( renameContext );
 
+            if ( directoryService.getSubentryCache().isVirtual() )
+            {
+                // Nothing to update in the selected entries
+                return;
+            }
+
             subentry = directoryService.getSubentryCache().getSubentry( newName );
             ExprNode filter = new PresenceNode( directoryService.getAtProvider().getObjectClass() );
             SearchControls controls = new SearchControls();
@@ -1620,6 +1517,12 @@ public class SubentryInterceptor extends BaseInterceptor
 
             next( renameContext );
 
+            if ( directoryService.getSubentryCache().isVirtual() )
+            {
+                // Nothing to update in the selected entries
+                return;
+            }
+
             // calculate the new Dn now for use below to modify subentry operational
             // attributes contained within this regular entry with name changes
             Dn newName = renameContext.getNewDn();
@@ -1637,6 +1540,24 @@ public class SubentryInterceptor extends BaseInterceptor
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry lookup( LookupOperationContext lookupContext ) throws LdapException
+    {
+        Entry entry = next( lookupContext );
+
+        // Some subentries are being propagated, or are virtual : evaluate them on the returned entry
+        if ( ( entry != null ) && !lookupContext.isSyncreplLookup() )
+        {
+            subentryUtils.updateSubentryAttributes( lookupContext, entry );
+        }
+
+        return entry;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -1645,14 +1566,22 @@ public class SubentryInterceptor extends BaseInterceptor
     {
         EntryFilteringCursor cursor = next( searchContext );
 
-        // object scope searches by default return subentries
-        if ( searchContext.getScope() == SearchScope.OBJECT )
+        // DO NOT hide subentries nor evaluate the pending ones for replication operations
+        if ( searchContext.isSyncreplSearch() )
         {
             return cursor;
         }
 
-        // DO NOT hide subentries for replication operations
-        if ( searchContext.isSyncreplSearch() )
+        // Some subentries are being propagated, or are virtual : evaluate them on the returned entries
+        SubentryCache subentryCache = directoryService.getSubentryCache();
+
+        if ( subentryCache.hasPropagations() || subentryCache.isVirtual() )
+        {
+            cursor.addEntryFilter( new PendingSubentriesFilter() );
+        }
+
+        // object scope searches by default return subentries
+        if ( searchContext.getScope() == SearchScope.OBJECT )
         {
             return cursor;
         }
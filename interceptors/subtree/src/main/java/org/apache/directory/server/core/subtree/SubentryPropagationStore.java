@@ -0,0 +1,218 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.subtree;
+
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.model.subtree.AdministrativeRole;
+import org.apache.directory.api.ldap.model.subtree.Subentry;
+import org.apache.directory.api.ldap.model.subtree.SubtreeSpecificationModifier;
+import org.apache.directory.server.core.api.subtree.SubentryPropagation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Keeps on disk the subentries which are being propagated, so that the entries of
+ * their administrative area are verified again when the server is restarted after
+ * a crash, or after having been stopped while some propagation was failing.
+ * <br>
+ * For each pending propagation, the file contains the subentry Dn, the direction
+ * of the propagation and the subentry administrative roles.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class SubentryPropagationStore
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( SubentryPropagationStore.class );
+
+    /** The name of the file, in the partitions directory */
+    static final String FILE_NAME = "subentry-propagations.dat";
+
+    /** The file containing the pending propagations */
+    private final File file;
+
+    /** The pending propagations */
+    private final List<SubentryPropagation> pending = new ArrayList<>();
+
+
+    /**
+     * Creates a new instance of SubentryPropagationStore.
+     *
+     * @param file The file containing the pending propagations
+     */
+    SubentryPropagationStore( File file )
+    {
+        this.file = file;
+    }
+
+
+    /**
+     * Reads the propagations which were pending when the server was stopped. Those
+     * propagations stay pending until they are removed. As the subtreeSpecification
+     * they were propagating is not known anymore, they cover the whole administrative
+     * area of their subentry.
+     *
+     * @param schemaManager The SchemaManager used to normalize the subentries Dn
+     * @return The pending propagations
+     * @throws LdapException If the file can't be read
+     */
+    synchronized List<SubentryPropagation> load( SchemaManager schemaManager ) throws LdapException
+    {
+        List<SubentryPropagation> loaded = new ArrayList<>();
+
+        if ( !file.exists() )
+        {
+            return loaded;
+        }
+
+        try ( InputStream in = Files.newInputStream( file.toPath() );
+            DataInputStream data = new DataInputStream( in ) )
+        {
+            int nbPropagations = data.readInt();
+
+            for ( int i = 0; i < nbPropagations; i++ )
+            {
+                Dn subentryDn = new Dn( schemaManager, data.readUTF() );
+                boolean adding = data.readBoolean();
+                int nbRoles = data.readInt();
+                Set<AdministrativeRole> roles = new HashSet<>();
+
+                for ( int j = 0; j < nbRoles; j++ )
+                {
+                    roles.add( AdministrativeRole.valueOf( data.readUTF() ) );
+                }
+
+                Subentry subentry = new Subentry();
+                subentry.setAdministrativeRoles( roles );
+
+                loaded.add( new SubentryPropagation( subentryDn, subentry,
+                    new SubtreeSpecificationModifier().getSubtreeSpecification(), adding ) );
+            }
+        }
+        catch ( IOException | IllegalArgumentException e )
+        {
+            throw new LdapOtherException( "Cannot read the pending subentry propagations from " + file, e );
+        }
+
+        pending.addAll( loaded );
+
+        return loaded;
+    }
+
+
+    /**
+     * Records a started propagation.
+     *
+     * @param propagation The started propagation
+     */
+    synchronized void add( SubentryPropagation propagation )
+    {
+        pending.add( propagation );
+        save();
+    }
+
+
+    /**
+     * Forgets a propagation once all the selected entries have been updated.
+     *
+     * @param propagation The ended propagation
+     */
+    synchronized void remove( SubentryPropagation propagation )
+    {
+        if ( pending.remove( propagation ) )
+        {
+            save();
+        }
+    }
+
+
+    /**
+     * @param propagation The propagation
+     * @return <code>true</code> if the propagation is recorded as pending
+     */
+    synchronized boolean contains( SubentryPropagation propagation )
+    {
+        return pending.contains( propagation );
+    }
+
+
+    /**
+     * Writes the pending propagations in a temporary file, which then replaces the
+     * current one, or deletes the file when there are no more pending propagations.
+     */
+    private void save()
+    {
+        try
+        {
+            if ( pending.isEmpty() )
+            {
+                Files.deleteIfExists( file.toPath() );
+
+                return;
+            }
+
+            File tmpFile = new File( file.getPath() + ".tmp" );
+
+            try ( OutputStream out = Files.newOutputStream( tmpFile.toPath() );
+                DataOutputStream data = new DataOutputStream( out ) )
+            {
+                data.writeInt( pending.size() );
+
+                for ( SubentryPropagation propagation : pending )
+                {
+                    data.writeUTF( propagation.getSubentryDn().getName() );
+                    data.writeBoolean( propagation.isAdding() );
+                    data.writeInt( propagation.getAdministrativeRoles().size() );
+
+                    for ( AdministrativeRole role : propagation.getAdministrativeRoles() )
+                    {
+                        data.writeUTF( role.name() );
+                    }
+                }
+            }
+
+            Files.move( tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch ( IOException ioe )
+        {
+            // The propagations are still running, only a restart will miss them
+            LOG.error( "Cannot save the pending subentry propagations in {}", file, ioe );
+        }
+    }
+}
@@ -0,0 +1,415 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.subtree;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import javax.naming.directory.SearchControls;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.filter.ObjectClassNode;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.entry.ClonedServerEntry;
+import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
+import org.apache.directory.server.core.api.interceptor.context.HasEntryOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionNexus;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.api.subtree.SubentryPropagation;
+import org.apache.directory.server.core.api.subtree.SubentryUtils;
+import org.apache.directory.server.i18n.I18n;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A background task updating the subentry operational attributes of the entries
+ * selected by an added, removed or modified subentry. The candidates are read
+ * with a subtree search, and the selected entries are modified in batches, each
+ * batch being applied in its own write transaction while holding the partition
+ * write lock. Until the task is done, the selection is evaluated on the fly
+ * by the {@link SubentryUtils#getSubentryAttribute} method.
+ * <br>
+ * A failed propagation stays registered, and is retried later, the delay doubling
+ * after each failure. It's also recorded in the {@link SubentryPropagationStore}
+ * until it's done, so that it's resumed on the next startup if the server is
+ * stopped before.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class SubentryPropagator implements Runnable
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( SubentryPropagator.class );
+
+    /** The delay before the first retry of a failed propagation, in ms */
+    static final long INITIAL_RETRY_DELAY = 1000L;
+
+    /** The max delay between two retries of a failed propagation, in ms */
+    static final long MAX_RETRY_DELAY = 60000L;
+
+    /** The DirectoryService instance */
+    private final DirectoryService directoryService;
+
+    /** A reference to the nexus for direct backend operations */
+    private final PartitionNexus nexus;
+
+    /** The helper evaluating the pending subentries */
+    private final SubentryUtils subentryUtils;
+
+    /** The propagation state */
+    private final SubentryPropagation propagation;
+
+    /** The base of the selected entries */
+    private final Dn baseDn;
+
+    /** The max number of entries modified in a single transaction */
+    private final int batchSize;
+
+    /** The executor running the propagation, and its retries */
+    private final ScheduledExecutorService executor;
+
+    /** The pending propagations, kept on disk */
+    private final SubentryPropagationStore store;
+
+    /** The delay before the next retry, in ms */
+    private long retryDelay = INITIAL_RETRY_DELAY;
+
+
+    /**
+     * Creates a new instance of SubentryPropagator.
+     *
+     * @param directoryService The DirectoryService instance
+     * @param subentryUtils The helper evaluating the pending subentries
+     * @param propagation The propagation state, which must have been registered in the SubentryCache
+     * @param baseDn The base of the selected entries
+     * @param batchSize The max number of entries modified in a single transaction
+     * @param executor The executor running the propagation, and its retries
+     * @param store The pending propagations, where the propagation must have been added
+     */
+    SubentryPropagator( DirectoryService directoryService, SubentryUtils subentryUtils,
+        SubentryPropagation propagation, Dn baseDn, int batchSize, ScheduledExecutorService executor,
+        SubentryPropagationStore store )
+    {
+        this.directoryService = directoryService;
+        this.nexus = directoryService.getPartitionNexus();
+        this.subentryUtils = subentryUtils;
+        this.propagation = propagation;
+        this.baseDn = baseDn;
+        this.batchSize = batchSize;
+        this.executor = executor;
+        this.store = store;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run()
+    {
+        LOG.info( "Starting the propagation of the subentry {}", propagation.getSubentryDn() );
+
+        try
+        {
+            propagate();
+
+            LOG.info( "Propagation of the subentry {} done in {} ms : {}", propagation.getSubentryDn(),
+                System.currentTimeMillis() - propagation.getStartTime(), propagation );
+        }
+        catch ( Exception e )
+        {
+            LOG.error( "Failed to propagate the subentry {}, retrying in {} ms : {}", propagation.getSubentryDn(),
+                retryDelay, propagation, e );
+
+            // Keep evaluating the subentry on the fly until it's propagated
+            directoryService.getSubentryCache().failPropagation( propagation );
+            scheduleRetry();
+
+            return;
+        }
+
+        store.remove( propagation );
+        directoryService.getSubentryCache().endPropagation( propagation );
+    }
+
+
+    /**
+     * Schedules a new attempt of a failed propagation
+     */
+    private void scheduleRetry()
+    {
+        long delay = retryDelay;
+        retryDelay = Math.min( retryDelay * 2, MAX_RETRY_DELAY );
+
+        try
+        {
+            executor.schedule( this::retry, delay, TimeUnit.MILLISECONDS );
+        }
+        catch ( RejectedExecutionException ree )
+        {
+            LOG.warn( "The server is stopping, the subentry {} will be propagated on the next startup",
+                propagation.getSubentryDn() );
+        }
+    }
+
+
+    /**
+     * Runs a failed propagation again, unless the server is stopping : it will then be
+     * resumed on the next startup.
+     */
+    private void retry()
+    {
+        if ( directoryService.getSubentryCache().retryPropagation( propagation ) )
+        {
+            run();
+        }
+        else
+        {
+            LOG.warn( "The server is stopping, the subentry {} will be propagated on the next startup",
+                propagation.getSubentryDn() );
+        }
+    }
+
+
+    /**
+     * Reads all the candidates, and update the one which don't reference the
+     * propagated subentries as they should.
+     */
+    void propagate() throws Exception
+    {
+        CoreSession session = directoryService.getAdminSession();
+        Partition partition = nexus.getPartition( baseDn );
+
+        SearchControls controls = new SearchControls();
+        controls.setSearchScope( SearchControls.SUBTREE_SCOPE );
+        controls.setReturningAttributes( new String[]
+            { SchemaConstants.ALL_OPERATIONAL_ATTRIBUTES, SchemaConstants.ALL_USER_ATTRIBUTES } );
+
+        SearchOperationContext searchContext = new SearchOperationContext( session, baseDn,
+            ObjectClassNode.OBJECT_CLASS_NODE, controls );
+        searchContext.setAliasDerefMode( AliasDerefMode.NEVER_DEREF_ALIASES );
+        searchContext.setPartition( partition );
+
+        List<Dn> batch = new ArrayList<>( batchSize );
+
+        try ( PartitionTxn readTxn = partition.beginReadTransaction() )
+        {
+            HasEntryOperationContext hasEntryContext = new HasEntryOperationContext( session, baseDn );
+            hasEntryContext.setPartition( partition );
+            hasEntryContext.setTransaction( readTxn );
+
+            if ( !nexus.hasEntry( hasEntryContext ) )
+            {
+                // The selected subtree does not exist (anymore) : there is nothing to update
+                return;
+            }
+
+            searchContext.setTransaction( readTxn );
+            EntryFilteringCursor candidates = nexus.search( searchContext );
+
+            try
+            {
+                while ( candidates.next() )
+                {
+                    Entry candidate = candidates.get();
+
+                    if ( candidate instanceof ClonedServerEntry )
+                    {
+                        candidate = ( ( ClonedServerEntry ) candidate ).getOriginalEntry();
+                    }
+
+                    propagation.incrementScanned();
+
+                    if ( !getModifications( candidate.getDn(), candidate ).isEmpty() )
+                    {
+                        batch.add( candidate.getDn() );
+
+                        if ( batch.size() >= batchSize )
+                        {
+                            update( session, partition, batch );
+                            batch.clear();
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                try
+                {
+                    candidates.close();
+                }
+                catch ( Exception e )
+                {
+                    LOG.error( I18n.err( I18n.ERR_168 ), e );
+                }
+            }
+        }
+
+        if ( !batch.isEmpty() )
+        {
+            update( session, partition, batch );
+        }
+    }
+
+
+    /**
+     * Applies the modifications on a batch of entries, in a single transaction. The
+     * entries are read again, as they may have been modified since we have fetched them.
+     */
+    private void update( CoreSession session, Partition partition, List<Dn> batch ) throws LdapException
+    {
+        Lock lock = directoryService.getOperationManager().getRWLock( partition.getSuffixDn() ).writeLock();
+        lock.lock();
+
+        PartitionTxn transaction = null;
+
+        try
+        {
+            transaction = partition.beginWriteTransaction();
+            int updated = 0;
+
+            for ( Dn dn : batch )
+            {
+                LookupOperationContext lookupContext = new LookupOperationContext( session, dn,
+                    SchemaConstants.ALL_ATTRIBUTES_ARRAY );
+                lookupContext.setPartition( partition );
+                lookupContext.setTransaction( transaction );
+
+                Entry entry = nexus.lookup( lookupContext );
+
+                if ( entry == null )
+                {
+                    // Deleted in the meantime
+                    continue;
+                }
+
+                List<Modification> modifications = getModifications( dn, entry );
+
+                if ( !modifications.isEmpty() )
+                {
+                    ModifyOperationContext modifyContext = new ModifyOperationContext( session, dn, modifications );
+                    modifyContext.setPartition( partition );
+                    modifyContext.setTransaction( transaction );
+
+                    nexus.modify( modifyContext );
+                    updated++;
+                }
+            }
+
+            transaction.commit();
+            propagation.addUpdated( updated );
+
+            LOG.debug( "Subentry propagation progress : {}", propagation );
+        }
+        catch ( LdapException le )
+        {
+            abort( transaction );
+
+            throw le;
+        }
+        catch ( IOException ioe )
+        {
+            abort( transaction );
+
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Aborts the transaction of a failed batch
+     */
+    private void abort( PartitionTxn transaction ) throws LdapException
+    {
+        if ( transaction == null )
+        {
+            return;
+        }
+
+        try
+        {
+            transaction.abort();
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * Computes the modifications making the stored subentry operational attributes of an
+     * entry match the evaluation of the pending subentries.
+     */
+    private List<Modification> getModifications( Dn dn, Entry entry ) throws LdapException
+    {
+        List<Modification> modifications = new ArrayList<>();
+
+        for ( AttributeType attributeType : directoryService.getAtProvider().getSubentryOperationalAttributes() )
+        {
+            Attribute stored = entry.get( attributeType );
+            Attribute evaluated = subentryUtils.getSubentryAttribute( dn, entry, attributeType );
+
+            if ( evaluated == stored )
+            {
+                continue;
+            }
+
+            if ( evaluated == null )
+            {
+                modifications.add( new DefaultModification( ModificationOperation.REMOVE_ATTRIBUTE,
+                    new DefaultAttribute( attributeType ) ) );
+            }
+            else
+            {
+                modifications.add( new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, evaluated ) );
+            }
+        }
+
+        return modifications;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.core.subtree;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.subtree.AdministrativeRole;
+import org.apache.directory.api.ldap.model.subtree.BaseSubtreeSpecification;
+import org.apache.directory.api.ldap.model.subtree.Subentry;
+import org.apache.directory.api.ldap.model.subtree.SubtreeSpecification;
+import org.apache.directory.server.core.api.subtree.SubentryPropagation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Tests the persistence of the pending subentry propagations.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SubentryPropagationStoreTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    private SubentryPropagation createPropagation( String subentryDn, boolean adding, AdministrativeRole... roles )
+        throws Exception
+    {
+        SubtreeSpecification ss = new BaseSubtreeSpecification();
+        Subentry subentry = new Subentry();
+        subentry.setAdministrativeRoles( EnumSet.of( roles[0], roles ) );
+        subentry.setSubtreeSpecification( ss );
+
+        return new SubentryPropagation( new Dn( subentryDn ), subentry, ss, adding );
+    }
+
+
+    @Test
+    public void testReloadPendingPropagations() throws Exception
+    {
+        File file = new File( folder.getRoot(), SubentryPropagationStore.FILE_NAME );
+        SubentryPropagationStore store = new SubentryPropagationStore( file );
+        SubentryPropagation acs = createPropagation( "cn=acs,ou=system", true,
+            AdministrativeRole.AccessControlInnerArea );
+        SubentryPropagation collective = createPropagation( "cn=collective,ou=people,ou=system", false,
+            AdministrativeRole.CollectiveAttributeSpecificArea, AdministrativeRole.TriggerExecutionInnerArea );
+        SubentryPropagation done = createPropagation( "cn=done,ou=system", true,
+            AdministrativeRole.AccessControlInnerArea );
+
+        store.add( acs );
+        store.add( collective );
+        store.add( done );
+        store.remove( done );
+
+        assertTrue( store.contains( acs ) );
+        assertFalse( store.contains( done ) );
+
+        // The server is restarted
+        SubentryPropagationStore reloaded = new SubentryPropagationStore( file );
+        List<SubentryPropagation> pending = reloaded.load( null );
+
+        assertEquals( 2, pending.size() );
+
+        assertEquals( new Dn( "cn=acs,ou=system" ), pending.get( 0 ).getSubentryDn() );
+        assertTrue( pending.get( 0 ).isAdding() );
+        assertEquals( EnumSet.of( AdministrativeRole.AccessControlInnerArea ),
+            pending.get( 0 ).getAdministrativeRoles() );
+        assertTrue( pending.get( 0 ).getSubentry().isAccessControlAdminRole() );
+
+        assertEquals( new Dn( "cn=collective,ou=people,ou=system" ), pending.get( 1 ).getSubentryDn() );
+        assertFalse( pending.get( 1 ).isAdding() );
+        assertEquals( EnumSet.of( AdministrativeRole.CollectiveAttributeSpecificArea,
+            AdministrativeRole.TriggerExecutionInnerArea ), pending.get( 1 ).getAdministrativeRoles() );
+
+        // The reloaded propagations are pending until they are done
+        assertTrue( reloaded.contains( pending.get( 0 ) ) );
+        reloaded.remove( pending.get( 0 ) );
+        reloaded.remove( pending.get( 1 ) );
+
+        assertFalse( file.exists() );
+        assertTrue( new SubentryPropagationStore( file ).load( null ).isEmpty() );
+    }
+
+
+    @Test
+    public void testNoPendingPropagations() throws Exception
+    {
+        File file = new File( folder.getRoot(), SubentryPropagationStore.FILE_NAME );
+
+        assertTrue( new SubentryPropagationStore( file ).load( null ).isEmpty() );
+    }
+}
@@ -43,10 +43,10 @@ import org.apache.directory.api.ldap.trigger.LdapOperation;
 import org.apache.directory.api.ldap.trigger.TriggerSpecification;
 import org.apache.directory.api.ldap.trigger.TriggerSpecificationParser;
 import org.apache.directory.api.ldap.trigger.TriggerSpecification.SPSpec;
-import org.apache.directory.server.constants.ApacheSchemaConstants;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.InterceptorEnum;
+import org.apache.directory.server.core.api.OperationEnum;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
 import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
@@ -148,7 +148,9 @@ public class TriggerInterceptor extends BaseInterceptor
             entry = directoryService.getPartitionNexus().lookup( lookupContext );
         }
 
-        Attribute subentries = entry.get( ApacheSchemaConstants.TRIGGER_EXECUTION_SUBENTRIES_AT );
+        // The subentries may be virtual, or not yet propagated
+        Attribute subentries = subentryUtils.getSubentryAttribute( entry.getDn(), entry,
+            directoryService.getAtProvider().getTriggerExecutionSubentries() );
 
         if ( subentries == null )
         {
@@ -236,6 +238,21 @@ public class TriggerInterceptor extends BaseInterceptor
     // Interceptor Overrides
     ////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * The triggers are not evaluated when the service is disabled. Otherwise, the interceptor
+     * is always needed, even when no trigger subentry exists : the added and modified trigger
+     * subentries have to be cached, and the entryTrigger attribute of an entry applies
+     * without any subentry.
+     * 
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isApplicable( OperationEnum operation )
+    {
+        return enabled;
+    }
+
+
     @Override
     public void init( DirectoryService directoryService ) throws LdapException
     {
@@ -21,11 +21,8 @@ package org.apache.directory.server.core.partition.impl.btree.jdbm;
 
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
 
 import jdbm.helper.Serializer;
 
@@ -40,6 +37,7 @@ import org.apache.directory.api.ldap.model.name.Rdn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.CompactEntryCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -81,74 +79,18 @@ public class EntrySerializer implements Serializer
 
 
     /**
-     * <p>
+     * This is the place where we serialize entries. They are stored using the
+     * compact format described in {@link CompactEntryCodec}.
      * 
-     * This is the place where we serialize entries, and all theirs
-     * elements. the reason why we don't call the underlying methods
-     * (<code>ServerAttribute.write(), Value.write()</code>) is that we need
-     * access to the registries to read back the values.
-     * <p>
-     * The structure used to store the entry is the following :
-     * <ul>
-     *   <li><b>[a byte]</b> : if the Dn is empty 0 will be written else 1</li>
-     *   <li><b>[Rdn]</b> : The entry's Rdn.</li>
-     *   <li><b>[numberAttr]</b> : the bumber of attributes. Can be 0</li>
-     *   <li>For each Attribute :
-     *     <ul>
-     *       <li><b>[attribute's oid]</b> : The attribute's OID to get back
-     *       the attributeType on deserialization</li>
-     *       <li><b>[Attribute]</b> The attribute</li>
-     *     </ul>
-     *   </li>
-     * </ul>
+     * @param object The entry to serialize
+     * @return The serialized entry
+     * @throws IOException If the entry cannot be serialized
      */
     public byte[] serialize( Object object ) throws IOException
     {
         Entry entry = ( Entry ) object;
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutput out = new ObjectOutputStream( baos );
-
-        // First, the Dn
-        Dn dn = entry.getDn();
-
-        // Write the Rdn of the Dn
-        if ( dn.isEmpty() )
-        {
-            out.writeByte( 0 );
-        }
-        else
-        {
-            out.writeByte( 1 );
-            Rdn rdn = dn.getRdn();
-            rdn.writeExternal( out );
-        }
-
-        // Then the attributes.
-        out.writeInt( entry.getAttributes().size() );
-
-        // Iterate through the keys. We store the Attribute
-        // here, to be able to restore it in the readExternal :
-        // we need access to the registries, which are not available
-        // in the ServerAttribute class.
-        for ( Attribute attribute : entry.getAttributes() )
-        {
-            AttributeType attributeType = attribute.getAttributeType();
-
-            // Write the oid to be able to restore the AttributeType when deserializing
-            // the attribute
-            String oid = attributeType.getOid();
-
-            out.writeUTF( oid );
-
-            // Write the attribute
-            attribute.writeExternal( out );
-        }
-
-        out.flush();
-
-        // Note : we don't store the ObjectClassAttribute. It has already
-        // been stored as an attribute.
+        byte[] bytes = CompactEntryCodec.serialize( entry );
 
         if ( IS_DEBUG )
         {
@@ -156,7 +98,7 @@ public class EntrySerializer implements Serializer
             LOG.debug( "Serialize {}", entry );
         }
 
-        return baos.toByteArray();
+        return bytes;
     }
 
 
@@ -168,6 +110,39 @@ public class EntrySerializer implements Serializer
      *  @throws IOException if we can't deserialize the Entry
      */
     public Object deserialize( byte[] bytes ) throws IOException
+    {
+        if ( CompactEntryCodec.isCompact( bytes, 0, bytes.length ) )
+        {
+            return CompactEntryCodec.deserialize( schemaManager, bytes, 0, bytes.length );
+        }
+
+        return deserializeLegacy( bytes );
+    }
+
+
+    /**
+     * Deserialize an Entry stored using the legacy, Java serialization based, format. Such
+     * an entry will be stored in the compact format the next time it is written.
+     * 
+     * The structure used to store the entry is the following :
+     * <ul>
+     *   <li><b>[a byte]</b> : if the Dn is empty 0 will be written else 1</li>
+     *   <li><b>[Rdn]</b> : The entry's Rdn.</li>
+     *   <li><b>[numberAttr]</b> : the bumber of attributes. Can be 0</li>
+     *   <li>For each Attribute :
+     *     <ul>
+     *       <li><b>[attribute's oid]</b> : The attribute's OID to get back
+     *       the attributeType on deserialization</li>
+     *       <li><b>[Attribute]</b> The attribute</li>
+     *     </ul>
+     *   </li>
+     * </ul>
+     *  
+     *  @param bytes the byte array containing the serialized entry
+     *  @return An instance of a Entry object 
+     *  @throws IOException if we can't deserialize the Entry
+     */
+    private Object deserializeLegacy( byte[] bytes ) throws IOException
     {
         ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( bytes ) );
 
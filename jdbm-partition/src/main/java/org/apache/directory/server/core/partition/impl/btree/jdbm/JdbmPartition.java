@@ -413,6 +413,7 @@ public class JdbmPartition extends AbstractBTreePartition
 
             EvaluatorBuilder evaluatorBuilder = new EvaluatorBuilder( this, schemaManager );
             CursorBuilder cursorBuilder = new CursorBuilder( this, evaluatorBuilder );
+            cursorBuilder.setIndexIntersectionEnabled( indexIntersectionEnabled );
 
             setSearchEngine( new DefaultSearchEngine( this, cursorBuilder, evaluatorBuilder, getOptimizer() ) );
 
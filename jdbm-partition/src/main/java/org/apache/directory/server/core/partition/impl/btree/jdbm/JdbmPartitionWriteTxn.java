@@ -59,6 +59,7 @@ public class JdbmPartitionWriteTxn extends PartitionWriteTxn
     @Override
     public void commit() throws IOException
     {
+        fireBeforeCompletion();
         recordManager.commit();
         
         // And flush the journal
@@ -87,7 +88,14 @@ public class JdbmPartitionWriteTxn extends PartitionWriteTxn
     @Override
     public void abort() throws IOException
     {
-        recordManager.rollback();
+        try
+        {
+            fireBeforeCompletion();
+        }
+        finally
+        {
+            recordManager.rollback();
+        }
     }
 
 
@@ -24,9 +24,14 @@ import java.io.IOException;
 
 import jdbm.helper.Serializer;
 
+import org.apache.directory.server.xdbm.EntryIdCodec;
+
 
 /**
- * A {@link Serializer} for UUIDs
+ * A {@link Serializer} for UUIDs. The canonical UUIDs are stored in their 16 bytes binary
+ * form, prefixed by a marker byte. The other IDs, and the IDs written by the previous
+ * versions, are stored using the {@link StringSerializer}, which always produces an even
+ * number of bytes : the two formats can't be confused.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -35,6 +40,12 @@ public class UuidSerializer implements Serializer
     private static final long serialVersionUID = 237756689544852128L;
     public static final UuidSerializer INSTANCE = new UuidSerializer();
 
+    /** The marker for an ID stored in its binary form */
+    private static final byte COMPACT_UUID = 0x01;
+
+    /** The size of a serialized binary ID */
+    private static final int COMPACT_LENGTH = EntryIdCodec.COMPACT_SIZE + 1;
+
 
     /**
      * {@inheritDoc}
@@ -43,6 +54,15 @@ public class UuidSerializer implements Serializer
     {
         String uuid = ( String ) o;
 
+        if ( EntryIdCodec.isCompactable( uuid ) )
+        {
+            byte[] bytes = new byte[COMPACT_LENGTH];
+            bytes[0] = COMPACT_UUID;
+            EntryIdCodec.write( uuid, bytes, 1 );
+
+            return bytes;
+        }
+
         return StringSerializer.INSTANCE.serialize( uuid );
     }
 
@@ -52,6 +72,11 @@ public class UuidSerializer implements Serializer
      */
     public Object deserialize( byte[] bytes ) throws IOException
     {
+        if ( ( bytes.length == COMPACT_LENGTH ) && ( bytes[0] == COMPACT_UUID ) )
+        {
+            return EntryIdCodec.read( bytes, 1 );
+        }
+
         return StringSerializer.INSTANCE.deserialize( bytes );
     }
 }
@@ -21,12 +21,23 @@ package org.apache.directory.server.core.partition.impl.btree.jdbm;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.entry.Attribute;
@@ -42,6 +53,8 @@ import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
 import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.core.api.entry.LazyEntry;
+import org.apache.directory.server.xdbm.CompactEntryCodec;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -287,4 +300,219 @@ public class ServerEntrySerializerTest
 
         assertEquals( entry, result );
     }
+
+
+    /**
+     * The Strings are written using the modified UTF-8 encoding : the unpaired surrogates, the
+     * supplementary characters and the NUL char must be read back unchanged. The supportedSASLMechanisms
+     * AttributeType has no equality MatchingRule, so its values are not normalized.
+     */
+    @Test
+    public void testSerializeServerEntryWithUnpairedSurrogate() throws Exception
+    {
+        String value = "lone \uD800 high, lone \uDC00 low, \uD83D\uDE00, \u0000, \u00e9\u20ac";
+        Entry entry = new DefaultEntry( schemaManager, "cn=test,ou=system" );
+        entry.add( "supportedSASLMechanisms", value );
+
+        EntrySerializer ses = new EntrySerializer( schemaManager );
+
+        byte[] data = ses.serialize( entry );
+
+        Entry result = ( Entry ) ses.deserialize( data );
+
+        // The user provided value is written by the Value itself, as UTF-8 bytes, but the
+        // normalized value is written using writeUTF
+        assertEquals( value, result.get( "supportedSASLMechanisms" ).get().getNormalized() );
+    }
+
+
+    @Test
+    public void testDeserializeLegacyServerEntry() throws Exception
+    {
+        Entry entry = new DefaultEntry( schemaManager,
+            "cn=test,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: test",
+            "SN: Test",
+            "description: a description with a non indexed attribute",
+            "userPassword", Strings.getBytesUtf8( "password" ) );
+
+        EntrySerializer ses = new EntrySerializer( schemaManager );
+
+        byte[] legacy = serializeLegacy( entry );
+        byte[] compact = ses.serialize( entry );
+
+        assertFalse( CompactEntryCodec.isCompact( legacy, 0, legacy.length ) );
+        assertTrue( CompactEntryCodec.isCompact( compact, 0, compact.length ) );
+        assertTrue( compact.length < legacy.length );
+
+        Entry result = ( Entry ) ses.deserialize( legacy );
+
+        assertEquals( entry.getDn().getRdn(), result.getDn().getRdn() );
+        assertEquals( new HashSet<>( entry.getAttributes() ), new HashSet<>( result.getAttributes() ) );
+
+        // The legacy entry is written back using the compact format
+        byte[] upgraded = ses.serialize( result );
+
+        assertTrue( CompactEntryCodec.isCompact( upgraded, 0, upgraded.length ) );
+        assertEquals( result, ses.deserialize( upgraded ) );
+    }
+
+
+    @Test
+    public void testDeserializeLazyServerEntry() throws Exception
+    {
+        Entry entry = new DefaultEntry( schemaManager,
+            "cn=test,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: test",
+            "SN: Test",
+            "description: a description with a non indexed attribute" );
+
+        EntrySerializer ses = new EntrySerializer( schemaManager );
+
+        Entry result = ( Entry ) ses.deserialize( ses.serialize( entry ) );
+
+        assertTrue( result instanceof LazyEntry );
+
+        LazyEntry lazyEntry = ( LazyEntry ) result;
+
+        // Nothing has been decoded yet
+        assertEquals( 4, lazyEntry.size() );
+        assertEquals( 4, lazyEntry.getPendingSize() );
+        assertEquals( 4, lazyEntry.getAttributeTypes().size() );
+
+        // Removing an attribute does not decode it
+        lazyEntry.removeAttributes( "description" );
+        assertEquals( 3, lazyEntry.getPendingSize() );
+
+        // Only the requested attribute is decoded
+        assertEquals( entry.get( "cn" ), lazyEntry.get( "cn" ) );
+        assertEquals( 2, lazyEntry.getPendingSize() );
+
+        entry.removeAttributes( "description" );
+        assertEquals( new HashSet<>( entry.getAttributes() ), new HashSet<>( lazyEntry.getAttributes() ) );
+        assertEquals( 0, lazyEntry.getPendingSize() );
+    }
+
+
+    /**
+     * A LazyEntry stored in the entry cache is shared by all the concurrent searches
+     * returning it : check that concurrent readers, each decoding the attributes in a
+     * different order or iterating over them, always see the whole entry.
+     */
+    @Test
+    public void testConcurrentReadsOfCachedLazyEntry() throws Exception
+    {
+        Entry entry = new DefaultEntry( schemaManager,
+            "cn=test,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "objectClass: organizationalPerson",
+            "objectClass: inetOrgPerson",
+            "cn: test",
+            "SN: Test",
+            "givenName: given",
+            "mail: test@example.com",
+            "telephoneNumber: 123",
+            "description: a description",
+            "title: a title",
+            "l: a locality" );
+        String[] ids =
+            { "objectClass", "cn", "sn", "givenName", "mail", "telephoneNumber", "description", "title", "l" };
+
+        EntrySerializer ses = new EntrySerializer( schemaManager );
+        byte[] data = ses.serialize( entry );
+        int nbThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool( nbThreads );
+
+        try
+        {
+            for ( int round = 0; round < 200; round++ )
+            {
+                // The entry the cache hands to all the searches
+                Entry cached = ( Entry ) ses.deserialize( data );
+                CyclicBarrier start = new CyclicBarrier( nbThreads );
+                List<Future<Boolean>> readers = new ArrayList<>();
+
+                for ( int t = 0; t < nbThreads; t++ )
+                {
+                    int first = t;
+
+                    readers.add( executor.submit( () ->
+                    {
+                        start.await();
+
+                        if ( first % 3 == 0 )
+                        {
+                            int nbAttributes = 0;
+
+                            for ( Attribute attribute : cached )
+                            {
+                                if ( !attribute.equals( entry.get( attribute.getAttributeType() ) ) )
+                                {
+                                    return false;
+                                }
+
+                                nbAttributes++;
+                            }
+
+                            return nbAttributes == ids.length;
+                        }
+
+                        for ( int i = 0; i < ids.length; i++ )
+                        {
+                            String id = ids[( first + i ) % ids.length];
+
+                            if ( !entry.get( id ).equals( cached.get( id ) ) || !cached.containsAttribute( id ) )
+                            {
+                                return false;
+                            }
+                        }
+
+                        return cached.contains( "cn", "test" );
+                    } ) );
+                }
+
+                for ( Future<Boolean> reader : readers )
+                {
+                    assertTrue( reader.get( 30, TimeUnit.SECONDS ) );
+                }
+
+                // Only the Rdn is serialized
+                assertEquals( entry.getDn().getRdn(), cached.getDn().getRdn() );
+                assertEquals( new HashSet<>( entry.getAttributes() ), new HashSet<>( cached.getAttributes() ) );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+
+    /**
+     * The Java serialization based format used before the compact format
+     */
+    private byte[] serializeLegacy( Entry entry ) throws Exception
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        try ( ObjectOutputStream out = new ObjectOutputStream( baos ) )
+        {
+            out.writeByte( 1 );
+            entry.getDn().getRdn().writeExternal( out );
+            out.writeInt( entry.getAttributes().size() );
+
+            for ( Attribute attribute : entry.getAttributes() )
+            {
+                out.writeUTF( attribute.getAttributeType().getOid() );
+                attribute.writeExternal( out );
+            }
+        }
+
+        return baos.toByteArray();
+    }
 }
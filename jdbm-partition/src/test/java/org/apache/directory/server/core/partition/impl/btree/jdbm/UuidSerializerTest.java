@@ -0,0 +1,90 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import org.apache.directory.api.util.Strings;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+
+/**
+ * Tests for the UuidSerializer class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class UuidSerializerTest
+{
+    @Test
+    public void testRandomUuids() throws IOException
+    {
+        UuidSerializer serializer = UuidSerializer.INSTANCE;
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            String uuid = UUID.randomUUID().toString();
+            byte[] serialized = serializer.serialize( uuid );
+
+            assertEquals( 17, serialized.length );
+            assertEquals( uuid, serializer.deserialize( serialized ) );
+        }
+
+        String uuid = Strings.getUUID( 1L );
+        assertEquals( uuid, serializer.deserialize( serializer.serialize( uuid ) ) );
+    }
+
+
+    @Test
+    public void testNonCanonicalIds() throws IOException
+    {
+        UuidSerializer serializer = UuidSerializer.INSTANCE;
+
+        // Upper case UUIDs must be kept as is
+        String uuid = "F81D4FAE-7DEC-11D0-A765-00A0C91E6BF6";
+        byte[] serialized = serializer.serialize( uuid );
+
+        assertEquals( 72, serialized.length );
+        assertEquals( uuid, serializer.deserialize( serialized ) );
+
+        // An 8 chars ID is serialized using 16 bytes, which must not be confused with a binary ID
+        String id = "abcdefgh";
+        assertEquals( id, serializer.deserialize( serializer.serialize( id ) ) );
+    }
+
+
+    @Test
+    public void testLegacyIds() throws IOException
+    {
+        String uuid = UUID.randomUUID().toString();
+        byte[] legacy = StringSerializer.INSTANCE.serialize( uuid );
+
+        assertEquals( uuid, UuidSerializer.INSTANCE.deserialize( legacy ) );
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+
+package org.apache.directory.server.core.partition.tree;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.partition.impl.btree.jdbm.DupsContainerCursorTest;
+import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmPartition;
+import org.apache.directory.server.core.shared.DefaultDnFactory;
+import org.apache.directory.server.core.shared.partition.PartitionRoutingTable;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Test the routing of a Dn to its partition.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PartitionRoutingTableTest
+{
+    private static SchemaManager schemaManager;
+    private static DnFactory dnFactory;
+
+
+    @BeforeClass
+    public static void init() throws Exception
+    {
+        String workingDirectory = System.getProperty( "workingDirectory" );
+
+        if ( workingDirectory == null )
+        {
+            String path = DupsContainerCursorTest.class.getResource( "" ).getPath();
+            int targetPos = path.indexOf( "target" );
+            workingDirectory = path.substring( 0, targetPos + 6 );
+        }
+
+        File schemaRepository = new File( workingDirectory, "schema" );
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( new File( workingDirectory ) );
+        extractor.extractOrCopy( true );
+        LdifSchemaLoader loader = new LdifSchemaLoader( schemaRepository );
+        schemaManager = new DefaultSchemaManager( loader );
+
+        boolean loaded = schemaManager.loadAllEnabled();
+
+        if ( !loaded )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+
+        dnFactory = new DefaultDnFactory( schemaManager, 100 );
+    }
+
+
+    private Partition createPartition( String suffix ) throws LdapException
+    {
+        Partition partition = new JdbmPartition( schemaManager, dnFactory );
+        partition.setSuffixDn( new Dn( schemaManager, suffix ) );
+
+        return partition;
+    }
+
+
+    /**
+     * Test the routing with a single partition
+     */
+    @Test
+    public void testSinglePartition() throws LdapException
+    {
+        Partition partition = createPartition( "dc=example, dc=com" );
+        PartitionRoutingTable routingTable = PartitionRoutingTable.EMPTY.add( partition );
+
+        assertSame( partition, routingTable.getPartition( new Dn( schemaManager, "dc=example,dc=com" ) ) );
+        assertSame( partition, routingTable.getPartition( new Dn( schemaManager, "ou=people,DC=Example,dc=com" ) ) );
+        assertNull( routingTable.getPartition( new Dn( schemaManager, "dc=com" ) ) );
+        assertNull( routingTable.getPartition( new Dn( schemaManager, "dc=test,dc=com" ) ) );
+        assertNull( routingTable.getPartition( new Dn( schemaManager, "ou=system" ) ) );
+    }
+
+
+    /**
+     * Test the routing with disjointed and nested partitions
+     */
+    @Test
+    public void testNestedPartitions() throws LdapException
+    {
+        Partition system = createPartition( "ou=system" );
+        Partition example = createPartition( "dc=example, dc=com" );
+        Partition people = createPartition( "ou=people, dc=example, dc=com" );
+        PartitionRoutingTable routingTable = PartitionRoutingTable.EMPTY.add( system ).add( example ).add( people );
+
+        assertEquals( 3, routingTable.getPartitions().size() );
+        assertSame( system, routingTable.getPartition( new Dn( schemaManager, "uid=admin,ou=system" ) ) );
+        assertSame( example, routingTable.getPartition( new Dn( schemaManager, "ou=groups,dc=example,dc=com" ) ) );
+        assertSame( people, routingTable.getPartition( new Dn( schemaManager, "ou=people,dc=example,dc=com" ) ) );
+        assertSame( people, routingTable.getPartition( new Dn( schemaManager, "uid=user,ou=people,dc=example,dc=com" ) ) );
+        assertNull( routingTable.getPartition( new Dn( schemaManager, "dc=com" ) ) );
+    }
+
+
+    /**
+     * Test that removing a partition creates a new table, leaving the previous one unchanged
+     */
+    @Test
+    public void testRemovePartition() throws LdapException
+    {
+        Partition example = createPartition( "dc=example, dc=com" );
+        Partition people = createPartition( "ou=people, dc=example, dc=com" );
+        PartitionRoutingTable routingTable = PartitionRoutingTable.EMPTY.add( example ).add( people );
+        Dn userDn = new Dn( schemaManager, "uid=user,ou=people,dc=example,dc=com" );
+
+        PartitionRoutingTable newRoutingTable = routingTable.remove( people.getSuffixDn().getNormName() );
+
+        assertSame( example, newRoutingTable.getPartition( userDn ) );
+        assertSame( people, routingTable.getPartition( userDn ) );
+        assertSame( newRoutingTable, newRoutingTable.remove( people.getSuffixDn().getNormName() ) );
+
+        newRoutingTable = newRoutingTable.remove( example.getSuffixDn().getNormName() );
+
+        assertTrue( newRoutingTable.getPartitions().isEmpty() );
+        assertNull( newRoutingTable.getPartition( userDn ) );
+    }
+}
@@ -26,17 +26,25 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.Iterator;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
 import org.apache.directory.api.ldap.model.exception.LdapOperationException;
 import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.ldif.ChangeType;
 import org.apache.directory.api.ldap.model.ldif.LdifEntry;
 import org.apache.directory.api.ldap.model.ldif.LdifReader;
 import org.apache.directory.api.ldap.model.ldif.LdifUtils;
@@ -45,6 +53,7 @@ import org.apache.directory.api.ldap.model.name.Rdn;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.entry.ServerEntryUtils;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
@@ -60,14 +69,51 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A Partition implementation backed by a single LDIF file.
+ * <br>
+ * By default, the whole file is rewritten after each modification. When the change log is enabled,
+ * the modifications are instead appended as LDIF change records to a log stored next to the LDIF
+ * file, and the LDIF file is only rewritten, in the background, once enough changes have been logged.
+ * The logged changes are applied again when the partition is loaded.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
 public class SingleFileLdifPartition extends AbstractLdifPartition
 {
+    /** The extension added to the LDIF file name to get the change log file name */
+    public static final String CHANGE_LOG_EXTN = ".changes";
+
+    /** The default number of logged changes triggering a rewrite of the LDIF file */
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 1000;
+
+    /** The operational attributes updated by a ModifyDN operation */
+    private static final String[] MODDN_OPERATIONAL_ATTRIBUTES = new String[]
+        {
+            SchemaConstants.ENTRY_CSN_AT,
+            SchemaConstants.MODIFIERS_NAME_AT,
+            SchemaConstants.MODIFY_TIMESTAMP_AT
+        };
+
     /** the LDIF file holding the partition's data */
     private RandomAccessFile ldifFile;
 
+    /** the file logging the changes applied since the last rewrite of the LDIF file */
+    private RandomAccessFile changeLog;
+
+    /** flag to append the changes to the change log instead of rewriting the LDIF file, default is set to false */
+    private volatile boolean changeLogEnabled = false;
+
+    /** the number of logged changes triggering a rewrite of the LDIF file */
+    private int compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    /** the number of changes stored in the change log */
+    private int nbLoggedChanges;
+
+    /** the executor rewriting the LDIF file in the background */
+    private ExecutorService compactor;
+
+    /** flag used to avoid scheduling many rewrites at the same time */
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean( false );
+
     /** flag to enable/disable re-writing in-memory partition data back to file, default is set to true */
     private volatile boolean enableRewriting = true;
 
@@ -109,9 +155,17 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
                 throw new IllegalArgumentException( "Partition path must be a LDIF file" );
             }
 
+            File changeLogFile = new File( partitionFile.getPath() + CHANGE_LOG_EXTN );
+
             try
             {
                 ldifFile = new RandomAccessFile( partitionFile, "rws" );
+
+                // Open the change log if it's enabled, or if it still contains changes
+                if ( changeLogEnabled || ( changeLogFile.length() > 0L ) )
+                {
+                    changeLog = new RandomAccessFile( changeLogFile, "rws" );
+                }
             }
             catch ( FileNotFoundException fnfe )
             {
@@ -137,6 +191,11 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
             super.doInit();
 
             loadEntries();
+
+            if ( changeLog != null )
+            {
+                replayChanges( changeLogFile );
+            }
         }
     }
 
@@ -221,7 +280,28 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
             }
 
             dirty = true;
-            rewritePartitionData( addContext.getTransaction() );
+
+            if ( isLoggingChanges() )
+            {
+                Entry entry = addContext.getEntry();
+                LdifEntry change = new LdifEntry();
+                change.setChangeType( ChangeType.Add );
+                change.setDn( entry.getDn() );
+
+                for ( Attribute attribute : entry )
+                {
+                    if ( !entryDnAT.equals( attribute.getAttributeType() ) )
+                    {
+                        change.addAttribute( attribute );
+                    }
+                }
+
+                logChanges( change );
+            }
+            else
+            {
+                rewritePartitionData( addContext.getTransaction() );
+            }
         }
     }
 
@@ -253,7 +333,24 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
             }
 
             dirty = true;
-            rewritePartitionData( partitionTxn );
+
+            if ( isLoggingChanges() )
+            {
+                LdifEntry change = new LdifEntry();
+                change.setChangeType( ChangeType.Modify );
+                change.setDn( modifyContext.getDn() );
+
+                for ( Modification modification : modifyContext.getModItems() )
+                {
+                    change.addModification( modification );
+                }
+
+                logChanges( change );
+            }
+            else
+            {
+                rewritePartitionData( partitionTxn );
+            }
         }
     }
 
@@ -268,7 +365,24 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
         {
             super.rename( renameContext );
             dirty = true;
-            rewritePartitionData( renameContext.getTransaction() );
+
+            if ( isLoggingChanges() )
+            {
+                Dn oldDn = renameContext.getDn();
+                Rdn newRdn = renameContext.getNewRdn();
+
+                LdifEntry change = new LdifEntry();
+                change.setChangeType( ChangeType.ModRdn );
+                change.setDn( oldDn );
+                change.setNewRdn( newRdn.getName() );
+                change.setDeleteOldRdn( renameContext.getDeleteOldRdn() );
+
+                logModDn( renameContext.getTransaction(), change, oldDn.getParent().add( newRdn ) );
+            }
+            else
+            {
+                rewritePartitionData( renameContext.getTransaction() );
+            }
         }
     }
 
@@ -283,7 +397,25 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
         {
             super.move( moveContext );
             dirty = true;
-            rewritePartitionData( moveContext.getTransaction() );
+
+            if ( isLoggingChanges() )
+            {
+                Dn oldDn = moveContext.getDn();
+                Dn newSuperior = moveContext.getNewSuperior();
+
+                LdifEntry change = new LdifEntry();
+                change.setChangeType( ChangeType.ModDn );
+                change.setDn( oldDn );
+                change.setNewRdn( oldDn.getRdn().getName() );
+                change.setDeleteOldRdn( false );
+                change.setNewSuperior( newSuperior.getName() );
+
+                logModDn( moveContext.getTransaction(), change, newSuperior.add( oldDn.getRdn() ) );
+            }
+            else
+            {
+                rewritePartitionData( moveContext.getTransaction() );
+            }
         }
     }
 
@@ -298,7 +430,25 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
         {
             super.moveAndRename( opContext );
             dirty = true;
-            rewritePartitionData( opContext.getTransaction() );
+
+            if ( isLoggingChanges() )
+            {
+                Dn newSuperior = opContext.getNewSuperiorDn();
+                Rdn newRdn = opContext.getNewRdn();
+
+                LdifEntry change = new LdifEntry();
+                change.setChangeType( ChangeType.ModDn );
+                change.setDn( opContext.getDn() );
+                change.setNewRdn( newRdn.getName() );
+                change.setDeleteOldRdn( opContext.getDeleteOldRdn() );
+                change.setNewSuperior( newSuperior.getName() );
+
+                logModDn( opContext.getTransaction(), change, newSuperior.add( newRdn ) );
+            }
+            else
+            {
+                rewritePartitionData( opContext.getTransaction() );
+            }
         }
     }
 
@@ -308,9 +458,33 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
     {
         synchronized ( lock )
         {
+            Dn dn = null;
+
+            if ( isLoggingChanges() )
+            {
+                dn = buildEntryDn( partitionTxn, id );
+            }
+
             Entry deletedEntry = super.delete( partitionTxn, id );
             dirty = true;
-            rewritePartitionData( partitionTxn );
+
+            if ( dn != null )
+            {
+                if ( dn.equals( suffixDn ) )
+                {
+                    contextEntry = null;
+                }
+
+                LdifEntry change = new LdifEntry();
+                change.setChangeType( ChangeType.Delete );
+                change.setDn( dn );
+
+                logChanges( change );
+            }
+            else
+            {
+                rewritePartitionData( partitionTxn );
+            }
 
             return deletedEntry;
         }
@@ -341,6 +515,9 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
                 if ( suffixId == null )
                 {
                     contextEntry = null;
+                    truncateChangeLog();
+                    dirty = false;
+
                     return;
                 }
 
@@ -357,9 +534,12 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
 
                     appendLdif( entry );
 
-                    appendRecursive( partitionTxn, suffixId, suffixEntry.getNbChildren() );
+                    appendRecursive( partitionTxn, suffixId, getChildCount( partitionTxn, suffixId, suffixEntry ) );
                 }
 
+                // The LDIF file now contains all the logged changes
+                truncateChangeLog();
+
                 dirty = false;
             }
             catch ( LdapException e )
@@ -398,7 +578,7 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
             countChildren++;
 
             // And now, the children
-            int nbChildren = element.getKey().getNbChildren();
+            int nbChildren = getChildCount( partitionTxn, childId, element.getKey() );
 
             if ( nbChildren > 0 )
             {
@@ -425,6 +605,281 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
         }
     }
 
+    /**
+     * @return true if the changes have to be appended to the change log
+     */
+    private boolean isLoggingChanges()
+    {
+        return changeLogEnabled && enableRewriting;
+    }
+
+
+    /**
+     * Log a ModifyDN operation. As the operational attributes of the renamed entry
+     * are also updated, a Modify change record holding their new values follows the
+     * ModifyDN change record.
+     */
+    private void logModDn( PartitionTxn partitionTxn, LdifEntry modDn, Dn newDn ) throws LdapException
+    {
+        if ( !newDn.isSchemaAware() )
+        {
+            newDn = new Dn( schemaManager, newDn );
+        }
+
+        Entry renamedEntry = fetch( partitionTxn, getEntryId( partitionTxn, newDn ) );
+
+        LdifEntry modify = new LdifEntry();
+        modify.setChangeType( ChangeType.Modify );
+        modify.setDn( newDn );
+
+        for ( String attributeType : MODDN_OPERATIONAL_ATTRIBUTES )
+        {
+            Attribute attribute = renamedEntry.get( attributeType );
+
+            if ( attribute != null )
+            {
+                modify.addModification( new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE,
+                    attribute ) );
+            }
+        }
+
+        if ( modify.getModifications().isEmpty() )
+        {
+            logChanges( modDn );
+        }
+        else
+        {
+            logChanges( modDn, modify );
+        }
+    }
+
+
+    /**
+     * Append some change records at the end of the change log, and schedule a rewrite of
+     * the LDIF file if the log is too big.
+     *
+     * @param changes the change records to append
+     * @throws LdapException If the change log can't be written
+     */
+    private void logChanges( LdifEntry... changes ) throws LdapException
+    {
+        synchronized ( lock )
+        {
+            StringBuilder sb = new StringBuilder();
+
+            for ( LdifEntry change : changes )
+            {
+                sb.append( LdifUtils.convertToLdif( change ) ).append( '\n' );
+            }
+
+            try
+            {
+                if ( changeLog == null )
+                {
+                    changeLog = new RandomAccessFile( new File( getPartitionPath() ).getPath() + CHANGE_LOG_EXTN,
+                        "rws" );
+                }
+
+                // A single write, so that the records are not interleaved with a partially written one
+                changeLog.seek( changeLog.length() );
+                changeLog.write( Strings.getBytesUtf8( sb.toString() ) );
+            }
+            catch ( IOException ioe )
+            {
+                throw new LdapOtherException( ioe.getMessage(), ioe );
+            }
+
+            nbLoggedChanges += changes.length;
+            dirty = false;
+
+            if ( ( nbLoggedChanges >= compactionThreshold ) && compactionScheduled.compareAndSet( false, true ) )
+            {
+                getCompactor().execute( this::backgroundCompact );
+            }
+        }
+    }
+
+
+    /**
+     * @return the executor used to rewrite the LDIF file in the background
+     */
+    private ExecutorService getCompactor()
+    {
+        if ( compactor == null )
+        {
+            compactor = Executors.newSingleThreadExecutor( runnable ->
+            {
+                Thread thread = new Thread( runnable, "SingleFileLdifPartition-compactor-" + getId() );
+                thread.setDaemon( true );
+
+                return thread;
+            } );
+        }
+
+        return compactor;
+    }
+
+
+    private void backgroundCompact()
+    {
+        try
+        {
+            compact();
+        }
+        catch ( LdapException le )
+        {
+            LOG.error( "Failed to rewrite the LDIF file of the partition {}", getId(), le );
+        }
+    }
+
+
+    /**
+     * Empty the change log
+     */
+    private void truncateChangeLog() throws IOException
+    {
+        if ( changeLog != null )
+        {
+            changeLog.setLength( 0L );
+        }
+
+        nbLoggedChanges = 0;
+    }
+
+
+    /**
+     * Apply the changes found in the change log on top of the entries read from the LDIF file,
+     * then rewrite the LDIF file so that it contains them.
+     * <br>
+     * If the server has been stopped after the LDIF file has been rewritten but before the log
+     * has been emptied, some changes will already be present in the LDIF file : they are ignored.
+     *
+     * @param changeLogFile the change log
+     * @throws LdapException If the changes can't be applied
+     */
+    private void replayChanges( File changeLogFile ) throws LdapException
+    {
+        if ( changeLogFile.length() == 0L )
+        {
+            return;
+        }
+
+        List<LdifEntry> changes;
+
+        try ( LdifReader reader = new LdifReader( schemaManager ) )
+        {
+            changes = reader.parseLdifFile( changeLogFile.getAbsolutePath() );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+
+        LOG.info( "Applying {} logged changes to the partition {}", changes.size(), getId() );
+
+        for ( LdifEntry change : changes )
+        {
+            try
+            {
+                replayChange( change );
+            }
+            catch ( LdapException le )
+            {
+                LOG.warn( "Ignoring the logged change {} : {}", change.getDn(), le.getMessage() );
+            }
+        }
+
+        synchronized ( lock )
+        {
+            dirty = true;
+
+            try ( PartitionTxn partitionTxn = beginReadTransaction() )
+            {
+                rewritePartitionData( partitionTxn );
+            }
+            catch ( IOException ioe )
+            {
+                throw new LdapOtherException( ioe.getMessage(), ioe );
+            }
+        }
+    }
+
+
+    /**
+     * Apply a change read from the change log, without logging it again
+     */
+    private void replayChange( LdifEntry change ) throws LdapException
+    {
+        Dn dn = change.getDn();
+
+        if ( !dn.isSchemaAware() )
+        {
+            dn = new Dn( schemaManager, dn );
+        }
+
+        PartitionTxn partitionTxn = beginWriteTransaction();
+
+        switch ( change.getChangeType() )
+        {
+            case Add:
+                Entry entry = new DefaultEntry( schemaManager, change.getEntry() );
+
+                AddOperationContext addContext = new AddOperationContext( null, entry );
+                addContext.setPartition( this );
+                addContext.setTransaction( partitionTxn );
+
+                super.add( addContext );
+
+                if ( dn.equals( suffixDn ) )
+                {
+                    contextEntry = entry;
+                }
+
+                break;
+
+            case Delete:
+                String id = getEntryId( partitionTxn, dn );
+
+                if ( id != null )
+                {
+                    super.delete( partitionTxn, id );
+                }
+
+                break;
+
+            case Modify:
+                List<Modification> modifications = ServerEntryUtils.toServerModification(
+                    change.getModifications().toArray( new Modification[0] ), schemaManager );
+
+                super.modify( partitionTxn, dn, modifications.toArray( new Modification[0] ) );
+
+                break;
+
+            case ModDn:
+            case ModRdn:
+                Rdn newRdn = new Rdn( schemaManager, change.getNewRdn() );
+
+                if ( !newRdn.equals( dn.getRdn() ) )
+                {
+                    rename( partitionTxn, dn, newRdn, change.isDeleteOldRdn(), null );
+                    dn = new Dn( schemaManager, dn.getParent().add( newRdn ) );
+                }
+
+                if ( change.getNewSuperior() != null )
+                {
+                    Dn newSuperior = new Dn( schemaManager, change.getNewSuperior() );
+
+                    move( partitionTxn, dn, newSuperior, new Dn( schemaManager, newSuperior.add( newRdn ) ), null );
+                }
+
+                break;
+
+            default:
+                throw new LdapOtherException( "Unexpected change type " + change.getChangeType() );
+        }
+    }
+
+
     /**
      * an LdifReader backed by a RandomAccessFile
      */
@@ -505,11 +960,27 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
     @Override
     protected void doDestroy( PartitionTxn partitionTxn ) throws LdapException
     {
+        if ( compactor != null )
+        {
+            compactor.shutdownNow();
+        }
+
+        // Fold the logged changes into the LDIF file
+        if ( nbLoggedChanges > 0 )
+        {
+            compact();
+        }
+
         super.doDestroy( partitionTxn );
         
         try
         {
             ldifFile.close();
+
+            if ( changeLog != null )
+            {
+                changeLog.close();
+            }
         }
         catch ( IOException ioe )
         {
@@ -533,4 +1004,83 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
         // save data if found dirty 
         rewritePartitionData( partitionTxn );
     }
+
+
+    /**
+     * Rewrite the LDIF file so that it contains the changes stored in the change log, and empty the log.
+     *
+     * @throws LdapException If the LDIF file can't be written
+     */
+    public void compact() throws LdapException
+    {
+        synchronized ( lock )
+        {
+            compactionScheduled.set( false );
+
+            if ( !enableRewriting || ( nbLoggedChanges == 0 ) )
+            {
+                return;
+            }
+
+            dirty = true;
+
+            try ( PartitionTxn partitionTxn = beginReadTransaction() )
+            {
+                rewritePartitionData( partitionTxn );
+            }
+            catch ( IOException ioe )
+            {
+                throw new LdapOtherException( ioe.getMessage(), ioe );
+            }
+        }
+    }
+
+
+    /**
+     * @return true if the changes are appended to the change log instead of rewriting the LDIF file
+     */
+    public boolean isChangeLogEnabled()
+    {
+        return changeLogEnabled;
+    }
+
+
+    /**
+     * Enable/disable the change log. When enabled, the changes are appended to a log stored
+     * next to the LDIF file, which is rewritten in the background once
+     * {@link #getCompactionThreshold()} changes have been logged.
+     *
+     * @param changeLogEnabled flag to enable/disable the change log
+     */
+    public void setChangeLogEnabled( boolean changeLogEnabled )
+    {
+        this.changeLogEnabled = changeLogEnabled;
+    }
+
+
+    /**
+     * @return the number of logged changes triggering a rewrite of the LDIF file
+     */
+    public int getCompactionThreshold()
+    {
+        return compactionThreshold;
+    }
+
+
+    /**
+     * @param compactionThreshold the number of logged changes triggering a rewrite of the LDIF file
+     */
+    public void setCompactionThreshold( int compactionThreshold )
+    {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+
+    /**
+     * @return the number of changes stored in the change log
+     */
+    public int getLoggedChangesCount()
+    {
+        return nbLoggedChanges;
+    }
 }
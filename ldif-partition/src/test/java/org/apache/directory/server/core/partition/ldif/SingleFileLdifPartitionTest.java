@@ -222,6 +222,22 @@ public class SingleFileLdifPartitionTest
      * @throws Exception
      */
     private SingleFileLdifPartition createPartition( String fileName, boolean truncate ) throws Exception
+    {
+        return createPartition( fileName, truncate, false );
+    }
+
+
+    /**
+     * creates a partition from the given ldif file, optionally appending the changes to a change log
+     *
+     * @param fileName the full path to the ldif file to be loaded
+     * @param truncate the flag to determine to truncate the file or not
+     * @param changeLog the flag to enable the change log
+     * @return the ldif partition after loading all the data
+     * @throws Exception
+     */
+    private SingleFileLdifPartition createPartition( String fileName, boolean truncate, boolean changeLog )
+        throws Exception
     {
         if ( fileName == null )
         {
@@ -241,6 +257,7 @@ public class SingleFileLdifPartitionTest
         partition.setPartitionPath( new File( fileName ).toURI() );
         partition.setSuffixDn( new Dn( schemaManager, "ou=test,ou=system" ) );
         partition.setSchemaManager( schemaManager );
+        partition.setChangeLogEnabled( changeLog );
         partition.initialize();
 
         return partition;
@@ -1128,6 +1145,115 @@ public class SingleFileLdifPartitionTest
     }
 
 
+    /**
+     * Test that the changes are appended to the change log instead of rewriting the LDIF file,
+     * and that they are applied again when the partition is reloaded
+     */
+    @Test
+    public void testChangeLog() throws Exception
+    {
+        SingleFileLdifPartition partition = injectEntries( createPartition( null, true, true ) );
+
+        File ldifFile = new File( partition.getPartitionPath() );
+        File changeLogFile = new File( ldifFile.getPath() + SingleFileLdifPartition.CHANGE_LOG_EXTN );
+
+        // Nothing written in the LDIF file
+        assertEquals( 0L, ldifFile.length() );
+        assertTrue( changeLogFile.length() > 0L );
+        assertEquals( 6, partition.getLoggedChangesCount() );
+
+        // Modify
+        ModifyOperationContext modOpCtx = new ModifyOperationContext( mockSession );
+        List<Modification> modItems = new ArrayList<Modification>();
+        Attribute attribute = new DefaultAttribute( schemaManager.lookupAttributeTypeRegistry( "description" ) );
+        attribute.add( "this is description" );
+        modItems.add( new DefaultModification( ModificationOperation.ADD_ATTRIBUTE, attribute ) );
+        modOpCtx.setModItems( modItems );
+        modOpCtx.setDn( new Dn( schemaManager, "cn=child2,ou=test,ou=system" ) );
+        modOpCtx.setTransaction( partition.beginWriteTransaction() );
+
+        partition.modify( modOpCtx );
+
+        // Rename
+        Dn childDn1 = new Dn( schemaManager, "cn=child1,ou=test,ou=system" );
+        Rdn newRdn = new Rdn( SchemaConstants.CN_AT + "=" + "renamedChild1" );
+        RenameOperationContext renameOpCtx = new RenameOperationContext( mockSession, childDn1, newRdn, true );
+        renameOpCtx.setPartition( partition );
+        renameOpCtx.setTransaction( partition.beginWriteTransaction() );
+
+        partition.rename( renameOpCtx );
+
+        // Move
+        MoveOperationContext moveOpCtx = new MoveOperationContext( mockSession,
+            new Dn( schemaManager, "cn=grandChild12,cn=renamedChild1,ou=test,ou=system" ),
+            new Dn( schemaManager, "cn=child2,ou=test,ou=system" ) );
+        moveOpCtx.setPartition( partition );
+        moveOpCtx.setTransaction( partition.beginWriteTransaction() );
+
+        partition.move( moveOpCtx );
+
+        // Delete
+        DeleteOperationContext delCtx = new DeleteOperationContext( mockSession );
+        delCtx.setDn( new Dn( schemaManager,
+            "cn=greatGrandChild111,cn=grandChild11,cn=renamedChild1,ou=test,ou=system" ) );
+        delCtx.setPartition( partition );
+        delCtx.setTransaction( partition.beginWriteTransaction() );
+
+        partition.delete( delCtx );
+
+        assertEquals( 0L, ldifFile.length() );
+
+        // The changes are applied when reloading the partition, and the LDIF file is rewritten
+        partition = createPartition( null, false, true );
+
+        assertTrue( ldifFile.length() > 0L );
+        assertEquals( 0L, changeLogFile.length() );
+        assertEquals( 0, partition.getLoggedChangesCount() );
+
+        assertExists( partition, contextEntry );
+        assertExists( partition, "cn=renamedChild1,ou=test,ou=system" );
+        assertExists( partition, "cn=grandChild11,cn=renamedChild1,ou=test,ou=system" );
+        assertExists( partition, "cn=grandChild12,cn=child2,ou=test,ou=system" );
+
+        Entry child2 = partition.fetch( partition.beginReadTransaction(),
+            partition.getEntryId( partition.beginReadTransaction(),
+                new Dn( schemaManager, "cn=child2,ou=test,ou=system" ) ) );
+        assertTrue( child2.contains( "description", "this is description" ) );
+
+        Entry renamedChild1 = partition.fetch( partition.beginReadTransaction(),
+            partition.getEntryId( partition.beginReadTransaction(),
+                new Dn( schemaManager, "cn=renamedChild1,ou=test,ou=system" ) ) );
+        assertFalse( renamedChild1.get( "cn" ).contains( "child1" ) );
+
+        assertNull( partition.getEntryId( partition.beginReadTransaction(),
+            new Dn( schemaManager, "cn=greatGrandChild111,cn=grandChild11,cn=renamedChild1,ou=test,ou=system" ) ) );
+    }
+
+
+    /**
+     * Test that the change log is folded into the LDIF file
+     */
+    @Test
+    public void testChangeLogCompaction() throws Exception
+    {
+        SingleFileLdifPartition partition = injectEntries( createPartition( null, true, true ) );
+
+        File ldifFile = new File( partition.getPartitionPath() );
+        File changeLogFile = new File( ldifFile.getPath() + SingleFileLdifPartition.CHANGE_LOG_EXTN );
+
+        partition.compact();
+
+        assertEquals( 0, partition.getLoggedChangesCount() );
+        assertEquals( 0L, changeLogFile.length() );
+
+        // The LDIF file can be read without the change log
+        partition = createPartition( null, false, false );
+
+        assertExists( partition, contextEntry );
+        assertExists( partition, "cn=greatGrandChild111,cn=grandChild11,cn=child1,ou=test,ou=system" );
+    }
+
+
     /**
      * An important test to check the stability of the partition
      * under high concurrency
@@ -1399,7 +1525,12 @@ public class SingleFileLdifPartitionTest
 
     private SingleFileLdifPartition injectEntries() throws Exception
     {
-        SingleFileLdifPartition partition = createPartition( null, true );
+        return injectEntries( createPartition( null, true ) );
+    }
+
+
+    private SingleFileLdifPartition injectEntries( SingleFileLdifPartition partition ) throws Exception
+    {
         AddOperationContext addCtx = new AddOperationContext( mockSession );
         addCtx.setEntry( contextEntry );
         addCtx.setPartition( partition );
@@ -21,12 +21,10 @@ package org.apache.directory.server.core.partition.impl.btree.mavibot;
 
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Comparator;
 
 import org.apache.directory.api.ldap.model.entry.Attribute;
@@ -42,6 +40,7 @@ import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.mavibot.btree.serializer.AbstractElementSerializer;
 import org.apache.directory.mavibot.btree.serializer.BufferHandler;
 import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.CompactEntryCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -102,75 +101,17 @@ public class MavibotEntrySerializer extends AbstractElementSerializer<Entry>
 
 
     /**
-     * <p>
+     * This is the place where we serialize entries. They are stored using the
+     * compact format described in {@link CompactEntryCodec}.
      * 
-     * This is the place where we serialize entries, and all theirs
-     * elements. the reason why we don't call the underlying methods
-     * (<code>ServerAttribute.write(), Value.write()</code>) is that we need
-     * access to the registries to read back the values.
-     * <p>
-     * The structure used to store the entry is the following :
-     * <ul>
-     *   <li><b>[a byte]</b> : if the Dn is empty 0 will be written else 1</li>
-     *   <li><b>[Rdn]</b> : The entry's Rdn.</li>
-     *   <li><b>[numberAttr]</b> : the bumber of attributes. Can be 0</li>
-     *   <li>For each Attribute :
-     *     <ul>
-     *       <li><b>[attribute's oid]</b> : The attribute's OID to get back
-     *       the attributeType on deserialization</li>
-     *       <li><b>[Attribute]</b> The attribute</li>
-     *     </ul>
-     *   </li>
-     * </ul>
+     * @param entry The entry to serialize
+     * @return The serialized entry
      */
     public byte[] serialize( Entry entry )
     {
         try
         {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-            ObjectOutput out = new ObjectOutputStream( baos );
-
-            // First, the Dn
-            Dn dn = entry.getDn();
-
-            // Write the Rdn of the Dn
-            if ( dn.isEmpty() )
-            {
-                out.writeByte( 0 );
-            }
-            else
-            {
-                out.writeByte( 1 );
-                Rdn rdn = dn.getRdn();
-                rdn.writeExternal( out );
-            }
-
-            // Then the attributes.
-            out.writeInt( entry.getAttributes().size() );
-
-            // Iterate through the keys. We store the Attribute
-            // here, to be able to restore it in the readExternal :
-            // we need access to the registries, which are not available
-            // in the ServerAttribute class.
-            for ( Attribute attribute : entry.getAttributes() )
-            {
-                AttributeType attributeType = attribute.getAttributeType();
-
-                // Write the oid to be able to restore the AttributeType when deserializing
-                // the attribute
-                String oid = attributeType.getOid();
-
-                out.writeUTF( oid );
-
-                // Write the attribute
-                attribute.writeExternal( out );
-            }
-
-            out.flush();
-
-            // Note : we don't store the ObjectClassAttribute. It has already
-            // been stored as an attribute.
+            byte[] bytes = CompactEntryCodec.serialize( entry );
 
             if ( IS_DEBUG )
             {
@@ -178,7 +119,7 @@ public class MavibotEntrySerializer extends AbstractElementSerializer<Entry>
                 LOG.debug( "Serialize {}", entry );
             }
 
-            return baos.toByteArray();
+            return bytes;
         }
         catch ( Exception e )
         {
@@ -196,7 +137,21 @@ public class MavibotEntrySerializer extends AbstractElementSerializer<Entry>
      */
     public Entry deserialize( ByteBuffer buffer ) throws IOException
     {
-        // read the length
+        int start = buffer.arrayOffset() + buffer.position();
+        int remaining = buffer.remaining();
+
+        if ( CompactEntryCodec.isCompact( buffer.array(), start, remaining ) )
+        {
+            // The entry may keep a reference on its serialized attributes : don't let it
+            // share a buffer which can be reused
+            byte[] bytes = Arrays.copyOfRange( buffer.array(), start, start + remaining );
+            Entry entry = CompactEntryCodec.deserialize( schemaManager, bytes, 0, remaining );
+            buffer.position( buffer.limit() );
+
+            return entry;
+        }
+
+        // A legacy entry : read the length
         int len = buffer.limit();
 
         ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( buffer.array(), buffer.position(), len ) );
@@ -301,6 +256,17 @@ public class MavibotEntrySerializer extends AbstractElementSerializer<Entry>
         // read the length
         int len = buffer.length - pos;
 
+        if ( CompactEntryCodec.isCompact( buffer, pos, len ) )
+        {
+            // The entry may keep a reference on its serialized attributes, and the given
+            // buffer can be a page buffer which will be reused : work on a copy
+            byte[] bytes = Arrays.copyOfRange( buffer, pos, pos + len );
+
+            return CompactEntryCodec.deserialize( schemaManager, bytes, 0, len );
+        }
+
+        // This is a legacy entry
+
         ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( buffer, pos, len ) );
 
         try
@@ -147,6 +147,7 @@ public class MavibotPartition extends AbstractBTreePartition
 
             EvaluatorBuilder evaluatorBuilder = new EvaluatorBuilder( this, schemaManager );
             CursorBuilder cursorBuilder = new CursorBuilder( this, evaluatorBuilder );
+            cursorBuilder.setIndexIntersectionEnabled( isIndexIntersectionEnabled() );
 
             setSearchEngine( new DefaultSearchEngine( this, cursorBuilder, evaluatorBuilder, getOptimizer() ) );
 
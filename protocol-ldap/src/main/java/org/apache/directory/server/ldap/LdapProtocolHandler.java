@@ -132,6 +132,9 @@ class LdapProtocolHandler extends DemuxingIoHandler
         // Abandon all the requests
         ldapSession.abandonAllOutstandingRequests();
 
+        // The suspended searches won't be resumed : release their cursor and buffer
+        ldapSession.cancelSuspendedSearches();
+
         if ( !ldapSession.getIoSession().isClosing() || ldapSession.getIoSession().isConnected() )
         {
             try
@@ -152,11 +155,20 @@ class LdapProtocolHandler extends DemuxingIoHandler
     @Override
     public void messageSent( IoSession session, Object message ) throws Exception
     {
+        resumeSuspendedSearches( session );
+
         // Do nothing : we have to ignore this message, otherwise we get an exception,
         // thanks to the way MINA 2 works ...
         if ( message instanceof IoBuffer )
         {
-            // Nothing to do in this case
+            // Give the batched search results buffers back to the pool
+            SearchResultBufferPool pool = ldapServer.getSearchResultBufferPool();
+
+            if ( pool != null )
+            {
+                pool.release( ( IoBuffer ) message );
+            }
+
             return;
         }
 
@@ -164,6 +176,35 @@ class LdapProtocolHandler extends DemuxingIoHandler
     }
 
     
+    /**
+     * Resumes the searches which have stopped writing their results because the
+     * client was not reading them fast enough, once enough of them have been sent.
+     */
+    private void resumeSuspendedSearches( IoSession session )
+    {
+        if ( session.getScheduledWriteBytes() > ldapServer.getSearchWriteLowWaterMark() )
+        {
+            return;
+        }
+
+        LdapSession ldapSession = ldapServer.getLdapSessionManager().getLdapSession( session );
+
+        if ( ( ldapSession == null ) || !ldapSession.hasSuspendedSearches() )
+        {
+            return;
+        }
+
+        SuspendedSearch writer = ldapSession.pollSuspendedSearch();
+
+        while ( writer != null )
+        {
+            // The search may block while reading the backend, don't do it in the IoProcessor thread
+            ldapServer.resumeSearch( writer );
+            writer = ldapSession.pollSuspendedSearch();
+        }
+    }
+
+
     /**
      * {@inheritDoc}
      */
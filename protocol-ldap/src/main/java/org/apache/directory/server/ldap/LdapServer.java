@@ -29,6 +29,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.net.ssl.KeyManagerFactory;
 
@@ -150,6 +153,15 @@ public class LdapServer extends DirectoryBackedService
     /** The default service name. */
     private static final String SERVICE_NAME_DEFAULT = "ApacheDS LDAP Service";
 
+    /** The default number of bytes waiting to be sent above which a search stops writing results (1Mb). */
+    private static final int SEARCH_WRITE_HIGH_WATER_MARK_DEFAULT = 1024 * 1024;
+
+    /** The default size of the buffers the search results are encoded in (64Kb). */
+    private static final int SEARCH_RESULT_BUFFER_SIZE_DEFAULT = 64 * 1024;
+
+    /** The maximum number of search results buffers kept for reuse. */
+    private static final int SEARCH_RESULT_POOLED_BUFFERS_MAX = 256;
+
     /** the session manager for this LdapServer */
     private LdapSessionManager ldapSessionManager = new LdapSessionManager();
 
@@ -251,6 +263,18 @@ public class LdapServer extends DirectoryBackedService
     /** the time interval between subsequent pings to each replication provider */
     private int pingerSleepTime;
 
+    /** The number of bytes waiting to be sent to a client above which a search is suspended */
+    private int searchWriteHighWaterMark = SEARCH_WRITE_HIGH_WATER_MARK_DEFAULT;
+
+    /** The executor resuming the suspended searches when their client has read the pending results */
+    private ExecutorService searchWriteExecutor;
+
+    /** The size of the buffers in which consecutive search results are encoded together */
+    private int searchResultBufferSize = SEARCH_RESULT_BUFFER_SIZE_DEFAULT;
+
+    /** The pool of buffers the search results are encoded in */
+    private SearchResultBufferPool searchResultBufferPool;
+
     /**
      * the list of cipher suites to be used in LDAPS and StartTLS
      * @deprecated See the {@link TcpTransport} class that contains this list
@@ -420,6 +444,20 @@ public class LdapServer extends DirectoryBackedService
 
         keyManagerFactory = CertificateUtil.loadKeyStore( keystoreFile, certificatePassword );
 
+        searchWriteExecutor = Executors.newCachedThreadPool( runnable ->
+        {
+            Thread thread = new Thread( runnable, "ldap-search-writer" );
+            thread.setDaemon( true );
+
+            return thread;
+        } );
+
+        if ( searchResultBufferSize > 0 )
+        {
+            searchResultBufferPool = new SearchResultBufferPool( searchResultBufferSize,
+                SEARCH_RESULT_POOLED_BUFFERS_MAX );
+        }
+
         /*
          * The server is now initialized, we can
          * install the default requests handlers, which need
@@ -588,6 +626,12 @@ public class LdapServer extends DirectoryBackedService
         {
             LOG.warn( "Failed to sent NoD.", e );
         }
+        finally
+        {
+            stopSearchWriteExecutor();
+
+            searchResultBufferPool = null;
+        }
 
         started = false;
         LOG.info( "Ldap service stopped." );
@@ -918,6 +962,128 @@ public class LdapServer extends DirectoryBackedService
     }
 
 
+    /**
+     * Sets the number of bytes waiting to be sent to a client above which a search
+     * stops reading its results, until the client has read half of them. A value
+     * of 0 or less disables this limit.
+     *
+     * @param searchWriteHighWaterMark the number of bytes a search may have waiting to be sent
+     */
+    public void setSearchWriteHighWaterMark( int searchWriteHighWaterMark )
+    {
+        this.searchWriteHighWaterMark = searchWriteHighWaterMark;
+    }
+
+
+    /**
+     * Returns the number of bytes waiting to be sent to a client above which a search is suspended.
+     *
+     * @return The high water mark, in bytes
+     */
+    public int getSearchWriteHighWaterMark()
+    {
+        return searchWriteHighWaterMark;
+    }
+
+
+    /**
+     * Returns the number of bytes waiting to be sent to a client under which a suspended
+     * search is resumed.
+     *
+     * @return The low water mark, in bytes
+     */
+    public int getSearchWriteLowWaterMark()
+    {
+        return searchWriteHighWaterMark / 2;
+    }
+
+
+    /**
+     * Sets the size of the buffers in which consecutive search results are encoded
+     * before being written together to the client. A value of 0 or less disables the
+     * batching : each entry is then written on its own.
+     *
+     * @param searchResultBufferSize the size of the search results buffers
+     */
+    public void setSearchResultBufferSize( int searchResultBufferSize )
+    {
+        this.searchResultBufferSize = searchResultBufferSize;
+    }
+
+
+    /**
+     * @return the size of the buffers in which consecutive search results are encoded
+     */
+    public int getSearchResultBufferSize()
+    {
+        return searchResultBufferSize;
+    }
+
+
+    /**
+     * @return the pool of buffers in which the search results are encoded, or null if
+     * the search results are not batched
+     */
+    public SearchResultBufferPool getSearchResultBufferPool()
+    {
+        return searchResultBufferPool;
+    }
+
+
+    /**
+     * Resumes a search which has been suspended because its client was not reading
+     * the results fast enough.
+     *
+     * @param writer the suspended search results writer
+     */
+    public void resumeSearch( SuspendedSearch writer )
+    {
+        ExecutorService executor = searchWriteExecutor;
+
+        if ( executor != null )
+        {
+            try
+            {
+                executor.execute( writer );
+
+                return;
+            }
+            catch ( RejectedExecutionException ree )
+            {
+                LOG.debug( "The server is stopping, cannot resume the search for message {}", writer.getMessageId() );
+            }
+        }
+
+        // Nobody will ever resume the search
+        writer.cancel();
+    }
+
+
+    /**
+     * Cancels the suspended searches, which won't be resumed, and stops the executor
+     * resuming them.
+     */
+    private void stopSearchWriteExecutor()
+    {
+        ExecutorService executor = searchWriteExecutor;
+        searchWriteExecutor = null;
+
+        for ( LdapSession ldapSession : ldapSessionManager.getSessions() )
+        {
+            ldapSession.cancelSuspendedSearches();
+        }
+
+        if ( executor != null )
+        {
+            // The searches not yet started, if any
+            for ( Runnable writer : executor.shutdownNow() )
+            {
+                ( ( SuspendedSearch ) writer ).cancel();
+            }
+        }
+    }
+
+
     /**
      * Gets the {@link ExtendedOperationHandler}s.
      *
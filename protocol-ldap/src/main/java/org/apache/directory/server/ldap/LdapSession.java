@@ -25,7 +25,9 @@ import java.net.SocketAddress;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -96,6 +98,9 @@ public class LdapSession
     /** A map containing all the paged search context */
     private Map<Integer, PagedSearchContext> pagedSearchContexts;
 
+    /** The searches waiting for the client to read the results already sent */
+    private Queue<SuspendedSearch> suspendedSearches;
+
 
     /**
      * Creates a new instance of LdapSession associated with the underlying
@@ -112,6 +117,7 @@ public class LdapSession
         bindStatus = BindStatus.ANONYMOUS;
         saslProperties = new HashMap<>();
         pagedSearchContexts = new ConcurrentHashMap<>();
+        suspendedSearches = new ConcurrentLinkedQueue<>();
     }
 
 
@@ -279,6 +285,9 @@ public class LdapSession
 
         request.abandon();
 
+        // A suspended search won't be resumed anymore
+        cancelSuspendedSearch( messageId );
+
         if ( IS_DEBUG )
         {
             LOG.debug( "AbandonRequest on AbandonableRequest wth messageId {} was successful.", messageId );
@@ -377,6 +386,84 @@ public class LdapSession
     }
 
 
+    /**
+     * Registers a search which has stopped writing its results until the client
+     * has read those already sent.
+     *
+     * @param writer the search results writer to resume later
+     */
+    public void addSuspendedSearch( SuspendedSearch writer )
+    {
+        suspendedSearches.add( writer );
+    }
+
+
+    /**
+     * Unregisters a suspended search. Only one caller will get <code>true</code>
+     * for a given search, and is then in charge of resuming or cancelling it.
+     *
+     * @param writer the suspended search results writer
+     * @return true if the search was still suspended
+     */
+    public boolean removeSuspendedSearch( SuspendedSearch writer )
+    {
+        return suspendedSearches.remove( writer );
+    }
+
+
+    /**
+     * Unregisters the first suspended search, if any.
+     *
+     * @return the search results writer to resume or cancel, or null
+     */
+    public SuspendedSearch pollSuspendedSearch()
+    {
+        return suspendedSearches.poll();
+    }
+
+
+    /**
+     * Unregisters and cancels the suspended search with the given message ID, if any.
+     *
+     * @param messageId The suspended search request ID
+     */
+    private void cancelSuspendedSearch( int messageId )
+    {
+        for ( SuspendedSearch writer : suspendedSearches )
+        {
+            if ( ( writer.getMessageId() == messageId ) && suspendedSearches.remove( writer ) )
+            {
+                writer.cancel();
+            }
+        }
+    }
+
+
+    /**
+     * Unregisters and cancels all the suspended searches, which won't be resumed : the
+     * session is closed, or the server is stopped.
+     */
+    public void cancelSuspendedSearches()
+    {
+        SuspendedSearch writer = suspendedSearches.poll();
+
+        while ( writer != null )
+        {
+            writer.cancel();
+            writer = suspendedSearches.poll();
+        }
+    }
+
+
+    /**
+     * @return true if at least one search is waiting for the client to read its results
+     */
+    public boolean hasSuspendedSearches()
+    {
+        return !suspendedSearches.isEmpty();
+    }
+
+
     /**
      * Find the searchRequestContainer associated with a MessageID
      *
@@ -0,0 +1,129 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.ldap;
+
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.core.buffer.IoBuffer;
+
+
+/**
+ * A pool of direct buffers in which the search results are encoded in batches. A buffer
+ * is acquired by a search, filled with as many encoded entries as it can hold, written
+ * to the client, and given back to the pool once MINA has sent it.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SearchResultBufferPool
+{
+    /** The size of the pooled buffers */
+    private final int bufferSize;
+
+    /** The maximum number of buffers kept in the pool */
+    private final int maxPooledBuffers;
+
+    /** The available buffers */
+    private final Queue<IoBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+    /** The number of available buffers */
+    private final AtomicInteger nbBuffers = new AtomicInteger( 0 );
+
+
+    /**
+     * Creates a new SearchResultBufferPool instance
+     *
+     * @param bufferSize the size of the pooled buffers
+     * @param maxPooledBuffers the maximum number of buffers kept in the pool
+     */
+    public SearchResultBufferPool( int bufferSize, int maxPooledBuffers )
+    {
+        this.bufferSize = bufferSize;
+        this.maxPooledBuffers = maxPooledBuffers;
+    }
+
+
+    /**
+     * @return the size of the pooled buffers
+     */
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+
+    /**
+     * Gets an empty buffer, from the pool if one is available, or a newly allocated one.
+     *
+     * @return A cleared direct buffer
+     */
+    public IoBuffer acquire()
+    {
+        IoBuffer buffer = buffers.poll();
+
+        if ( buffer == null )
+        {
+            return IoBuffer.allocate( bufferSize, true );
+        }
+
+        nbBuffers.decrementAndGet();
+        buffer.clear();
+
+        return buffer;
+    }
+
+
+    /**
+     * Gives a buffer back to the pool. Buffers which have not been allocated by this pool
+     * are ignored, as are the buffers in excess of the pool capacity.
+     *
+     * @param buffer The buffer that is not used anymore
+     * @return true if the buffer has been pooled
+     */
+    public boolean release( IoBuffer buffer )
+    {
+        if ( !buffer.isDirect() || ( buffer.capacity() != bufferSize ) || buffer.isDerived() )
+        {
+            return false;
+        }
+
+        if ( nbBuffers.incrementAndGet() > maxPooledBuffers )
+        {
+            nbBuffers.decrementAndGet();
+
+            return false;
+        }
+
+        buffers.offer( buffer );
+
+        return true;
+    }
+
+
+    /**
+     * @return the number of buffers available in the pool
+     */
+    public int size()
+    {
+        return nbBuffers.get();
+    }
+}
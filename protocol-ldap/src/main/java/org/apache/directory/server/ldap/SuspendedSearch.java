@@ -0,0 +1,47 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.ldap;
+
+
+/**
+ * A search which has stopped writing its results because the client was not reading
+ * them fast enough. It is registered in the {@link LdapSession} until it's either
+ * resumed, by running it, or cancelled, when it will never be resumed : the session
+ * is closed, the search is abandoned or the server is stopped.
+ * <br>
+ * Only the caller which has removed the search from the {@link LdapSession} may
+ * resume or cancel it.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface SuspendedSearch extends Runnable
+{
+    /**
+     * @return The message ID of the suspended search request
+     */
+    int getMessageId();
+
+
+    /**
+     * Releases the resources held by the suspended search, without sending anything
+     * more to the client, and unregisters its request.
+     */
+    void cancel();
+}
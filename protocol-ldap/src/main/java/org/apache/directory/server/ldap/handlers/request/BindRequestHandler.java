@@ -26,9 +26,8 @@ import javax.security.sasl.SaslException;
 import javax.security.sasl.SaslServer;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
-import org.apache.directory.api.ldap.model.constants.SchemaConstants;
-import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapAuthenticationException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
 import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
 import org.apache.directory.api.ldap.model.message.BindRequest;
@@ -41,7 +40,7 @@ import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.LdapPrincipal;
 import org.apache.directory.server.core.api.OperationEnum;
-import org.apache.directory.server.core.api.entry.ClonedServerEntry;
+import org.apache.directory.server.core.api.ReferralManager;
 import org.apache.directory.server.core.api.interceptor.context.BindOperationContext;
 import org.apache.directory.server.core.shared.DefaultCoreSession;
 import org.apache.directory.server.i18n.I18n;
@@ -87,7 +86,6 @@ public class BindRequestHandler extends LdapRequestHandler<BindRequest>
      * @param bindRequest The BindRequest received
      * @throws Exception If the authentication cannot be done
      */
-    // This will suppress PMD.EmptyCatchBlock warnings in this method
     public void handleSimpleAuth( LdapSession ldapSession, BindRequest bindRequest ) throws Exception
     {
         DirectoryService directoryService = ldapServer.getDirectoryService();
@@ -156,26 +154,10 @@ public class BindRequestHandler extends LdapRequestHandler<BindRequest>
              * detect conditions where ancestors of the Dn are referrals
              * and delegate appropriately.
              */
-            Entry principalEntry = null;
-
-            try
-            {
-                principalEntry = directoryService.getAdminSession().lookup( bindRequest.getDn(), 
-                    SchemaConstants.ALL_USER_ATTRIBUTES, SchemaConstants.ALL_OPERATIONAL_ATTRIBUTES );
-            }
-            catch ( Exception le )
-            {
-                // this is OK, it may be a delegated authentication, and in this case
-                // the entry is not present locally
-            }
-
-            if ( principalEntry == null )
-            {
-                LOG.info( "The {} principalDN cannot be found in the server : bind failure.", bindRequest.getName() );
-            }
-            else if ( ( ( ClonedServerEntry ) principalEntry ).getOriginalEntry().contains(
-                SchemaConstants.OBJECT_CLASS_AT,
-                SchemaConstants.REFERRAL_OC ) )
+            // The principal entry isn't read here : the authenticator fetches it directly from
+            // its partition, in the bind transaction, and only if its credentials aren't cached.
+            // The ReferralManager knows whether it's a referral without reading it.
+            if ( isReferral( directoryService, bindRequest.getDn() ) )
             {
                 LOG.info( "Bind principalDn points to referral." );
                 LdapResult result = bindResponse.getLdapResult();
@@ -190,17 +172,6 @@ public class BindRequestHandler extends LdapRequestHandler<BindRequest>
 
                 return;
             }
-            else
-            { 
-                bindContext.setPrincipal( principalEntry );
-            }
-
-            // TODO - might cause issues since lookups are not returning all
-            // attributes right now - this is an optimization that can be
-            // enabled later after determining whether or not this will cause
-            // issues.
-            // reuse the looked up entry so we don't incur another lookup
-            // opContext.setEntry( principalEntry );
 
             // And call the OperationManager bind operation.
             bindContext.setInterceptors( directoryService.getInterceptors( OperationEnum.BIND ) );
@@ -293,6 +264,46 @@ public class BindRequestHandler extends LdapRequestHandler<BindRequest>
     }
 
 
+    /**
+     * Tells if the bind principal is a referral
+     */
+    private boolean isReferral( DirectoryService directoryService, Dn bindDn ) throws LdapException
+    {
+        if ( ( bindDn == null ) || bindDn.isRootDse() )
+        {
+            return false;
+        }
+
+        if ( !bindDn.isSchemaAware() )
+        {
+            try
+            {
+                bindDn = new Dn( directoryService.getSchemaManager(), bindDn );
+            }
+            catch ( LdapInvalidDnException lide )
+            {
+                // The Dn uses some unknown AttributeType, so it can't be a referral
+                // in this server : the bind will fail on the unknown principal
+                LOG.debug( "Cannot normalize the bind principalDn {} : {}", bindDn, lide.getMessage() );
+
+                return false;
+            }
+        }
+
+        ReferralManager referralManager = directoryService.getReferralManager();
+        referralManager.lockRead();
+
+        try
+        {
+            return referralManager.isReferral( bindDn );
+        }
+        finally
+        {
+            referralManager.unlock();
+        }
+    }
+
+
     /**
      * Check if the mechanism exists.
      */
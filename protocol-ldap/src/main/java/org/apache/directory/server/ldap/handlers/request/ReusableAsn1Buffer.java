@@ -0,0 +1,177 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.request;
+
+
+import java.nio.ByteBuffer;
+
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.asn1.util.Asn1StringUtils;
+
+
+/**
+ * An Asn1Buffer which does not copy the encoded PDU when it is read. The base class
+ * returns a newly allocated ByteBuffer from {@link #getBytes()}, and the LdapEncoder
+ * always reads the encoded message this way : here, the returned ByteBuffer is a view
+ * on the internal array, which is reused for all the encoded messages.
+ * <br>
+ * The bytes are written backward, from the end of the array, exactly as the base
+ * class does. The ByteBuffer returned by {@link #getBytes()} is only valid until the
+ * buffer is cleared, or until some more bytes are written : its content must be consumed
+ * before the next message is encoded. Unlike the base class, the buffer is not shrunk when
+ * it is cleared, so that it does not have to grow again for each big entry.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class ReusableAsn1Buffer extends Asn1Buffer
+{
+    /** The size by which the buffer grows */
+    private static final int INCREMENT = 1024;
+
+    /** The current position, ie the number of bytes written */
+    private int pos;
+
+    /** The buffer, filled from the end */
+    private byte[] buffer = new byte[INCREMENT];
+
+    /** The view returned by getBytes(), created again when the buffer grows */
+    private ByteBuffer view = ByteBuffer.wrap( buffer );
+
+
+    /**
+     * Creates a new ReusableAsn1Buffer instance
+     */
+    ReusableAsn1Buffer()
+    {
+        super();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getPos()
+    {
+        return pos;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setPos( int pos )
+    {
+        this.pos = pos;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put( byte b )
+    {
+        if ( pos == buffer.length )
+        {
+            extend( 1 );
+        }
+
+        pos++;
+        buffer[buffer.length - pos] = b;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put( byte[] bytes )
+    {
+        if ( pos + bytes.length > buffer.length )
+        {
+            extend( bytes.length );
+        }
+
+        pos += bytes.length;
+        System.arraycopy( bytes, 0, buffer, buffer.length - pos, bytes.length );
+    }
+
+
+    /**
+     * Grow the buffer so that it can hold some more bytes, keeping the written bytes at its end
+     */
+    private void extend( int size )
+    {
+        int newSize = ( ( pos + size + INCREMENT - 1 ) / INCREMENT ) * INCREMENT;
+        byte[] newBuffer = new byte[newSize];
+        System.arraycopy( buffer, buffer.length - pos, newBuffer, newSize - pos, pos );
+        buffer = newBuffer;
+        view = ByteBuffer.wrap( buffer );
+    }
+
+
+    /**
+     * Get a view on the written bytes. This view is shared : it is only valid until
+     * the next modification of this buffer.
+     *
+     * @return The written bytes, between the view position and its limit
+     */
+    @Override
+    public ByteBuffer getBytes()
+    {
+        view.clear();
+        view.position( buffer.length - pos );
+
+        return view;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSize()
+    {
+        return buffer.length;
+    }
+
+
+    /**
+     * Forget the written bytes. The buffer keeps its size.
+     */
+    @Override
+    public void clear()
+    {
+        pos = 0;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "[" + buffer.length + ", " + pos + "] '" + Asn1StringUtils.dumpBytes( buffer, buffer.length - pos, pos )
+            + '\'';
+    }
+}
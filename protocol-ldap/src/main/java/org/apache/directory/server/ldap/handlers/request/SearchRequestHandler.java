@@ -139,7 +139,7 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
          */
         if ( !psearch.isChangesOnly() )
         {
-            SearchResultDone done = doSimpleSearch( session, req );
+            SearchResultDone done = doSimpleSearch( session, req, false );
 
             // ok if normal search beforehand failed somehow quickly abandon psearch
             if ( done.getLdapResult().getResultCode() != ResultCodeEnum.SUCCESS )
@@ -371,67 +371,10 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
     }
 
 
-    private void writeResults( LdapSession session, SearchRequest req, LdapResult ldapResult,
-        Cursor<Entry> cursor, long sizeLimit ) throws Exception
+    private void writeResults( LdapSession session, SearchRequest req, Cursor<Entry> cursor, long sizeLimit )
+        throws Exception
     {
-        long count = 0;
-
-        while ( ( count < sizeLimit ) && cursor.next() )
-        {
-            // Handle closed session
-            if ( session.getIoSession().isClosing() )
-            {
-                // The client has closed the connection
-                if ( IS_DEBUG )
-                {
-                    LOG.debug( "Request terminated for message {}, the client has closed the session",
-                        req.getMessageId() );
-                }
-
-                break;
-            }
-
-            if ( req.isAbandoned() )
-            {
-                cursor.close( new OperationAbandonedException() );
-
-                // The cursor has been closed by an abandon request.
-                if ( IS_DEBUG )
-                {
-                    LOG.debug( "Request terminated by an AbandonRequest for message {}", req.getMessageId() );
-                }
-
-                break;
-            }
-
-            Entry entry = cursor.get();
-            session.getIoSession().write( generateResponse( session, req, entry ) );
-
-            if ( IS_DEBUG )
-            {
-                LOG.debug( "Sending {}", entry.getDn() );
-            }
-
-            count++;
-        }
-
-        // check if the result code is not already set
-        // the result code might be set when sort control is present
-        if ( ldapResult.getResultCode() == null )
-        {
-            // DO NOT WRITE THE RESPONSE - JUST RETURN IT
-            ldapResult.setResultCode( ResultCodeEnum.SUCCESS );
-        }
-
-        if ( ( count >= sizeLimit ) && ( cursor.next() ) )
-        {
-            // We have reached the limit
-            // Move backward on the cursor to restore the previous position, as we moved forward
-            // to check if there is one more entry available
-            cursor.previous();
-            // Special case if the user has requested more elements than the request size limit
-            ldapResult.setResultCode( ResultCodeEnum.SIZE_LIMIT_EXCEEDED );
-        }
+        new SearchResultsWriter( this, session, req, cursor, sizeLimit, false ).write();
     }
 
 
@@ -649,7 +592,7 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
                 try
                 {
                     // And write the entries
-                    writeResults( session, req, ldapResult, cursor, sizeLimit );
+                    writeResults( session, req, cursor, sizeLimit );
                 }
                 finally
                 {
@@ -775,13 +718,15 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
      * <br>
      * @param session the LDAP session object for this request
      * @param req the search request
-     * @return the result done
+     * @param suspendable tells if the writing of the entries can be suspended
+     * @return the result done, or null if the writing of the entries has been suspended
+     * because the client does not read them fast enough : the result done will be written
+     * when the search is completed
      * @throws Exception if there are failures while processing the request
      */
-    private SearchResultDone doSimpleSearch( LdapSession session, SearchRequest req ) throws Exception
+    private SearchResultDone doSimpleSearch( LdapSession session, SearchRequest req, boolean suspendable )
+        throws Exception
     {
-        LdapResult ldapResult = req.getResultResponse().getLdapResult();
-
         // Check if we are using the Paged Search Control
         Object control = req.getControls().get( PagedResults.OID );
 
@@ -802,6 +747,8 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
         // Position the cursor at the beginning
         cursor.beforeFirst();
 
+        boolean suspended = false;
+
         /*
          * Iterate through all search results building and sending back responses
          * for each search result returned.
@@ -824,11 +771,14 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
 
             long sizeLimit = min( requestLimit, serverLimit );
 
-            writeResults( session, req, ldapResult, cursor, sizeLimit );
+            SearchResultsWriter writer = new SearchResultsWriter( this, session, req, cursor, sizeLimit,
+                suspendable );
+            suspended = !writer.write();
         }
         finally
         {
-            if ( !cursor.isClosed() )
+            // A suspended writer will close the cursor itself once done
+            if ( !suspended && !cursor.isClosed() )
             {
                 try
                 {
@@ -841,6 +791,11 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
             }
         }
 
+        if ( suspended )
+        {
+            return null;
+        }
+
         return ( SearchResultDone ) req.getResultResponse();
     }
 
@@ -857,7 +812,7 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
      * @return the response for the entry
      * @throws Exception if there are problems in generating the response
      */
-    private Response generateResponse( LdapSession session, SearchRequest req, Entry entry ) throws Exception
+    Response generateResponse( LdapSession session, SearchRequest req, Entry entry ) throws Exception
     {
         Attribute ref = entry.get( SchemaConstants.REF_AT );
         boolean hasManageDsaItControl = req.getControls().containsKey( ManageDsaIT.OID );
@@ -1096,6 +1051,10 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
         // persistent search
         boolean persistentSearchException = false;
 
+        // A flag set when the search results writing has been suspended : the
+        // request will be removed from the session when the search is completed
+        boolean suspended = false;
+
         // add the search request to the registry of outstanding requests for this session
         session.registerOutstandingRequest( req );
 
@@ -1144,7 +1103,15 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
                 filter = req.getFilter().toString();
             }
 
-            SearchResultDone done = doSimpleSearch( session, req );
+            SearchResultDone done = doSimpleSearch( session, req, true );
+
+            if ( done == null )
+            {
+                suspended = true;
+
+                return;
+            }
+
             session.getIoSession().write( done );
 
             if ( isLogSearchTime )
@@ -1187,7 +1154,7 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
 
             // remove the request from the session, except if
             // we didn't got an exception for a Persistent search
-            if ( !isPersistentSearch || persistentSearchException )
+            if ( ( !isPersistentSearch || persistentSearchException ) && !suspended )
             {
                 session.unregisterOutstandingRequest( req );
             }
@@ -0,0 +1,413 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.request;
+
+
+import java.nio.ByteBuffer;
+
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.LdapEncoder;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.OperationAbandonedException;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.ldap.LdapServer;
+import org.apache.directory.server.ldap.LdapSession;
+import org.apache.directory.server.ldap.SearchResultBufferPool;
+import org.apache.directory.server.ldap.SuspendedSearch;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Writes the entries of a search cursor to the client. When the client does not read
+ * the results as fast as they are produced, the number of bytes waiting to be sent
+ * grows : once it's above the server high water mark, the writer stops reading the
+ * cursor and releases its thread. It is resumed, by the LdapProtocolHandler, when the
+ * pending bytes have gone under the low water mark, and then writes the remaining
+ * entries and the SearchResultDone. A suspended writer which won't be resumed, because
+ * the session is closed, the search is abandoned or the server is stopped, is cancelled.
+ * <br>
+ * When the server has a search results buffer pool, the entries are not written one by one :
+ * they are encoded, as soon as they are read, in a pooled direct buffer, which is written
+ * to the client when the next entry does not fit in it anymore, or when there are no more
+ * entries to send. The entries are encoded in a {@link ReusableAsn1Buffer}, so that the
+ * only per entry copy is the one into the pooled buffer.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class SearchResultsWriter implements SuspendedSearch
+{
+    /** The logger */
+    private static final Logger LOG = LoggerFactory.getLogger( SearchResultsWriter.class );
+
+    /** Speedup for logs */
+    private static final boolean IS_DEBUG = LOG.isDebugEnabled();
+
+    /** The handler generating the responses */
+    private final SearchRequestHandler handler;
+
+    /** The session the results are written to */
+    private final LdapSession session;
+
+    /** The search request */
+    private final SearchRequest req;
+
+    /** The cursor on the entries to send */
+    private final Cursor<Entry> cursor;
+
+    /** The maximum number of entries to send */
+    private final long sizeLimit;
+
+    /** Tells if the writer can be suspended */
+    private final boolean suspendable;
+
+    /** The number of entries already sent */
+    private long count;
+
+    /** The pool of buffers the entries are encoded in, if they are batched */
+    private final SearchResultBufferPool bufferPool;
+
+    /** The codec service, only used when the entries are batched */
+    private final LdapApiService codec;
+
+    /** The buffer used to encode each entry, which content is read without any copy */
+    private ReusableAsn1Buffer asn1Buffer;
+
+    /** The buffer containing the encoded entries not yet written */
+    private IoBuffer batch;
+
+
+    /**
+     * Creates a new SearchResultsWriter instance
+     *
+     * @param handler the handler generating the responses
+     * @param session the session the results are written to
+     * @param req the search request
+     * @param cursor the cursor on the entries to send, positioned before the first entry
+     * @param sizeLimit the maximum number of entries to send
+     * @param suspendable tells if the writer can be suspended when the client is too slow
+     */
+    SearchResultsWriter( SearchRequestHandler handler, LdapSession session, SearchRequest req,
+        Cursor<Entry> cursor, long sizeLimit, boolean suspendable )
+    {
+        this.handler = handler;
+        this.session = session;
+        this.req = req;
+        this.cursor = cursor;
+        this.sizeLimit = sizeLimit;
+        this.suspendable = suspendable;
+        this.bufferPool = handler.getLdapServer().getSearchResultBufferPool();
+        this.codec = ( bufferPool == null ) ? null
+            : session.getCoreSession().getDirectoryService().getLdapCodecService();
+    }
+
+
+    /**
+     * Writes the entries until the end of the cursor, or until the client has too many
+     * pending bytes to read. In the later case, the writer will be resumed later.
+     *
+     * @return true if all the entries have been written, false if the writer is suspended
+     * @throws Exception if the entries can't be read
+     */
+    boolean write() throws Exception
+    {
+        IoSession ioSession = session.getIoSession();
+        LdapServer ldapServer = handler.getLdapServer();
+        LdapResult ldapResult = req.getResultResponse().getLdapResult();
+
+        while ( ( count < sizeLimit ) && cursor.next() )
+        {
+            // Handle closed session
+            if ( ioSession.isClosing() )
+            {
+                // The client has closed the connection
+                if ( IS_DEBUG )
+                {
+                    LOG.debug( "Request terminated for message {}, the client has closed the session",
+                        req.getMessageId() );
+                }
+
+                discard();
+
+                break;
+            }
+
+            if ( req.isAbandoned() )
+            {
+                cursor.close( new OperationAbandonedException() );
+
+                // The cursor has been closed by an abandon request.
+                if ( IS_DEBUG )
+                {
+                    LOG.debug( "Request terminated by an AbandonRequest for message {}", req.getMessageId() );
+                }
+
+                // The entries not yet sent must not be transmitted
+                discard();
+
+                break;
+            }
+
+            Entry entry = cursor.get();
+            Response response = handler.generateResponse( session, req, entry );
+
+            if ( bufferPool == null )
+            {
+                ioSession.write( response );
+            }
+            else
+            {
+                append( ioSession, response );
+            }
+
+            if ( IS_DEBUG )
+            {
+                LOG.debug( "Sending {}", entry.getDn() );
+            }
+
+            count++;
+
+            if ( suspendable && ( ldapServer.getSearchWriteHighWaterMark() > 0 )
+                && ( ioSession.getScheduledWriteBytes() > ldapServer.getSearchWriteHighWaterMark() )
+                && suspend( ioSession, ldapServer ) )
+            {
+                return false;
+            }
+        }
+
+        flush( ioSession );
+
+        // check if the result code is not already set
+        // the result code might be set when sort control is present
+        if ( ldapResult.getResultCode() == null )
+        {
+            // DO NOT WRITE THE RESPONSE - JUST RETURN IT
+            ldapResult.setResultCode( ResultCodeEnum.SUCCESS );
+        }
+
+        if ( ( count >= sizeLimit ) && ( cursor.next() ) )
+        {
+            // We have reached the limit
+            // Move backward on the cursor to restore the previous position, as we moved forward
+            // to check if there is one more entry available
+            cursor.previous();
+            // Special case if the user has requested more elements than the request size limit
+            ldapResult.setResultCode( ResultCodeEnum.SIZE_LIMIT_EXCEEDED );
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Encodes a response at the end of the current batch, writing the batch first if the
+     * response does not fit in it. The responses which are bigger than a pooled buffer are
+     * written on their own.
+     */
+    private void append( IoSession ioSession, Response response ) throws Exception
+    {
+        if ( asn1Buffer == null )
+        {
+            asn1Buffer = new ReusableAsn1Buffer();
+        }
+        else
+        {
+            asn1Buffer.clear();
+        }
+
+        // The encoded message is a view on the asn1Buffer content : it must be copied
+        // before the next response is encoded
+        ByteBuffer encoded = LdapEncoder.encodeMessage( asn1Buffer, codec, response );
+
+        if ( ( batch != null ) && ( batch.remaining() < encoded.remaining() ) )
+        {
+            flush( ioSession );
+        }
+
+        if ( encoded.remaining() > bufferPool.getBufferSize() )
+        {
+            // The write is asynchronous : the response has to be copied in its own buffer
+            IoBuffer single = IoBuffer.allocate( encoded.remaining() );
+            single.put( encoded );
+            single.flip();
+            ioSession.write( single );
+
+            return;
+        }
+
+        if ( batch == null )
+        {
+            batch = bufferPool.acquire();
+        }
+
+        batch.put( encoded );
+    }
+
+
+    /**
+     * Writes the encoded responses of the current batch, if any.
+     */
+    private void flush( IoSession ioSession )
+    {
+        if ( batch == null )
+        {
+            return;
+        }
+
+        if ( batch.position() == 0 )
+        {
+            discard();
+
+            return;
+        }
+
+        batch.flip();
+        ioSession.write( batch );
+        batch = null;
+    }
+
+
+    /**
+     * Drops the encoded responses of the current batch, if any.
+     */
+    private void discard()
+    {
+        if ( batch != null )
+        {
+            bufferPool.release( batch );
+            batch = null;
+        }
+    }
+
+
+    /**
+     * Registers the writer so that it's resumed when the client has read enough results.
+     *
+     * @return true if the writer is suspended, false if it should go on writing
+     */
+    private boolean suspend( IoSession ioSession, LdapServer ldapServer )
+    {
+        if ( IS_DEBUG )
+        {
+            LOG.debug( "Suspending the search for message {}, {} bytes are waiting to be sent",
+                req.getMessageId(), ioSession.getScheduledWriteBytes() );
+        }
+
+        session.addSuspendedSearch( this );
+
+        // The pending bytes may have been sent before we were registered : in this case, nobody will
+        // resume us, unless we are already resumed, so get back the search if it's still there.
+        return ( ioSession.getScheduledWriteBytes() > ldapServer.getSearchWriteLowWaterMark() )
+            || !session.removeSuspendedSearch( this );
+    }
+
+
+    /**
+     * Resumes a suspended search : writes the remaining entries and, when done, the
+     * SearchResultDone.
+     */
+    @Override
+    public void run()
+    {
+        if ( IS_DEBUG )
+        {
+            LOG.debug( "Resuming the search for message {}", req.getMessageId() );
+        }
+
+        try
+        {
+            if ( !write() )
+            {
+                // Suspended again
+                return;
+            }
+
+            close();
+            session.getIoSession().write( req.getResultResponse() );
+        }
+        catch ( Exception e )
+        {
+            close();
+
+            // Don't send anything back if the search has been abandoned (RFC 4511, section 4.11)
+            if ( !( e instanceof OperationAbandonedException ) )
+            {
+                handler.handleException( session, req, e );
+            }
+        }
+
+        session.unregisterOutstandingRequest( req );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMessageId()
+    {
+        return req.getMessageId();
+    }
+
+
+    /**
+     * Releases the batched entries and the cursor of a suspended search which won't be
+     * resumed, and unregisters the request.
+     */
+    @Override
+    public void cancel()
+    {
+        if ( IS_DEBUG )
+        {
+            LOG.debug( "Cancelling the suspended search for message {}", req.getMessageId() );
+        }
+
+        close();
+        session.unregisterOutstandingRequest( req );
+    }
+
+
+    /**
+     * Closes the cursor, if not already done
+     */
+    void close()
+    {
+        discard();
+
+        if ( !cursor.isClosed() )
+        {
+            try
+            {
+                cursor.close();
+            }
+            catch ( Exception e )
+            {
+                LOG.error( I18n.err( I18n.ERR_168 ), e );
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.replication.provider;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+
+import org.apache.directory.server.ldap.replication.ReplicaEventMessage;
+import org.apache.directory.server.ldap.replication.provider.ReplicationJournal.Segment;
+
+
+/**
+ * A sequential reader on the {@link ReplicationJournal}. The reader goes through the records
+ * in the order they have been written, moving from one segment to the next one, and sees the
+ * records appended after its creation. The message of a record is only decoded on demand.
+ * <br>
+ * A reader is not thread safe.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JournalReader implements Closeable
+{
+    /** The size of a record header : the record length and its CRC */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /** The journal */
+    private final ReplicationJournal journal;
+
+    /** The segment being read */
+    private Segment segment;
+
+    /** The mapped content of the segment, null when not mapped yet */
+    private MappedByteBuffer buffer;
+
+    /** The position of the next record in the segment */
+    private long position;
+
+    /** The current record body, positioned after the CSN */
+    private ByteBuffer body;
+
+    /** The current record CSN */
+    private String csn;
+
+    /** The consumers the current record has to be sent to */
+    private int[] replicaIds = new int[0];
+
+
+    /**
+     * Creates a new instance of JournalReader.
+     *
+     * @param journal The journal to read
+     * @param segment The first segment to read
+     * @param position The position of the first record in this segment
+     */
+    JournalReader( ReplicationJournal journal, Segment segment, long position )
+    {
+        this.journal = journal;
+        this.segment = segment;
+        this.position = position;
+    }
+
+
+    /**
+     * Move to the next record
+     *
+     * @return <code>true</code> if there is a next record
+     * @throws IOException If the journal can't be read
+     */
+    public boolean next() throws IOException
+    {
+        boolean flushed = false;
+
+        while ( true )
+        {
+            if ( ( buffer != null ) && ( position < buffer.limit() ) )
+            {
+                readRecord();
+
+                return true;
+            }
+
+            if ( position < segment.getSize() )
+            {
+                // The segment has grown since it has been mapped
+                try
+                {
+                    buffer = journal.map( segment );
+                }
+                catch ( ClosedChannelException cce )
+                {
+                    // The segment has been purged : all its records have been sent
+                    buffer = null;
+                    position = segment.getSize();
+                }
+
+                continue;
+            }
+
+            Segment next = journal.nextSegment( segment );
+
+            if ( next != null )
+            {
+                segment = next;
+                buffer = null;
+                position = ReplicationJournal.SEGMENT_HEADER_SIZE;
+                continue;
+            }
+
+            if ( flushed )
+            {
+                csn = null;
+                body = null;
+
+                return false;
+            }
+
+            // A record may be waiting for other consumers
+            journal.flush();
+            flushed = true;
+        }
+    }
+
+
+    private void readRecord()
+    {
+        int recordLength = buffer.getInt( ( int ) position );
+        int start = ( int ) position + RECORD_HEADER_SIZE;
+
+        body = buffer.duplicate();
+        body.limit( start + recordLength );
+        body.position( start );
+
+        csn = ReplicationJournal.readCsn( body );
+        body.position( start + 2 + ( body.getShort( start ) & 0xFFFF ) );
+
+        int nbReplicas = body.getInt();
+
+        if ( replicaIds.length != nbReplicas )
+        {
+            replicaIds = new int[nbReplicas];
+        }
+
+        for ( int i = 0; i < nbReplicas; i++ )
+        {
+            replicaIds[i] = body.getInt();
+        }
+
+        position = start + recordLength;
+    }
+
+
+    /**
+     * @return The CSN of the current record
+     */
+    public String getCsn()
+    {
+        return csn;
+    }
+
+
+    /**
+     * Tells if the current record has been logged for a consumer
+     *
+     * @param replicaId The consumer ID
+     * @return <code>true</code> if the record has to be sent to this consumer
+     */
+    public boolean isFor( int replicaId )
+    {
+        for ( int id : replicaIds )
+        {
+            if ( id == replicaId )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Decode the message of the current record
+     *
+     * @return The stored modification
+     * @throws IOException If the modification can't be decoded
+     */
+    public ReplicaEventMessage getMessage() throws IOException
+    {
+        return journal.decode( body.duplicate() );
+    }
+
+
+    /**
+     * Release the mapped segment
+     */
+    public void close()
+    {
+        buffer = null;
+        body = null;
+    }
+}
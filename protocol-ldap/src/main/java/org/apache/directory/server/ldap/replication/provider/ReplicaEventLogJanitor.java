@@ -20,20 +20,18 @@
 package org.apache.directory.server.ldap.replication.provider;
 
 
-import java.io.File;
 import java.util.Map;
 
-import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.csn.Csn;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.server.core.api.DirectoryService;
-import org.apache.directory.server.ldap.replication.ReplicaEventMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 /**
- * Deletes old entries from the replication event logs that are configured in refreshNPersist mode.
+ * Removes the idle replication event logs, and deletes the old segments of the replication journal
+ * once all their messages have been sent to all the consumers.
  * 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -45,6 +43,9 @@ public class ReplicaEventLogJanitor extends Thread
 
     private Map<Integer, ReplicaEventLog> replicaLogMap;
 
+    /** The replication journal shared by all the consumers */
+    private ReplicationJournal journal;
+
     private volatile boolean stop = false;
 
     /** A lock used to wait */
@@ -57,12 +58,13 @@ public class ReplicaEventLogJanitor extends Thread
 
 
     public ReplicaEventLogJanitor( final DirectoryService directoryService,
-        final Map<Integer, ReplicaEventLog> replicaLogMap )
+        final Map<Integer, ReplicaEventLog> replicaLogMap, final ReplicationJournal journal )
     {
-        // if log is in refreshNpersist mode, has more entries than the log's threshold count then 
-        // all the entries before the last sent CSN and older than 2 hours will be purged
+        // if the journal has more entries than the logs' threshold count then all the segments
+        // before the consumers last sent CSN and older than 2 hours will be purged
         this.directoryService = directoryService;
         this.replicaLogMap = replicaLogMap;
+        this.journal = journal;
         setDaemon( true );
     }
 
@@ -72,6 +74,13 @@ public class ReplicaEventLogJanitor extends Thread
     {
         while ( !stop )
         {
+            long now = directoryService.getTimeProvider().currentIimeMillis();
+
+            // The oldest CSN sent to a consumer : the journal can be purged up to this CSN
+            String purgeCsn = null;
+            boolean canPurge = !replicaLogMap.isEmpty();
+            long thresholdCount = Long.MAX_VALUE;
+
             for ( ReplicaEventLog log : replicaLogMap.values() )
             {
                 synchronized ( log ) // lock the log and clean
@@ -83,11 +92,10 @@ public class ReplicaEventLogJanitor extends Thread
                         if ( lastSentCsn == null )
                         {
                             LOG.debug( "last sent CSN is null for the replica {}, skipping cleanup", log.getName() );
-                            return;
+                            canPurge = false;
+                            continue;
                         }
 
-                        long now = directoryService.getTimeProvider().currentIimeMillis();
-
                         long maxIdleTime = log.getMaxIdlePeriod() * 1000L;
 
                         long lastUpdatedTime = new Csn( lastSentCsn ).getTimestamp();
@@ -119,52 +127,32 @@ public class ReplicaEventLogJanitor extends Thread
                             continue;
                         }
 
-                        long thresholdCount = log.getPurgeThresholdCount();
-
-                        if ( log.count() < thresholdCount )
+                        if ( ( purgeCsn == null ) || ( lastSentCsn.compareTo( purgeCsn ) < 0 ) )
                         {
-                            continue;
+                            purgeCsn = lastSentCsn;
                         }
 
-                        LOG.debug( "starting to purge the log entries that are older than {} milliseconds",
-                            thresholdTime );
-
-                        long deleteCount = 0;
-
-                        ReplicaJournalCursor cursor = log.getCursor( null ); // pass no CSN
-                        cursor.skipQualifyingWhileFetching();
-
-                        while ( cursor.next() )
-                        {
-                            ReplicaEventMessage message = cursor.get();
-                            String csnVal = message.getEntry().get( SchemaConstants.ENTRY_CSN_AT ).getString();
-
-                            // skip if we reach the lastSentCsn or got past it
-                            if ( csnVal.compareTo( lastSentCsn ) >= 0 )
-                            {
-                                break;
-                            }
-
-                            Csn csn = new Csn( csnVal );
-
-                            if ( ( now - csn.getTimestamp() ) >= thresholdTime )
-                            {
-                                cursor.delete();
-                                deleteCount++;
-                            }
-                        }
-
-                        cursor.close();
-
-                        LOG.debug( "purged {} messages from the log {}", deleteCount, log.getName() );
+                        thresholdCount = Math.min( thresholdCount, log.getPurgeThresholdCount() );
                     }
                     catch ( Exception e )
                     {
-                        LOG.warn( "Failed to purge old entries from the log {}", log.getName(), e );
+                        LOG.warn( "Failed to check the log {}", log.getName(), e );
+                        canPurge = false;
                     }
                 }
             }
 
+            // Purge the journal segments sent to all the consumers and older than the threshold time
+            if ( canPurge && ( purgeCsn != null ) && ( journal.count() >= thresholdCount ) )
+            {
+                LOG.debug( "starting to purge the journal segments older than {} milliseconds and {}",
+                    thresholdTime, purgeCsn );
+
+                long deleteCount = journal.purge( purgeCsn, now - thresholdTime );
+
+                LOG.debug( "purged {} messages from the journal {}", deleteCount, journal );
+            }
+
             try
             {
                 synchronized ( lock )
@@ -190,10 +178,8 @@ public class ReplicaEventLogJanitor extends Thread
 
         try
         {
+            // The messages logged for this consumer will be removed when the journal is purged
             replicaEventLog.stop();
-
-            new File( directoryService.getInstanceLayout().getReplDirectory(), name + ".db" ).delete();
-            new File( directoryService.getInstanceLayout().getReplDirectory(), name + ".lg" ).delete();
             LOG.info( "successfully removed replication event log {}", name );
         }
         catch ( Exception e )
@@ -25,22 +25,17 @@ import java.io.IOException;
 import java.util.Iterator;
 
 import org.apache.directory.api.ldap.model.constants.Loggers;
-import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
-import org.apache.directory.api.ldap.model.cursor.Cursor;
 import org.apache.directory.api.ldap.model.cursor.CursorException;
-import org.apache.directory.api.ldap.model.cursor.Tuple;
 import org.apache.directory.api.ldap.model.exception.LdapException;
-import org.apache.directory.api.ldap.model.message.controls.ChangeType;
-import org.apache.directory.server.core.api.partition.PartitionTxn;
-import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmTable;
 import org.apache.directory.server.ldap.replication.ReplicaEventMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 /**
- * Define a cursor on top of a replication journal.
+ * Define a cursor on top of the replication journal, returning the modifications logged for
+ * a consumer which are newer than the consumer's CSN.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -55,45 +50,36 @@ public class ReplicaJournalCursor extends AbstractCursor<ReplicaEventMessage>
     /** Speedup for logs */
     private static final boolean IS_DEBUG = LOG_CURSOR.isDebugEnabled();
 
-    /** the underlying journal's cursor */
-    private Cursor<Tuple<String, ReplicaEventMessage>> tupleCursor;
+    /** the underlying journal's reader */
+    private JournalReader reader;
 
-    /** the event log journal */
-    private JdbmTable<String, ReplicaEventMessage> journal;
+    /** the consumer's ID */
+    private int replicaId;
 
     /** the consumer's CSN based on which messages will be qualified for sending */
     private String consumerCsn;
 
     private ReplicaEventMessage qualifiedEvtMsg;
 
-    /** used while cleaning up the log */
-    private boolean skipQualifying;
-    
-    /** The partition transaction */
-    private PartitionTxn partitionTxn;
-    
-
 
     /**
      * Creates a cursor on top of the given journal
      * 
-     * @param partitionTxn The Transaction to use
-     * @param journal the log journal
+     * @param journal the replication journal
+     * @param replicaId the consumer's ID
      * @param consumerCsn the consumer's CSN taken from cookie
-     * @throws Exception If the cursor creation failed
+     * @throws IOException If the cursor creation failed
      */
-    public ReplicaJournalCursor( PartitionTxn partitionTxn, JdbmTable<String, ReplicaEventMessage> journal, 
-            String consumerCsn ) throws Exception
+    public ReplicaJournalCursor( ReplicationJournal journal, int replicaId, String consumerCsn ) throws IOException
     {
         if ( IS_DEBUG )
         {
             LOG_CURSOR.debug( "Creating ReplicaJournalCursor {}", this );
         }
 
-        this.journal = journal;
-        this.tupleCursor = journal.cursor();
+        this.reader = journal.read( consumerCsn );
+        this.replicaId = replicaId;
         this.consumerCsn = consumerCsn;
-        this.partitionTxn = partitionTxn;
     }
 
 
@@ -160,29 +146,19 @@ public class ReplicaJournalCursor extends AbstractCursor<ReplicaEventMessage>
 
 
     /**
-     * selects the current queue entry if qualified for sending to the consumer
-     * 
-     * @throws Exception
+     * Tells if the current record is qualified for sending to the consumer : it must have been
+     * logged for this consumer, and be newer than the consumer CSN
      */
-    private boolean isQualified( String csn, ReplicaEventMessage evtMsg ) throws LdapException
+    private boolean isQualified()
     {
-        LOG.debug( "ReplicaEventMessage: {}", evtMsg );
-
-        if ( evtMsg.isEventOlderThan( consumerCsn ) )
+        if ( !reader.isFor( replicaId ) )
         {
-            if ( LOG.isDebugEnabled() )
-            {
-                String evt = "MODDN"; // take this as default cause the event type for MODDN is null
-
-                ChangeType changeType = evtMsg.getChangeType();
-
-                if ( changeType != null )
-                {
-                    evt = changeType.name();
-                }
+            return false;
+        }
 
-                LOG.debug( "event {} for dn {} is not qualified for sending", evt, evtMsg.getEntry().getDn() );
-            }
+        if ( ( consumerCsn != null ) && ( reader.getCsn().compareTo( consumerCsn ) <= 0 ) )
+        {
+            LOG.debug( "event with CSN {} is not qualified for sending", reader.getCsn() );
 
             return false;
         }
@@ -205,31 +181,23 @@ public class ReplicaJournalCursor extends AbstractCursor<ReplicaEventMessage>
      */
     public boolean next() throws LdapException, CursorException
     {
-        while ( tupleCursor.next() )
+        try
         {
-            Tuple<String, ReplicaEventMessage> tuple = tupleCursor.get();
-
-            String csn = tuple.getKey();
-            ReplicaEventMessage message = tuple.getValue();
-
-            if ( skipQualifying )
+            while ( reader.next() )
             {
-                qualifiedEvtMsg = message;
-                return true;
-            }
-
-            boolean qualified = isQualified( csn, message );
+                if ( isQualified() )
+                {
+                    qualifiedEvtMsg = reader.getMessage();
+                    LOG.debug( "ReplicaEventMessage: {}", qualifiedEvtMsg );
 
-            if ( qualified )
-            {
-                qualifiedEvtMsg = message;
-                return true;
-            }
-            else
-            {
-                journal.remove( partitionTxn, csn );
+                    return true;
+                }
             }
         }
+        catch ( IOException ioe )
+        {
+            throw new CursorException( ioe.getMessage(), ioe );
+        }
 
         qualifiedEvtMsg = null;
 
@@ -257,7 +225,7 @@ public class ReplicaJournalCursor extends AbstractCursor<ReplicaEventMessage>
             LOG_CURSOR.debug( "Closing ReplicaJournalCursor {}", this );
         }
 
-        tupleCursor.close();
+        reader.close();
         super.close();
     }
 
@@ -273,40 +241,11 @@ public class ReplicaJournalCursor extends AbstractCursor<ReplicaEventMessage>
             LOG_CURSOR.debug( "Closing ReplicaJournalCursor {}", this );
         }
 
-        tupleCursor.close();
+        reader.close();
         super.close( cause );
     }
 
 
-    /**
-     * sets the flag to skip CSN based checking while traversing
-     * used for internal log cleanup ONLY 
-     */
-    protected void skipQualifyingWhileFetching()
-    {
-        skipQualifying = true;
-    }
-
-
-    /**
-     * delete the current message
-     * used for internal log cleanup ONLY
-     */
-    protected void delete()
-    {
-        try
-        {
-            if ( qualifiedEvtMsg != null )
-            {
-                journal.remove( partitionTxn, qualifiedEvtMsg.getEntry().get( SchemaConstants.ENTRY_CSN_AT ).getString() );
-            }
-        }
-        catch ( Exception e )
-        {
-        }
-    }
-
-
     /**
      * {@inheritDoc}
      */
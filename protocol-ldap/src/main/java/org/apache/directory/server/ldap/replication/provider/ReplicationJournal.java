@@ -0,0 +1,926 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.replication.provider;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.apache.directory.api.ldap.model.constants.Loggers;
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.csn.Csn;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
+import org.apache.directory.api.ldap.model.message.controls.ChangeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.ldap.replication.ReplicaEventMessage;
+import org.apache.directory.server.ldap.replication.ReplicaEventMessageSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The replication journal shared by all the consumers of a provider. The modifications are
+ * appended sequentially to a set of segment files, and each record lists the consumers it has to
+ * be sent to : a modification seen by many consumers is only written once.
+ * <br>
+ * The journal is organized this way :
+ * <ul>
+ * <li>The segments are files named <code>segment-&lt;number&gt;.log</code>. The last segment is
+ * the only one being written, a new one is created when it reaches the maximum segment size</li>
+ * <li>Each record contains its length, its CRC, the modification CSN, the consumers IDs and the
+ * serialized {@link ReplicaEventMessage}</li>
+ * <li>A sparse index, kept in memory and rebuilt when the journal is opened, stores the position
+ * of one record every {@link #INDEX_INTERVAL} records, with the highest CSN of the records which
+ * follow. It's used to skip the records a consumer has already received</li>
+ * <li>The records are written without being flushed to the disk. The journal is synced when
+ * {@link #getSyncBatchSize()} records have been written, or every {@link #getSyncInterval()}
+ * milliseconds</li>
+ * <li>The segments are read through memory mapped buffers</li>
+ * <li>The old records are never deleted one by one : a whole segment is deleted when all its
+ * records have been sent to all the consumers (see {@link #purge(String, long)})</li>
+ * </ul>
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ReplicationJournal
+{
+    /** A logger for the replication provider */
+    private static final Logger PROVIDER_LOG = LoggerFactory.getLogger( Loggers.PROVIDER_LOG.getName() );
+
+    /** The name of the directory containing the journal, in the replication directory */
+    public static final String JOURNAL_DIRECTORY_NAME = "journal";
+
+    /** The default maximum size of a segment */
+    public static final long DEFAULT_MAX_SEGMENT_SIZE = 64L * 1024L * 1024L;
+
+    /** The default number of records written before the journal is synced */
+    public static final int DEFAULT_SYNC_BATCH_SIZE = 256;
+
+    /** The default delay between two syncs of the journal, in milliseconds */
+    public static final long DEFAULT_SYNC_INTERVAL = 1000L;
+
+    /** The number of records between two entries of the sparse index */
+    static final int INDEX_INTERVAL = 64;
+
+    /** The segment files prefix and suffix */
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /** The magic number starting each segment, followed by the format version */
+    private static final int SEGMENT_MAGIC = 0x52504C4A;
+    private static final int SEGMENT_VERSION = 1;
+    static final int SEGMENT_HEADER_SIZE = 8;
+
+    /** The size of a record header : the record length and its CRC */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /** The directory containing the segments */
+    private final File directory;
+
+    /** The messages serializer */
+    private final ReplicaEventMessageSerializer serializer;
+
+    /** The segments, the last one being the segment we write into */
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+
+    /** The maximum size of a segment */
+    private long maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
+
+    /** The number of records written before the journal is synced */
+    private int syncBatchSize = DEFAULT_SYNC_BATCH_SIZE;
+
+    /** The delay between two syncs, in milliseconds */
+    private long syncInterval = DEFAULT_SYNC_INTERVAL;
+
+    /** The number of records written since the last sync */
+    private int unsyncedRecords;
+
+    /** The record waiting for other consumers before being written */
+    private PendingRecord pending;
+
+    /** The executor syncing the journal periodically */
+    private ScheduledExecutorService syncExecutor;
+
+    /** Tells if the journal has been closed */
+    private boolean closed;
+
+
+    /**
+     * A segment of the journal
+     */
+    static final class Segment
+    {
+        /** The segment number */
+        private final long number;
+
+        /** The segment file */
+        private final File file;
+
+        /** The file channel, used to write and to map the file */
+        private final FileChannel channel;
+
+        /** The size of the valid content of the segment */
+        private volatile long size;
+
+        /** The number of records in the segment */
+        private volatile int count;
+
+        /** The lowest and highest CSNs stored in this segment */
+        private String minCsn;
+        private volatile String maxCsn;
+
+        /** The sparse index : the position of a record every INDEX_INTERVAL records ... */
+        private long[] blockPositions = new long[16];
+
+        /** ... and the highest CSN of the records following it */
+        private String[] blockMaxCsns = new String[16];
+
+        /** The number of index entries */
+        private volatile int nbBlocks;
+
+
+        private Segment( long number, File file, FileChannel channel )
+        {
+            this.number = number;
+            this.file = file;
+            this.channel = channel;
+        }
+
+
+        /**
+         * Update the statistics and the index when a record is added
+         */
+        private void addRecord( long position, String csn )
+        {
+            if ( ( count % INDEX_INTERVAL ) == 0 )
+            {
+                if ( nbBlocks == blockPositions.length )
+                {
+                    blockPositions = Arrays.copyOf( blockPositions, nbBlocks * 2 );
+                    blockMaxCsns = Arrays.copyOf( blockMaxCsns, nbBlocks * 2 );
+                }
+
+                blockPositions[nbBlocks] = position;
+                blockMaxCsns[nbBlocks] = csn;
+                nbBlocks++;
+            }
+            else if ( csn.compareTo( blockMaxCsns[nbBlocks - 1] ) > 0 )
+            {
+                blockMaxCsns[nbBlocks - 1] = csn;
+            }
+
+            if ( ( minCsn == null ) || ( csn.compareTo( minCsn ) < 0 ) )
+            {
+                minCsn = csn;
+            }
+
+            if ( ( maxCsn == null ) || ( csn.compareTo( maxCsn ) > 0 ) )
+            {
+                maxCsn = csn;
+            }
+
+            count++;
+        }
+
+
+        /**
+         * Find the position of the first block which may contain a record newer than a CSN, or -1
+         */
+        private long findPosition( String csn )
+        {
+            if ( ( maxCsn == null ) || ( csn.compareTo( maxCsn ) >= 0 ) )
+            {
+                return -1L;
+            }
+
+            for ( int i = 0; i < nbBlocks; i++ )
+            {
+                if ( csn.compareTo( blockMaxCsns[i] ) < 0 )
+                {
+                    return blockPositions[i];
+                }
+            }
+
+            return -1L;
+        }
+
+
+        /**
+         * Map the valid content of the segment in memory
+         */
+        private MappedByteBuffer map( long limit ) throws IOException
+        {
+            return channel.map( FileChannel.MapMode.READ_ONLY, 0L, limit );
+        }
+
+
+        long getNumber()
+        {
+            return number;
+        }
+
+
+        long getSize()
+        {
+            return size;
+        }
+
+
+        int getCount()
+        {
+            return count;
+        }
+
+
+        String getMaxCsn()
+        {
+            return maxCsn;
+        }
+    }
+
+
+    /**
+     * A record which has been logged, and which may still be logged for other consumers
+     */
+    private static final class PendingRecord
+    {
+        private final String csn;
+        private final ChangeType changeType;
+        private final byte[] message;
+        private int[] replicaIds = new int[4];
+        private int nbReplicas;
+
+
+        private PendingRecord( String csn, ChangeType changeType, byte[] message )
+        {
+            this.csn = csn;
+            this.changeType = changeType;
+            this.message = message;
+        }
+
+
+        private boolean contains( int replicaId )
+        {
+            for ( int i = 0; i < nbReplicas; i++ )
+            {
+                if ( replicaIds[i] == replicaId )
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+
+        private void addReplica( int replicaId )
+        {
+            if ( nbReplicas == replicaIds.length )
+            {
+                replicaIds = Arrays.copyOf( replicaIds, nbReplicas * 2 );
+            }
+
+            replicaIds[nbReplicas++] = replicaId;
+        }
+    }
+
+
+    /**
+     * Creates a new instance of ReplicationJournal, opening the existing segments, or
+     * creating the first one.
+     *
+     * @param directory The directory containing the journal
+     * @param schemaManager The SchemaManager instance
+     * @throws IOException If the journal can't be opened
+     */
+    public ReplicationJournal( File directory, SchemaManager schemaManager ) throws IOException
+    {
+        this.directory = directory;
+        this.serializer = new ReplicaEventMessageSerializer( schemaManager );
+
+        if ( !directory.exists() && !directory.mkdirs() )
+        {
+            throw new IOException( I18n.err( I18n.ERR_112_COULD_NOT_CREATE_DIRECTORY, directory ) );
+        }
+
+        File[] files = directory.listFiles( ( dir, name ) -> name.startsWith( SEGMENT_PREFIX )
+            && name.endsWith( SEGMENT_SUFFIX ) );
+
+        if ( files != null )
+        {
+            Arrays.sort( files );
+
+            for ( File file : files )
+            {
+                segments.add( recover( file ) );
+            }
+        }
+
+        if ( segments.isEmpty() )
+        {
+            segments.add( createSegment( 0L ) );
+        }
+
+        startSync();
+
+        PROVIDER_LOG.debug( "Opened the replication journal {} : {} segments, {} records", directory,
+            segments.size(), count() );
+    }
+
+
+    /**
+     * Open a segment, rebuilding its index, and cutting the incomplete records written
+     * before a crash
+     */
+    private Segment recover( File file ) throws IOException
+    {
+        String name = file.getName();
+        long number = Long.parseLong( name.substring( SEGMENT_PREFIX.length(), name.length()
+            - SEGMENT_SUFFIX.length() ) );
+        FileChannel channel = new RandomAccessFile( file, "rw" ).getChannel();
+        Segment segment = new Segment( number, file, channel );
+        long length = channel.size();
+
+        if ( length < SEGMENT_HEADER_SIZE )
+        {
+            writeSegmentHeader( segment );
+
+            return segment;
+        }
+
+        MappedByteBuffer buffer = segment.map( length );
+
+        if ( ( buffer.getInt( 0 ) != SEGMENT_MAGIC ) || ( buffer.getInt( 4 ) != SEGMENT_VERSION ) )
+        {
+            channel.close();
+
+            throw new IOException( "Invalid replication journal segment " + file );
+        }
+
+        long position = SEGMENT_HEADER_SIZE;
+        CRC32 crc = new CRC32();
+
+        while ( position + RECORD_HEADER_SIZE <= length )
+        {
+            int recordLength = buffer.getInt( ( int ) position );
+            int recordCrc = buffer.getInt( ( int ) position + 4 );
+
+            if ( ( recordLength <= 0 ) || ( position + RECORD_HEADER_SIZE + recordLength > length ) )
+            {
+                break;
+            }
+
+            ByteBuffer body = buffer.duplicate();
+            body.position( ( int ) position + RECORD_HEADER_SIZE );
+            body.limit( ( int ) position + RECORD_HEADER_SIZE + recordLength );
+            crc.reset();
+            crc.update( body.duplicate() );
+
+            if ( ( int ) crc.getValue() != recordCrc )
+            {
+                break;
+            }
+
+            segment.addRecord( position, readCsn( body ) );
+            position += RECORD_HEADER_SIZE + recordLength;
+        }
+
+        if ( position < length )
+        {
+            PROVIDER_LOG.warn( "Truncating the replication journal segment {} at {}, {} bytes were not valid", file,
+                position, length - position );
+            channel.truncate( position );
+        }
+
+        segment.size = position;
+
+        return segment;
+    }
+
+
+    private Segment createSegment( long number ) throws IOException
+    {
+        File file = new File( directory, String.format( Locale.ROOT, "%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX ) );
+        FileChannel channel = new RandomAccessFile( file, "rw" ).getChannel();
+        Segment segment = new Segment( number, file, channel );
+        channel.truncate( 0L );
+        writeSegmentHeader( segment );
+
+        return segment;
+    }
+
+
+    private void writeSegmentHeader( Segment segment ) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate( SEGMENT_HEADER_SIZE );
+        header.putInt( SEGMENT_MAGIC ).putInt( SEGMENT_VERSION ).flip();
+
+        while ( header.hasRemaining() )
+        {
+            segment.channel.write( header, SEGMENT_HEADER_SIZE - header.remaining() );
+        }
+
+        segment.channel.force( true );
+        segment.size = SEGMENT_HEADER_SIZE;
+    }
+
+
+    /**
+     * Start the thread syncing the journal periodically
+     */
+    private void startSync()
+    {
+        syncExecutor = Executors.newSingleThreadScheduledExecutor( runnable ->
+        {
+            Thread thread = new Thread( runnable, "ReplicationJournal-sync" );
+            thread.setDaemon( true );
+
+            return thread;
+        } );
+
+        syncExecutor.scheduleWithFixedDelay( () ->
+        {
+            try
+            {
+                sync();
+            }
+            catch ( IOException ioe )
+            {
+                PROVIDER_LOG.error( "Failed to sync the replication journal", ioe );
+            }
+        }, syncInterval, syncInterval, TimeUnit.MILLISECONDS );
+    }
+
+
+    /**
+     * Log a modification for a consumer. When the same modification is logged for many consumers
+     * in a row, which is what happens when the event listeners of all the consumers are notified,
+     * a single record is written.
+     *
+     * @param replicaId The consumer ID
+     * @param message The modification
+     * @throws IOException If the modification can't be written
+     */
+    public synchronized void append( int replicaId, ReplicaEventMessage message ) throws IOException
+    {
+        if ( closed )
+        {
+            throw new IOException( "The replication journal " + directory + " is closed" );
+        }
+
+        // The records are indexed by their CSN
+        Attribute csnAttribute = message.getEntry().get( SchemaConstants.ENTRY_CSN_AT );
+
+        if ( ( csnAttribute == null ) || ( csnAttribute.get() == null ) )
+        {
+            throw new IOException( "The entry " + message.getEntry().getDn()
+                + " has no entryCSN, it can't be journaled" );
+        }
+
+        String csn;
+
+        try
+        {
+            csn = csnAttribute.getString();
+        }
+        catch ( LdapInvalidAttributeValueException liave )
+        {
+            throw new IOException( "Invalid entryCSN for the entry " + message.getEntry().getDn(), liave );
+        }
+
+        if ( ( pending != null ) && pending.csn.equals( csn ) && ( pending.changeType == message.getChangeType() ) )
+        {
+            if ( !pending.contains( replicaId ) )
+            {
+                pending.addReplica( replicaId );
+            }
+
+            return;
+        }
+
+        writePending();
+
+        pending = new PendingRecord( csn, message.getChangeType(), serializer.serialize( message ) );
+        pending.addReplica( replicaId );
+    }
+
+
+    /**
+     * Write the pending record at the end of the current segment
+     */
+    private void writePending() throws IOException
+    {
+        if ( pending == null )
+        {
+            return;
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream( pending.message.length + 64 );
+
+        try ( DataOutputStream out = new DataOutputStream( baos ) )
+        {
+            // Room for the record header
+            out.writeLong( 0L );
+
+            byte[] csnBytes = pending.csn.getBytes( StandardCharsets.UTF_8 );
+            out.writeShort( csnBytes.length );
+            out.write( csnBytes );
+            out.writeInt( pending.nbReplicas );
+
+            for ( int i = 0; i < pending.nbReplicas; i++ )
+            {
+                out.writeInt( pending.replicaIds[i] );
+            }
+
+            out.write( pending.message );
+        }
+
+        ByteBuffer record = ByteBuffer.wrap( baos.toByteArray() );
+        int recordLength = record.capacity() - RECORD_HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update( record.array(), RECORD_HEADER_SIZE, recordLength );
+        record.putInt( 0, recordLength );
+        record.putInt( 4, ( int ) crc.getValue() );
+
+        Segment segment = segments.get( segments.size() - 1 );
+
+        if ( ( segment.count > 0 ) && ( segment.size + record.capacity() > maxSegmentSize ) )
+        {
+            segment.channel.force( false );
+            segment = createSegment( segment.number + 1 );
+            segments.add( segment );
+            unsyncedRecords = 0;
+        }
+
+        long position = segment.size;
+
+        while ( record.hasRemaining() )
+        {
+            segment.channel.write( record, position + record.position() );
+        }
+
+        segment.addRecord( position, pending.csn );
+        segment.size = position + record.capacity();
+        pending = null;
+
+        if ( ++unsyncedRecords >= syncBatchSize )
+        {
+            segment.channel.force( false );
+            unsyncedRecords = 0;
+        }
+    }
+
+
+    /**
+     * Write the pending record and flush the current segment to the disk
+     *
+     * @throws IOException If the journal can't be written
+     */
+    public synchronized void sync() throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+
+        writePending();
+
+        if ( unsyncedRecords > 0 )
+        {
+            segments.get( segments.size() - 1 ).channel.force( false );
+            unsyncedRecords = 0;
+        }
+    }
+
+
+    /**
+     * Write the pending record, so that the readers can see it
+     */
+    synchronized void flush() throws IOException
+    {
+        if ( !closed )
+        {
+            writePending();
+        }
+    }
+
+
+    /**
+     * Create a reader, starting at the first record which may be newer than a given CSN.
+     * The records older than this CSN may still be returned by the reader.
+     *
+     * @param csn The CSN, or null to read the whole journal
+     * @return A reader on the journal
+     * @throws IOException If the journal can't be read
+     */
+    public synchronized JournalReader read( String csn ) throws IOException
+    {
+        writePending();
+
+        Segment last = segments.get( segments.size() - 1 );
+
+        if ( csn == null )
+        {
+            return new JournalReader( this, segments.get( 0 ), SEGMENT_HEADER_SIZE );
+        }
+
+        for ( Segment segment : segments )
+        {
+            long position = segment.findPosition( csn );
+
+            if ( position >= 0L )
+            {
+                return new JournalReader( this, segment, position );
+            }
+        }
+
+        return new JournalReader( this, last, last.size );
+    }
+
+
+    /**
+     * Get the segment following a given one
+     */
+    Segment nextSegment( Segment segment )
+    {
+        for ( Segment candidate : segments )
+        {
+            if ( candidate.number > segment.number )
+            {
+                return candidate;
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Map a segment, up to its current size
+     */
+    MappedByteBuffer map( Segment segment ) throws IOException
+    {
+        return segment.map( segment.size );
+    }
+
+
+    /**
+     * Decode a record read from the journal
+     *
+     * @param body The record body
+     * @return The stored message
+     * @throws IOException If the record can't be decoded
+     */
+    ReplicaEventMessage decode( ByteBuffer body ) throws IOException
+    {
+        byte[] bytes = new byte[body.remaining()];
+        body.get( bytes );
+
+        return ( ReplicaEventMessage ) serializer.deserialize( bytes );
+    }
+
+
+    /**
+     * Read the CSN at the beginning of a record body
+     */
+    static String readCsn( ByteBuffer body )
+    {
+        int csnLength = body.getShort( body.position() ) & 0xFFFF;
+        byte[] csnBytes = new byte[csnLength];
+
+        for ( int i = 0; i < csnLength; i++ )
+        {
+            csnBytes[i] = body.get( body.position() + 2 + i );
+        }
+
+        return new String( csnBytes, StandardCharsets.UTF_8 );
+    }
+
+
+    /**
+     * Delete the segments which only contain records older than a given CSN, and written
+     * before a given date. The segment currently written is never deleted.
+     *
+     * @param csn The CSN all the consumers have received
+     * @param olderThan The date, in milliseconds, the segments must be older than
+     * @return The number of deleted records
+     */
+    public synchronized long purge( String csn, long olderThan )
+    {
+        long deleted = 0L;
+
+        while ( segments.size() > 1 )
+        {
+            Segment segment = segments.get( 0 );
+            String segmentMaxCsn = segment.maxCsn;
+
+            if ( ( segmentMaxCsn != null ) && ( ( segmentMaxCsn.compareTo( csn ) > 0 )
+                || ( getTimestamp( segmentMaxCsn ) > olderThan ) ) )
+            {
+                break;
+            }
+
+            segments.remove( 0 );
+            deleted += segment.count;
+
+            try
+            {
+                segment.channel.close();
+            }
+            catch ( IOException ioe )
+            {
+                PROVIDER_LOG.warn( "Failed to close the replication journal segment {}", segment.file, ioe );
+            }
+
+            if ( !segment.file.delete() )
+            {
+                PROVIDER_LOG.warn( "Failed to delete the replication journal segment {}", segment.file );
+            }
+
+            PROVIDER_LOG.debug( "Purged the replication journal segment {} ({} records)", segment.file,
+                segment.count );
+        }
+
+        return deleted;
+    }
+
+
+    private static long getTimestamp( String csn )
+    {
+        try
+        {
+            return new Csn( csn ).getTimestamp();
+        }
+        catch ( RuntimeException re )
+        {
+            return Long.MAX_VALUE;
+        }
+    }
+
+
+    /**
+     * @return The number of records stored in the journal
+     */
+    public long count()
+    {
+        long count = 0L;
+
+        for ( Segment segment : segments )
+        {
+            count += segment.count;
+        }
+
+        return count;
+    }
+
+
+    /**
+     * @return The number of segments
+     */
+    public int getSegmentCount()
+    {
+        return segments.size();
+    }
+
+
+    /**
+     * Sync and close the journal
+     *
+     * @throws IOException If the journal can't be closed
+     */
+    public void close() throws IOException
+    {
+        syncExecutor.shutdownNow();
+
+        synchronized ( this )
+        {
+            if ( closed )
+            {
+                return;
+            }
+
+            sync();
+            closed = true;
+
+            List<IOException> errors = new ArrayList<>();
+
+            for ( Segment segment : segments )
+            {
+                try
+                {
+                    segment.channel.close();
+                }
+                catch ( IOException ioe )
+                {
+                    errors.add( ioe );
+                }
+            }
+
+            if ( !errors.isEmpty() )
+            {
+                throw errors.get( 0 );
+            }
+        }
+    }
+
+
+    /**
+     * @return The directory containing the journal
+     */
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+
+    /**
+     * @return The maximum size of a segment, in bytes
+     */
+    public long getMaxSegmentSize()
+    {
+        return maxSegmentSize;
+    }
+
+
+    /**
+     * @param maxSegmentSize The maximum size of a segment, in bytes
+     */
+    public void setMaxSegmentSize( long maxSegmentSize )
+    {
+        // A segment must be mappable in a single buffer
+        this.maxSegmentSize = Math.min( maxSegmentSize, Integer.MAX_VALUE );
+    }
+
+
+    /**
+     * @return The number of records written before the journal is synced
+     */
+    public int getSyncBatchSize()
+    {
+        return syncBatchSize;
+    }
+
+
+    /**
+     * @param syncBatchSize The number of records written before the journal is synced
+     */
+    public void setSyncBatchSize( int syncBatchSize )
+    {
+        this.syncBatchSize = syncBatchSize;
+    }
+
+
+    /**
+     * @return The delay between two syncs of the journal, in milliseconds
+     */
+    public long getSyncInterval()
+    {
+        return syncInterval;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "ReplicationJournal [directory=" + directory + ", segments=" + segments.size() + ", records="
+            + count() + "]";
+    }
+}
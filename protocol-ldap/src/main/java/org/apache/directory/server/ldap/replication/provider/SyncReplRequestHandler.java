@@ -29,15 +29,16 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import jdbm.RecordManager;
+import jdbm.recman.BaseRecordManager;
+
 import org.apache.directory.api.ldap.extras.controls.SynchronizationModeEnum;
 import org.apache.directory.api.ldap.extras.controls.syncrepl.syncDone.SyncDoneValue;
 import org.apache.directory.api.ldap.extras.controls.syncrepl.syncDone.SyncDoneValueImpl;
@@ -51,6 +52,7 @@ import org.apache.directory.api.ldap.extras.intermediate.syncrepl.Synchronizatio
 import org.apache.directory.api.ldap.model.constants.Loggers;
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Modification;
@@ -83,6 +85,8 @@ import org.apache.directory.api.ldap.model.message.controls.SortRequest;
 import org.apache.directory.api.ldap.model.message.controls.SortRequestImpl;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.model.schema.comparators.SerializableComparator;
 import org.apache.directory.api.ldap.model.url.LdapUrl;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.constants.ServerDNConstants;
@@ -96,6 +100,8 @@ import org.apache.directory.server.core.api.interceptor.context.ModifyOperationC
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmTable;
+import org.apache.directory.server.core.partition.impl.btree.jdbm.StringSerializer;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.ldap.LdapProtocolUtils;
 import org.apache.directory.server.ldap.LdapServer;
@@ -103,6 +109,7 @@ import org.apache.directory.server.ldap.LdapSession;
 import org.apache.directory.server.ldap.handlers.SearchAbandonListener;
 import org.apache.directory.server.ldap.handlers.SearchTimeLimitingMonitor;
 import org.apache.directory.server.ldap.replication.ReplicaEventMessage;
+import org.apache.directory.server.ldap.replication.ReplicaEventMessageSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -136,6 +143,9 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
 
     private File syncReplData;
 
+    /** The journal storing the modifications to send to all the consumers */
+    private ReplicationJournal journal;
+
     private AtomicInteger replicaCount = new AtomicInteger( 0 );
 
     private ReplConsumerManager replicaUtil;
@@ -199,12 +209,16 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
                 throw new IOException( I18n.err( I18n.ERR_112_COULD_NOT_CREATE_DIRECTORY, syncReplData ) );
             }
 
+            // Open the journal shared by all the consumers
+            journal = new ReplicationJournal( new File( syncReplData, ReplicationJournal.JOURNAL_DIRECTORY_NAME ),
+                dirService.getSchemaManager() );
+
             // Create the replication manager
-            replicaUtil = new ReplConsumerManager( dirService );
+            replicaUtil = new ReplConsumerManager( dirService, journal );
 
             loadReplicaInfo();
 
-            logJanitor = new ReplicaEventLogJanitor( dirService, replicaLogMap );
+            logJanitor = new ReplicaEventLogJanitor( dirService, replicaLogMap, journal );
             logJanitor.start();
 
             registerPersistentSearches();
@@ -277,6 +291,15 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
         // flush the dirty repos
         storeReplicaInfo();
 
+        try
+        {
+            journal.close();
+        }
+        catch ( IOException ioe )
+        {
+            PROVIDER_LOG.error( "Failed to close the replication journal {}", journal, ioe );
+        }
+
         initialized = false;
     }
 
@@ -523,12 +546,7 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
 
         // first register a ReplicaEventLog before starting the initial content refresh
         // this is to log all the operations happen on DIT during initial content refresh
-        ReplicaEventLog replicaLog = null;
-        
-        try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
-        {
-            replicaLog = createReplicaEventLog( partitionTxn, hostName, originalFilter );
-        }
+        ReplicaEventLog replicaLog = createReplicaEventLog( hostName, originalFilter );
 
         replicaLog.setRefreshNPersist( refreshNPersist );
         Value contexCsnValue = new Value( dirService.getAtProvider().getEntryCSN(), contextCsn );
@@ -1018,7 +1036,6 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
         try
         {
             List<ReplicaEventLog> eventLogs = replicaUtil.getReplicaEventLogs();
-            Set<String> eventLogNames = new HashSet<>();
 
             if ( !eventLogs.isEmpty() )
             {
@@ -1026,7 +1043,6 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
                 {
                     PROVIDER_LOG.debug( "initializing the replica log from {}", replica.getId() );
                     replicaLogMap.put( replica.getId(), replica );
-                    eventLogNames.add( replica.getName() );
 
                     // update the replicaCount's value to assign a correct value to the new replica(s)
                     if ( replicaCount.get() < replica.getId() )
@@ -1040,14 +1056,17 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
                 PROVIDER_LOG.debug( "no replica logs found to initialize" );
             }
 
-            // remove unused logs
+            // The per consumer JDBM logs used by the previous versions are copied into
+            // the shared journal, then removed
+            for ( ReplicaEventLog replica : eventLogs )
+            {
+                importLegacyEventLog( replica );
+            }
+
             for ( File f : getAllReplJournalNames() )
             {
-                if ( !eventLogNames.contains( f.getName() ) )
-                {
-                    f.delete();
-                    PROVIDER_LOG.info( "removed unused replication event log {}", f );
-                }
+                f.delete();
+                PROVIDER_LOG.info( "removed legacy replication event log {}", f );
             }
         }
         catch ( Exception e )
@@ -1057,6 +1076,55 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
     }
 
 
+    /**
+     * Copy the messages stored in the JDBM log of a consumer, as written by the previous versions,
+     * into the shared journal
+     */
+    private void importLegacyEventLog( ReplicaEventLog replica ) throws Exception
+    {
+        File legacyFile = new File( syncReplData, replica.getName() );
+
+        if ( !new File( legacyFile.getPath() + ".db" ).exists() )
+        {
+            return;
+        }
+
+        SchemaManager schemaManager = dirService.getSchemaManager();
+        RecordManager recman = new BaseRecordManager( legacyFile.getAbsolutePath() );
+
+        try
+        {
+            SerializableComparator<String> comparator = new SerializableComparator<>(
+                SchemaConstants.CSN_ORDERING_MATCH_MR_OID );
+            comparator.setSchemaManager( schemaManager );
+
+            JdbmTable<String, ReplicaEventMessage> legacyLog = new JdbmTable<>( schemaManager,
+                legacyFile.getName(), recman, comparator, StringSerializer.INSTANCE,
+                new ReplicaEventMessageSerializer( schemaManager ) );
+
+            int nbImported = 0;
+
+            try ( Cursor<Tuple<String, ReplicaEventMessage>> cursor = legacyLog.cursor() )
+            {
+                while ( cursor.next() )
+                {
+                    journal.append( replica.getId(), cursor.get().getValue() );
+                    nbImported++;
+                }
+            }
+
+            journal.sync();
+
+            PROVIDER_LOG.info( "imported {} messages from the legacy replication event log {}", nbImported,
+                legacyFile );
+        }
+        finally
+        {
+            recman.close();
+        }
+    }
+
+
     /**
      * Register the listeners for each existing consumers
      */
@@ -1133,13 +1201,13 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
     /**
      * Create a new ReplicaEventLog. Each replica will have a unique ID, created by the provider.
      */
-    private ReplicaEventLog createReplicaEventLog( PartitionTxn partitionTxn, String hostName, String filter ) throws Exception
+    private ReplicaEventLog createReplicaEventLog( String hostName, String filter ) throws Exception
     {
         int replicaId = replicaCount.incrementAndGet();
 
         PROVIDER_LOG.debug( "creating a new event log for the replica with id {}", replicaId );
 
-        ReplicaEventLog replicaLog = new ReplicaEventLog( partitionTxn, dirService, replicaId );
+        ReplicaEventLog replicaLog = new ReplicaEventLog( journal, dirService, replicaId );
         replicaLog.setHostName( hostName );
         replicaLog.setSearchFilter( filter );
 
@@ -0,0 +1,204 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.ldap;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.DummySession;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the way the LdapProtocolHandler and the LdapServer resume, or cancel, the
+ * suspended searches of a session.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapProtocolHandlerTest
+{
+    private LdapServer ldapServer;
+
+    private LdapProtocolHandler handler;
+
+    private DummySession ioSession;
+
+    private LdapSession ldapSession;
+
+
+    @Before
+    public void init()
+    {
+        // Resume the searches in the calling thread
+        ldapServer = new LdapServer()
+        {
+            @Override
+            public void resumeSearch( SuspendedSearch writer )
+            {
+                writer.run();
+            }
+        };
+
+        ldapServer.setSearchWriteHighWaterMark( 1000 );
+        handler = new LdapProtocolHandler( ldapServer );
+        ioSession = new DummySession();
+        ldapSession = new LdapSession( ioSession );
+        ldapServer.getLdapSessionManager().addLdapSession( ldapSession );
+    }
+
+
+    @Test
+    public void testResumeSuspendedSearches() throws Exception
+    {
+        TestSuspendedSearch search1 = suspend( 1 );
+        TestSuspendedSearch search2 = suspend( 2 );
+
+        // Too many bytes are still waiting to be sent
+        ioSession.increaseScheduledWriteBytes( 600 );
+        handler.messageSent( ioSession, IoBuffer.allocate( 0 ) );
+
+        assertEquals( 0, search1.runs );
+        assertEquals( 0, search2.runs );
+        assertTrue( ldapSession.hasSuspendedSearches() );
+
+        // Under the low water mark
+        ioSession.increaseScheduledWriteBytes( -100 );
+        handler.messageSent( ioSession, IoBuffer.allocate( 0 ) );
+
+        assertEquals( 1, search1.runs );
+        assertEquals( 1, search2.runs );
+        assertEquals( 0, search1.cancels + search2.cancels );
+        assertFalse( ldapSession.hasSuspendedSearches() );
+    }
+
+
+    @Test
+    public void testSessionClosedCancelsSuspendedSearches() throws Exception
+    {
+        TestSuspendedSearch search1 = suspend( 1 );
+        TestSuspendedSearch search2 = suspend( 2 );
+
+        handler.sessionClosed( ioSession );
+
+        assertEquals( 1, search1.cancels );
+        assertEquals( 1, search2.cancels );
+        assertEquals( 0, search1.runs + search2.runs );
+        assertFalse( ldapSession.hasSuspendedSearches() );
+        assertTrue( ldapSession.getOutstandingRequests().isEmpty() );
+        assertNull( ldapServer.getLdapSessionManager().getLdapSession( ioSession ) );
+    }
+
+
+    @Test
+    public void testAbandonCancelsSuspendedSearch() throws Exception
+    {
+        TestSuspendedSearch search1 = suspend( 1 );
+        TestSuspendedSearch search2 = suspend( 2 );
+
+        ldapSession.abandonOutstandingRequest( 1 );
+
+        assertEquals( 1, search1.cancels );
+        assertEquals( 0, search2.cancels );
+        assertEquals( search2, ldapSession.pollSuspendedSearch() );
+        assertNull( ldapSession.pollSuspendedSearch() );
+    }
+
+
+    @Test
+    public void testResumeSearchOnStoppedServer()
+    {
+        // The server is not started : the search can't be resumed
+        LdapServer stoppedServer = new LdapServer();
+        TestSuspendedSearch search = suspend( 1 );
+
+        assertEquals( search, ldapSession.pollSuspendedSearch() );
+
+        stoppedServer.resumeSearch( search );
+
+        assertEquals( 0, search.runs );
+        assertEquals( 1, search.cancels );
+        assertTrue( ldapSession.getOutstandingRequests().isEmpty() );
+    }
+
+
+    private TestSuspendedSearch suspend( int messageId )
+    {
+        SearchRequest req = new SearchRequestImpl();
+        req.setMessageId( messageId );
+        ldapSession.registerOutstandingRequest( req );
+
+        TestSuspendedSearch search = new TestSuspendedSearch( ldapSession, req );
+        ldapSession.addSuspendedSearch( search );
+
+        return search;
+    }
+
+
+    /**
+     * A suspended search counting its resumptions and cancellations
+     */
+    private static class TestSuspendedSearch implements SuspendedSearch
+    {
+        private final LdapSession session;
+
+        private final SearchRequest req;
+
+        private int runs;
+
+        private int cancels;
+
+
+        TestSuspendedSearch( LdapSession session, SearchRequest req )
+        {
+            this.session = session;
+            this.req = req;
+        }
+
+
+        @Override
+        public void run()
+        {
+            runs++;
+            session.unregisterOutstandingRequest( req );
+        }
+
+
+        @Override
+        public int getMessageId()
+        {
+            return req.getMessageId();
+        }
+
+
+        @Override
+        public void cancel()
+        {
+            cancels++;
+            session.unregisterOutstandingRequest( req );
+        }
+    }
+}
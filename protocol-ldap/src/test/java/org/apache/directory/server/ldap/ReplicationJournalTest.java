@@ -0,0 +1,373 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.csn.CsnFactory;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.message.controls.ChangeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.ldap.replication.ReplicaEventMessage;
+import org.apache.directory.server.ldap.replication.provider.JournalReader;
+import org.apache.directory.server.ldap.replication.provider.ReplicationJournal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests for the segmented journal storing the ReplicaEventMessages of all the consumers.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ReplicationJournalTest
+{
+    /** The SchemaManager instance */
+    private static SchemaManager schemaManager;
+
+    /** The CsnFactory */
+    private static CsnFactory csnFactory;
+
+    /** The journal directory */
+    private File directory;
+
+    /** The Journal */
+    private ReplicationJournal journal;
+
+
+    /**
+     * Load the SchemaManager
+     */
+    @BeforeClass
+    public static void init() throws Exception
+    {
+        String workingDirectory = System.getProperty( "workingDirectory" );
+
+        if ( workingDirectory == null )
+        {
+            String path = ReplicationJournalTest.class.getResource( "" ).getPath();
+            int targetPos = path.indexOf( "target" );
+            workingDirectory = path.substring( 0, targetPos + 6 );
+        }
+
+        File schemaRepository = new File( workingDirectory, "schema" );
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( new File( workingDirectory ) );
+        extractor.extractOrCopy( true );
+        LdifSchemaLoader loader = new LdifSchemaLoader( schemaRepository );
+        schemaManager = new DefaultSchemaManager( loader );
+
+        boolean loaded = schemaManager.loadAllEnabled();
+
+        if ( !loaded )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+
+        csnFactory = new CsnFactory( 0 );
+    }
+
+
+    @Before
+    public void createJournal() throws Exception
+    {
+        directory = Files.createTempDirectory( getClass().getSimpleName() ).toFile();
+        journal = new ReplicationJournal( directory, schemaManager );
+    }
+
+
+    @After
+    public void destroyJournal() throws Exception
+    {
+        if ( journal != null )
+        {
+            journal.close();
+        }
+
+        journal = null;
+
+        File[] files = directory.listFiles();
+
+        if ( files != null )
+        {
+            for ( File file : files )
+            {
+                file.delete();
+            }
+        }
+
+        directory.delete();
+    }
+
+
+    private ReplicaEventMessage createMessage( int i )
+    {
+        try
+        {
+            Entry entry = new DefaultEntry( schemaManager, "ou=test" + i + ",ou=system",
+                "ObjectClass: top",
+                "ObjectClass: organizationalUnit",
+                "ou", "test" + i,
+                "entryCsn", csnFactory.newInstance().toString()
+                );
+
+            return new ReplicaEventMessage( ChangeType.ADD, entry );
+        }
+        catch ( Exception e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+
+    private String getCsn( ReplicaEventMessage message ) throws Exception
+    {
+        return message.getEntry().get( "entryCsn" ).getString();
+    }
+
+
+    /**
+     * Check that we can write 1000 messages and read them back in order, starting in the middle
+     */
+    @Test
+    public void testAppendAndRead() throws Exception
+    {
+        List<String> csns = new ArrayList<>();
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            ReplicaEventMessage message = createMessage( i );
+            journal.append( 1, message );
+            csns.add( getCsn( message ) );
+        }
+
+        journal.sync();
+        assertEquals( 1000L, journal.count() );
+
+        // Read the messages after the 100th one
+        String csn100 = csns.get( 100 );
+        int pos = 101;
+
+        try ( JournalReader reader = journal.read( csn100 ) )
+        {
+            while ( reader.next() )
+            {
+                if ( reader.getCsn().compareTo( csn100 ) <= 0 )
+                {
+                    continue;
+                }
+
+                assertTrue( reader.isFor( 1 ) );
+                assertEquals( csns.get( pos ), reader.getCsn() );
+                ReplicaEventMessage message = reader.getMessage();
+                assertEquals( ChangeType.ADD, message.getChangeType() );
+                assertEquals( "test" + pos, message.getEntry().get( "ou" ).getString() );
+                pos++;
+            }
+        }
+
+        assertEquals( 1000, pos );
+    }
+
+
+    /**
+     * Check that a message logged for many consumers is only stored once
+     */
+    @Test
+    public void testSharedRecord() throws Exception
+    {
+        ReplicaEventMessage message = createMessage( 0 );
+        journal.append( 1, message );
+        journal.append( 2, message );
+        journal.append( 2, message );
+
+        ReplicaEventMessage other = createMessage( 1 );
+        journal.append( 3, other );
+        journal.sync();
+
+        assertEquals( 2L, journal.count() );
+
+        try ( JournalReader reader = journal.read( null ) )
+        {
+            assertTrue( reader.next() );
+            assertEquals( getCsn( message ), reader.getCsn() );
+            assertTrue( reader.isFor( 1 ) );
+            assertTrue( reader.isFor( 2 ) );
+            assertFalse( reader.isFor( 3 ) );
+
+            assertTrue( reader.next() );
+            assertEquals( getCsn( other ), reader.getCsn() );
+            assertFalse( reader.isFor( 1 ) );
+            assertTrue( reader.isFor( 3 ) );
+
+            assertFalse( reader.next() );
+        }
+    }
+
+
+    /**
+     * Check that the journal is split in segments, and that the segments read by all the
+     * consumers are purged
+     */
+    @Test
+    public void testSegmentPurge() throws Exception
+    {
+        journal.setMaxSegmentSize( 4096L );
+        String lastCsn = null;
+        String csn100 = null;
+
+        for ( int i = 0; i < 200; i++ )
+        {
+            ReplicaEventMessage message = createMessage( i );
+            journal.append( 1, message );
+            lastCsn = getCsn( message );
+
+            if ( i == 100 )
+            {
+                csn100 = lastCsn;
+            }
+        }
+
+        journal.sync();
+        int nbSegments = journal.getSegmentCount();
+        assertTrue( nbSegments > 2 );
+
+        // Nothing is deleted if the records are too recent
+        assertEquals( 0L, journal.purge( csn100, 0L ) );
+        assertEquals( nbSegments, journal.getSegmentCount() );
+
+        // Only the segments older than the CSN are deleted
+        long deleted = journal.purge( csn100, Long.MAX_VALUE );
+        assertTrue( deleted > 0L );
+        assertTrue( deleted <= 101L );
+        assertEquals( 200L - deleted, journal.count() );
+
+        int nbNewer = 0;
+
+        try ( JournalReader reader = journal.read( csn100 ) )
+        {
+            while ( reader.next() )
+            {
+                if ( reader.getCsn().compareTo( csn100 ) > 0 )
+                {
+                    nbNewer++;
+                }
+            }
+        }
+
+        assertEquals( 99, nbNewer );
+
+        // The last segment is always kept
+        journal.purge( lastCsn, Long.MAX_VALUE );
+        assertEquals( 1, journal.getSegmentCount() );
+    }
+
+
+    /**
+     * Check that the journal is read back when reopened, and that a truncated record is dropped
+     */
+    @Test
+    public void testReopen() throws Exception
+    {
+        for ( int i = 0; i < 10; i++ )
+        {
+            journal.append( 1, createMessage( i ) );
+        }
+
+        journal.close();
+
+        // Simulate a crash while writing the last record
+        File[] segments = directory.listFiles();
+        assertEquals( 1, segments.length );
+        File segment = segments[0];
+        long length = segment.length();
+
+        try ( RandomAccessFile raf = new RandomAccessFile( segment, "rw" ) )
+        {
+            raf.setLength( length - 3 );
+        }
+
+        journal = new ReplicationJournal( directory, schemaManager );
+        assertEquals( 9L, journal.count() );
+
+        int pos = 0;
+
+        try ( JournalReader reader = journal.read( null ) )
+        {
+            while ( reader.next() )
+            {
+                assertEquals( "test" + pos, reader.getMessage().getEntry().get( "ou" ).getString() );
+                pos++;
+            }
+        }
+
+        assertEquals( 9, pos );
+
+        // The journal can still be written
+        journal.append( 1, createMessage( 10 ) );
+        journal.sync();
+        assertEquals( 10L, journal.count() );
+    }
+
+
+    /**
+     * Check that a message without entryCSN is rejected, without breaking the journal
+     */
+    @Test
+    public void testAppendWithoutCsn() throws Exception
+    {
+        Entry entry = new DefaultEntry( schemaManager, "ou=nocsn,ou=system",
+            "ObjectClass: top",
+            "ObjectClass: organizationalUnit",
+            "ou", "nocsn" );
+
+        try
+        {
+            journal.append( 1, new ReplicaEventMessage( ChangeType.ADD, entry ) );
+            fail();
+        }
+        catch ( IOException ioe )
+        {
+            // Expected
+        }
+
+        journal.append( 1, createMessage( 0 ) );
+        journal.sync();
+        assertEquals( 1L, journal.count() );
+    }
+}
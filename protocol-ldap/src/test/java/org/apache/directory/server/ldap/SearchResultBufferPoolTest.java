@@ -0,0 +1,97 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.ldap;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+
+
+/**
+ * Tests the SearchResultBufferPool class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SearchResultBufferPoolTest
+{
+    @Test
+    public void testAcquireNewBuffer()
+    {
+        SearchResultBufferPool pool = new SearchResultBufferPool( 1024, 2 );
+        IoBuffer buffer = pool.acquire();
+
+        assertTrue( buffer.isDirect() );
+        assertEquals( 1024, buffer.capacity() );
+        assertEquals( 0, buffer.position() );
+        assertEquals( 1024, buffer.remaining() );
+    }
+
+
+    @Test
+    public void testReuseReleasedBuffer()
+    {
+        SearchResultBufferPool pool = new SearchResultBufferPool( 1024, 2 );
+        IoBuffer buffer = pool.acquire();
+        buffer.put( new byte[]
+            { 0x30, 0x03, 0x02, 0x01, 0x01 } );
+        buffer.flip();
+
+        assertTrue( pool.release( buffer ) );
+        assertEquals( 1, pool.size() );
+
+        IoBuffer reused = pool.acquire();
+
+        assertSame( buffer, reused );
+        assertEquals( 0, reused.position() );
+        assertEquals( 1024, reused.limit() );
+        assertEquals( 0, pool.size() );
+    }
+
+
+    @Test
+    public void testReleaseForeignBuffers()
+    {
+        SearchResultBufferPool pool = new SearchResultBufferPool( 1024, 2 );
+
+        assertFalse( pool.release( IoBuffer.allocate( 1024, false ) ) );
+        assertFalse( pool.release( IoBuffer.allocate( 512, true ) ) );
+        assertEquals( 0, pool.size() );
+    }
+
+
+    @Test
+    public void testPoolCapacity()
+    {
+        SearchResultBufferPool pool = new SearchResultBufferPool( 1024, 2 );
+        IoBuffer buffer1 = pool.acquire();
+        IoBuffer buffer2 = pool.acquire();
+        IoBuffer buffer3 = pool.acquire();
+
+        assertTrue( pool.release( buffer1 ) );
+        assertTrue( pool.release( buffer2 ) );
+        assertFalse( pool.release( buffer3 ) );
+        assertEquals( 2, pool.size() );
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.request;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
+import org.apache.directory.api.ldap.codec.api.LdapEncoder;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.util.Strings;
+import org.junit.Test;
+
+
+/**
+ * Tests the ReusableAsn1Buffer class : the encoded messages must be the same as the ones
+ * produced using an Asn1Buffer.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ReusableAsn1BufferTest
+{
+    /** The codec */
+    private final LdapApiService codec = LdapApiServiceFactory.getSingleton();
+
+
+    private SearchResultEntry createResponse( int messageId, int descriptionLength ) throws Exception
+    {
+        StringBuilder description = new StringBuilder();
+
+        for ( int i = 0; i < descriptionLength; i++ )
+        {
+            description.append( ( char ) ( 'a' + ( i % 26 ) ) );
+        }
+
+        SearchResultEntry response = new SearchResultEntryImpl( messageId );
+        response.setEntry( new DefaultEntry(
+            "cn=entry" + messageId + ",ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: entry" + messageId,
+            "sn: Entry",
+            "description: " + description ) );
+
+        return response;
+    }
+
+
+    private static byte[] toArray( ByteBuffer buffer )
+    {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get( bytes );
+
+        return bytes;
+    }
+
+
+    /**
+     * Encode messages of various sizes, some of them making the buffer grow, and
+     * check they are encoded as with an Asn1Buffer
+     */
+    @Test
+    public void testSameEncoding() throws Exception
+    {
+        ReusableAsn1Buffer reusable = new ReusableAsn1Buffer();
+        ByteBuffer view = null;
+
+        for ( int length : new int[] { 10, 100, 1500, 20, 5000, 0, 3000 } )
+        {
+            SearchResultEntry response = createResponse( length + 1, length );
+
+            byte[] expected = toArray( LdapEncoder.encodeMessage( new Asn1Buffer(), codec, response ) );
+
+            reusable.clear();
+            ByteBuffer encoded = LdapEncoder.encodeMessage( reusable, codec, response );
+
+            assertEquals( expected.length, reusable.getPos() );
+            assertEquals( Strings.dumpBytes( expected ), Strings.dumpBytes( toArray( encoded ) ) );
+
+            if ( length == 0 )
+            {
+                view = encoded;
+            }
+        }
+
+        // The buffer does not grow anymore : the same view is returned
+        reusable.clear();
+
+        assertSame( view, LdapEncoder.encodeMessage( reusable, codec, createResponse( 1, 10 ) ) );
+    }
+
+
+    /**
+     * Check the buffer keeps its size when it's cleared
+     */
+    @Test
+    public void testClear()
+    {
+        ReusableAsn1Buffer reusable = new ReusableAsn1Buffer();
+
+        reusable.put( new byte[1500] );
+        reusable.put( ( byte ) 0x01 );
+
+        assertEquals( 1501, reusable.getPos() );
+        assertEquals( 2048, reusable.getSize() );
+
+        reusable.clear();
+
+        assertEquals( 0, reusable.getPos() );
+        assertEquals( 2048, reusable.getSize() );
+        assertEquals( 0, reusable.getBytes().remaining() );
+    }
+}
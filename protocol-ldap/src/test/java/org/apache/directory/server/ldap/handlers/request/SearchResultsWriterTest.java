@@ -0,0 +1,396 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.ldap.handlers.request;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.ListCursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.server.ldap.LdapServer;
+import org.apache.directory.server.ldap.LdapSession;
+import org.apache.directory.server.ldap.SuspendedSearch;
+import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.session.DummySession;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the SearchResultsWriter class : the suspension of a search when the client
+ * has too many results to read, its resumption and its cancellation.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SearchResultsWriterTest
+{
+    /** The number of bytes each written response adds to the session */
+    private static final int RESPONSE_SIZE = 100;
+
+    /** The high water mark : a search is suspended after 11 responses */
+    private static final int HIGH_WATER_MARK = 10 * RESPONSE_SIZE;
+
+    private LdapServer ldapServer;
+
+    private SearchRequestHandler handler;
+
+
+    @Before
+    public void init()
+    {
+        ldapServer = new LdapServer();
+        ldapServer.setSearchWriteHighWaterMark( HIGH_WATER_MARK );
+
+        handler = new SearchRequestHandler()
+        {
+            @Override
+            Response generateResponse( LdapSession session, SearchRequest req, Entry entry )
+            {
+                SearchResultEntry response = new SearchResultEntryImpl( req.getMessageId() );
+                response.setEntry( entry );
+
+                return response;
+            }
+        };
+
+        handler.setLdapServer( ldapServer );
+    }
+
+
+    @Test
+    public void testWriteWithoutSuspension() throws Exception
+    {
+        ldapServer.setSearchWriteHighWaterMark( 0 );
+        TestIoSession ioSession = new TestIoSession();
+        LdapSession session = new LdapSession( ioSession );
+        SearchRequest req = createRequest( session, 1 );
+        Cursor<Entry> cursor = createCursor( 30 );
+
+        assertTrue( new SearchResultsWriter( handler, session, req, cursor, Long.MAX_VALUE, true ).write() );
+
+        assertEquals( 30, ioSession.getWritten().size() );
+        assertEquals( ResultCodeEnum.SUCCESS, req.getResultResponse().getLdapResult().getResultCode() );
+        assertFalse( session.hasSuspendedSearches() );
+    }
+
+
+    @Test
+    public void testSuspendAndResume() throws Exception
+    {
+        TestIoSession ioSession = new TestIoSession();
+        LdapSession session = new LdapSession( ioSession );
+        SearchRequest req = createRequest( session, 1 );
+        Cursor<Entry> cursor = createCursor( 30 );
+
+        assertFalse( new SearchResultsWriter( handler, session, req, cursor, Long.MAX_VALUE, true ).write() );
+
+        assertEquals( 11, ioSession.getWritten().size() );
+        assertTrue( session.hasSuspendedSearches() );
+        assertFalse( cursor.isClosed() );
+
+        // The client reads the results, the search is resumed, and suspended again
+        int resumes = 0;
+        SuspendedSearch writer = session.pollSuspendedSearch();
+
+        while ( writer != null )
+        {
+            ioSession.readResponses();
+            writer.run();
+            resumes++;
+            writer = session.pollSuspendedSearch();
+        }
+
+        assertEquals( 2, resumes );
+        assertDone( ioSession, 30, ResultCodeEnum.SUCCESS );
+        assertTrue( cursor.isClosed() );
+        assertTrue( session.getOutstandingRequests().isEmpty() );
+    }
+
+
+    @Test
+    public void testResultsReadWhileSuspending() throws Exception
+    {
+        // The client reads the pending results before the writer is registered : nobody
+        // will resume it, it must go on writing
+        TestIoSession ioSession = new TestIoSession();
+        LdapSession session = new LdapSession( ioSession )
+        {
+            @Override
+            public void addSuspendedSearch( SuspendedSearch writer )
+            {
+                ioSession.readResponses();
+                super.addSuspendedSearch( writer );
+            }
+        };
+
+        SearchRequest req = createRequest( session, 1 );
+        Cursor<Entry> cursor = createCursor( 30 );
+
+        assertTrue( new SearchResultsWriter( handler, session, req, cursor, Long.MAX_VALUE, true ).write() );
+
+        assertEquals( 30, ioSession.getWritten().size() );
+        assertFalse( session.hasSuspendedSearches() );
+    }
+
+
+    @Test
+    public void testResumedWhileSuspending() throws Exception
+    {
+        // The client reads the pending results, and the writer is resumed, before it
+        // has checked the pending bytes : it must stop writing
+        TestIoSession ioSession = new TestIoSession();
+        List<SuspendedSearch> resumed = new ArrayList<>();
+        LdapSession session = new LdapSession( ioSession )
+        {
+            @Override
+            public void addSuspendedSearch( SuspendedSearch writer )
+            {
+                super.addSuspendedSearch( writer );
+                ioSession.readResponses();
+                resumed.add( pollSuspendedSearch() );
+            }
+        };
+
+        SearchRequest req = createRequest( session, 1 );
+        Cursor<Entry> cursor = createCursor( 30 );
+
+        assertFalse( new SearchResultsWriter( handler, session, req, cursor, Long.MAX_VALUE, true ).write() );
+        assertEquals( 11, ioSession.getWritten().size() );
+
+        // Each resumption is suspended the same way
+        for ( int i = 0; i < resumed.size(); i++ )
+        {
+            resumed.get( i ).run();
+        }
+
+        assertEquals( 2, resumed.size() );
+        assertDone( ioSession, 30, ResultCodeEnum.SUCCESS );
+        assertTrue( cursor.isClosed() );
+        assertTrue( session.getOutstandingRequests().isEmpty() );
+    }
+
+
+    @Test
+    public void testCancelWhileSuspended() throws Exception
+    {
+        TestIoSession ioSession = new TestIoSession();
+        LdapSession session = new LdapSession( ioSession );
+        SearchRequest req = createRequest( session, 1 );
+        Cursor<Entry> cursor = createCursor( 30 );
+
+        assertFalse( new SearchResultsWriter( handler, session, req, cursor, Long.MAX_VALUE, true ).write() );
+
+        // The session is closed
+        session.cancelSuspendedSearches();
+
+        assertFalse( session.hasSuspendedSearches() );
+        assertTrue( cursor.isClosed() );
+        assertTrue( session.getOutstandingRequests().isEmpty() );
+
+        // Nothing more is sent to the client
+        assertEquals( 11, ioSession.getWritten().size() );
+        assertNull( session.pollSuspendedSearch() );
+    }
+
+
+    @Test
+    public void testAbandonWhileSuspended() throws Exception
+    {
+        TestIoSession ioSession = new TestIoSession();
+        LdapSession session = new LdapSession( ioSession );
+        SearchRequest req1 = createRequest( session, 1 );
+        SearchRequest req2 = createRequest( session, 2 );
+        Cursor<Entry> cursor1 = createCursor( 30 );
+        Cursor<Entry> cursor2 = createCursor( 30 );
+
+        assertFalse( new SearchResultsWriter( handler, session, req1, cursor1, Long.MAX_VALUE, true ).write() );
+        assertFalse( new SearchResultsWriter( handler, session, req2, cursor2, Long.MAX_VALUE, true ).write() );
+
+        session.abandonOutstandingRequest( 1 );
+
+        assertTrue( req1.isAbandoned() );
+        assertTrue( cursor1.isClosed() );
+        assertFalse( cursor2.isClosed() );
+        assertEquals( 2, session.pollSuspendedSearch().getMessageId() );
+        assertNull( session.pollSuspendedSearch() );
+        assertFalse( session.getOutstandingRequests().containsKey( 1 ) );
+        assertTrue( session.getOutstandingRequests().containsKey( 2 ) );
+    }
+
+
+    @Test
+    public void testSuspendRacingWithResume() throws Exception
+    {
+        for ( int i = 0; i < 200; i++ )
+        {
+            TestIoSession ioSession = new TestIoSession();
+            LdapSession session = new LdapSession( ioSession );
+            SearchRequest req = createRequest( session, 1 );
+            Cursor<Entry> cursor = createCursor( 100 );
+
+            // The client reads the results as soon as they are written, and the suspended
+            // search is resumed as LdapProtocolHandler.resumeSuspendedSearches() does
+            Thread client = new Thread( () ->
+            {
+                while ( !ioSession.isDone() )
+                {
+                    ioSession.readResponses();
+
+                    if ( ioSession.getScheduledWriteBytes() <= ldapServer.getSearchWriteLowWaterMark() )
+                    {
+                        SuspendedSearch writer = session.pollSuspendedSearch();
+
+                        if ( writer != null )
+                        {
+                            writer.run();
+                        }
+                    }
+                }
+            } );
+
+            client.start();
+
+            if ( new SearchResultsWriter( handler, session, req, cursor, Long.MAX_VALUE, true ).write() )
+            {
+                // As the SearchRequestHandler does
+                cursor.close();
+                ioSession.write( req.getResultResponse() );
+            }
+
+            client.join( TimeUnit.SECONDS.toMillis( 10 ) );
+
+            assertFalse( client.isAlive() );
+            assertDone( ioSession, 100, ResultCodeEnum.SUCCESS );
+            assertTrue( cursor.isClosed() );
+            assertFalse( session.hasSuspendedSearches() );
+        }
+    }
+
+
+    /**
+     * Checks that the entries have all been written once, in order, followed by the SearchResultDone
+     */
+    private void assertDone( TestIoSession ioSession, int nbEntries, ResultCodeEnum resultCode )
+    {
+        List<Object> written = ioSession.getWritten();
+
+        assertEquals( nbEntries + 1, written.size() );
+
+        for ( int i = 0; i < nbEntries; i++ )
+        {
+            assertEquals( "cn=entry" + i + ",ou=system",
+                ( ( SearchResultEntry ) written.get( i ) ).getEntry().getDn().getName() );
+        }
+
+        assertEquals( resultCode,
+            ( ( SearchResultDone ) written.get( nbEntries ) ).getLdapResult().getResultCode() );
+    }
+
+
+    private SearchRequest createRequest( LdapSession session, int messageId )
+    {
+        SearchRequest req = new SearchRequestImpl();
+        req.setMessageId( messageId );
+        session.registerOutstandingRequest( req );
+
+        return req;
+    }
+
+
+    private Cursor<Entry> createCursor( int nbEntries ) throws Exception
+    {
+        List<Entry> entries = new ArrayList<>();
+
+        for ( int i = 0; i < nbEntries; i++ )
+        {
+            entries.add( new DefaultEntry( "cn=entry" + i + ",ou=system" ) );
+        }
+
+        return new ListCursor<>( entries );
+    }
+
+
+    /**
+     * A session recording the written responses, each one adding RESPONSE_SIZE bytes
+     * to the bytes waiting to be sent until the client reads them.
+     */
+    private static class TestIoSession extends DummySession
+    {
+        private final List<Object> written = Collections.synchronizedList( new ArrayList<>() );
+
+        private volatile boolean done;
+
+
+        @Override
+        public WriteFuture write( Object message )
+        {
+            written.add( message );
+
+            if ( message instanceof SearchResultDone )
+            {
+                done = true;
+            }
+            else
+            {
+                increaseScheduledWriteBytes( RESPONSE_SIZE );
+            }
+
+            return null;
+        }
+
+
+        /**
+         * The client reads all the pending responses
+         */
+        void readResponses()
+        {
+            increaseScheduledWriteBytes( ( int ) -getScheduledWriteBytes() );
+        }
+
+
+        List<Object> getWritten()
+        {
+            return written;
+        }
+
+
+        boolean isDone()
+        {
+            return done;
+        }
+    }
+}
@@ -47,6 +47,10 @@ import netscape.ldap.LDAPSearchResults;
 import netscape.ldap.LDAPUrl;
 
 import org.apache.directory.api.ldap.model.exception.LdapAuthenticationException;
+import org.apache.directory.api.ldap.model.message.BindRequest;
+import org.apache.directory.api.ldap.model.message.BindRequestImpl;
+import org.apache.directory.api.ldap.model.message.BindResponse;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.util.Network;
 import org.apache.directory.ldap.client.api.LdapConnection;
@@ -253,6 +257,32 @@ public class SimpleBindIT extends AbstractLdapTestUnit
     }
 
 
+    /**
+     * try to connect using a principal with an unknown AttributeType: the bind must fail,
+     * without breaking the connection.
+     */
+    @Test
+    public void testSimpleBindUnknownAttributeTypePrincipal() throws Exception
+    {
+        try ( LdapNetworkConnection connection = new LdapNetworkConnection( Network.LOOPBACK_HOSTNAME,
+            getLdapServer().getPort() ) )
+        {
+            BindRequest bindRequest = new BindRequestImpl();
+            bindRequest.setName( "unknownAT=hnelson,ou=users,ou=system" );
+            bindRequest.setCredentials( "secret" );
+
+            BindResponse bindResponse = connection.bind( bindRequest );
+
+            assertEquals( ResultCodeEnum.INVALID_DN_SYNTAX, bindResponse.getLdapResult().getResultCode() );
+            assertFalse( connection.isAuthenticated() );
+
+            // The connection is still usable
+            connection.bind( "uid=hnelson,ou=users,ou=system", "secret" );
+            assertTrue( connection.isAuthenticated() );
+        }
+    }
+
+
     /**
      * covers the anonymous authentication : we should be able to read the rootDSE, but that's it
      */
@@ -98,6 +98,7 @@ public class AvlPartition extends AbstractBTreePartition
         {
             EvaluatorBuilder evaluatorBuilder = new EvaluatorBuilder( this, schemaManager );
             CursorBuilder cursorBuilder = new CursorBuilder( this, evaluatorBuilder );
+            cursorBuilder.setIndexIntersectionEnabled( indexIntersectionEnabled );
 
             // setup optimizer and registries for parent
             if ( !optimizerEnabled )
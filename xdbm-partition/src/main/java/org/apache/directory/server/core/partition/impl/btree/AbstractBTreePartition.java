@@ -31,6 +31,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -82,6 +83,7 @@ import org.apache.directory.server.core.api.interceptor.context.OperationContext
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
+import org.apache.directory.server.core.api.metrics.MetricsRegistry;
 import org.apache.directory.server.core.api.partition.AbstractPartition;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
@@ -123,6 +125,9 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     /** Tells if the Optimizer is enabled */
     protected boolean optimizerEnabled = true;
 
+    /** Tells if the candidates of the conjunctions are computed by intersecting their indexed children */
+    protected boolean indexIntersectionEnabled = false;
+
     /** The default cache size is set to 10 000 objects */
     public static final int DEFAULT_CACHE_SIZE = 10000;
 
@@ -138,6 +143,12 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     /** true if we sync disks on every write operation */
     protected AtomicBoolean isSyncOnWrite = new AtomicBoolean( true );
 
+    /** true if the updates of the Rdn index counters are deferred until the end of the transaction */
+    private volatile boolean deferredRdnCounts = false;
+
+    /** The updates of the Rdn index counters deferred by the pending write transactions */
+    private final Map<PartitionTxn, DeferredRdnCounts> pendingRdnCounts = new ConcurrentHashMap<>();
+
     /** The suffix UUID */
     private volatile String suffixId;
 
@@ -328,6 +339,26 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     }
 
 
+    /**
+     * Tells if the index intersection is enabled or not
+     * @return true if the conjunctions candidates are intersected using all their indexed children
+     */
+    public boolean isIndexIntersectionEnabled()
+    {
+        return indexIntersectionEnabled;
+    }
+
+
+    /**
+     * Set the index intersection flag. It must be set before the partition is initialized.
+     * @param indexIntersectionEnabled The flag
+     */
+    public void setIndexIntersectionEnabled( boolean indexIntersectionEnabled )
+    {
+        this.indexIntersectionEnabled = indexIntersectionEnabled;
+    }
+
+
     /**
      * Sets the path in which this Partition stores data. This may be an URL to
      * a file or directory, or an JDBC URL.
@@ -363,6 +394,32 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     }
 
 
+    /**
+     * @return true if the updates of the nbChildren and nbDescendants counters of the Rdn index
+     * are deferred until the end of the transaction
+     */
+    public boolean isDeferredRdnCounts()
+    {
+        return deferredRdnCounts;
+    }
+
+
+    /**
+     * Defers, or not, the updates of the nbChildren and nbDescendants counters of the Rdn index
+     * until the end of the transaction. When deferred, the counters of each ancestor are
+     * rewritten once per transaction, instead of once per added, deleted or moved entry,
+     * which matters when many entries are added under the same ancestors in one transaction.
+     * The counters read by this partition remain exact within the transaction, while the
+     * other transactions see the committed values.
+     *
+     * @param deferredRdnCounts true to defer the updates
+     */
+    public void setDeferredRdnCounts( boolean deferredRdnCounts )
+    {
+        this.deferredRdnCounts = deferredRdnCounts;
+    }
+
+
     /**
      * Sets up the system indices.
      * 
@@ -630,13 +687,25 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         setupUserIndices();
 
         aliasCache = Caffeine.newBuilder().maximumSize( cacheSize ).expireAfterAccess( Duration.ofMinutes( 20 ) )
-            .build();
+            .recordStats().build();
 
         piarCache = Caffeine.newBuilder().maximumSize( cacheSize * 3L )
-            .expireAfterAccess( Duration.ofMinutes( 20 ) ).build();
+            .expireAfterAccess( Duration.ofMinutes( 20 ) ).recordStats().build();
 
         entryDnCache = Caffeine.newBuilder().maximumSize( cacheSize ).expireAfterAccess( Duration.ofMinutes( 20 ) )
-            .build();
+            .recordStats().build();
+    }
+
+
+    /**
+     * Exposes the alias, ParentIdAndRdn and entry Dn caches hits and misses.
+     */
+    @Override
+    public void registerCaches( MetricsRegistry metrics )
+    {
+        metrics.registerCache( "alias", getId(), aliasCache );
+        metrics.registerCache( "piar", getId(), piarCache );
+        metrics.registerCache( "entryDn", getId(), entryDnCache );
     }
 
 
@@ -707,7 +776,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             countChildren++;
 
             // And now, the children
-            int nbChildren = entry.getKey().getNbChildren();
+            int nbChildren = getChildCount( partitionTxn, entry.getId(), entry.getKey() );
 
             if ( nbChildren > 0 )
             {
@@ -1008,6 +1077,33 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
         ParentIdAndRdn parent = rdnIdx.reverseLookup( partitionTxn, parentId );
 
+        if ( deferredRdnCounts && ( partitionTxn instanceof PartitionWriteTxn ) )
+        {
+            // Only accumulate the deltas, they will be applied at the end of the transaction
+            DeferredRdnCounts deferred = pendingRdnCounts.get( partitionTxn );
+
+            if ( deferred == null )
+            {
+                deferred = new DeferredRdnCounts( this );
+                pendingRdnCounts.put( partitionTxn, deferred );
+                ( ( PartitionWriteTxn ) partitionTxn ).addListener( deferred );
+            }
+
+            int nbChildrenDelta = ( addRemove == ADD_CHILD ) ? 1 : -1;
+            int nbDescendantsDelta = nbChildrenDelta * ( nbDescendant + 1 );
+
+            while ( parent != null )
+            {
+                deferred.add( parentId, nbChildrenDelta, nbDescendantsDelta );
+                nbChildrenDelta = 0;
+
+                parentId = parent.getParentId();
+                parent = rdnIdx.reverseLookup( partitionTxn, parentId );
+            }
+
+            return;
+        }
+
         while ( parent != null )
         {
             rdnIdx.drop( partitionTxn, parentId );
@@ -1046,6 +1142,113 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     }
 
 
+    /**
+     * Writes the deferred updates of the Rdn index counters of a transaction.
+     *
+     * @param partitionTxn The transaction being completed
+     * @param deferred The deferred updates
+     * @throws LdapException If the Rdn index can't be updated
+     */
+    void applyDeferredRdnCounts( PartitionTxn partitionTxn, DeferredRdnCounts deferred ) throws LdapException
+    {
+        if ( rwLock == null )
+        {
+            // Create a ReadWrite lock from scratch
+            rwLock = new ReentrantReadWriteLock();
+        }
+
+        lockWrite();
+
+        try
+        {
+            for ( Map.Entry<String, int[]> delta : deferred.getDeltas().entrySet() )
+            {
+                int nbChildrenDelta = delta.getValue()[0];
+                int nbDescendantsDelta = delta.getValue()[1];
+
+                if ( ( nbChildrenDelta == 0 ) && ( nbDescendantsDelta == 0 ) )
+                {
+                    continue;
+                }
+
+                String id = delta.getKey();
+                ParentIdAndRdn parentIdAndRdn = rdnIdx.reverseLookup( partitionTxn, id );
+
+                if ( parentIdAndRdn == null )
+                {
+                    continue;
+                }
+
+                rdnIdx.drop( partitionTxn, id );
+                parentIdAndRdn.setNbChildren( parentIdAndRdn.getNbChildren() + nbChildrenDelta );
+                parentIdAndRdn.setNbDescendants( parentIdAndRdn.getNbDescendants() + nbDescendantsDelta );
+                rdnIdx.add( partitionTxn, parentIdAndRdn, id );
+            }
+        }
+        finally
+        {
+            pendingRdnCounts.remove( partitionTxn );
+            unlockWrite();
+        }
+    }
+
+
+    /**
+     * Gets the updates of the Rdn index counters deferred by a transaction
+     *
+     * @param partitionTxn The transaction
+     * @return The deferred updates, or null if there is none
+     */
+    private DeferredRdnCounts getDeferredRdnCounts( PartitionTxn partitionTxn )
+    {
+        if ( pendingRdnCounts.isEmpty() )
+        {
+            return null;
+        }
+
+        return pendingRdnCounts.get( partitionTxn );
+    }
+
+
+    /**
+     * Gets the count of immediate children of an entry, from its ParentIdAndRdn, taking into
+     * account the updates of the Rdn index counters deferred by the transaction.
+     *
+     * @param partitionTxn The transaction to use
+     * @param id The entry UUID
+     * @param parentIdAndRdn The entry ParentIdAndRdn, read from the Rdn index
+     * @return the child count
+     */
+    protected int getChildCount( PartitionTxn partitionTxn, String id, ParentIdAndRdn parentIdAndRdn )
+    {
+        DeferredRdnCounts deferred = getDeferredRdnCounts( partitionTxn );
+
+        if ( deferred == null )
+        {
+            return parentIdAndRdn.getNbChildren();
+        }
+
+        return parentIdAndRdn.getNbChildren() + deferred.getNbChildren( id );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getDescendantCount( PartitionTxn partitionTxn, String id, ParentIdAndRdn parentIdAndRdn )
+    {
+        DeferredRdnCounts deferred = getDeferredRdnCounts( partitionTxn );
+
+        if ( deferred == null )
+        {
+            return parentIdAndRdn.getNbDescendants();
+        }
+
+        return parentIdAndRdn.getNbDescendants() + deferred.getNbDescendants( id );
+    }
+
+
     /**
      * Delete the entry associated with a given Id
      * 
@@ -1217,6 +1420,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             }
             
             PartitionSearchResult searchResult = searchEngine.computeResult( partitionTxn, schemaManager, searchContext );
+            searchContext.setSorted( searchResult.isOrdered() );
 
             Cursor<Entry> result = new EntryCursorAdaptor( partitionTxn, this, searchResult );
 
@@ -2141,7 +2345,8 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         // First drop the old entry
         ParentIdAndRdn movedEntry = rdnIdx.reverseLookup( partitionTxn, entryId );
 
-        updateRdnIdx( partitionTxn, oldParentId, REMOVE_CHILD, movedEntry.getNbDescendants() );
+        int nbMovedDescendants = getDescendantCount( partitionTxn, entryId, movedEntry );
+        updateRdnIdx( partitionTxn, oldParentId, REMOVE_CHILD, nbMovedDescendants );
 
         rdnIdx.drop( partitionTxn, entryId );
         updatePiarCache( movedEntry, entryId, DEL_CACHE );
@@ -2151,7 +2356,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         rdnIdx.add( partitionTxn, movedEntry, entryId );
         updatePiarCache( movedEntry, entryId, ADD_CACHE );
 
-        updateRdnIdx( partitionTxn, newParentId, ADD_CHILD, movedEntry.getNbDescendants() );
+        updateRdnIdx( partitionTxn, newParentId, ADD_CHILD, nbMovedDescendants );
 
         /*
          * Read Alias Index Tuples
@@ -2308,7 +2513,8 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         // of all its ascendant, up to the common superior.
         // Then we will add a ParentidAndRdn for the moved entry under the new superior,
         // update its children number and the nbSubordinates of all the new ascendant.
-        updateRdnIdx( partitionTxn, oldParentId, REMOVE_CHILD, movedEntry.getNbDescendants() );
+        int nbMovedDescendants = getDescendantCount( partitionTxn, entryId, movedEntry );
+        updateRdnIdx( partitionTxn, oldParentId, REMOVE_CHILD, nbMovedDescendants );
 
         /*
          * All aliases including and below oldChildDn, will be affected by
@@ -2328,7 +2534,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         rdnIdx.add( partitionTxn, movedEntry, entryId );
         updatePiarCache( movedEntry, entryId, ADD_CACHE );
 
-        updateRdnIdx( partitionTxn, newParentId, ADD_CHILD, movedEntry.getNbDescendants() );
+        updateRdnIdx( partitionTxn, newParentId, ADD_CHILD, nbMovedDescendants );
 
         // Process the modified indexes now
         try
@@ -2896,7 +3102,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         {
             ParentIdAndRdn parentIdAndRdn = rdnIdx.reverseLookup( partitionTxn, id );
 
-            return parentIdAndRdn.getNbChildren();
+            return getChildCount( partitionTxn, id, parentIdAndRdn );
         }
         catch ( Exception e )
         {
@@ -3734,7 +3940,8 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     {
         if ( operationContext.getSession() != null )
         {
-            rwLock = operationContext.getSession().getDirectoryService().getOperationManager().getRWLock();
+            rwLock = operationContext.getSession().getDirectoryService().getOperationManager()
+                .getRWLock( suffixDn );
         }
         else
         {
@@ -3890,10 +4097,11 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             try
             {
                 rwLock.readLock().lock();
-                ParentIdAndRdn parentIdAndRdn = rdnIdx.reverseLookup( partitionTxn, entry.get( SchemaConstants.ENTRY_UUID_AT ).getString() );
+                String id = entry.get( SchemaConstants.ENTRY_UUID_AT ).getString();
+                ParentIdAndRdn parentIdAndRdn = rdnIdx.reverseLookup( partitionTxn, id );
 
-                subordinates.setNbChildren( parentIdAndRdn.getNbChildren() );
-                subordinates.setNbSubordinates( parentIdAndRdn.getNbDescendants() );
+                subordinates.setNbChildren( getChildCount( partitionTxn, id, parentIdAndRdn ) );
+                subordinates.setNbSubordinates( getDescendantCount( partitionTxn, id, parentIdAndRdn ) );
             }
             finally
             {
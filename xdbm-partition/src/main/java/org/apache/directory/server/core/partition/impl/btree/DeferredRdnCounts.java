@@ -0,0 +1,126 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree;
+
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.server.core.api.partition.PartitionTxnListener;
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
+
+
+/**
+ * The updates of the nbChildren and nbDescendants counters of the Rdn index done by a
+ * write transaction, when they are deferred until the end of this transaction. The deltas
+ * are accumulated per entry, so that each modified ParentIdAndRdn is rewritten only once,
+ * right before the transaction is committed or aborted.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class DeferredRdnCounts implements PartitionTxnListener
+{
+    /** The partition whose Rdn index is updated */
+    private final AbstractBTreePartition partition;
+
+    /** The nbChildren and nbDescendants deltas, keyed by entry UUID. The arrays are never modified */
+    private final Map<String, int[]> deltas = new ConcurrentHashMap<>();
+
+
+    /**
+     * Creates a new DeferredRdnCounts instance.
+     *
+     * @param partition The partition whose Rdn index is updated
+     */
+    DeferredRdnCounts( AbstractBTreePartition partition )
+    {
+        this.partition = partition;
+    }
+
+
+    /**
+     * Adds some deltas to the counters of an entry.
+     *
+     * @param id The entry UUID
+     * @param nbChildren The delta to add to the nbChildren counter
+     * @param nbDescendants The delta to add to the nbDescendants counter
+     */
+    void add( String id, int nbChildren, int nbDescendants )
+    {
+        deltas.merge( id, new int[]
+            { nbChildren, nbDescendants },
+            ( previous, delta ) -> new int[]
+                { previous[0] + delta[0], previous[1] + delta[1] } );
+    }
+
+
+    /**
+     * @param id The entry UUID
+     * @return The delta to add to the stored nbChildren counter of this entry
+     */
+    int getNbChildren( String id )
+    {
+        int[] delta = deltas.get( id );
+
+        return ( delta == null ) ? 0 : delta[0];
+    }
+
+
+    /**
+     * @param id The entry UUID
+     * @return The delta to add to the stored nbDescendants counter of this entry
+     */
+    int getNbDescendants( String id )
+    {
+        int[] delta = deltas.get( id );
+
+        return ( delta == null ) ? 0 : delta[1];
+    }
+
+
+    /**
+     * @return The deltas, keyed by entry UUID
+     */
+    Map<String, int[]> getDeltas()
+    {
+        return deltas;
+    }
+
+
+    /**
+     * Writes the updated counters in the Rdn index.
+     * 
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeCompletion( PartitionWriteTxn partitionTxn ) throws IOException
+    {
+        try
+        {
+            partition.applyDeferredRdnCounts( partitionTxn, this );
+        }
+        catch ( LdapException le )
+        {
+            throw new IOException( le.getMessage(), le );
+        }
+    }
+}
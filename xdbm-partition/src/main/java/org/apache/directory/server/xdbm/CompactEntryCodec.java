@@ -0,0 +1,996 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.UTFDataFormatException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.entry.LazyEntry;
+
+
+/**
+ * The compact, versioned, binary format used to store the entries in the master tables.
+ * It replaces the Java serialization based format : the entry is written with no
+ * ObjectOutputStream framing, all the integers (and the lengths) are written as varints,
+ * and the most common AttributeTypes are written as an ID in a frozen dictionary instead
+ * of their OID. The Strings are written using the modified UTF-8 encoding, like with the
+ * Java serialization, so that any String, even one containing an unpaired surrogate, is
+ * read back unchanged. Their length is a varint, so they are not limited to 65535 bytes.
+ * <br>
+ * The structure is the following :
+ * <ul>
+ *   <li><b>[version]</b> : a byte, {@link #VERSION}</li>
+ *   <li><b>[a byte]</b> : if the Dn is empty 0 will be written else 1</li>
+ *   <li><b>[Rdn]</b> : The entry's Rdn.</li>
+ *   <li><b>[numberAttr]</b> : the number of attributes, a varint. Can be 0</li>
+ *   <li>For each Attribute :
+ *     <ul>
+ *       <li><b>[id]</b> : The AttributeType dictionary ID, a varint. 0 if it is not in the dictionary</li>
+ *       <li><b>[oid]</b> : The AttributeType OID, only if the ID is 0</li>
+ *       <li><b>[length]</b> : The serialized attribute length, a varint</li>
+ *       <li><b>[Attribute]</b> The attribute</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ * The legacy format always starts with the ObjectOutputStream magic number (0xACED), so both formats
+ * can be distinguished when reading a record. Legacy records are upgraded when they are written back.
+ * <br>
+ * As each attribute length is known, the attributes are not decoded
+ * when the record is read : a {@link LazyEntry} is returned, and each attribute is decoded when it
+ * is accessed.
+ * <br><br>
+ * <b>This class must *not* be used outside of the server.</b>
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class CompactEntryCodec
+{
+    /** The version of the compact format */
+    public static final byte VERSION = 0x02;
+
+    /** The decoder used by the lazy entries */
+    private static final LazyEntry.AttributeDecoder DECODER = CompactEntryCodec::decodeAttribute;
+
+    /**
+     * The AttributeTypes dictionary. This is part of the stored format : elements can be
+     * added at the end, but never removed nor reordered. The ID of an AttributeType is its
+     * position in this array, plus one.
+     */
+    private static final String[] DICTIONARY =
+        {
+            // objectClass
+            "2.5.4.0",
+            // aliasedObjectName
+            "2.5.4.1",
+            // cn
+            "2.5.4.3",
+            // sn
+            "2.5.4.4",
+            // serialNumber
+            "2.5.4.5",
+            // c
+            "2.5.4.6",
+            // l
+            "2.5.4.7",
+            // st
+            "2.5.4.8",
+            // street
+            "2.5.4.9",
+            // o
+            "2.5.4.10",
+            // ou
+            "2.5.4.11",
+            // title
+            "2.5.4.12",
+            // description
+            "2.5.4.13",
+            // postalAddress
+            "2.5.4.16",
+            // postalCode
+            "2.5.4.17",
+            // telephoneNumber
+            "2.5.4.20",
+            // facsimileTelephoneNumber
+            "2.5.4.23",
+            // member
+            "2.5.4.31",
+            // seeAlso
+            "2.5.4.34",
+            // userPassword
+            "2.5.4.35",
+            // userCertificate
+            "2.5.4.36",
+            // givenName
+            "2.5.4.42",
+            // initials
+            "2.5.4.43",
+            // uniqueMember
+            "2.5.4.50",
+            // createTimestamp
+            "2.5.18.1",
+            // modifyTimestamp
+            "2.5.18.2",
+            // creatorsName
+            "2.5.18.3",
+            // modifiersName
+            "2.5.18.4",
+            // administrativeRole
+            "2.5.18.5",
+            // subtreeSpecification
+            "2.5.18.6",
+            // collectiveAttributeSubentries
+            "2.5.18.12",
+            // uid
+            "0.9.2342.19200300.100.1.1",
+            // mail
+            "0.9.2342.19200300.100.1.3",
+            // manager
+            "0.9.2342.19200300.100.1.10",
+            // homePhone
+            "0.9.2342.19200300.100.1.20",
+            // dc
+            "0.9.2342.19200300.100.1.25",
+            // mobile
+            "0.9.2342.19200300.100.1.41",
+            // jpegPhoto
+            "0.9.2342.19200300.100.1.60",
+            // departmentNumber
+            "2.16.840.1.113730.3.1.2",
+            // employeeNumber
+            "2.16.840.1.113730.3.1.3",
+            // employeeType
+            "2.16.840.1.113730.3.1.4",
+            // displayName
+            "2.16.840.1.113730.3.1.241",
+            // entryUUID
+            "1.3.6.1.1.16.4",
+            // entryCSN
+            "1.3.6.1.4.1.4203.666.1.7",
+            // accessControlSubentries
+            "1.3.6.1.4.1.18060.0.4.1.2.11",
+            // triggerExecutionSubentries
+            "1.3.6.1.4.1.18060.0.4.1.2.27",
+            // entryParentId
+            "1.3.6.1.4.1.18060.0.4.1.2.51"
+        };
+
+    /** The OID to dictionary ID map */
+    private static final Map<String, Integer> DICTIONARY_IDS = new HashMap<>();
+
+    static
+    {
+        for ( int i = 0; i < DICTIONARY.length; i++ )
+        {
+            DICTIONARY_IDS.put( DICTIONARY[i], i + 1 );
+        }
+    }
+
+
+    private CompactEntryCodec()
+    {
+    }
+
+
+    /**
+     * Tells if the serialized record uses the compact format
+     *
+     * @param bytes The buffer containing the record
+     * @param pos The position of the record in the buffer
+     * @param len The record length
+     * @return <tt>true</tt> if the record has been written using the compact format
+     */
+    public static boolean isCompact( byte[] bytes, int pos, int len )
+    {
+        return ( len > 0 ) && ( bytes[pos] == VERSION );
+    }
+
+
+    /**
+     * Serialize an entry using the compact format
+     *
+     * @param entry The entry to serialize
+     * @return The serialized entry
+     * @throws IOException If the entry cannot be serialized
+     */
+    public static byte[] serialize( Entry entry ) throws IOException
+    {
+        CompactObjectOutput out = new CompactObjectOutput();
+        CompactObjectOutput attributeOut = new CompactObjectOutput();
+
+        out.writeByte( VERSION );
+
+        // First, the Dn
+        Dn dn = entry.getDn();
+
+        // Write the Rdn of the Dn
+        if ( dn.isEmpty() )
+        {
+            out.writeByte( 0 );
+        }
+        else
+        {
+            out.writeByte( 1 );
+            Rdn rdn = dn.getRdn();
+            rdn.writeExternal( out );
+        }
+
+        // Then the attributes.
+        out.writeInt( entry.getAttributes().size() );
+
+        for ( Attribute attribute : entry.getAttributes() )
+        {
+            AttributeType attributeType = attribute.getAttributeType();
+            String oid = attributeType.getOid();
+            Integer id = DICTIONARY_IDS.get( oid );
+
+            if ( id == null )
+            {
+                out.writeInt( 0 );
+                out.writeUTF( oid );
+            }
+            else
+            {
+                out.writeInt( id );
+            }
+
+            // Write the attribute, prefixed by its length
+            attributeOut.reset();
+            attribute.writeExternal( attributeOut );
+            out.writeInt( attributeOut.pos );
+            out.write( attributeOut.buffer, 0, attributeOut.pos );
+        }
+
+        return out.toByteArray();
+    }
+
+
+    /**
+     * Deserialize an entry stored using the compact format. The returned entry is a {@link LazyEntry},
+     * which keeps a reference on the given buffer until all its attributes have been decoded : the
+     * buffer must not be modified afterward.
+     *
+     * @param schemaManager The SchemaManager
+     * @param bytes The buffer containing the record
+     * @param pos The position of the record in the buffer
+     * @param len The record length
+     * @return The deserialized entry
+     * @throws IOException If the entry cannot be deserialized
+     */
+    public static Entry deserialize( SchemaManager schemaManager, byte[] bytes, int pos, int len ) throws IOException
+    {
+        CompactObjectInput in = new CompactObjectInput( bytes, pos, len );
+
+        byte version = in.readByte();
+
+        if ( version != VERSION )
+        {
+            throw new IOException( "Unknown entry format version " + version );
+        }
+
+        try
+        {
+            Dn dn;
+
+            // Read the Dn, if any
+            byte hasDn = in.readByte();
+
+            if ( hasDn == 1 )
+            {
+                Rdn rdn = new Rdn( schemaManager );
+                rdn.readExternal( in );
+
+                dn = new Dn( schemaManager, rdn );
+            }
+            else
+            {
+                dn = Dn.EMPTY_DN;
+            }
+
+            return deserializeLazy( schemaManager, in, dn );
+        }
+        catch ( LdapInvalidDnException lide )
+        {
+            throw new IOException( lide.getMessage(), lide );
+        }
+        catch ( LdapException le )
+        {
+            // We weren't able to find the OID
+            throw new IOException( le.getMessage(), le );
+        }
+        catch ( ClassNotFoundException cnfe )
+        {
+            throw new IOException( cnfe.getMessage(), cnfe );
+        }
+    }
+
+
+    /**
+     * Read the attributes of a record, without decoding them
+     */
+    private static Entry deserializeLazy( SchemaManager schemaManager, CompactObjectInput in, Dn dn )
+        throws IOException, LdapException
+    {
+        LazyEntry entry = new LazyEntry( schemaManager, dn, DECODER );
+
+        // Read the number of attributes
+        int nbAttributes = in.readInt();
+
+        for ( int i = 0; i < nbAttributes; i++ )
+        {
+            AttributeType attributeType = schemaManager.lookupAttributeTypeRegistry( readOid( in ) );
+            int attributeLength = in.readInt();
+            in.checkAvailable( attributeLength );
+
+            entry.addSerialized( attributeType, in.buffer, in.pos, attributeLength );
+            in.pos += attributeLength;
+        }
+
+        return entry;
+    }
+
+
+    /**
+     * Read an AttributeType OID, either as a dictionary ID or as a String
+     */
+    private static String readOid( CompactObjectInput in ) throws IOException
+    {
+        int id = in.readInt();
+
+        if ( id == 0 )
+        {
+            return in.readUTF();
+        }
+        else if ( id <= DICTIONARY.length )
+        {
+            return DICTIONARY[id - 1];
+        }
+        else
+        {
+            throw new IOException( "Unknown AttributeType dictionary ID " + id );
+        }
+    }
+
+
+    /**
+     * Decode one attribute of a {@link LazyEntry}
+     */
+    private static Attribute decodeAttribute( AttributeType attributeType, byte[] buffer, int pos, int len )
+        throws IOException
+    {
+        Attribute attribute = new DefaultAttribute( attributeType );
+
+        try
+        {
+            attribute.readExternal( new CompactObjectInput( buffer, pos, len ) );
+        }
+        catch ( ClassNotFoundException cnfe )
+        {
+            throw new IOException( cnfe.getMessage(), cnfe );
+        }
+
+        return attribute;
+    }
+
+
+    /**
+     * An ObjectOutput writing into a growing byte[], with no framing. Integers and longs
+     * are written as zigzag encoded varints.
+     */
+    private static final class CompactObjectOutput implements ObjectOutput
+    {
+        private byte[] buffer = new byte[256];
+        private int pos;
+
+
+        private void ensureCapacity( int extra )
+        {
+            if ( pos + extra > buffer.length )
+            {
+                buffer = Arrays.copyOf( buffer, Math.max( buffer.length << 1, pos + extra ) );
+            }
+        }
+
+
+        private void writeVarLong( long value )
+        {
+            ensureCapacity( 10 );
+
+            while ( ( value & ~0x7FL ) != 0L )
+            {
+                buffer[pos++] = ( byte ) ( ( value & 0x7F ) | 0x80 );
+                value >>>= 7;
+            }
+
+            buffer[pos++] = ( byte ) value;
+        }
+
+
+        void reset()
+        {
+            pos = 0;
+        }
+
+
+        byte[] toByteArray()
+        {
+            return Arrays.copyOf( buffer, pos );
+        }
+
+
+        @Override
+        public void write( int b )
+        {
+            ensureCapacity( 1 );
+            buffer[pos++] = ( byte ) b;
+        }
+
+
+        @Override
+        public void write( byte[] b )
+        {
+            write( b, 0, b.length );
+        }
+
+
+        @Override
+        public void write( byte[] b, int off, int len )
+        {
+            ensureCapacity( len );
+            System.arraycopy( b, off, buffer, pos, len );
+            pos += len;
+        }
+
+
+        @Override
+        public void writeBoolean( boolean v )
+        {
+            write( v ? 1 : 0 );
+        }
+
+
+        @Override
+        public void writeByte( int v )
+        {
+            write( v );
+        }
+
+
+        @Override
+        public void writeShort( int v )
+        {
+            write( v >>> 8 );
+            write( v );
+        }
+
+
+        @Override
+        public void writeChar( int v )
+        {
+            writeShort( v );
+        }
+
+
+        @Override
+        public void writeInt( int v )
+        {
+            writeVarLong( ( ( v << 1 ) ^ ( v >> 31 ) ) & 0xFFFFFFFFL );
+        }
+
+
+        @Override
+        public void writeLong( long v )
+        {
+            writeVarLong( ( v << 1 ) ^ ( v >> 63 ) );
+        }
+
+
+        @Override
+        public void writeFloat( float v )
+        {
+            writeFixedInt( Float.floatToIntBits( v ) );
+        }
+
+
+        @Override
+        public void writeDouble( double v )
+        {
+            long bits = Double.doubleToLongBits( v );
+            writeFixedInt( ( int ) ( bits >>> 32 ) );
+            writeFixedInt( ( int ) bits );
+        }
+
+
+        private void writeFixedInt( int v )
+        {
+            write( v >>> 24 );
+            write( v >>> 16 );
+            write( v >>> 8 );
+            write( v );
+        }
+
+
+        @Override
+        public void writeBytes( String s )
+        {
+            for ( int i = 0; i < s.length(); i++ )
+            {
+                write( s.charAt( i ) );
+            }
+        }
+
+
+        @Override
+        public void writeChars( String s )
+        {
+            for ( int i = 0; i < s.length(); i++ )
+            {
+                writeChar( s.charAt( i ) );
+            }
+        }
+
+
+        /**
+         * Write a String using the modified UTF-8 encoding (see {@link java.io.DataInput}) : each
+         * char is encoded on its own, so the unpaired surrogates are kept. The length is a varint.
+         */
+        @Override
+        public void writeUTF( String s )
+        {
+            int nbChars = s.length();
+            int utfLen = 0;
+
+            for ( int i = 0; i < nbChars; i++ )
+            {
+                char c = s.charAt( i );
+
+                if ( ( c >= 0x0001 ) && ( c <= 0x007F ) )
+                {
+                    utfLen++;
+                }
+                else if ( c <= 0x07FF )
+                {
+                    utfLen += 2;
+                }
+                else
+                {
+                    utfLen += 3;
+                }
+            }
+
+            writeInt( utfLen );
+            ensureCapacity( utfLen );
+
+            for ( int i = 0; i < nbChars; i++ )
+            {
+                char c = s.charAt( i );
+
+                if ( ( c >= 0x0001 ) && ( c <= 0x007F ) )
+                {
+                    buffer[pos++] = ( byte ) c;
+                }
+                else if ( c <= 0x07FF )
+                {
+                    buffer[pos++] = ( byte ) ( 0xC0 | ( c >> 6 ) );
+                    buffer[pos++] = ( byte ) ( 0x80 | ( c & 0x3F ) );
+                }
+                else
+                {
+                    buffer[pos++] = ( byte ) ( 0xE0 | ( c >> 12 ) );
+                    buffer[pos++] = ( byte ) ( 0x80 | ( ( c >> 6 ) & 0x3F ) );
+                    buffer[pos++] = ( byte ) ( 0x80 | ( c & 0x3F ) );
+                }
+            }
+        }
+
+
+        /**
+         * Objects are not expected, but we still support them through the Java serialization
+         */
+        @Override
+        public void writeObject( Object obj ) throws IOException
+        {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+            try ( ObjectOutputStream oos = new ObjectOutputStream( baos ) )
+            {
+                oos.writeObject( obj );
+            }
+
+            byte[] bytes = baos.toByteArray();
+            writeInt( bytes.length );
+            write( bytes );
+        }
+
+
+        @Override
+        public void flush()
+        {
+            // Nothing to do
+        }
+
+
+        @Override
+        public void close()
+        {
+            // Nothing to do
+        }
+    }
+
+
+    /**
+     * The ObjectInput reading what the {@link CompactObjectOutput} has written.
+     */
+    private static final class CompactObjectInput implements ObjectInput
+    {
+        private final byte[] buffer;
+        private int pos;
+        private final int end;
+
+
+        CompactObjectInput( byte[] buffer, int pos, int len )
+        {
+            this.buffer = buffer;
+            this.pos = pos;
+            this.end = pos + len;
+        }
+
+
+        private void checkAvailable( int len ) throws EOFException
+        {
+            if ( ( len < 0 ) || ( pos + len > end ) )
+            {
+                throw new EOFException();
+            }
+        }
+
+
+        private long readVarLong() throws IOException
+        {
+            long value = 0L;
+
+            for ( int shift = 0; shift < 64; shift += 7 )
+            {
+                checkAvailable( 1 );
+                byte b = buffer[pos++];
+                value |= ( long ) ( b & 0x7F ) << shift;
+
+                if ( ( b & 0x80 ) == 0 )
+                {
+                    return value;
+                }
+            }
+
+            throw new IOException( "Malformed varint" );
+        }
+
+
+        @Override
+        public int read() throws IOException
+        {
+            if ( pos >= end )
+            {
+                return -1;
+            }
+
+            return buffer[pos++] & 0xFF;
+        }
+
+
+        @Override
+        public int read( byte[] b ) throws IOException
+        {
+            return read( b, 0, b.length );
+        }
+
+
+        @Override
+        public int read( byte[] b, int off, int len ) throws IOException
+        {
+            if ( pos >= end )
+            {
+                return -1;
+            }
+
+            int nbRead = Math.min( len, end - pos );
+            System.arraycopy( buffer, pos, b, off, nbRead );
+            pos += nbRead;
+
+            return nbRead;
+        }
+
+
+        @Override
+        public void readFully( byte[] b ) throws IOException
+        {
+            readFully( b, 0, b.length );
+        }
+
+
+        @Override
+        public void readFully( byte[] b, int off, int len ) throws IOException
+        {
+            checkAvailable( len );
+            System.arraycopy( buffer, pos, b, off, len );
+            pos += len;
+        }
+
+
+        @Override
+        public int skipBytes( int n )
+        {
+            int skipped = Math.max( 0, Math.min( n, end - pos ) );
+            pos += skipped;
+
+            return skipped;
+        }
+
+
+        @Override
+        public long skip( long n )
+        {
+            return skipBytes( ( int ) Math.min( n, Integer.MAX_VALUE ) );
+        }
+
+
+        @Override
+        public int available()
+        {
+            return end - pos;
+        }
+
+
+        @Override
+        public boolean readBoolean() throws IOException
+        {
+            return readByte() != 0;
+        }
+
+
+        @Override
+        public byte readByte() throws IOException
+        {
+            checkAvailable( 1 );
+
+            return buffer[pos++];
+        }
+
+
+        @Override
+        public int readUnsignedByte() throws IOException
+        {
+            return readByte() & 0xFF;
+        }
+
+
+        @Override
+        public short readShort() throws IOException
+        {
+            return ( short ) readUnsignedShort();
+        }
+
+
+        @Override
+        public int readUnsignedShort() throws IOException
+        {
+            checkAvailable( 2 );
+            int value = ( ( buffer[pos] & 0xFF ) << 8 ) | ( buffer[pos + 1] & 0xFF );
+            pos += 2;
+
+            return value;
+        }
+
+
+        @Override
+        public char readChar() throws IOException
+        {
+            return ( char ) readUnsignedShort();
+        }
+
+
+        @Override
+        public int readInt() throws IOException
+        {
+            int value = ( int ) readVarLong();
+
+            return ( value >>> 1 ) ^ -( value & 1 );
+        }
+
+
+        @Override
+        public long readLong() throws IOException
+        {
+            long value = readVarLong();
+
+            return ( value >>> 1 ) ^ -( value & 1L );
+        }
+
+
+        @Override
+        public float readFloat() throws IOException
+        {
+            return Float.intBitsToFloat( readFixedInt() );
+        }
+
+
+        @Override
+        public double readDouble() throws IOException
+        {
+            long high = readFixedInt() & 0xFFFFFFFFL;
+            long low = readFixedInt() & 0xFFFFFFFFL;
+
+            return Double.longBitsToDouble( ( high << 32 ) | low );
+        }
+
+
+        private int readFixedInt() throws IOException
+        {
+            checkAvailable( 4 );
+            int value = ( ( buffer[pos] & 0xFF ) << 24 ) | ( ( buffer[pos + 1] & 0xFF ) << 16 )
+                | ( ( buffer[pos + 2] & 0xFF ) << 8 ) | ( buffer[pos + 3] & 0xFF );
+            pos += 4;
+
+            return value;
+        }
+
+
+        /**
+         * Read a line the way <code>DataInputStream.readLine()</code> does : each byte is
+         * converted to a char, and the line ends with a '\n', a '\r', a "\r\n" or at the end
+         * of the buffer.
+         */
+        @Override
+        public String readLine()
+        {
+            if ( pos >= end )
+            {
+                return null;
+            }
+
+            StringBuilder sb = new StringBuilder();
+
+            while ( pos < end )
+            {
+                char c = ( char ) ( buffer[pos++] & 0xFF );
+
+                if ( c == '\n' )
+                {
+                    break;
+                }
+
+                if ( c == '\r' )
+                {
+                    if ( ( pos < end ) && ( buffer[pos] == '\n' ) )
+                    {
+                        pos++;
+                    }
+
+                    break;
+                }
+
+                sb.append( c );
+            }
+
+            return sb.toString();
+        }
+
+
+        /**
+         * Read a String written by {@link CompactObjectOutput#writeUTF(String)}, using the
+         * modified UTF-8 encoding.
+         */
+        @Override
+        public String readUTF() throws IOException
+        {
+            int len = readInt();
+            checkAvailable( len );
+            int limit = pos + len;
+            char[] chars = new char[len];
+            int nbChars = 0;
+
+            while ( pos < limit )
+            {
+                int b = buffer[pos++] & 0xFF;
+
+                if ( b < 0x80 )
+                {
+                    chars[nbChars++] = ( char ) b;
+                }
+                else if ( ( b & 0xE0 ) == 0xC0 )
+                {
+                    chars[nbChars++] = ( char ) ( ( ( b & 0x1F ) << 6 ) | readContinuation( limit ) );
+                }
+                else if ( ( b & 0xF0 ) == 0xE0 )
+                {
+                    int high = readContinuation( limit );
+                    chars[nbChars++] = ( char ) ( ( ( b & 0x0F ) << 12 ) | ( high << 6 ) | readContinuation( limit ) );
+                }
+                else
+                {
+                    throw new UTFDataFormatException( "Malformed input around byte " + ( pos - 1 ) );
+                }
+            }
+
+            return new String( chars, 0, nbChars );
+        }
+
+
+        /**
+         * Read the 6 bits of a modified UTF-8 continuation byte
+         */
+        private int readContinuation( int limit ) throws UTFDataFormatException
+        {
+            if ( pos >= limit )
+            {
+                throw new UTFDataFormatException( "Partial character at the end of the input" );
+            }
+
+            int b = buffer[pos++] & 0xFF;
+
+            if ( ( b & 0xC0 ) != 0x80 )
+            {
+                throw new UTFDataFormatException( "Malformed input around byte " + ( pos - 1 ) );
+            }
+
+            return b & 0x3F;
+        }
+
+
+        @Override
+        public Object readObject() throws ClassNotFoundException, IOException
+        {
+            int len = readInt();
+            checkAvailable( len );
+
+            try ( ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( buffer, pos, len ) ) )
+            {
+                pos += len;
+
+                return ois.readObject();
+            }
+        }
+
+
+        @Override
+        public void close()
+        {
+            // Nothing to do
+        }
+    }
+}
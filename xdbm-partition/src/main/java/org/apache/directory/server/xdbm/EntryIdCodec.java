@@ -0,0 +1,151 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm;
+
+
+/**
+ * Converts the entry IDs to and from their 128 bits binary form.
+ * <br>
+ * The entry IDs are the entries UUID, in their canonical form : 36 lower case characters,
+ * like <code>f81d4fae-7dec-11d0-a765-00a0c91e6bf6</code>. Such an ID can be stored as two
+ * longs, instead of 36 chars. IDs which are not canonical (upper case UUIDs provided by the
+ * user, for instance) can't be converted without changing their value, and must be stored as
+ * Strings.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class EntryIdCodec
+{
+    /** The size of the binary form of an ID */
+    public static final int COMPACT_SIZE = 16;
+
+    /** The length of a canonical UUID */
+    private static final int UUID_LENGTH = 36;
+
+    /** The hexadecimal digits used to format an ID */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+
+    /**
+     * Private constructor
+     */
+    private EntryIdCodec()
+    {
+    }
+
+
+    /**
+     * Tells if an ID can be stored using its binary form
+     *
+     * @param id The entry ID
+     * @return <code>true</code> if the ID is a canonical UUID
+     */
+    public static boolean isCompactable( String id )
+    {
+        if ( ( id == null ) || ( id.length() != UUID_LENGTH ) )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < UUID_LENGTH; i++ )
+        {
+            char c = id.charAt( i );
+
+            if ( ( i == 8 ) || ( i == 13 ) || ( i == 18 ) || ( i == 23 ) )
+            {
+                if ( c != '-' )
+                {
+                    return false;
+                }
+            }
+            else if ( ( ( c < '0' ) || ( c > '9' ) ) && ( ( c < 'a' ) || ( c > 'f' ) ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Write the binary form of an ID into a buffer. The ID must be compactable.
+     *
+     * @param id The entry ID
+     * @param buffer The buffer to write into
+     * @param pos The position in the buffer
+     * @see #isCompactable(String)
+     */
+    public static void write( String id, byte[] buffer, int pos )
+    {
+        int digit = 0;
+
+        for ( int i = 0; i < UUID_LENGTH; i++ )
+        {
+            char c = id.charAt( i );
+
+            if ( c == '-' )
+            {
+                continue;
+            }
+
+            int value = c <= '9' ? c - '0' : c - 'a' + 10;
+
+            if ( ( digit & 0x01 ) == 0 )
+            {
+                buffer[pos + ( digit >> 1 )] = ( byte ) ( value << 4 );
+            }
+            else
+            {
+                buffer[pos + ( digit >> 1 )] |= ( byte ) value;
+            }
+
+            digit++;
+        }
+    }
+
+
+    /**
+     * Read an ID from its binary form
+     *
+     * @param buffer The buffer containing the ID
+     * @param pos The position of the ID in the buffer
+     * @return The entry ID
+     */
+    public static String read( byte[] buffer, int pos )
+    {
+        char[] chars = new char[UUID_LENGTH];
+        int charPos = 0;
+
+        for ( int i = 0; i < COMPACT_SIZE; i++ )
+        {
+            if ( ( i == 4 ) || ( i == 6 ) || ( i == 8 ) || ( i == 10 ) )
+            {
+                chars[charPos++] = '-';
+            }
+
+            byte b = buffer[pos + i];
+            chars[charPos++] = HEX_DIGITS[( b >> 4 ) & 0x0F];
+            chars[charPos++] = HEX_DIGITS[b & 0x0F];
+        }
+
+        return new String( chars );
+    }
+}
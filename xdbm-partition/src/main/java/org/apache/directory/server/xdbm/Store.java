@@ -385,6 +385,19 @@ public interface Store
     long getChildCount( PartitionTxn partitionTxn, String id ) throws LdapException;
 
 
+    /**
+     * Gets the count of descendants of the given entry UUID, from its ParentIdAndRdn. The
+     * updates of the Rdn index counters deferred until the end of the transaction are
+     * taken into account.
+     *
+     * @param partitionTxn The transaction to use
+     * @param id the entry UUID
+     * @param parentIdAndRdn the entry ParentIdAndRdn, read from the Rdn index
+     * @return the descendant count
+     */
+    int getDescendantCount( PartitionTxn partitionTxn, String id, ParentIdAndRdn parentIdAndRdn );
+
+
     /**
      * Modify an entry applying the given list of modifications.
      *
@@ -22,6 +22,7 @@ package org.apache.directory.server.xdbm.search;
 
 import java.util.Set;
 
+import org.apache.directory.api.ldap.model.cursor.Cursor;
 import org.apache.directory.api.ldap.model.cursor.SetCursor;
 import org.apache.directory.api.ldap.model.filter.ExprNode;
 import org.apache.directory.api.ldap.model.message.AliasDerefMode;
@@ -32,7 +33,7 @@ import org.apache.directory.server.xdbm.IndexEntry;
 /**
  * A class containing the result of a search :
  * <ul>
- * <li>A set of candidate UUIDs</li>
+ * <li>A set of candidate UUIDs, or a cursor returning them in the requested order</li>
  * <li>A set of aliased entry if we have any</li>
  * <li>A flag telling if we are dereferencing aliases or not</li>
  * <li>A hierarchy of evaluators to use to validate the candidates</li>
@@ -41,8 +42,8 @@ import org.apache.directory.server.xdbm.IndexEntry;
  */
 public class PartitionSearchResult
 {
-    /** The set of candidate UUIDs selected by the search */
-    private SetCursor<IndexEntry<String, String>> resultSet;
+    /** The candidate UUIDs selected by the search */
+    private Cursor<IndexEntry<String, String>> resultSet;
 
     /** The set of candidate UUIDs */
     private Set<String> candidateSet;
@@ -56,6 +57,9 @@ public class PartitionSearchResult
     /** The SchemaManager */
     private SchemaManager schemaManager;
 
+    /** Tells if the candidates are returned in the order requested by the sort control */
+    private boolean ordered;
+
 
     /**
      * Create a PartitionSearchResult instance
@@ -71,7 +75,7 @@ public class PartitionSearchResult
     /**
      * @return the resultSet
      */
-    public SetCursor<IndexEntry<String, String>> getResultSet()
+    public Cursor<IndexEntry<String, String>> getResultSet()
     {
         return resultSet;
     }
@@ -86,6 +90,29 @@ public class PartitionSearchResult
     }
 
 
+    /**
+     * Sets a cursor returning the candidates in the order requested by the
+     * server side sort control.
+     * 
+     * @param cursor the cursor over the ordered candidates
+     */
+    public void setResultSet( Cursor<IndexEntry<String, String>> cursor )
+    {
+        resultSet = cursor;
+        ordered = true;
+    }
+
+
+    /**
+     * @return true if the candidates are returned in the order requested by the
+     * server side sort control
+     */
+    public boolean isOrdered()
+    {
+        return ordered;
+    }
+
+
     /**
      * @return the candidateSet
      */
@@ -200,6 +227,11 @@ public class PartitionSearchResult
         {
             sb.append( "No UUID found" );
         }
+        else if ( ordered )
+        {
+            // Don't read the whole index
+            sb.append( "Ordered UUIDs : " ).append( resultSet );
+        }
         else
         {
             sb.append( '{' );
@@ -266,11 +266,11 @@ public class DescendantCursor extends AbstractIndexCursor<String>
                         prefetched = cursorEntry;
                     }
 
+                    String newParentId = ( String ) cursorEntry.getId();
+
                     // Check if the current entry has children or not.
-                    if ( parentIdAndRdn.getNbDescendants() > 0 )
+                    if ( db.getDescendantCount( partitionTxn, newParentId, parentIdAndRdn ) > 0 )
                     {
-                        String newParentId = ( String ) cursorEntry.getId();
-
                         // Yes, then create a new cursor and go down one level
                         Cursor<IndexEntry<ParentIdAndRdn, String>> cursor = db.getRdnIndex().forwardCursor( partitionTxn );
 
@@ -0,0 +1,516 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.xdbm.search.cursor;
+
+
+import java.io.IOException;
+
+import org.apache.directory.api.ldap.model.constants.Loggers;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.LdapComparator;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.AbstractIndexCursor;
+import org.apache.directory.server.xdbm.Index;
+import org.apache.directory.server.xdbm.IndexEntry;
+import org.apache.directory.server.xdbm.IndexNotFoundException;
+import org.apache.directory.server.xdbm.Store;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A Cursor over all the entries of a partition, returned in the order of the values
+ * of an indexed attribute, as required by the server side sort control. The candidates
+ * are not filtered : the search evaluator has to be applied on each of them.
+ * <br>
+ * The entries are ordered by the least value they have for the attribute, the entries
+ * not having the attribute being the last ones (or the first ones in reverse order). The
+ * reverse order is exactly the opposite of the normal one, including between the entries
+ * sharing the same value or not having the attribute.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class OrderedCursor extends AbstractIndexCursor<String>
+{
+    /** A dedicated log for cursors */
+    private static final Logger LOG_CURSOR = LoggerFactory.getLogger( Loggers.CURSOR_LOG.getName() );
+
+    /** Speedup for logs */
+    private static final boolean IS_DEBUG = LOG_CURSOR.isDebugEnabled();
+
+    /** The segment of the entries having the attribute */
+    private static final int VALUES = 0;
+
+    /** The segment of the entries not having the attribute */
+    private static final int ABSENT = 1;
+
+    /** The index on the attribute used to order the entries */
+    private final Index<Object, String> index;
+
+    /** The cursor on the index */
+    private final Cursor<IndexEntry<Object, String>> valuesCursor;
+
+    /** The cursor on all the entries, used to find those not having the attribute */
+    private final Cursor<IndexEntry<String, String>> absentCursor;
+
+    /** The presence index, telling if an entry has the attribute */
+    private final Index<String, String> presenceIndex;
+
+    /** The attribute used to order the entries */
+    private final AttributeType attributeType;
+
+    /** The comparator used by the index */
+    private final LdapComparator<? super Object> comparator;
+
+    /** Tells if the attribute may have more than one value */
+    private final boolean multiValued;
+
+    /** Tells if the entries are returned in reverse order */
+    private final boolean reverse;
+
+    /** The segment the cursor is currently positioned in */
+    private int segment;
+
+    /** The index entry we use to return entries one by one */
+    private final IndexEntry<String, String> indexEntry = new IndexEntry<>();
+
+
+    /**
+     * Creates a new instance of an OrderedCursor
+     * 
+     * @param partitionTxn The transaction to use
+     * @param store The store
+     * @param attributeType The indexed attribute used to order the entries
+     * @param reverse Tells if the entries are returned in reverse order
+     * @throws LdapException If the cursor can't be created
+     * @throws IndexNotFoundException If the attribute is not indexed
+     */
+    @SuppressWarnings("unchecked")
+    public OrderedCursor( PartitionTxn partitionTxn, Store store, AttributeType attributeType, boolean reverse )
+        throws LdapException, IndexNotFoundException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Creating OrderedCursor {}", this );
+        }
+
+        this.partitionTxn = partitionTxn;
+        this.attributeType = attributeType;
+        this.reverse = reverse;
+        index = ( Index<Object, String> ) store.getUserIndex( attributeType );
+        presenceIndex = store.getPresenceIndex();
+        comparator = attributeType.getEquality().getLdapComparator();
+        multiValued = !attributeType.isSingleValued();
+        valuesCursor = index.forwardCursor( partitionTxn );
+        absentCursor = new AllEntriesCursor( partitionTxn, store );
+        segment = firstSegment();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    protected String getUnsupportedMessage()
+    {
+        return UNSUPPORTED_MSG;
+    }
+
+
+    /**
+     * @return the segment returned first
+     */
+    private int firstSegment()
+    {
+        return reverse ? ABSENT : VALUES;
+    }
+
+
+    /**
+     * @return the segment returned last
+     */
+    private int lastSegment()
+    {
+        return reverse ? VALUES : ABSENT;
+    }
+
+
+    private void clear()
+    {
+        setAvailable( false );
+        indexEntry.setEntry( null );
+        indexEntry.setId( null );
+        indexEntry.setKey( null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        segment = firstSegment();
+        beforeFirst( segment );
+        clear();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void afterLast() throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        segment = lastSegment();
+        afterLast( segment );
+        clear();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean first() throws LdapException, CursorException
+    {
+        beforeFirst();
+
+        return next();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean last() throws LdapException, CursorException
+    {
+        afterLast();
+
+        return previous();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean next() throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        if ( next( segment ) )
+        {
+            return setAvailable( true );
+        }
+
+        if ( segment == firstSegment() )
+        {
+            segment = lastSegment();
+            beforeFirst( segment );
+
+            if ( next( segment ) )
+            {
+                return setAvailable( true );
+            }
+        }
+
+        clear();
+
+        return false;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean previous() throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        if ( previous( segment ) )
+        {
+            return setAvailable( true );
+        }
+
+        if ( segment == lastSegment() )
+        {
+            segment = firstSegment();
+            afterLast( segment );
+
+            if ( previous( segment ) )
+            {
+                return setAvailable( true );
+            }
+        }
+
+        clear();
+
+        return false;
+    }
+
+
+    /**
+     * Positions the cursor before the first entry of a segment, in the sort order
+     */
+    private void beforeFirst( int segment ) throws LdapException, CursorException
+    {
+        if ( segment == ABSENT )
+        {
+            if ( reverse )
+            {
+                absentCursor.afterLast();
+            }
+            else
+            {
+                absentCursor.beforeFirst();
+            }
+        }
+        else if ( reverse )
+        {
+            valuesCursor.afterLast();
+        }
+        else
+        {
+            valuesCursor.beforeFirst();
+        }
+    }
+
+
+    /**
+     * Positions the cursor after the last entry of a segment, in the sort order
+     */
+    private void afterLast( int segment ) throws LdapException, CursorException
+    {
+        if ( segment == ABSENT )
+        {
+            if ( reverse )
+            {
+                absentCursor.beforeFirst();
+            }
+            else
+            {
+                absentCursor.afterLast();
+            }
+        }
+        else if ( reverse )
+        {
+            valuesCursor.beforeFirst();
+        }
+        else
+        {
+            valuesCursor.afterLast();
+        }
+    }
+
+
+    /**
+     * Moves to the next entry of a segment, in the sort order
+     */
+    private boolean next( int segment ) throws LdapException, CursorException
+    {
+        if ( segment == ABSENT )
+        {
+            while ( reverse ? absentCursor.previous() : absentCursor.next() )
+            {
+                if ( isAbsent( absentCursor.get() ) )
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        while ( reverse ? valuesCursor.previous() : valuesCursor.next() )
+        {
+            if ( isLeastValue( valuesCursor.get() ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Moves to the previous entry of a segment, in the sort order
+     */
+    private boolean previous( int segment ) throws LdapException, CursorException
+    {
+        if ( segment == ABSENT )
+        {
+            while ( reverse ? absentCursor.next() : absentCursor.previous() )
+            {
+                if ( isAbsent( absentCursor.get() ) )
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        while ( reverse ? valuesCursor.next() : valuesCursor.previous() )
+        {
+            if ( isLeastValue( valuesCursor.get() ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Tells if the entry does not have the attribute, and keeps it as the current entry if so.
+     */
+    private boolean isAbsent( IndexEntry<String, String> candidate ) throws LdapException
+    {
+        if ( presenceIndex.forward( partitionTxn, attributeType.getOid(), candidate.getId() ) )
+        {
+            return false;
+        }
+
+        indexEntry.setId( candidate.getId() );
+        indexEntry.setKey( candidate.getId() );
+        indexEntry.setEntry( null );
+
+        return true;
+    }
+
+
+    /**
+     * Tells if the index entry holds the least value of its entry, and keeps it as the current
+     * entry if so. An entry is only returned once, at the position of its least value.
+     */
+    private boolean isLeastValue( IndexEntry<Object, String> candidate ) throws LdapException
+    {
+        // The values of an entry are sorted in the reverse index
+        if ( multiValued
+            && ( comparator.compare( index.reverseLookup( partitionTxn, candidate.getId() ), candidate.getKey() ) != 0 ) )
+        {
+            return false;
+        }
+
+        indexEntry.setId( candidate.getId() );
+        indexEntry.setKey( candidate.getId() );
+        indexEntry.setEntry( null );
+
+        return true;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public IndexEntry<String, String> get() throws CursorException
+    {
+        checkNotClosed();
+
+        if ( available() )
+        {
+            return indexEntry;
+        }
+
+        throw new InvalidCursorPositionException( I18n.err( I18n.ERR_708 ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Closing OrderedCursor {}", this );
+        }
+
+        super.close();
+        valuesCursor.close();
+        absentCursor.close();
+        clear();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close( Exception cause ) throws IOException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Closing OrderedCursor {}", this );
+        }
+
+        super.close( cause );
+        valuesCursor.close( cause );
+        absentCursor.close( cause );
+        clear();
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString( String tabs )
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( tabs ).append( "OrderedCursor (" );
+
+        if ( available() )
+        {
+            sb.append( "available)" );
+        }
+        else
+        {
+            sb.append( "absent)" );
+        }
+
+        sb.append( "#attribute<" ).append( attributeType.getName() ).append( ">" );
+        sb.append( "#reverse<" ).append( reverse ).append( "> :\n" );
+
+        sb.append( valuesCursor.toString( tabs + "    " ) );
+
+        return sb.toString();
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    public String toString()
+    {
+        return toString( "" );
+    }
+}
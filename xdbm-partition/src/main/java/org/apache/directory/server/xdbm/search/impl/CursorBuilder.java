@@ -21,6 +21,8 @@ package org.apache.directory.server.xdbm.search.impl;
 
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
@@ -79,6 +81,16 @@ public class CursorBuilder
     /** Evaluator dependency on a EvaluatorBuilder */
     private EvaluatorBuilder evaluatorBuilder;
 
+    /** Tells if the candidates of a conjunction are intersected using all its indexed children */
+    private boolean indexIntersectionEnabled = false;
+
+    /**
+     * A child of a conjunction is only intersected if its count is below this ratio of
+     * the current number of candidates : reading a large index costs more than evaluating
+     * the remaining candidates.
+     */
+    private static final long INTERSECTION_RATIO = 16L;
+
 
     /**
      * Creates an expression tree enumerator.
@@ -93,6 +105,29 @@ public class CursorBuilder
     }
 
 
+    /**
+     * Tells if the index intersection is enabled
+     *
+     * @return <code>true</code> if the candidates of a conjunction are computed by intersecting its children candidates
+     */
+    public boolean isIndexIntersectionEnabled()
+    {
+        return indexIntersectionEnabled;
+    }
+
+
+    /**
+     * Enable or disable the index intersection. When disabled, the candidates of a conjunction
+     * are the candidates of its smallest child.
+     *
+     * @param indexIntersectionEnabled The flag
+     */
+    public void setIndexIntersectionEnabled( boolean indexIntersectionEnabled )
+    {
+        this.indexIntersectionEnabled = indexIntersectionEnabled;
+    }
+
+
     public <T> long build( PartitionTxn partitionTxn, ExprNode node, PartitionSearchResult searchResult ) throws LdapException
     {
         Object count = node.get( DefaultOptimizer.COUNT_ANNOTATION );
@@ -818,6 +853,11 @@ public class CursorBuilder
             }
         }
 
+        if ( indexIntersectionEnabled )
+        {
+            return computeIntersection( partitionTxn, children, minIndex, searchResult );
+        }
+
         // Once found we return the number of candidates for this child
         ExprNode minChild = children.get( minIndex );
 
@@ -825,6 +865,114 @@ public class CursorBuilder
     }
 
 
+    /**
+     * Computes the candidates of a conjunction by intersecting the candidates of its children, starting
+     * with the smallest one. The children which are a negation of an equality or a presence assertion
+     * have their candidates removed from the intersection. The resulting set is still a superset of the
+     * conjunction candidates, which will be evaluated on each entry.
+     */
+    private long computeIntersection( PartitionTxn partitionTxn, List<ExprNode> children, int minIndex,
+        PartitionSearchResult searchResult ) throws LdapException
+    {
+        Set<String> candidateSet = searchResult.getCandidateSet();
+        Set<String> intersection = new HashSet<>();
+
+        try
+        {
+            searchResult.setCandidateSet( intersection );
+
+            long nbResults = build( partitionTxn, children.get( minIndex ), searchResult );
+
+            if ( nbResults == Long.MAX_VALUE )
+            {
+                return nbResults;
+            }
+
+            // Process the other children, smallest count first
+            List<ExprNode> others = new ArrayList<>( children );
+            others.remove( minIndex );
+            others.sort( ( node1, node2 ) -> Long.compare( getIntersectionCount( node1 ), getIntersectionCount( node2 ) ) );
+
+            for ( ExprNode child : others )
+            {
+                long count = getIntersectionCount( child );
+
+                if ( intersection.isEmpty() || ( count > intersection.size() * INTERSECTION_RATIO ) )
+                {
+                    // The remaining children are bigger
+                    break;
+                }
+
+                boolean negated = child instanceof NotNode;
+                ExprNode indexedChild = negated ? ( ( NotNode ) child ).getFirstChild() : child;
+                Set<String> childSet = new HashSet<>();
+                searchResult.setCandidateSet( childSet );
+
+                if ( build( partitionTxn, indexedChild, searchResult ) == Long.MAX_VALUE )
+                {
+                    // No index
+                    continue;
+                }
+
+                if ( negated )
+                {
+                    intersection.removeAll( childSet );
+                }
+                else
+                {
+                    intersection.retainAll( childSet );
+                }
+            }
+        }
+        finally
+        {
+            searchResult.setCandidateSet( candidateSet );
+        }
+
+        long nbResults = 0;
+
+        for ( String uuid : intersection )
+        {
+            if ( candidateSet.add( uuid ) )
+            {
+                nbResults++;
+            }
+        }
+
+        return nbResults;
+    }
+
+
+    /**
+     * Get the number of candidates a conjunction child will provide when intersected, or
+     * Long.MAX_VALUE if it can't be used for an intersection
+     */
+    private long getIntersectionCount( ExprNode node )
+    {
+        ExprNode indexedNode = node;
+
+        if ( node instanceof NotNode )
+        {
+            indexedNode = ( ( NotNode ) node ).getFirstChild();
+
+            // The candidates of a negated child are removed, they must all match the assertion
+            if ( !( indexedNode instanceof EqualityNode ) && !( indexedNode instanceof PresenceNode ) )
+            {
+                return Long.MAX_VALUE;
+            }
+        }
+
+        Object count = indexedNode.get( DefaultOptimizer.COUNT_ANNOTATION );
+
+        if ( count == null )
+        {
+            return Long.MAX_VALUE;
+        }
+
+        return ( Long ) count;
+    }
+
+
     /**
      * Creates an AndCursor over a conjunction expression branch node.
      *
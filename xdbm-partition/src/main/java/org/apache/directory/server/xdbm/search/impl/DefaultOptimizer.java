@@ -513,7 +513,8 @@ public class DefaultOptimizer implements Optimizer
                 }
                 else
                 {
-                    return db.getRdnIndex().reverseLookup( partitionTxn, id ).getNbDescendants() + 1L;
+                    return db.getDescendantCount( partitionTxn, id,
+                        db.getRdnIndex().reverseLookup( partitionTxn, id ) ) + 1L;
                 }
 
             default:
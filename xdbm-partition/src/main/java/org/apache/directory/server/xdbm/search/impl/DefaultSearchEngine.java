@@ -35,19 +35,28 @@ import org.apache.directory.api.ldap.model.filter.ObjectClassNode;
 import org.apache.directory.api.ldap.model.filter.ScopeNode;
 import org.apache.directory.api.ldap.model.message.AliasDerefMode;
 import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.SortKey;
+import org.apache.directory.api.ldap.model.message.controls.SortRequest;
 import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.LdapComparator;
+import org.apache.directory.api.ldap.model.schema.MatchingRule;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.partition.impl.btree.IndexCursorAdaptor;
 import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.Index;
 import org.apache.directory.server.xdbm.IndexEntry;
+import org.apache.directory.server.xdbm.IndexNotFoundException;
 import org.apache.directory.server.xdbm.Store;
 import org.apache.directory.server.xdbm.search.Evaluator;
 import org.apache.directory.server.xdbm.search.Optimizer;
 import org.apache.directory.server.xdbm.search.PartitionSearchResult;
 import org.apache.directory.server.xdbm.search.SearchEngine;
+import org.apache.directory.server.xdbm.search.cursor.OrderedCursor;
 import org.apache.directory.server.xdbm.search.evaluator.BaseLevelScopeEvaluator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -245,6 +254,32 @@ public class DefaultSearchEngine implements SearchEngine
         optimizer.annotate( partitionTxn, root );
         Evaluator<? extends ExprNode> evaluator = evaluatorBuilder.build( partitionTxn, root );
 
+        // If the entries have to be sorted on an indexed attribute, we may read them
+        // in the index order instead of collecting them all.
+        SortKey sortKey = getIndexedSortKey( schemaManager, searchContext, root );
+
+        if ( sortKey != null )
+        {
+            AttributeType attributeType = schemaManager.getAttributeType( sortKey.getAttributeTypeDesc() );
+
+            LOG.debug( "Reading the candidates for filter {} in the order of the {} index", root, attributeType );
+
+            try
+            {
+                searchResult.setResultSet(
+                    new OrderedCursor( partitionTxn, db, attributeType, sortKey.isReverseOrder() ) );
+            }
+            catch ( IndexNotFoundException infe )
+            {
+                throw new LdapOtherException( infe.getMessage(), infe );
+            }
+
+            searchResult.setAliasDerefMode( aliasDerefMode );
+            searchResult.setEvaluator( evaluator );
+
+            return searchResult;
+        }
+
         Set<String> uuidSet = new HashSet<>();
         searchResult.setAliasDerefMode( aliasDerefMode );
         searchResult.setCandidateSet( uuidSet );
@@ -295,6 +330,98 @@ public class DefaultSearchEngine implements SearchEngine
     }
 
 
+    /**
+     * Checks if the search has a server side sort control whose key can be read in
+     * the order of one of the partition's indexes. This is only worth it when the
+     * number of candidates is too big to be sorted in memory : the index order
+     * allows the entries to be streamed, instead of being collected and sorted
+     * before the first one is returned.
+     *
+     * @param schemaManager The SchemaManager instance
+     * @param searchContext the search context
+     * @param root the annotated filter, scope included
+     * @return the sort key, or null if the index can't be used
+     * @throws LdapException if the index can't be read
+     */
+    private SortKey getIndexedSortKey( SchemaManager schemaManager, SearchOperationContext searchContext,
+        ExprNode root ) throws LdapException
+    {
+        SortRequest sortRequest = ( SortRequest ) searchContext.getRequestControl( SortRequest.OID );
+        CoreSession session = searchContext.getSession();
+
+        // With more than one key, the entries having the same value for the
+        // first key would have to be sorted again
+        if ( ( sortRequest == null ) || ( session == null ) || ( sortRequest.getSortKeys().size() != 1 ) )
+        {
+            return null;
+        }
+
+        Long count = ( Long ) root.get( DefaultOptimizer.COUNT_ANNOTATION );
+
+        if ( ( count != null ) && ( count <= session.getDirectoryService().getMaxSortedEntriesInMemory() ) )
+        {
+            return null;
+        }
+
+        SortKey sortKey = sortRequest.getSortKeys().get( 0 );
+        AttributeType attributeType = schemaManager.getAttributeType( sortKey.getAttributeTypeDesc() );
+
+        if ( ( attributeType == null ) || !attributeType.getSyntax().isHumanReadable()
+            || !db.hasUserIndexOn( attributeType ) )
+        {
+            return null;
+        }
+
+        // The least value of an entry is read from the reverse index
+        try
+        {
+            Index<?, String> index = db.getUserIndex( attributeType );
+
+            if ( !attributeType.isSingleValued() && !index.hasReverse() )
+            {
+                return null;
+            }
+        }
+        catch ( IndexNotFoundException infe )
+        {
+            return null;
+        }
+
+        // The index is ordered using the equality matching rule comparator, the
+        // same that the one used to sort the entries
+        MatchingRule equality = attributeType.getEquality();
+        LdapComparator<?> comparator;
+
+        if ( sortKey.getMatchingRuleId() != null )
+        {
+            try
+            {
+                comparator = schemaManager.lookupComparatorRegistry( sortKey.getMatchingRuleId() );
+            }
+            catch ( LdapException le )
+            {
+                // The sort control has been rejected, it's not critical
+                return null;
+            }
+        }
+        else if ( attributeType.getOrdering() != null )
+        {
+            comparator = attributeType.getOrdering().getLdapComparator();
+        }
+        else
+        {
+            comparator = equality.getLdapComparator();
+        }
+
+        if ( ( comparator == null ) || ( comparator.getClass() != equality.getLdapComparator().getClass() ) )
+        {
+            return null;
+        }
+
+        return sortKey;
+    }
+
+
     /**
      * {@inheritDoc}
      */
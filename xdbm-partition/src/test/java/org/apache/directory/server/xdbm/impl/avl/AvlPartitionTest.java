@@ -537,6 +537,53 @@ public class AvlPartitionTest
     }
 
 
+    @Test
+    public void testDeferredRdnCounts() throws Exception
+    {
+        partition.setDeferredRdnCounts( true );
+
+        String suffixId = partition.getEntryId( txn, new Dn( schemaManager, "o=Good Times Co." ) );
+        String engineeringId = partition.getEntryId( txn, new Dn( schemaManager, "ou=Engineering,o=Good Times Co." ) );
+        long nbChildren = partition.getChildCount( txn, engineeringId );
+        int nbDescendants = partition.getDescendantCount( txn, suffixId,
+            partition.getRdnIndex().reverseLookup( txn, suffixId ) );
+
+        PartitionTxn writeTxn = partition.beginWriteTransaction();
+
+        for ( int i = 0; i < 3; i++ )
+        {
+            Dn dn = new Dn( schemaManager, "cn=User " + i + ",ou=Engineering,o=Good Times Co." );
+            DefaultEntry entry = new DefaultEntry( schemaManager, dn,
+                "objectClass: top",
+                "objectClass: person",
+                "objectClass: organizationalPerson",
+                "ou: Engineering",
+                "cn", "User " + i,
+                "sn", "User " + i,
+                "entryCSN", new CsnFactory( 1 ).newInstance().toString(),
+                "entryUUID", UUID.randomUUID().toString() );
+
+            AddOperationContext addContext = new AddOperationContext( null, entry );
+            addContext.setPartition( partition );
+            addContext.setTransaction( writeTxn );
+
+            partition.add( addContext );
+        }
+
+        // The counters are exact within the transaction, while the stored ones are not yet updated
+        assertEquals( nbChildren + 3, partition.getChildCount( writeTxn, engineeringId ) );
+        assertEquals( nbDescendants + 3, partition.getDescendantCount( writeTxn, suffixId,
+            partition.getRdnIndex().reverseLookup( writeTxn, suffixId ) ) );
+        assertEquals( nbChildren, partition.getChildCount( txn, engineeringId ) );
+
+        writeTxn.commit();
+
+        assertEquals( nbChildren + 3, partition.getChildCount( txn, engineeringId ) );
+        assertEquals( nbDescendants + 3, partition.getDescendantCount( txn, suffixId,
+            partition.getRdnIndex().reverseLookup( txn, suffixId ) ) );
+    }
+
+
     @Test
     public void testModifyAdd() throws Exception
     {
@@ -20,6 +20,7 @@
 package org.apache.directory.server.xdbm.search.impl;
 
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -50,6 +51,7 @@ import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.partition.impl.avl.AvlPartition;
 import org.apache.directory.server.xdbm.StoreUtils;
 import org.apache.directory.server.xdbm.impl.avl.AvlIndex;
+import org.apache.directory.server.xdbm.search.PartitionSearchResult;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -292,4 +294,58 @@ public class AndCursorTest extends AbstractCursorTest
         cursor.close();
         assertTrue( cursor.isClosed() );
     }
+
+
+    @Test
+    public void testAndWithIndexIntersection() throws Exception
+    {
+        PartitionTxn txn = ( ( Partition ) store ).beginReadTransaction();
+        DefaultOptimizer optimizer = new DefaultOptimizer( store );
+        cursorBuilder.setIndexIntersectionEnabled( true );
+
+        // Only the entries having both an ou=Sales and a cn starting with J are candidates
+        ExprNode exprNode = FilterParser.parse( schemaManager, "(&(ou=Sales)(cn=J*))" );
+        optimizer.annotate( txn, exprNode );
+
+        Set<String> expectedUuid = new HashSet<String>();
+        expectedUuid.add( Strings.getUUID( 5 ) );
+        expectedUuid.add( Strings.getUUID( 6 ) );
+
+        assertEquals( expectedUuid, computeCandidates( txn, exprNode ) );
+
+        // The negated equality candidates are removed
+        exprNode = FilterParser.parse( schemaManager, "(&(ou=Sales)(!(cn=jim bean)))" );
+        optimizer.annotate( txn, exprNode );
+
+        expectedUuid.clear();
+        expectedUuid.add( Strings.getUUID( 2 ) );
+        expectedUuid.add( Strings.getUUID( 5 ) );
+
+        assertEquals( expectedUuid, computeCandidates( txn, exprNode ) );
+
+        // The entries are still evaluated against the whole filter
+        Cursor<Entry> cursor = buildCursor( txn, exprNode );
+        Set<String> foundUuid = new HashSet<String>();
+
+        while ( cursor.next() )
+        {
+            foundUuid.add( cursor.get().get( "entryUUID" ).getString() );
+        }
+
+        cursor.close();
+
+        assertEquals( expectedUuid, foundUuid );
+    }
+
+
+    private Set<String> computeCandidates( PartitionTxn txn, ExprNode exprNode ) throws Exception
+    {
+        PartitionSearchResult searchResult = new PartitionSearchResult( schemaManager );
+        Set<String> uuids = new HashSet<String>();
+        searchResult.setCandidateSet( uuids );
+
+        cursorBuilder.build( txn, exprNode, searchResult );
+
+        return uuids;
+    }
 }
@@ -0,0 +1,278 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.xdbm.search.impl;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.FileUtils;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.partition.impl.avl.AvlPartition;
+import org.apache.directory.server.core.shared.DefaultDnFactory;
+import org.apache.directory.server.xdbm.Store;
+import org.apache.directory.server.xdbm.StoreUtils;
+import org.apache.directory.server.xdbm.impl.avl.AvlIndex;
+import org.apache.directory.server.xdbm.search.cursor.OrderedCursor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Tests the OrderedCursor, which returns all the entries in the order of an index.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class OrderedCursorTest
+{
+    private static final Logger LOG = LoggerFactory.getLogger( OrderedCursorTest.class );
+
+    /** The entries UUIDs, ordered by their least ou value. Entries #1 and #10 have no ou */
+    private static final List<Integer> ASCENDING = Arrays.asList( 7, 9, 12, 3, 4, 8, 11, 2, 5, 6, 1, 10 );
+
+    File wkdir;
+    Store store;
+    static SchemaManager schemaManager = null;
+    private static DnFactory dnFactory;
+
+
+    @BeforeClass
+    public static void setup() throws Exception
+    {
+        String workingDirectory = System.getProperty( "workingDirectory" );
+
+        if ( workingDirectory == null )
+        {
+            String path = OrderedCursorTest.class.getResource( "" ).getPath();
+            int targetPos = path.indexOf( "target" );
+            workingDirectory = path.substring( 0, targetPos + 6 );
+        }
+
+        File schemaRepository = new File( workingDirectory, "schema" );
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( new File( workingDirectory ) );
+        extractor.extractOrCopy( true );
+        LdifSchemaLoader loader = new LdifSchemaLoader( schemaRepository );
+        schemaManager = new DefaultSchemaManager( loader );
+
+        boolean loaded = schemaManager.loadAllEnabled();
+
+        if ( !loaded )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+
+        loaded = schemaManager.loadWithDeps( loader.getSchema( "collective" ) );
+
+        if ( !loaded )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+
+        dnFactory = new DefaultDnFactory( schemaManager, 100 );
+    }
+
+
+    @Before
+    public void createStore() throws Exception
+    {
+        // setup the working directory for the store
+        wkdir = File.createTempFile( getClass().getSimpleName(), "db" );
+        wkdir.delete();
+        wkdir = new File( wkdir.getParentFile(), getClass().getSimpleName() );
+        wkdir.mkdirs();
+
+        StoreUtils.createdExtraAttributes( schemaManager );
+
+        // initialize the store
+        store = new AvlPartition( schemaManager, dnFactory );
+        ( ( Partition ) store ).setId( "example" );
+        store.setCacheSize( 10 );
+        store.setPartitionPath( wkdir.toURI() );
+        store.setSyncOnWrite( false );
+
+        // The reverse index is needed to find the least value of a multi-valued attribute
+        store.addIndex( new AvlIndex<String>( SchemaConstants.OU_AT_OID, true ) );
+        ( ( Partition ) store ).setSuffixDn( new Dn( schemaManager, "o=Good Times Co." ) );
+        ( ( Partition ) store ).initialize();
+
+        StoreUtils.loadExampleData( store, schemaManager );
+
+        // An entry with more than one ou : it must only be returned once, at the position of its least value
+        Entry entry = new DefaultEntry( schemaManager, "ou=Zoo,o=Good Times Co.",
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: Zoo",
+            "ou: Backyard" );
+        StoreUtils.injectEntryInStore( store, entry, 12 );
+
+        LOG.debug( "Created new store" );
+    }
+
+
+    @After
+    public void destroyStore() throws Exception
+    {
+        if ( store != null )
+        {
+            ( ( Partition ) store ).destroy( null );
+        }
+
+        store = null;
+
+        if ( wkdir != null )
+        {
+            FileUtils.deleteDirectory( wkdir );
+        }
+
+        wkdir = null;
+    }
+
+
+    private List<String> expected( boolean reverse )
+    {
+        List<String> uuids = new ArrayList<>();
+
+        for ( int index : ASCENDING )
+        {
+            uuids.add( Strings.getUUID( index ) );
+        }
+
+        if ( reverse )
+        {
+            // The entries having the same value are returned in reverse order too
+            Collections.reverse( uuids );
+        }
+
+        return uuids;
+    }
+
+
+    @Test
+    public void testAscendingOrder() throws Exception
+    {
+        PartitionTxn txn = ( ( Partition ) store ).beginReadTransaction();
+        OrderedCursor cursor = new OrderedCursor( txn, store, schemaManager.getAttributeType( "ou" ), false );
+
+        List<String> uuids = new ArrayList<>();
+        cursor.beforeFirst();
+
+        while ( cursor.next() )
+        {
+            assertTrue( cursor.available() );
+            uuids.add( cursor.get().getId() );
+        }
+
+        assertFalse( cursor.available() );
+        assertEquals( expected( false ), uuids );
+
+        // Walk back from the end
+        uuids.clear();
+        cursor.afterLast();
+
+        while ( cursor.previous() )
+        {
+            uuids.add( 0, cursor.get().getId() );
+        }
+
+        assertEquals( expected( false ), uuids );
+
+        assertTrue( cursor.first() );
+        assertEquals( Strings.getUUID( 7 ), cursor.get().getId() );
+        assertTrue( cursor.last() );
+        assertEquals( Strings.getUUID( 10 ), cursor.get().getId() );
+
+        cursor.close();
+    }
+
+
+    @Test
+    public void testReverseOrder() throws Exception
+    {
+        PartitionTxn txn = ( ( Partition ) store ).beginReadTransaction();
+        OrderedCursor cursor = new OrderedCursor( txn, store, schemaManager.getAttributeType( "ou" ), true );
+
+        List<String> uuids = new ArrayList<>();
+        cursor.beforeFirst();
+
+        while ( cursor.next() )
+        {
+            uuids.add( cursor.get().getId() );
+        }
+
+        assertEquals( expected( true ), uuids );
+
+        // Walk back from the end
+        uuids.clear();
+        cursor.afterLast();
+
+        while ( cursor.previous() )
+        {
+            uuids.add( 0, cursor.get().getId() );
+        }
+
+        assertEquals( expected( true ), uuids );
+
+        cursor.close();
+    }
+
+
+    @Test(expected = InvalidCursorPositionException.class)
+    public void testInvalidCursorPosition() throws Exception
+    {
+        PartitionTxn txn = ( ( Partition ) store ).beginReadTransaction();
+        OrderedCursor cursor = new OrderedCursor( txn, store, schemaManager.getAttributeType( "ou" ), false );
+
+        try
+        {
+            cursor.beforeFirst();
+            cursor.get();
+        }
+        finally
+        {
+            cursor.close();
+        }
+    }
+}